@@ -0,0 +1,181 @@
+package com.agonyengine.config;
+
+import com.agonyengine.model.stomp.GameOutput;
+import com.agonyengine.model.stomp.UserInput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Measures the round trip from a client's input arriving on the inbound channel to the resulting output
+ * reaching the outbound channel, through either the in-JVM broker or the STOMP relay. The relay talks to a
+ * StompStandIn over loopback instead of ActiveMQ. A small handler on the inbound channel plays the part of
+ * WebSocketResource so that both modes do the same JSON work and only the broker hop differs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BrokerRoundTripBenchmark {
+    private static final String SESSION_ID = "session0";
+    private static final String OUTPUT_DESTINATION = "/queue/output-user" + SESSION_ID;
+
+    @Param({"RELAY", "SIMPLE"})
+    private BrokerMode mode;
+
+    private final BlockingQueue<Message<?>> received = new LinkedBlockingQueue<>();
+    private ThreadPoolTaskExecutor executor;
+    private StompStandIn standIn;
+    private AbstractBrokerMessageHandler broker;
+    private ExecutorSubscribableChannel clientInboundChannel;
+    private Message<byte[]> input;
+
+    @Setup
+    public void setUp() throws Exception {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(16);
+        executor.setQueueCapacity(1000);
+        executor.initialize();
+
+        clientInboundChannel = new ExecutorSubscribableChannel(executor);
+
+        ExecutorSubscribableChannel clientOutboundChannel = new ExecutorSubscribableChannel(executor);
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        SimpMessagingTemplate simpMessagingTemplate = new SimpMessagingTemplate(brokerChannel);
+
+        simpMessagingTemplate.setMessageConverter(new CompositeMessageConverter(Arrays.asList(
+            new StringMessageConverter(),
+            new ByteArrayMessageConverter(),
+            new MappingJackson2MessageConverter())));
+
+        clientInboundChannel.subscribe(message -> {
+            if ("/app/input".equals(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))) {
+                UserInput userInput = (UserInput)simpMessagingTemplate.getMessageConverter().fromMessage(message, UserInput.class);
+
+                simpMessagingTemplate.convertAndSend(OUTPUT_DESTINATION, new GameOutput(userInput.getInput()));
+            }
+        });
+
+        clientOutboundChannel.subscribe(message -> {
+            if (SimpMessageType.MESSAGE == SimpMessageHeaderAccessor.getMessageType(message.getHeaders())) {
+                received.offer(message);
+            }
+        });
+
+        if (BrokerMode.SIMPLE == mode) {
+            broker = new SimpleBrokerMessageHandler(clientInboundChannel, clientOutboundChannel, brokerChannel, Arrays.asList("/queue", "/topic"));
+        } else {
+            standIn = new StompStandIn();
+
+            StompBrokerRelayMessageHandler relay = new StompBrokerRelayMessageHandler(
+                clientInboundChannel, clientOutboundChannel, brokerChannel, Arrays.asList("/queue", "/topic"));
+
+            relay.setRelayHost("127.0.0.1");
+            relay.setRelayPort(standIn.getPort());
+            relay.setSystemHeartbeatSendInterval(0);
+            relay.setSystemHeartbeatReceiveInterval(0);
+
+            broker = relay;
+        }
+
+        broker.start();
+
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (!broker.isBrokerAvailable()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("The " + mode + " broker never became available");
+            }
+
+            Thread.sleep(10);
+        }
+
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+
+        connect.setSessionId(SESSION_ID);
+        connect.setAcceptVersion("1.2");
+        connect.setHeartbeat(0, 0);
+        connect.setLeaveMutable(true);
+        clientInboundChannel.send(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+
+        StompHeaderAccessor subscribe = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+
+        subscribe.setSessionId(SESSION_ID);
+        subscribe.setSubscriptionId("sub-0");
+        subscribe.setDestination(OUTPUT_DESTINATION);
+        clientInboundChannel.send(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+
+        StompHeaderAccessor send = StompHeaderAccessor.create(StompCommand.SEND);
+
+        send.setSessionId(SESSION_ID);
+        send.setDestination("/app/input");
+        send.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        input = MessageBuilder.createMessage("{\"input\":\"say Hello!\"}".getBytes(StandardCharsets.UTF_8), send.getMessageHeaders());
+
+        // the relay connects and subscribes asynchronously, so keep knocking until the first output comes back
+        while (received.isEmpty()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("The " + mode + " broker never delivered any output");
+            }
+
+            clientInboundChannel.send(input);
+            Thread.sleep(10);
+        }
+
+        Thread.sleep(100);
+        received.clear();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        broker.stop();
+
+        if (standIn != null) {
+            standIn.close();
+        }
+
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public Message<?> roundTrip() throws InterruptedException {
+        clientInboundChannel.send(input);
+
+        Message<?> output = received.poll(5, TimeUnit.SECONDS);
+
+        if (output == null) {
+            throw new IllegalStateException("No output came back through the " + mode + " broker");
+        }
+
+        return output;
+    }
+}
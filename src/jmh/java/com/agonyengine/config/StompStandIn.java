@@ -0,0 +1,244 @@
+package com.agonyengine.config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Just enough of a STOMP 1.2 broker to stand in for ActiveMQ on the loopback interface: it accepts every login,
+ * never asks for heartbeats, and delivers each SEND to whoever is subscribed to exactly that destination.
+ * There are no queues, acknowledgements or persistence, so it flatters the relay a little.
+ */
+class StompStandIn implements Closeable {
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicLong messageIds = new AtomicLong();
+
+    StompStandIn() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.submit(this::accept);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+
+                socket.setTcpNoDelay(true);
+                executor.submit(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            Connection connection = new Connection(new BufferedOutputStream(s.getOutputStream()));
+            Frame frame;
+
+            try {
+                while ((frame = Frame.read(in)) != null) {
+                    if (!handle(connection, frame)) {
+                        break;
+                    }
+                }
+            } finally {
+                subscriptions.values().forEach(list -> list.removeIf(subscription -> subscription.connection == connection));
+            }
+        } catch (IOException e) {
+            // the relay hung up
+        }
+    }
+
+    private boolean handle(Connection connection, Frame frame) throws IOException {
+        switch (frame.command) {
+            case "CONNECT":
+            case "STOMP":
+                connection.write("CONNECTED\nversion:1.2\nheart-beat:0,0\n\n", new byte[0]);
+                break;
+            case "SUBSCRIBE":
+                subscriptions
+                    .computeIfAbsent(frame.headers.get("destination"), destination -> new CopyOnWriteArrayList<>())
+                    .add(new Subscription(connection, frame.headers.get("id")));
+                break;
+            case "UNSUBSCRIBE":
+                subscriptions.values().forEach(list -> list.removeIf(subscription ->
+                    subscription.connection == connection && subscription.id.equals(frame.headers.get("id"))));
+                break;
+            case "SEND":
+                deliver(frame);
+                break;
+            case "DISCONNECT":
+                if (frame.headers.containsKey("receipt")) {
+                    connection.write("RECEIPT\nreceipt-id:" + frame.headers.get("receipt") + "\n\n", new byte[0]);
+                }
+
+                return false;
+            default:
+                break;
+        }
+
+        return true;
+    }
+
+    private void deliver(Frame frame) throws IOException {
+        String destination = frame.headers.get("destination");
+        List<Subscription> subscribers = subscriptions.get(destination);
+
+        if (subscribers == null) {
+            return;
+        }
+
+        for (Subscription subscription : subscribers) {
+            StringBuilder headers = new StringBuilder("MESSAGE\n")
+                .append("destination:").append(destination).append("\n")
+                .append("subscription:").append(subscription.id).append("\n")
+                .append("message-id:").append(messageIds.incrementAndGet()).append("\n");
+
+            if (frame.headers.containsKey("content-type")) {
+                headers.append("content-type:").append(frame.headers.get("content-type")).append("\n");
+            }
+
+            headers.append("content-length:").append(frame.body.length).append("\n\n");
+
+            subscription.connection.write(headers.toString(), frame.body);
+        }
+    }
+
+    private static class Connection {
+        private final OutputStream out;
+
+        Connection(OutputStream out) {
+            this.out = out;
+        }
+
+        synchronized void write(String headers, byte[] body) throws IOException {
+            out.write(headers.getBytes(StandardCharsets.UTF_8));
+            out.write(body);
+            out.write(0);
+            out.flush();
+        }
+    }
+
+    private static class Subscription {
+        private final Connection connection;
+        private final String id;
+
+        Subscription(Connection connection, String id) {
+            this.connection = connection;
+            this.id = id;
+        }
+    }
+
+    private static class Frame {
+        private final String command;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        private Frame(String command, Map<String, String> headers, byte[] body) {
+            this.command = command;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        static Frame read(InputStream in) throws IOException {
+            String command;
+
+            // blank lines between frames are heartbeats
+            do {
+                command = readLine(in);
+
+                if (command == null) {
+                    return null;
+                }
+            } while (command.isEmpty());
+
+            Map<String, String> headers = new HashMap<>();
+            String line;
+
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+
+                // repeated headers keep their first value
+                headers.putIfAbsent(line.substring(0, colon), line.substring(colon + 1));
+            }
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            String contentLength = headers.get("content-length");
+
+            if (contentLength != null) {
+                int length = Integer.parseInt(contentLength);
+
+                for (int i = 0; i < length; i++) {
+                    body.write(readByte(in));
+                }
+
+                readByte(in);
+            } else {
+                int b;
+
+                while ((b = readByte(in)) != 0) {
+                    body.write(b);
+                }
+            }
+
+            return new Frame(command, headers, body.toByteArray());
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+
+            while ((b = in.read()) != '\n') {
+                if (b == -1) {
+                    return null;
+                }
+
+                if (b != '\r') {
+                    line.write(b);
+                }
+            }
+
+            return new String(line.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        private static int readByte(InputStream in) throws IOException {
+            int b = in.read();
+
+            if (b == -1) {
+                throw new IOException("Connection closed in the middle of a frame");
+            }
+
+            return b;
+        }
+    }
+}
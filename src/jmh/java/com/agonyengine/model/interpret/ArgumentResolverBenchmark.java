@@ -0,0 +1,156 @@
+package com.agonyengine.model.interpret;
+
+import com.agonyengine.config.ActorProperties;
+import com.agonyengine.config.BrokerMode;
+import com.agonyengine.config.WebSocketBrokerProperties;
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.GameMap;
+import com.agonyengine.repository.ActorRepository;
+import com.agonyengine.service.ActorStateService;
+import com.agonyengine.service.OccupancyService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Binds both arguments of a command like "give sword dave" the old way, with a new prototype bean from a real
+ * Spring context for each word, against the singleton resolvers. The context has transactions turned on like the
+ * game does, with a transaction manager that does nothing so that only Spring's own overhead is counted. The
+ * repository is a map of the actors in the room.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ArgumentResolverBenchmark {
+    private AnnotationConfigApplicationContext applicationContext;
+    private ActorSameRoomResolver resolver;
+    private Actor actor;
+
+    @Setup
+    public void setUp() {
+        GameMap gameMap = new GameMap();
+        Map<UUID, Actor> actors = new HashMap<>();
+        ActorRepository actorRepository = (ActorRepository) Proxy.newProxyInstance(
+            ActorRepository.class.getClassLoader(),
+            new Class<?>[] {ActorRepository.class},
+            (proxy, method, args) -> Optional.ofNullable(actors.get(args[0])));
+        OccupancyService occupancyService = new OccupancyService(
+            actorProperties(),
+            actorRepository,
+            event -> { },
+            new ActorStateService(null, brokerProperties(), new SimpleMeterRegistry()));
+
+        gameMap.setId(UUID.randomUUID());
+
+        actor = newActor(gameMap, "Stu");
+
+        for (Actor occupant : new Actor[] {actor, newActor(gameMap, "sword"), newActor(gameMap, "Dave")}) {
+            actors.put(occupant.getId(), occupant);
+            occupancyService.update(occupant);
+        }
+
+        applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.registerBean(OccupancyService.class, () -> occupancyService);
+        applicationContext.register(TransactionConfiguration.class, ActorSameRoom.class);
+        applicationContext.refresh();
+
+        resolver = new ActorSameRoomResolver(occupancyService);
+    }
+
+    @TearDown
+    public void tearDown() {
+        applicationContext.close();
+    }
+
+    @Benchmark
+    public Object[] prototypeBeans() {
+        ActorSameRoom first = applicationContext.getBean(ActorSameRoom.class);
+        ActorSameRoom second = applicationContext.getBean(ActorSameRoom.class);
+
+        first.bind(actor, "SWORD");
+        second.bind(actor, "DAVE");
+
+        return new Object[] {first, second};
+    }
+
+    @Benchmark
+    public Object[] resolvers() {
+        return new Object[] {resolver.resolve(actor, "SWORD"), resolver.resolve(actor, "DAVE")};
+    }
+
+    private static Actor newActor(GameMap gameMap, String name) {
+        Actor actor = new Actor();
+
+        actor.setId(UUID.randomUUID());
+        actor.setName(name);
+        actor.setGameMap(gameMap);
+        actor.setX(0);
+        actor.setY(0);
+
+        return actor;
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    public static class TransactionConfiguration {
+        @Bean
+        public PlatformTransactionManager transactionManager() {
+            return new AbstractPlatformTransactionManager() {
+                @Override
+                protected Object doGetTransaction() {
+                    return new Object();
+                }
+
+                @Override
+                protected void doBegin(Object transaction, TransactionDefinition definition) {
+                }
+
+                @Override
+                protected void doCommit(DefaultTransactionStatus status) {
+                }
+
+                @Override
+                protected void doRollback(DefaultTransactionStatus status) {
+                }
+            };
+        }
+    }
+
+    private static ActorProperties actorProperties() {
+        ActorProperties actorProperties = new ActorProperties();
+
+        actorProperties.setDatabaseLookupThreshold(Integer.MAX_VALUE);
+
+        return actorProperties;
+    }
+
+    // written behind, so the benchmark never needs a database
+    private static WebSocketBrokerProperties brokerProperties() {
+        WebSocketBrokerProperties brokerProperties = new WebSocketBrokerProperties();
+
+        brokerProperties.setMode(BrokerMode.SIMPLE);
+
+        return brokerProperties;
+    }
+}
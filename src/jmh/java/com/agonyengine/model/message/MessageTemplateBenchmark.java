@@ -0,0 +1,47 @@
+package com.agonyengine.model.message;
+
+import com.agonyengine.model.actor.Actor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.util.StringUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Builds the room message for dropping an item the old way, with String.format and StringUtils.capitalize, and
+ * with a compiled template. Run with "-prof gc" to see the bytes allocated per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageTemplateBenchmark {
+    private static final MessageTemplate DROPS = MessageTemplate.compile("[default]$n drops $p[default].");
+
+    private Actor actor;
+    private Actor item;
+
+    @Setup
+    public void setUp() {
+        actor = new Actor();
+        actor.setName("Alice");
+        actor.setAccount("alice");
+
+        item = new Actor();
+        item.setName("rusty sword");
+    }
+
+    @Benchmark
+    public String format() {
+        return String.format("[default]%s drops %s[default].", StringUtils.capitalize(actor.getName()), item.getName());
+    }
+
+    @Benchmark
+    public String template() {
+        return DROPS.render(actor, item);
+    }
+}
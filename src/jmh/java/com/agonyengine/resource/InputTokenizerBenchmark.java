@@ -0,0 +1,58 @@
+package com.agonyengine.resource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class InputTokenizerBenchmark {
+    private static final String[] CORPUS = new String[] {
+        "n",
+        "look",
+        "l",
+        "inv",
+        "get the sword",
+        "drop a rubber ball",
+        "look at the tall wizard",
+        "n then n then e then look",
+        "n. n. e. e. s. w. look!",
+        "get sword then get shield then get an apple",
+        "say Hello there!",
+        "say \"Has anyone seen the blacksmith? I need my sword repaired before the raid tonight, and the old one is a wreck.\"",
+        "say I just got here. Where do new players usually go to find a group? Is the forest safe at night?",
+        "create \"a gleaming silver longsword with a sapphire set into the pommel\"",
+        "quit now",
+        "who",
+        "score",
+        "   much     whitespace   between   words   ",
+        "code: \"System.out.println(\"Test\");\" code"
+    };
+
+    private InputTokenizer inputTokenizer;
+
+    @Setup
+    public void setUp() {
+        inputTokenizer = new InputTokenizer();
+    }
+
+    @Benchmark
+    public void tokenizeCorpus(Blackhole blackhole) {
+        for (String input : CORPUS) {
+            blackhole.consume(inputTokenizer.tokenize(input));
+        }
+    }
+
+    @Benchmark
+    public void tokenizeLongSay(Blackhole blackhole) {
+        blackhole.consume(inputTokenizer.tokenize(CORPUS[11]));
+    }
+}
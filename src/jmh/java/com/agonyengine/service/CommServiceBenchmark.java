@@ -0,0 +1,149 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.ActorProperties;
+import com.agonyengine.config.BrokerMode;
+import com.agonyengine.config.OutputProperties;
+import com.agonyengine.config.WebSocketBrokerProperties;
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.GameMap;
+import com.agonyengine.model.actor.Occupant;
+import com.agonyengine.model.stomp.GameOutput;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Fans a room message out to a crowded tile, comparing the old approach of converting the GameOutput once per
+ * recipient with CommService serializing it once. The broker channel only counts the messages it is given.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommServiceBenchmark {
+    @Param({"10", "100", "1000"})
+    private int recipients;
+
+    private long sent;
+    private OccupancyService occupancyService;
+    private SimpMessagingTemplate simpMessagingTemplate;
+    private CommService commService;
+    private Actor speaker;
+
+    @Setup
+    public void setUp() {
+        GameMap gameMap = new GameMap();
+        MessageChannel channel = new MessageChannel() {
+            @Override
+            public boolean send(Message<?> message) {
+                return send(message, 0);
+            }
+
+            @Override
+            public boolean send(Message<?> message, long timeout) {
+                sent++;
+                return true;
+            }
+        };
+
+        gameMap.setId(UUID.randomUUID());
+
+        occupancyService = new OccupancyService(actorProperties(), null, event -> { }, new ActorStateService(null, brokerProperties(), new SimpleMeterRegistry()));
+        simpMessagingTemplate = new SimpMessagingTemplate(channel);
+        simpMessagingTemplate.setMessageConverter(new CompositeMessageConverter(Arrays.asList(
+            new StringMessageConverter(),
+            new ByteArrayMessageConverter(),
+            new MappingJackson2MessageConverter())));
+
+        commService = new CommService(
+            new OutputProperties(),
+            occupancyService,
+            new RoomTopicService(new WebSocketBrokerProperties(), simpMessagingTemplate),
+            simpMessagingTemplate);
+
+        for (int i = 0; i <= recipients; i++) {
+            Actor actor = new Actor();
+
+            actor.setId(UUID.randomUUID());
+            actor.setName("Player" + i);
+            actor.setAccount("account" + i);
+            actor.setSessionUsername("user" + i);
+            actor.setSessionId("session" + i);
+            actor.setGameMap(gameMap);
+            actor.setX(0);
+            actor.setY(0);
+
+            occupancyService.update(actor);
+
+            if (i == 0) {
+                speaker = actor;
+            }
+        }
+    }
+
+    @Benchmark
+    public long convertPerRecipient() {
+        GameOutput message = buildMessage()
+            .append("")
+            .append("[default]> ");
+
+        for (Occupant target : occupancyService.getOccupants(speaker.getGameMap(), speaker.getX(), speaker.getY())) {
+            if (target.isActor(speaker)) {
+                continue;
+            }
+
+            SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create();
+
+            headerAccessor.setSessionId(target.getSessionId());
+
+            simpMessagingTemplate.convertAndSendToUser(target.getSessionUsername(), "/queue/output", message, headerAccessor.getMessageHeaders());
+        }
+
+        return sent;
+    }
+
+    @Benchmark
+    public long encodeOnce() {
+        commService.echoToRoom(speaker, buildMessage(), speaker);
+
+        return sent;
+    }
+
+    private GameOutput buildMessage() {
+        return new GameOutput("[cyan]Player0 says 'Welcome to the festival, everyone! The games start at midnight.'");
+    }
+
+    private static ActorProperties actorProperties() {
+        ActorProperties actorProperties = new ActorProperties();
+
+        actorProperties.setDatabaseLookupThreshold(Integer.MAX_VALUE);
+
+        return actorProperties;
+    }
+
+    // written behind, so the benchmark never needs a database
+    private static WebSocketBrokerProperties brokerProperties() {
+        WebSocketBrokerProperties brokerProperties = new WebSocketBrokerProperties();
+
+        brokerProperties.setMode(BrokerMode.SIMPLE);
+
+        return brokerProperties;
+    }
+}
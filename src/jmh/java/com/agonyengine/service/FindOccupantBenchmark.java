@@ -0,0 +1,119 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.ActorProperties;
+import com.agonyengine.config.BrokerMode;
+import com.agonyengine.config.WebSocketBrokerProperties;
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.GameMap;
+import com.agonyengine.repository.ActorRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Looks for the last item created on a crowded tile, comparing the old approach of loading every actor in the
+ * room and splitting and upper casing each of their names with the occupancy index. The repository is a map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FindOccupantBenchmark {
+    @Param({"10", "100", "2000"})
+    private int items;
+
+    private List<Actor> room;
+    private OccupancyService occupancyService;
+    private Actor actor;
+    private GameMap gameMap;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        Map<UUID, Actor> actors = new HashMap<>();
+        ActorRepository actorRepository = (ActorRepository) Proxy.newProxyInstance(
+            ActorRepository.class.getClassLoader(),
+            new Class<?>[] {ActorRepository.class},
+            (proxy, method, args) -> Optional.ofNullable(actors.get(args[0])));
+
+        gameMap = new GameMap();
+        gameMap.setId(UUID.randomUUID());
+
+        occupancyService = new OccupancyService(
+            actorProperties(),
+            actorRepository,
+            event -> { },
+            new ActorStateService(null, brokerProperties(), new SimpleMeterRegistry()));
+        room = new ArrayList<>();
+
+        for (int i = 0; i <= items; i++) {
+            Actor item = new Actor();
+
+            item.setId(UUID.randomUUID());
+            item.setName(i == 0 ? "Stu" : "a rusty sword of item" + i);
+            item.setGameMap(gameMap);
+            item.setX(0);
+            item.setY(0);
+
+            actors.put(item.getId(), item);
+            room.add(item);
+            occupancyService.update(item);
+        }
+
+        actor = room.get(0);
+        token = "ITEM" + items;
+    }
+
+    @Benchmark
+    public Actor scanRoom() {
+        for (Actor candidate : room) {
+            if (candidate.getId().equals(actor.getId())) {
+                continue;
+            }
+
+            for (String word : candidate.getNameTokens()) {
+                if (word.toUpperCase().startsWith(token)) {
+                    return candidate;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    @Benchmark
+    public Actor occupancyIndex() {
+        return occupancyService.findOccupant(gameMap, 0, 0, actor, token);
+    }
+
+    private static ActorProperties actorProperties() {
+        ActorProperties actorProperties = new ActorProperties();
+
+        actorProperties.setDatabaseLookupThreshold(Integer.MAX_VALUE);
+
+        return actorProperties;
+    }
+
+    // written behind, so the benchmark never needs a database
+    private static WebSocketBrokerProperties brokerProperties() {
+        WebSocketBrokerProperties brokerProperties = new WebSocketBrokerProperties();
+
+        brokerProperties.setMode(BrokerMode.SIMPLE);
+
+        return brokerProperties;
+    }
+}
@@ -0,0 +1,109 @@
+package com.agonyengine.service;
+
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.interpret.ActorSameRoom;
+import com.agonyengine.model.interpret.CommandDispatch;
+import com.agonyengine.model.interpret.QuotedString;
+import com.agonyengine.model.stomp.GameOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.agonyengine.model.interpret.CommandMethod.STANDARD_ARG_COUNT;
+
+/*
+ * Compares the cost of finding and calling a command's "invoke" overload the old way (reflecting over the bean
+ * class on every command) against the precomputed dispatch table. Argument binding is left out so that only the
+ * dispatch itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InvokerServiceBenchmark {
+    @Param({"look", "say", "get"})
+    private String verb;
+
+    private Object bean;
+    private Object[] arguments;
+    private CommandDispatch dispatch;
+
+    @Setup
+    public void setUp() {
+        Actor actor = new Actor();
+        GameOutput output = new GameOutput();
+
+        switch (verb) {
+            case "look":
+                bean = new LookStub();
+                arguments = new Object[] {actor, output};
+                break;
+            case "say":
+                bean = new SayStub();
+                arguments = new Object[] {actor, output, new QuotedString()};
+                break;
+            case "get":
+                bean = new GetStub();
+                arguments = new Object[] {actor, output, new ActorSameRoom(null)};
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown verb: " + verb);
+        }
+
+        dispatch = new CommandDispatch(bean);
+    }
+
+    @Benchmark
+    public void reflection() {
+        List<Method> methods = Arrays.stream(ReflectionUtils.getUniqueDeclaredMethods(bean.getClass()))
+            .filter(m -> "invoke".equals(m.getName()))
+            .filter(m -> arguments.length == m.getParameterCount())
+            .collect(Collectors.toList());
+
+        ReflectionUtils.invokeMethod(methods.get(0), bean, arguments);
+    }
+
+    @Benchmark
+    public void dispatchTable() {
+        dispatch.getMethods(arguments.length - STANDARD_ARG_COUNT)[0].invoke(arguments);
+    }
+
+    public static class LookStub {
+        private int count;
+
+        public void invoke(Actor actor, GameOutput output) {
+            count++;
+        }
+
+        public void invoke(Actor actor, GameOutput output, ActorSameRoom target) {
+            count--;
+        }
+    }
+
+    public static class SayStub {
+        private int count;
+
+        public void invoke(Actor actor, GameOutput output, QuotedString message) {
+            count++;
+        }
+    }
+
+    public static class GetStub {
+        private int count;
+
+        public void invoke(Actor actor, GameOutput output, ActorSameRoom item) {
+            count++;
+        }
+    }
+}
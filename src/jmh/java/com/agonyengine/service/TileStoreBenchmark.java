@@ -0,0 +1,104 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.MapProperties;
+import com.agonyengine.model.actor.GameMap;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.agonyengine.service.MapChunks.CHUNK_SIZE;
+
+/*
+ * Loads a 4096x4096 map and looks at one tile, comparing the old single bytea column (the whole 16 MB array
+ * comes back no matter what) with the chunked store, which only reads the one chunk around the tile. The
+ * database is a map of byte arrays that hands out copies, the way the driver would. Run with "-prof gc" to see
+ * the bytes allocated per load alongside the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TileStoreBenchmark {
+    private static final int SIZE = 4096;
+
+    private final Random random = new Random();
+    private byte[] blob;
+    private Map<String, byte[]> chunkTable;
+    private GameMap gameMap;
+    private TileStoreService tileStoreService;
+    private int x;
+    private int y;
+
+    @Setup
+    public void setUp() {
+        blob = new byte[SIZE * SIZE];
+        random.nextBytes(blob);
+
+        gameMap = new GameMap();
+        gameMap.setId(UUID.randomUUID());
+        gameMap.setWidth(SIZE);
+        gameMap.setHeight(SIZE);
+
+        chunkTable = new HashMap<>();
+
+        for (int chunkY = 0; chunkY < SIZE / CHUNK_SIZE; chunkY++) {
+            for (int chunkX = 0; chunkX < SIZE / CHUNK_SIZE; chunkX++) {
+                byte[] chunk = new byte[CHUNK_SIZE * CHUNK_SIZE];
+
+                for (int row = 0; row < CHUNK_SIZE; row++) {
+                    System.arraycopy(blob, (chunkY * CHUNK_SIZE + row) * SIZE + chunkX * CHUNK_SIZE, chunk, row * CHUNK_SIZE, CHUNK_SIZE);
+                }
+
+                chunkTable.put(chunkX + "," + chunkY, chunk);
+            }
+        }
+    }
+
+    // every load starts cold, like the first player to walk onto a map after a restart
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        MapProperties mapProperties = new MapProperties();
+
+        mapProperties.setChunkCacheSize(4096);
+
+        tileStoreService = new TileStoreService(mapProperties, new ChunkTable(), new SimpleMeterRegistry());
+        x = random.nextInt(SIZE);
+        y = random.nextInt(SIZE);
+    }
+
+    @Benchmark
+    public byte loadWholeMap() {
+        byte[] tiles = blob.clone();
+
+        return tiles[y * SIZE + x];
+    }
+
+    @Benchmark
+    public byte loadChunk() {
+        return tileStoreService.getTile(gameMap, x, y);
+    }
+
+    private class ChunkTable extends JdbcTemplate {
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            byte[] chunk = chunkTable.get(args[1] + "," + args[2]);
+
+            return chunk == null ? Collections.emptyList() : Collections.singletonList((T)chunk.clone());
+        }
+    }
+}
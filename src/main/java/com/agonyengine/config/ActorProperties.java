@@ -0,0 +1,18 @@
+package com.agonyengine.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "agonyengine.actors")
+public class ActorProperties {
+    private Integer databaseLookupThreshold;
+
+    public Integer getDatabaseLookupThreshold() {
+        return databaseLookupThreshold;
+    }
+
+    public void setDatabaseLookupThreshold(Integer databaseLookupThreshold) {
+        this.databaseLookupThreshold = databaseLookupThreshold;
+    }
+}
@@ -1,9 +1,12 @@
 package com.agonyengine.config;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.transaction.PlatformTransactionManagerCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.Date;
 import java.util.UUID;
@@ -30,4 +33,28 @@ public class ApplicationConfiguration {
     public UUID defaultMapId() {
         return defaultMapId;
     }
+
+    // runs players' commands, one at a time per actor, on behalf of ActorMailboxService
+    @Bean(name = "commandExecutor")
+    public ThreadPoolTaskExecutor commandExecutor(InputProperties inputProperties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+        executor.setCorePoolSize(inputProperties.getCommandThreads());
+        executor.setMaxPoolSize(inputProperties.getCommandThreads());
+        executor.setThreadNamePrefix("command-");
+
+        return executor;
+    }
+
+    /*
+     * CommandTransactionTemplate rolls a failed command back to a savepoint instead of losing the whole tick. A
+     * @Transactional method that throws must leave that decision to it rather than dooming the whole transaction.
+     */
+    @Bean
+    public PlatformTransactionManagerCustomizer<JpaTransactionManager> savepointCustomizer() {
+        return transactionManager -> {
+            transactionManager.setNestedTransactionAllowed(true);
+            transactionManager.setGlobalRollbackOnParticipationFailure(false);
+        };
+    }
 }
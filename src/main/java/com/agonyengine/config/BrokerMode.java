@@ -0,0 +1,6 @@
+package com.agonyengine.config;
+
+public enum BrokerMode {
+    RELAY,
+    SIMPLE
+}
@@ -0,0 +1,36 @@
+package com.agonyengine.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "agonyengine.cluster")
+public class ClusterProperties {
+    private String nodeId;
+    private Long electionInterval;
+    private Long syncInterval;
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public Long getElectionInterval() {
+        return electionInterval;
+    }
+
+    public void setElectionInterval(Long electionInterval) {
+        this.electionInterval = electionInterval;
+    }
+
+    public Long getSyncInterval() {
+        return syncInterval;
+    }
+
+    public void setSyncInterval(Long syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+}
@@ -0,0 +1,54 @@
+package com.agonyengine.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "agonyengine.input")
+public class InputProperties {
+    private Integer maxCommandsPerLine;
+    private Integer mailboxDepth;
+    private Integer commandThreads;
+    private String scheduler;
+    private Long tickInterval;
+
+    public Integer getMaxCommandsPerLine() {
+        return maxCommandsPerLine;
+    }
+
+    public void setMaxCommandsPerLine(Integer maxCommandsPerLine) {
+        this.maxCommandsPerLine = maxCommandsPerLine;
+    }
+
+    public Integer getMailboxDepth() {
+        return mailboxDepth;
+    }
+
+    public void setMailboxDepth(Integer mailboxDepth) {
+        this.mailboxDepth = mailboxDepth;
+    }
+
+    public Integer getCommandThreads() {
+        return commandThreads;
+    }
+
+    public void setCommandThreads(Integer commandThreads) {
+        this.commandThreads = commandThreads;
+    }
+
+    public String getScheduler() {
+        return scheduler;
+    }
+
+    public void setScheduler(String scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public Long getTickInterval() {
+        return tickInterval;
+    }
+
+    public void setTickInterval(Long tickInterval) {
+        this.tickInterval = tickInterval;
+    }
+}
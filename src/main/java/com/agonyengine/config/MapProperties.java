@@ -0,0 +1,63 @@
+package com.agonyengine.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "agonyengine.maps")
+public class MapProperties {
+    private String backend;
+    private Integer chunkCacheSize;
+    private Long flushInterval;
+    private String directory;
+    private Long snapshotInterval;
+    private Integer mappedMinSize;
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public void setBackend(String backend) {
+        this.backend = backend;
+    }
+
+    public Integer getChunkCacheSize() {
+        return chunkCacheSize;
+    }
+
+    public void setChunkCacheSize(Integer chunkCacheSize) {
+        this.chunkCacheSize = chunkCacheSize;
+    }
+
+    public Long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public Long getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(Long snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public Integer getMappedMinSize() {
+        return mappedMinSize;
+    }
+
+    public void setMappedMinSize(Integer mappedMinSize) {
+        this.mappedMinSize = mappedMinSize;
+    }
+}
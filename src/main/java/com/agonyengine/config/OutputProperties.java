@@ -0,0 +1,27 @@
+package com.agonyengine.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "agonyengine.output")
+public class OutputProperties {
+    private Boolean coalesce;
+    private Long flushInterval;
+
+    public Boolean getCoalesce() {
+        return coalesce;
+    }
+
+    public void setCoalesce(Boolean coalesce) {
+        this.coalesce = coalesce;
+    }
+
+    public Long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+}
@@ -0,0 +1,45 @@
+package com.agonyengine.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "agonyengine.reaper")
+public class ReaperProperties {
+    private Long linkDeadTimeout;
+    private Long tickDuration;
+    private Integer wheelSize;
+    private Long rescanInterval;
+
+    public Long getLinkDeadTimeout() {
+        return linkDeadTimeout;
+    }
+
+    public void setLinkDeadTimeout(Long linkDeadTimeout) {
+        this.linkDeadTimeout = linkDeadTimeout;
+    }
+
+    public Long getTickDuration() {
+        return tickDuration;
+    }
+
+    public void setTickDuration(Long tickDuration) {
+        this.tickDuration = tickDuration;
+    }
+
+    public Integer getWheelSize() {
+        return wheelSize;
+    }
+
+    public void setWheelSize(Integer wheelSize) {
+        this.wheelSize = wheelSize;
+    }
+
+    public Long getRescanInterval() {
+        return rescanInterval;
+    }
+
+    public void setRescanInterval(Long rescanInterval) {
+        this.rescanInterval = rescanInterval;
+    }
+}
@@ -0,0 +1,46 @@
+package com.agonyengine.config;
+
+import com.agonyengine.service.RoomTopicService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+
+/**
+ * Drops subscriptions to room topics other than the one the session's actor is standing in, so that nobody can
+ * listen in on rooms they aren't in.
+ */
+@Component
+public class RoomSubscriptionInterceptor implements ChannelInterceptor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RoomSubscriptionInterceptor.class);
+
+    private RoomTopicService roomTopicService;
+
+    @Inject
+    public RoomSubscriptionInterceptor(RoomTopicService roomTopicService) {
+        this.roomTopicService = roomTopicService;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor headerAccessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+
+        if (headerAccessor == null || !StompCommand.SUBSCRIBE.equals(headerAccessor.getCommand())) {
+            return message;
+        }
+
+        if (!roomTopicService.canSubscribe(headerAccessor.getSessionId(), headerAccessor.getDestination())) {
+            LOGGER.warn("Refused subscription to {} by session {}", headerAccessor.getDestination(), headerAccessor.getSessionId());
+            return null;
+        }
+
+        return message;
+    }
+}
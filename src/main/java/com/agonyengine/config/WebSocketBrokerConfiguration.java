@@ -1,8 +1,11 @@
 package com.agonyengine.config;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
+import org.springframework.messaging.simp.config.TaskExecutorRegistration;
 import org.springframework.messaging.simp.stomp.StompDecoder;
 import org.springframework.messaging.simp.stomp.StompReactorNettyCodec;
 import org.springframework.messaging.tcp.TcpOperations;
@@ -12,6 +15,7 @@ import org.springframework.session.Session;
 import org.springframework.session.web.socket.config.annotation.AbstractSessionWebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 import javax.inject.Inject;
 
@@ -19,10 +23,14 @@ import javax.inject.Inject;
 @Configuration
 public class WebSocketBrokerConfiguration extends AbstractSessionWebSocketMessageBrokerConfigurer<Session> {
     private WebSocketBrokerProperties brokerProperties;
+    private RoomSubscriptionInterceptor roomSubscriptionInterceptor;
 
+    // the interceptor is lazy because it depends on the messaging template that this configuration helps build
     @Inject
-    public WebSocketBrokerConfiguration(WebSocketBrokerProperties brokerProperties) {
+    public WebSocketBrokerConfiguration(WebSocketBrokerProperties brokerProperties,
+                                        @Lazy RoomSubscriptionInterceptor roomSubscriptionInterceptor) {
         this.brokerProperties = brokerProperties;
+        this.roomSubscriptionInterceptor = roomSubscriptionInterceptor;
     }
 
     @Override
@@ -30,11 +38,55 @@ public class WebSocketBrokerConfiguration extends AbstractSessionWebSocketMessag
         registry.addEndpoint("/mud").withSockJS();
     }
 
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        super.configureClientInboundChannel(registration);
+
+        registration.interceptors(roomSubscriptionInterceptor);
+
+        if (brokerProperties.isSimple()) {
+            configureChannelExecutor(registration);
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        super.configureClientOutboundChannel(registration);
+
+        if (brokerProperties.isSimple()) {
+            configureChannelExecutor(registration);
+        }
+    }
+
+    /*
+     * With the in-JVM broker nothing stands between a slow client and the server's memory, so each session may
+     * only buffer so much output before it is disconnected.
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        super.configureWebSocketTransport(registration);
+
+        if (brokerProperties.isSimple()) {
+            if (brokerProperties.getSendBufferSizeLimit() != null) {
+                registration.setSendBufferSizeLimit(brokerProperties.getSendBufferSizeLimit());
+            }
+
+            if (brokerProperties.getSendTimeLimit() != null) {
+                registration.setSendTimeLimit(brokerProperties.getSendTimeLimit());
+            }
+        }
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         registry.setApplicationDestinationPrefixes("/app", "/user");
         registry.setUserDestinationPrefix("/user");
 
+        if (brokerProperties.isSimple()) {
+            registry.enableSimpleBroker("/queue", "/topic");
+            return;
+        }
+
         StompBrokerRelayRegistration relayRegistration = registry.enableStompBrokerRelay("/queue", "/topic")
                 .setRelayHost(brokerProperties.getHost())
                 .setRelayPort(brokerProperties.getPort())
@@ -48,6 +100,22 @@ public class WebSocketBrokerConfiguration extends AbstractSessionWebSocketMessag
         }
     }
 
+    private void configureChannelExecutor(ChannelRegistration registration) {
+        TaskExecutorRegistration executorRegistration = registration.taskExecutor();
+
+        if (brokerProperties.getChannelCorePoolSize() != null) {
+            executorRegistration.corePoolSize(brokerProperties.getChannelCorePoolSize());
+        }
+
+        if (brokerProperties.getChannelMaxPoolSize() != null) {
+            executorRegistration.maxPoolSize(brokerProperties.getChannelMaxPoolSize());
+        }
+
+        if (brokerProperties.getChannelQueueCapacity() != null) {
+            executorRegistration.queueCapacity(brokerProperties.getChannelQueueCapacity());
+        }
+    }
+
     private TcpOperations<byte[]> createSslTcpClient() {
         StompDecoder decoder = new StompDecoder();
         ReactorNettyCodec<byte[]> codec = new StompReactorNettyCodec(decoder);
@@ -6,6 +6,7 @@ import org.springframework.stereotype.Component;
 @Component
 @ConfigurationProperties(prefix = "agony.broker")
 public class WebSocketBrokerProperties {
+    private BrokerMode mode;
     private Boolean ssl;
     private String host;
     private Integer port;
@@ -13,6 +14,24 @@ public class WebSocketBrokerProperties {
     private String systemPassword;
     private String clientUsername;
     private String clientPassword;
+    private Boolean roomTopics;
+    private Integer channelCorePoolSize;
+    private Integer channelMaxPoolSize;
+    private Integer channelQueueCapacity;
+    private Integer sendBufferSizeLimit;
+    private Integer sendTimeLimit;
+
+    public BrokerMode getMode() {
+        return mode;
+    }
+
+    public void setMode(BrokerMode mode) {
+        this.mode = mode;
+    }
+
+    public boolean isSimple() {
+        return BrokerMode.SIMPLE == mode;
+    }
 
     public Boolean getSsl() {
         return ssl;
@@ -69,4 +88,52 @@ public class WebSocketBrokerProperties {
     public void setClientPassword(String clientPassword) {
         this.clientPassword = clientPassword;
     }
+
+    public Boolean getRoomTopics() {
+        return roomTopics;
+    }
+
+    public void setRoomTopics(Boolean roomTopics) {
+        this.roomTopics = roomTopics;
+    }
+
+    public Integer getChannelCorePoolSize() {
+        return channelCorePoolSize;
+    }
+
+    public void setChannelCorePoolSize(Integer channelCorePoolSize) {
+        this.channelCorePoolSize = channelCorePoolSize;
+    }
+
+    public Integer getChannelMaxPoolSize() {
+        return channelMaxPoolSize;
+    }
+
+    public void setChannelMaxPoolSize(Integer channelMaxPoolSize) {
+        this.channelMaxPoolSize = channelMaxPoolSize;
+    }
+
+    public Integer getChannelQueueCapacity() {
+        return channelQueueCapacity;
+    }
+
+    public void setChannelQueueCapacity(Integer channelQueueCapacity) {
+        this.channelQueueCapacity = channelQueueCapacity;
+    }
+
+    public Integer getSendBufferSizeLimit() {
+        return sendBufferSizeLimit;
+    }
+
+    public void setSendBufferSizeLimit(Integer sendBufferSizeLimit) {
+        this.sendBufferSizeLimit = sendBufferSizeLimit;
+    }
+
+    public Integer getSendTimeLimit() {
+        return sendTimeLimit;
+    }
+
+    public void setSendTimeLimit(Integer sendTimeLimit) {
+        this.sendTimeLimit = sendTimeLimit;
+    }
 }
@@ -1,18 +1,25 @@
 package com.agonyengine.model.actor;
 
 import com.agonyengine.util.NameUtils;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 import org.hibernate.annotations.Type;
 
 import javax.persistence.CascadeType;
+import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.Transient;
 import java.util.Date;
 import java.util.Objects;
 import java.util.UUID;
 
 @Entity
+@EntityListeners(ActorStateListener.class)
 public class Actor {
     @Id
     @GeneratedValue
@@ -21,23 +28,40 @@ public class Actor {
 
     private String name;
 
+    // fetched by separate selects instead of joins, so they can be answered from the second level cache
     @ManyToOne
+    @Fetch(FetchMode.SELECT)
     private Pronoun pronoun;
 
     private String account;
+    private String remoteIpAddress;
     private String sessionUsername;
     private String sessionId;
-    private String remoteIpAddress;
     private Date disconnectedDate = null;
 
+    // these change constantly, so Hibernate only inserts them and ActorStateService writes the updates
     @ManyToOne
+    @Fetch(FetchMode.SELECT)
+    @JoinColumn(updatable = false)
     private GameMap gameMap;
+
+    @Column(updatable = false)
     private Integer x;
+
+    @Column(updatable = false)
     private Integer y;
 
+    @Column(updatable = false)
+    private Long arrival;
+
     @ManyToOne(cascade = CascadeType.REMOVE)
+    @Fetch(FetchMode.SELECT)
     private GameMap inventory;
 
+    // what getName() returns, worked out the first time somebody asks
+    @Transient
+    private String displayName;
+
     public UUID getId() {
         return id;
     }
@@ -51,15 +75,20 @@ public class Actor {
     }
 
     public String getName() {
-        if (account != null) { // TODO for NPC support add: || npcData != null
-            return name;
+        if (displayName == null && name != null) {
+            if (account != null) { // TODO for NPC support add: || npcData != null
+                displayName = name;
+            } else {
+                displayName = NameUtils.aoran(name);
+            }
         }
 
-        return NameUtils.aoran(name);
+        return displayName;
     }
 
     public void setName(String name) {
         this.name = name;
+        this.displayName = null;
     }
 
     public Pronoun getPronoun() {
@@ -76,6 +105,7 @@ public class Actor {
 
     public void setAccount(String account) {
         this.account = account;
+        this.displayName = null;
     }
 
     public String getSessionUsername() {
@@ -134,6 +164,14 @@ public class Actor {
         this.y = y;
     }
 
+    public Long getArrival() {
+        return arrival;
+    }
+
+    public void setArrival(Long arrival) {
+        this.arrival = arrival;
+    }
+
     public GameMap getInventory() {
         return inventory;
     }
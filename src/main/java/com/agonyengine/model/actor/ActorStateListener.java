@@ -0,0 +1,21 @@
+package com.agonyengine.model.actor;
+
+import javax.persistence.PostLoad;
+import java.util.function.Consumer;
+
+/**
+ * Hibernate creates entity listeners itself, so the write-behind service registers a callback here at startup
+ * to lay any changes it hasn't written yet over actors as they are loaded.
+ */
+public class ActorStateListener {
+    private static volatile Consumer<Actor> onLoad = actor -> { };
+
+    public static void setOnLoad(Consumer<Actor> onLoad) {
+        ActorStateListener.onLoad = onLoad;
+    }
+
+    @PostLoad
+    public void postLoad(Actor actor) {
+        onLoad.accept(actor);
+    }
+}
@@ -1,28 +1,43 @@
 package com.agonyengine.model.actor;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Type;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Transient;
 import java.util.UUID;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@EntityListeners(GameMapListener.class)
 public class GameMap {
     @Id
     @GeneratedValue
     @Type(type = "pg-uuid")
     private UUID id;
     private int width;
+    private int height;
+
+    // only holds the tiles of a map that hasn't been saved yet, after that they live in the TileStore
+    @Transient
     private byte[] tiles;
 
+    @Transient
+    private TileStore tileStore;
+
     public GameMap() {
         // this method is required for Hibernate
     }
 
     public GameMap(int width, byte[] tiles) {
         this.width = width;
-        this.tiles = tiles;
+        setTiles(tiles);
     }
 
     public UUID getId() {
@@ -41,12 +56,39 @@ public class GameMap {
         this.width = width;
     }
 
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
     public byte[] getTiles() {
+        if (tileStore != null) {
+            return tileStore.getTiles(this);
+        }
+
         return tiles;
     }
 
     public void setTiles(byte[] tiles) {
-        this.tiles = tiles;
+        height = width == 0 ? 0 : tiles.length / width;
+
+        if (tileStore != null) {
+            tileStore.setTiles(this, tiles);
+        } else {
+            this.tiles = tiles;
+        }
+    }
+
+    void attach(TileStore tileStore) {
+        if (tiles != null) {
+            tileStore.seed(this, tiles);
+            tiles = null;
+        }
+
+        this.tileStore = tileStore;
     }
 
     /*
@@ -71,17 +113,31 @@ public class GameMap {
      */
 
     public byte getTile(int x, int y) {
+        if (tileStore != null) {
+            if (!hasTile(x, y)) {
+                throw new ArrayIndexOutOfBoundsException(String.format("No tile at (%d, %d)", x, y));
+            }
+
+            return tileStore.getTile(this, x, y);
+        }
+
         return tiles[computeIndex(x, y)];
     }
 
     public boolean hasTile(int x, int y) {
-        int index = computeIndex(x, y);
-
-        return index >= 0 && index < tiles.length;
+        return x >= 0 && x < width && y >= 0 && y < height;
     }
 
     public void setTile(int x, int y, byte value) {
-        tiles[computeIndex(x, y)] = value;
+        if (tileStore != null) {
+            if (!hasTile(x, y)) {
+                throw new ArrayIndexOutOfBoundsException(String.format("No tile at (%d, %d)", x, y));
+            }
+
+            tileStore.setTile(this, x, y, value);
+        } else {
+            tiles[computeIndex(x, y)] = value;
+        }
     }
 
     private int computeIndex(int x, int y) {
@@ -0,0 +1,23 @@
+package com.agonyengine.model.actor;
+
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+
+/**
+ * Points maps at the shared tile store once they have an ID, whether they were just loaded or just saved.
+ */
+public class GameMapListener {
+    private static volatile TileStore tileStore;
+
+    public static void setTileStore(TileStore tileStore) {
+        GameMapListener.tileStore = tileStore;
+    }
+
+    @PostLoad
+    @PostPersist
+    public void attach(GameMap gameMap) {
+        if (tileStore != null) {
+            gameMap.attach(tileStore);
+        }
+    }
+}
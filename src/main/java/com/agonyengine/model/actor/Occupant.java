@@ -0,0 +1,76 @@
+package com.agonyengine.model.actor;
+
+import java.util.UUID;
+
+/**
+ * An immutable snapshot of the parts of an Actor that other actors in the same room need to see, held by the
+ * occupancy index so that rooms can be listed and messaged without loading actors from the database.
+ */
+public class Occupant {
+    private final UUID id;
+    private final String name;
+    private final String[] nameTokens;
+    private final String sessionUsername;
+    private final String sessionId;
+    private final boolean linkDead;
+
+    public Occupant(Actor actor) {
+        String[] tokens = actor.getNameTokens();
+
+        id = actor.getId();
+        name = actor.getName();
+        nameTokens = new String[tokens == null ? 0 : tokens.length];
+        sessionUsername = actor.getSessionUsername();
+        sessionId = actor.getSessionId();
+        linkDead = actor.getDisconnectedDate() != null;
+
+        for (int i = 0; i < nameTokens.length; i++) {
+            nameTokens[i] = tokens[i].toUpperCase();
+        }
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String[] getNameTokens() {
+        return nameTokens.clone();
+    }
+
+    public String getSessionUsername() {
+        return sessionUsername;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public boolean isLinkDead() {
+        return linkDead;
+    }
+
+    public boolean hasSession() {
+        return sessionId != null || sessionUsername != null;
+    }
+
+    public boolean isActor(Actor actor) {
+        return actor != null && id.equals(actor.getId());
+    }
+
+    /*
+     * The prefix must already be upper cased, as the input tokenizer does for every token.
+     */
+    public boolean matches(String prefix) {
+        for (String token : nameTokens) {
+            if (token.startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,19 @@
+package com.agonyengine.model.actor;
+
+/**
+ * Holds the tiles for every saved map, shared by all the GameMap instances that Hibernate creates for it.
+ * GameMap has already checked that the coordinates are on the map before it asks.
+ */
+public interface TileStore {
+    void seed(GameMap gameMap, byte[] tiles);
+
+    byte getTile(GameMap gameMap, int x, int y);
+
+    void setTile(GameMap gameMap, int x, int y, byte value);
+
+    byte[] getTiles(GameMap gameMap);
+
+    void setTiles(GameMap gameMap, byte[] tiles);
+
+    void evict();
+}
@@ -2,14 +2,15 @@ package com.agonyengine.model.command;
 
 import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.interpret.QuotedString;
+import com.agonyengine.model.message.MessageTemplate;
 import com.agonyengine.model.stomp.GameOutput;
 import com.agonyengine.repository.ActorRepository;
 import com.agonyengine.repository.PronounRepository;
 import com.agonyengine.service.CommService;
+import com.agonyengine.service.OccupancyService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
@@ -17,34 +18,44 @@ import javax.transaction.Transactional;
 @Component
 public class CreateCommand {
     private static final Logger LOGGER = LoggerFactory.getLogger(CreateCommand.class);
+    private static final MessageTemplate YOU_CREATE = MessageTemplate.compile("[yellow]You create $p[yellow].");
+    private static final MessageTemplate CREATED = MessageTemplate.compile("[yellow]$n has created $p[yellow]!");
 
     private CommService commService;
     private ActorRepository actorRepository;
     private PronounRepository pronounRepository;
+    private OccupancyService occupancyService;
 
     @Inject
-    public CreateCommand(CommService commService, ActorRepository actorRepository, PronounRepository pronounRepository) {
+    public CreateCommand(
+        CommService commService,
+        ActorRepository actorRepository,
+        PronounRepository pronounRepository,
+        OccupancyService occupancyService) {
+
         this.commService = commService;
         this.actorRepository = actorRepository;
         this.pronounRepository = pronounRepository;
+        this.occupancyService = occupancyService;
     }
 
     @Transactional
     public void invoke(Actor actor, GameOutput output, QuotedString itemName) {
-        Actor item = new Actor();
+        Actor created = new Actor();
 
-        item.setName(itemName.getToken());
-        item.setPronoun(pronounRepository.getOne("it"));
-        item.setGameMap(actor.getGameMap());
-        item.setX(actor.getX());
-        item.setY(actor.getY());
+        created.setName(itemName.getToken());
+        created.setPronoun(pronounRepository.getOne("it"));
+        created.setGameMap(actor.getGameMap());
+        created.setX(actor.getX());
+        created.setY(actor.getY());
 
-        item = actorRepository.save(item);
+        Actor item = actorRepository.save(created);
+        occupancyService.update(item);
 
-        output.append(String.format("[yellow]You create %s[yellow].", item.getName()));
+        output.append(YOU_CREATE.render(actor, item));
         commService.echoToRoom(
             actor,
-            new GameOutput(String.format("[yellow]%s has created %s[yellow]!", StringUtils.capitalize(actor.getName()), item.getName())),
+            () -> new GameOutput(CREATED.render(actor, item)),
             actor, item);
 
         LOGGER.info("{} has created an item: {} ({})", actor.getName(), item.getName(), item.getId());
@@ -2,12 +2,13 @@ package com.agonyengine.model.command;
 
 import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.interpret.ActorInventory;
+import com.agonyengine.model.message.MessageTemplate;
 import com.agonyengine.model.stomp.GameOutput;
 import com.agonyengine.repository.ActorRepository;
 import com.agonyengine.service.CommService;
 import com.agonyengine.service.InvokerService;
+import com.agonyengine.service.OccupancyService;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
@@ -15,26 +16,36 @@ import java.util.Collections;
 
 @Component
 public class DropCommand {
+    private static final MessageTemplate YOU_DROP = MessageTemplate.compile("[default]You drop $p[default].");
+    private static final MessageTemplate DROPS = MessageTemplate.compile("[default]$n drops $p[default].");
+    private static final MessageTemplate DROPS_YOU = MessageTemplate.compile("$n drops you.");
+
     private CommService commService;
     private InvokerService invokerService;
     private ActorRepository actorRepository;
+    private OccupancyService occupancyService;
 
     @Inject
-    public DropCommand(CommService commService, InvokerService invokerService, ActorRepository actorRepository) {
+    public DropCommand(
+        CommService commService,
+        InvokerService invokerService,
+        ActorRepository actorRepository,
+        OccupancyService occupancyService) {
+
         this.commService = commService;
         this.invokerService = invokerService;
         this.actorRepository = actorRepository;
+        this.occupancyService = occupancyService;
     }
 
     @Transactional
     public void invoke(Actor actor, GameOutput output, ActorInventory itemBinding) {
         Actor item = itemBinding.getTarget();
-        GameOutput itemLook = new GameOutput();
 
-        output.append(String.format("[default]You drop %s[default].", item.getName()));
+        output.append(YOU_DROP.render(actor, item));
         commService.echoToRoom(
             actor,
-            new GameOutput(String.format("[default]%s drops %s[default].", StringUtils.capitalize(actor.getName()), item.getName())),
+            () -> new GameOutput(DROPS.render(actor, item)),
             actor, item);
 
         item.setGameMap(actor.getGameMap());
@@ -42,9 +53,15 @@ public class DropCommand {
         item.setY(actor.getY());
 
         actorRepository.save(item);
+        occupancyService.update(item);
+
+        // only worth looking around if somebody is playing the item
+        commService.echo(item, () -> {
+            GameOutput itemLook = new GameOutput(DROPS_YOU.render(actor));
+
+            invokerService.invoke(item, itemLook, null, Collections.singletonList("look"));
 
-        itemLook.append(String.format("%s drops you.", StringUtils.capitalize(actor.getName())));
-        invokerService.invoke(item, itemLook, null, Collections.singletonList("look"));
-        commService.echo(item, itemLook);
+            return itemLook;
+        });
     }
 }
@@ -2,12 +2,13 @@ package com.agonyengine.model.command;
 
 import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.interpret.ActorSameRoom;
+import com.agonyengine.model.message.MessageTemplate;
 import com.agonyengine.model.stomp.GameOutput;
 import com.agonyengine.repository.ActorRepository;
 import com.agonyengine.service.CommService;
 import com.agonyengine.service.InvokerService;
+import com.agonyengine.service.OccupancyService;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
@@ -15,26 +16,36 @@ import java.util.Collections;
 
 @Component
 public class GetCommand {
+    private static final MessageTemplate YOU_GET = MessageTemplate.compile("[default]You get $p[default].");
+    private static final MessageTemplate GETS = MessageTemplate.compile("[default]$n gets $p[default].");
+    private static final MessageTemplate GETS_YOU = MessageTemplate.compile("$n gets you.");
+
     private CommService commService;
     private InvokerService invokerService;
     private ActorRepository actorRepository;
+    private OccupancyService occupancyService;
 
     @Inject
-    public GetCommand(CommService commService, InvokerService invokerService, ActorRepository actorRepository) {
+    public GetCommand(
+        CommService commService,
+        InvokerService invokerService,
+        ActorRepository actorRepository,
+        OccupancyService occupancyService) {
+
         this.commService = commService;
         this.invokerService = invokerService;
         this.actorRepository = actorRepository;
+        this.occupancyService = occupancyService;
     }
 
     @Transactional
     public void invoke(Actor actor, GameOutput output, ActorSameRoom itemBinding) {
         Actor item = itemBinding.getTarget();
-        GameOutput itemLook = new GameOutput();
 
-        output.append(String.format("[default]You get %s[default].", item.getName()));
+        output.append(YOU_GET.render(actor, item));
         commService.echoToRoom(
             actor,
-            new GameOutput(String.format("[default]%s gets %s[default].", StringUtils.capitalize(actor.getName()), item.getName())),
+            () -> new GameOutput(GETS.render(actor, item)),
             actor, item);
 
         item.setGameMap(actor.getInventory());
@@ -42,9 +53,15 @@ public class GetCommand {
         item.setY(0);
 
         actorRepository.save(item);
+        occupancyService.update(item);
+
+        // only worth looking around if somebody is playing the item
+        commService.echo(item, () -> {
+            GameOutput itemLook = new GameOutput(GETS_YOU.render(actor));
+
+            invokerService.invoke(item, itemLook, null, Collections.singletonList("look"));
 
-        itemLook.append(String.format("%s gets you.", StringUtils.capitalize(actor.getName())));
-        invokerService.invoke(item, itemLook, null, Collections.singletonList("look"));
-        commService.echo(item, itemLook);
+            return itemLook;
+        });
     }
 }
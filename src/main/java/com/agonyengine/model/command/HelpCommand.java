@@ -2,8 +2,7 @@ package com.agonyengine.model.command;
 
 import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.stomp.GameOutput;
-import com.agonyengine.repository.VerbRepository;
-import org.springframework.data.domain.Sort;
+import com.agonyengine.service.VerbRegistry;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
@@ -11,18 +10,18 @@ import javax.transaction.Transactional;
 
 @Component
 public class HelpCommand {
-    private VerbRepository verbRepository;
+    private VerbRegistry verbRegistry;
 
     @Inject
-    public HelpCommand(VerbRepository verbRepository) {
-        this.verbRepository = verbRepository;
+    public HelpCommand(VerbRegistry verbRegistry) {
+        this.verbRegistry = verbRegistry;
     }
 
     @Transactional
     public void invoke(Actor actor, GameOutput output) {
         output.append("[dwhite][ [white]Command List [dwhite]]");
-        verbRepository
-            .findAll(Sort.by(Sort.Direction.ASC,"priority", "name"))
+        verbRegistry
+            .getVerbs()
             .forEach(v -> output.append("[dwhite]" + v.getName().toUpperCase()));
     }
 }
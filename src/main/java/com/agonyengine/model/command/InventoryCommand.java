@@ -2,7 +2,7 @@ package com.agonyengine.model.command;
 
 import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.stomp.GameOutput;
-import com.agonyengine.repository.ActorRepository;
+import com.agonyengine.service.OccupancyService;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
@@ -10,18 +10,18 @@ import javax.transaction.Transactional;
 
 @Component
 public class InventoryCommand {
-    private ActorRepository actorRepository;
+    private OccupancyService occupancyService;
 
     @Inject
-    public InventoryCommand(ActorRepository actorRepository) {
-        this.actorRepository = actorRepository;
+    public InventoryCommand(OccupancyService occupancyService) {
+        this.occupancyService = occupancyService;
     }
 
     @Transactional
     public void invoke(Actor actor, GameOutput output) {
         output.append("[default]Items in your inventory:");
 
-        actorRepository.findByGameMap(actor.getInventory())
+        occupancyService.getOccupants(actor.getInventory(), 0, 0)
             .forEach(item -> output.append("[default]" + item.getName()));
     }
 }
@@ -1,10 +1,12 @@
 package com.agonyengine.model.command;
 
 import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.Occupant;
 import com.agonyengine.model.interpret.ActorSameRoom;
+import com.agonyengine.model.message.MessageTemplate;
 import com.agonyengine.model.stomp.GameOutput;
-import com.agonyengine.repository.ActorRepository;
 import com.agonyengine.service.CommService;
+import com.agonyengine.service.OccupancyService;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
@@ -16,20 +18,24 @@ import static java.util.stream.Collectors.joining;
 
 @Component
 public class LookCommand {
-    private ActorRepository actorRepository;
+    private static final MessageTemplate YOU_LOOK_AT = MessageTemplate.compile("You look at $N.");
+    private static final MessageTemplate LOOKS_AT_YOU = MessageTemplate.compile("$n looks at you.");
+    private static final MessageTemplate LOOKS_AT = MessageTemplate.compile("$n looks at $N.");
+
+    private OccupancyService occupancyService;
     private CommService commService;
     private List<Direction> directions;
 
     @Inject
-    public LookCommand(ActorRepository actorRepository, CommService commservice, List<Direction> directions) {
-        this.actorRepository = actorRepository;
+    public LookCommand(OccupancyService occupancyService, CommService commservice, List<Direction> directions) {
+        this.occupancyService = occupancyService;
         this.commService = commservice;
         this.directions = directions;
     }
 
     @Transactional
     public void invoke(Actor actor, GameOutput output) {
-        List<Actor> actors = actorRepository.findByGameMapAndXAndY(actor.getGameMap(), actor.getX(), actor.getY());
+        List<Occupant> occupants = occupancyService.getOccupants(actor.getGameMap(), actor.getX(), actor.getY());
 
         // TODO game maps will need names
         output.append(String.format("[yellow](%d, %d) %s",
@@ -45,20 +51,20 @@ public class LookCommand {
             .map(Direction::getName)
             .collect(joining(" ", "[cyan]Exits: ", "")));
 
-        actors.stream()
-            .filter(target -> !actor.equals(target))
+        occupants.stream()
+            .filter(target -> !target.isActor(actor))
             .forEach(target -> output.append(String.format("[green]%s is here. %s",
                 StringUtils.capitalize(target.getName()),
-                target.getDisconnectedDate() == null ? "" : "[yellow][[dred]LINK DEAD[yellow]]")));
+                target.isLinkDead() ? "[yellow][[dred]LINK DEAD[yellow]]" : "")));
     }
 
     @Transactional
     public void invoke(Actor actor, GameOutput output, ActorSameRoom target) {
-        output.append(String.format("You look at %s.", target.getTarget().getName()));
-        commService.echo(target.getTarget(), new GameOutput(String.format("%s looks at you.", StringUtils.capitalize(actor.getName()))));
+        output.append(YOU_LOOK_AT.render(actor, target.getTarget()));
+        commService.echo(target.getTarget(), () -> new GameOutput(LOOKS_AT_YOU.render(actor)));
         commService.echoToRoom(
             actor,
-            new GameOutput(String.format("%s looks at %s.", StringUtils.capitalize(actor.getName()), target.getTarget().getName())),
+            () -> new GameOutput(LOOKS_AT.render(actor, target.getTarget())),
             actor, target.getTarget());
     }
 }
@@ -1,22 +1,25 @@
 package com.agonyengine.model.command;
 
 import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.message.MessageTemplate;
 import com.agonyengine.model.stomp.GameOutput;
-import com.agonyengine.repository.ActorRepository;
 import com.agonyengine.service.CommService;
 import com.agonyengine.service.InvokerService;
+import com.agonyengine.service.OccupancyService;
 import org.springframework.context.ApplicationContext;
-import org.springframework.util.StringUtils;
 
 import javax.annotation.PostConstruct;
 import javax.transaction.Transactional;
 import java.util.Collections;
 
 public class MoveCommand {
+    private static final MessageTemplate LEAVES = MessageTemplate.compile("[default]$n leaves to the $t.");
+    private static final MessageTemplate ARRIVES = MessageTemplate.compile("[default]$n arrives from the $t.");
+
     private Direction direction;
-    private ActorRepository actorRepository;
     private InvokerService invokerService;
     private CommService commService;
+    private OccupancyService occupancyService;
     private ApplicationContext applicationContext;
 
     public MoveCommand(Direction direction, ApplicationContext applicationContext) {
@@ -26,9 +29,9 @@ public class MoveCommand {
 
     @PostConstruct
     private void postConstruct() {
-        this.actorRepository = applicationContext.getBean("actorRepository", ActorRepository.class);
         this.invokerService = applicationContext.getBean("invokerService", InvokerService.class);
         this.commService = applicationContext.getBean("commService", CommService.class);
+        this.occupancyService = applicationContext.getBean("occupancyService", OccupancyService.class);
     }
 
     @Transactional
@@ -43,17 +46,17 @@ public class MoveCommand {
 
         commService.echoToRoom(
             actor,
-            new GameOutput(String.format("[default]%s leaves to the %s.", StringUtils.capitalize(actor.getName()), direction.getName())),
+            () -> new GameOutput(LEAVES.render(actor, null, direction.getName())),
             actor);
 
         actor.setX(newX);
         actor.setY(newY);
 
-        actorRepository.save(actor);
+        occupancyService.update(actor);
 
         commService.echoToRoom(
             actor,
-            new GameOutput(String.format("[default]%s arrives from the %s.", StringUtils.capitalize(actor.getName()), direction.getOpposite())),
+            () -> new GameOutput(ARRIVES.render(actor, null, direction.getOpposite())),
             actor);
 
         invokerService.invoke(actor, output, null, Collections.singletonList("look"));
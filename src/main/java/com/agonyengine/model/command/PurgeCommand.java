@@ -3,13 +3,14 @@ package com.agonyengine.model.command;
 import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.interpret.ActorInventory;
 import com.agonyengine.model.interpret.ActorSameRoom;
+import com.agonyengine.model.message.MessageTemplate;
 import com.agonyengine.model.stomp.GameOutput;
 import com.agonyengine.repository.ActorRepository;
 import com.agonyengine.service.CommService;
+import com.agonyengine.service.OccupancyService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
@@ -17,14 +18,18 @@ import javax.transaction.Transactional;
 @Component
 public class PurgeCommand {
     private static final Logger LOGGER = LoggerFactory.getLogger(PurgeCommand.class);
+    private static final MessageTemplate YOU_PURGE = MessageTemplate.compile("[yellow]You purge $p[yellow].");
+    private static final MessageTemplate PURGED = MessageTemplate.compile("[yellow]$n has purged $p[yellow]!");
 
     private CommService commService;
     private ActorRepository actorRepository;
+    private OccupancyService occupancyService;
 
     @Inject
-    public PurgeCommand(CommService commService, ActorRepository actorRepository) {
+    public PurgeCommand(CommService commService, ActorRepository actorRepository, OccupancyService occupancyService) {
         this.commService = commService;
         this.actorRepository = actorRepository;
+        this.occupancyService = occupancyService;
     }
 
     @Transactional
@@ -36,15 +41,16 @@ public class PurgeCommand {
             return;
         }
 
-        output.append(String.format("[yellow]You purge %s[yellow].", item.getName()));
+        output.append(YOU_PURGE.render(actor, item));
         commService.echoToRoom(
             actor,
-            new GameOutput(String.format("[yellow]%s has purged %s[yellow]!", StringUtils.capitalize(actor.getName()), item.getName())),
+            () -> new GameOutput(PURGED.render(actor, item)),
             actor, item);
 
         LOGGER.info("{} has purged an item: {} ({})", actor.getName(), item.getName(), item.getId());
 
         actorRepository.delete(item);
+        occupancyService.remove(item);
     }
 
     @Transactional
@@ -56,10 +62,11 @@ public class PurgeCommand {
             return;
         }
 
-        output.append(String.format("[yellow]You purge %s[yellow].", item.getName()));
+        output.append(YOU_PURGE.render(actor, item));
 
         LOGGER.info("{} has purged an item: {} ({})", actor.getName(), item.getName(), item.getId());
 
         actorRepository.delete(item);
+        occupancyService.remove(item);
     }
 }
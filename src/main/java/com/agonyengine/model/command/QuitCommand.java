@@ -2,13 +2,13 @@ package com.agonyengine.model.command;
 
 import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.interpret.QuotedString;
+import com.agonyengine.model.message.MessageTemplate;
 import com.agonyengine.model.stomp.GameOutput;
-import com.agonyengine.repository.ActorRepository;
 import com.agonyengine.service.CommService;
+import com.agonyengine.service.OccupancyService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
@@ -16,17 +16,18 @@ import javax.transaction.Transactional;
 @Component
 public class QuitCommand {
     private static final Logger LOGGER = LoggerFactory.getLogger(QuitCommand.class);
+    private static final MessageTemplate DISAPPEARS = MessageTemplate.compile("[yellow]$n disappears in a puff of smoke!");
 
-    private ActorRepository actorRepository;
     private CommService commService;
+    private OccupancyService occupancyService;
 
     @Inject
     public QuitCommand(
-        ActorRepository actorRepository,
-        CommService commService) {
+        CommService commService,
+        OccupancyService occupancyService) {
 
-        this.actorRepository = actorRepository;
         this.commService = commService;
+        this.occupancyService = occupancyService;
     }
 
     @Transactional
@@ -41,9 +42,9 @@ public class QuitCommand {
 
         LOGGER.info("{} has quit ({})", actor.getName(), actor.getRemoteIpAddress());
 
-        commService.echoToRoom(actor, new GameOutput(String.format("[yellow]%s disappears in a puff of smoke!", StringUtils.capitalize(actor.getName()))), actor);
+        commService.echoToRoom(actor, new GameOutput(DISAPPEARS.render(actor)), actor);
 
         actor.setGameMap(null);
-        actorRepository.save(actor);
+        occupancyService.remove(actor);
     }
 }
@@ -2,16 +2,18 @@ package com.agonyengine.model.command;
 
 import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.interpret.QuotedString;
+import com.agonyengine.model.message.MessageTemplate;
 import com.agonyengine.model.stomp.GameOutput;
 import com.agonyengine.service.CommService;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
 
 @Component
 public class SayCommand {
+    private static final MessageTemplate SAYS = MessageTemplate.compile("[cyan]$n says '$t[cyan]'");
+
     private CommService commService;
 
     @Inject
@@ -21,7 +23,7 @@ public class SayCommand {
 
     @Transactional
     public void invoke(Actor actor, GameOutput output, QuotedString message) {
-        commService.echoToRoom(actor, new GameOutput(String.format("[cyan]%s says '%s[cyan]'", StringUtils.capitalize(actor.getName()), message.getToken())), actor);
+        commService.echoToRoom(actor, () -> new GameOutput(SAYS.render(actor, null, message.getToken())), actor);
         output.append("[cyan]You say '" + message.getToken() + "[cyan]'");
     }
 }
@@ -1,24 +1,28 @@
 package com.agonyengine.model.interpret;
 
 import com.agonyengine.model.actor.Actor;
-import com.agonyengine.repository.ActorRepository;
+import com.agonyengine.service.OccupancyService;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
-import java.util.Arrays;
 
 @Component
 @Scope(scopeName = "prototype")
 public class ActorInventory implements ArgumentBinding {
-    private ActorRepository actorRepository;
+    private OccupancyService occupancyService;
     private String token;
     private Actor target;
 
     @Inject
-    public ActorInventory(ActorRepository actorRepository) {
-        this.actorRepository = actorRepository;
+    public ActorInventory(OccupancyService occupancyService) {
+        this.occupancyService = occupancyService;
+    }
+
+    public ActorInventory(String token, Actor target) {
+        this.token = token;
+        this.target = target;
     }
 
     @Transactional
@@ -26,11 +30,8 @@ public class ActorInventory implements ArgumentBinding {
     public boolean bind(Actor actor, String token) {
         this.token = token;
 
-        target = actorRepository.findByGameMap(actor.getInventory())
-            .stream()
-            .filter(t -> !t.equals(actor) && Arrays.stream(t.getNameTokens()).anyMatch(word -> word.toUpperCase().startsWith(token.toUpperCase())))
-            .findFirst()
-            .orElse(null);
+        // everything in an inventory sits on its only tile
+        target = occupancyService.findOccupant(actor.getInventory(), 0, 0, actor, token);
 
         return target != null;
     }
@@ -0,0 +1,30 @@
+package com.agonyengine.model.interpret;
+
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.service.OccupancyService;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+
+@Component
+public class ActorInventoryResolver implements ArgumentResolver<ActorInventory> {
+    private OccupancyService occupancyService;
+
+    @Inject
+    public ActorInventoryResolver(OccupancyService occupancyService) {
+        this.occupancyService = occupancyService;
+    }
+
+    @Override
+    public Class<ActorInventory> getType() {
+        return ActorInventory.class;
+    }
+
+    @Override
+    public ActorInventory resolve(Actor actor, String token) {
+        // everything in an inventory sits on its only tile
+        Actor target = occupancyService.findOccupant(actor.getInventory(), 0, 0, actor, token);
+
+        return target == null ? null : new ActorInventory(token, target);
+    }
+}
@@ -1,24 +1,28 @@
 package com.agonyengine.model.interpret;
 
 import com.agonyengine.model.actor.Actor;
-import com.agonyengine.repository.ActorRepository;
+import com.agonyengine.service.OccupancyService;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
-import java.util.Arrays;
 
 @Component
 @Scope(scopeName = "prototype")
 public class ActorSameRoom implements ArgumentBinding {
-    private ActorRepository actorRepository;
+    private OccupancyService occupancyService;
     private String token;
     private Actor target;
 
     @Inject
-    public ActorSameRoom(ActorRepository actorRepository) {
-        this.actorRepository = actorRepository;
+    public ActorSameRoom(OccupancyService occupancyService) {
+        this.occupancyService = occupancyService;
+    }
+
+    public ActorSameRoom(String token, Actor target) {
+        this.token = token;
+        this.target = target;
     }
 
     @Transactional
@@ -26,11 +30,7 @@ public class ActorSameRoom implements ArgumentBinding {
     public boolean bind(Actor actor, String token) {
         this.token = token;
 
-        target = actorRepository.findByGameMapAndXAndY(actor.getGameMap(), actor.getX(), actor.getY())
-            .stream()
-            .filter(t -> !t.equals(actor) && Arrays.stream(t.getNameTokens()).anyMatch(word -> word.toUpperCase().startsWith(token.toUpperCase())))
-            .findFirst()
-            .orElse(null);
+        target = occupancyService.findOccupant(actor.getGameMap(), actor.getX(), actor.getY(), actor, token);
 
         return target != null;
     }
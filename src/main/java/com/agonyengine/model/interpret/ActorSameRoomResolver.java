@@ -0,0 +1,29 @@
+package com.agonyengine.model.interpret;
+
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.service.OccupancyService;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+
+@Component
+public class ActorSameRoomResolver implements ArgumentResolver<ActorSameRoom> {
+    private OccupancyService occupancyService;
+
+    @Inject
+    public ActorSameRoomResolver(OccupancyService occupancyService) {
+        this.occupancyService = occupancyService;
+    }
+
+    @Override
+    public Class<ActorSameRoom> getType() {
+        return ActorSameRoom.class;
+    }
+
+    @Override
+    public ActorSameRoom resolve(Actor actor, String token) {
+        Actor target = occupancyService.findOccupant(actor.getGameMap(), actor.getX(), actor.getY(), actor, token);
+
+        return target == null ? null : new ActorSameRoom(token, target);
+    }
+}
@@ -0,0 +1,30 @@
+package com.agonyengine.model.interpret;
+
+import com.agonyengine.model.actor.Actor;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Resolves argument types that only implement ArgumentBinding the old way, by asking Spring for a new prototype
+ * and binding it.
+ */
+public class ArgumentBindingAdapter<T extends ArgumentBinding> implements ArgumentResolver<T> {
+    private ApplicationContext applicationContext;
+    private Class<T> type;
+
+    public ArgumentBindingAdapter(ApplicationContext applicationContext, Class<T> type) {
+        this.applicationContext = applicationContext;
+        this.type = type;
+    }
+
+    @Override
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public T resolve(Actor actor, String token) {
+        T binding = applicationContext.getBean(type);
+
+        return binding.bind(actor, token) ? binding : null;
+    }
+}
@@ -0,0 +1,13 @@
+package com.agonyengine.model.interpret;
+
+import com.agonyengine.model.actor.Actor;
+
+/**
+ * Turns one word of a player's input into a command argument of a particular type. Resolvers are stateless
+ * singletons shared by every command; each call returns a new, already bound argument, or null if nothing
+ * matches the word.
+ */
+public interface ArgumentResolver<T> {
+    Class<T> getType();
+    T resolve(Actor actor, String token);
+}
@@ -0,0 +1,61 @@
+package com.agonyengine.model.interpret;
+
+import org.springframework.util.ReflectionUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.agonyengine.model.interpret.CommandMethod.STANDARD_ARG_COUNT;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The "invoke" overloads of a single command bean, grouped by how many arguments they take after the standard
+ * (Actor, GameOutput) pair.
+ */
+public class CommandDispatch {
+    private static final CommandMethod[] NO_METHODS = new CommandMethod[0];
+
+    private final List<CommandMethod> methods;
+    private final CommandMethod[][] methodsByArgumentCount;
+
+    public CommandDispatch(Object bean) {
+        methods = Collections.unmodifiableList(Arrays.stream(ReflectionUtils.getUniqueDeclaredMethods(bean.getClass()))
+            .filter(m -> "invoke".equals(m.getName()))
+            .filter(m -> m.getParameterCount() >= STANDARD_ARG_COUNT)
+            .map(m -> new CommandMethod(bean, m))
+            .collect(toList()));
+
+        int maxArgumentCount = methods.stream()
+            .mapToInt(CommandMethod::getArgumentCount)
+            .max()
+            .orElse(-1);
+
+        methodsByArgumentCount = new CommandMethod[maxArgumentCount + 1][];
+
+        for (int i = 0; i < methodsByArgumentCount.length; i++) {
+            List<CommandMethod> overloads = new ArrayList<>();
+
+            for (CommandMethod method : methods) {
+                if (method.getArgumentCount() == i) {
+                    overloads.add(method);
+                }
+            }
+
+            methodsByArgumentCount[i] = overloads.toArray(NO_METHODS);
+        }
+    }
+
+    public CommandMethod[] getMethods(int argumentCount) {
+        if (argumentCount < 0 || argumentCount >= methodsByArgumentCount.length) {
+            return NO_METHODS;
+        }
+
+        return methodsByArgumentCount[argumentCount];
+    }
+
+    public List<CommandMethod> getMethods() {
+        return methods;
+    }
+}
@@ -0,0 +1,96 @@
+package com.agonyengine.model.interpret;
+
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * One "invoke" overload on a command bean, with everything the InvokerService needs to call it worked out ahead of
+ * time: a MethodHandle bound to the bean, the argument types to bind from the player's input and the grammar
+ * shown to the player when binding fails.
+ */
+public class CommandMethod {
+    public static final int STANDARD_ARG_COUNT = 2;
+
+    private final Method method;
+    private final MethodHandle handle;
+    private final Class<?>[] argumentTypes;
+    private final String[] syntaxDescriptions;
+    private final String grammar;
+
+    public CommandMethod(Object bean, Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        StringBuilder buf = new StringBuilder();
+
+        this.method = method;
+        this.argumentTypes = new Class<?>[parameterTypes.length - STANDARD_ARG_COUNT];
+        this.syntaxDescriptions = new String[argumentTypes.length];
+
+        for (int i = 0; i < argumentTypes.length; i++) {
+            argumentTypes[i] = parameterTypes[i + STANDARD_ARG_COUNT];
+            syntaxDescriptions[i] = getSyntaxDescription(argumentTypes[i]);
+
+            buf.append("&lt;");
+            buf.append(syntaxDescriptions[i]);
+            buf.append("&gt; ");
+        }
+
+        this.grammar = buf.toString();
+
+        try {
+            ReflectionUtils.makeAccessible(method);
+
+            this.handle = MethodHandles.lookup()
+                .unreflect(method)
+                .bindTo(bean)
+                .asSpreader(Object[].class, parameterTypes.length)
+                .asType(MethodType.methodType(void.class, Object[].class));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Unable to access command method: " + method, e);
+        }
+    }
+
+    public void invoke(Object... arguments) {
+        try {
+            handle.invokeExact(arguments);
+        } catch (Throwable t) {
+            ReflectionUtils.rethrowRuntimeException(t);
+        }
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public int getArgumentCount() {
+        return argumentTypes.length;
+    }
+
+    public Class<?> getArgumentType(int index) {
+        return argumentTypes[index];
+    }
+
+    public String getSyntaxDescription(int index) {
+        return syntaxDescriptions[index];
+    }
+
+    public String getGrammar() {
+        return grammar;
+    }
+
+    private static String getSyntaxDescription(Class<?> type) {
+        String description;
+
+        try {
+            Method descMethod = type.getMethod("getSyntaxDescription");
+            description = (String) ReflectionUtils.invokeMethod(descMethod, null);
+        } catch (NoSuchMethodException e) {
+            description = type.getSimpleName();
+        }
+
+        return description;
+    }
+}
@@ -13,6 +13,14 @@ import javax.transaction.Transactional;
 public class QuotedString implements ArgumentBinding {
     private String text;
 
+    public QuotedString() {
+        // for binding later
+    }
+
+    public QuotedString(String text) {
+        this.text = escape(text);
+    }
+
     @Transactional
     @Override
     public boolean bind(Actor actor, String text) {
@@ -20,7 +28,7 @@ public class QuotedString implements ArgumentBinding {
             return false;
         }
 
-        this.text = HtmlUtils.htmlEscape(text, "UTF-8");
+        this.text = escape(text);
 
         return true;
     }
@@ -33,4 +41,8 @@ public class QuotedString implements ArgumentBinding {
     public static String getSyntaxDescription() {
         return "quoted text";
     }
+
+    private static String escape(String text) {
+        return HtmlUtils.htmlEscape(text, "UTF-8");
+    }
 }
@@ -0,0 +1,18 @@
+package com.agonyengine.model.interpret;
+
+import com.agonyengine.model.actor.Actor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+@Component
+public class QuotedStringResolver implements ArgumentResolver<QuotedString> {
+    @Override
+    public Class<QuotedString> getType() {
+        return QuotedString.class;
+    }
+
+    @Override
+    public QuotedString resolve(Actor actor, String text) {
+        return StringUtils.isEmpty(text) ? null : new QuotedString(text);
+    }
+}
@@ -0,0 +1,102 @@
+package com.agonyengine.model.interpret;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * An immutable, case insensitive prefix tree of Verbs. Every node remembers the best Verb in its subtree according
+ * to (priority, name) ordering, so resolving an abbreviation such as "n" or "inv" is a walk down the tree with no
+ * searching or sorting involved.
+ */
+public class VerbTrie {
+    private static final Comparator<Verb> VERB_ORDER = Comparator
+        .comparingInt(Verb::getPriority)
+        .thenComparing(Verb::getName);
+
+    private final Node root = new Node();
+    private final List<Verb> verbs;
+
+    public VerbTrie(Collection<Verb> verbs) {
+        this.verbs = Collections.unmodifiableList(verbs
+            .stream()
+            .sorted(VERB_ORDER)
+            .collect(toList()));
+
+        // verbs are inserted best first, so the first verb to reach a node is the best one for that prefix
+        this.verbs.forEach(this::insert);
+    }
+
+    public Optional<Verb> find(String prefix) {
+        Node node = root;
+
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.getChild(Character.toLowerCase(prefix.charAt(i)));
+        }
+
+        return node == null ? Optional.empty() : Optional.ofNullable(node.best);
+    }
+
+    public List<Verb> getVerbs() {
+        return verbs;
+    }
+
+    private void insert(Verb verb) {
+        String name = verb.getName();
+        Node node = root;
+
+        if (node.best == null) {
+            node.best = verb;
+        }
+
+        for (int i = 0; i < name.length(); i++) {
+            node = node.getOrCreateChild(Character.toLowerCase(name.charAt(i)));
+
+            if (node.best == null) {
+                node.best = verb;
+            }
+        }
+    }
+
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private Verb best;
+
+        Node getChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+
+            return index < 0 ? null : children[index];
+        }
+
+        Node getOrCreateChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+
+            if (index >= 0) {
+                return children[index];
+            }
+
+            int insertion = -(index + 1);
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            Node child = new Node();
+
+            System.arraycopy(keys, 0, newKeys, 0, insertion);
+            System.arraycopy(children, 0, newChildren, 0, insertion);
+            newKeys[insertion] = key;
+            newChildren[insertion] = child;
+            System.arraycopy(keys, insertion, newKeys, insertion + 1, keys.length - insertion);
+            System.arraycopy(children, insertion, newChildren, insertion + 1, children.length - insertion);
+
+            keys = newKeys;
+            children = newChildren;
+
+            return child;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.agonyengine.model.message;
+
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.Pronoun;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A message with codes in it for the actors it talks about, in the style of Diku's act(). Templates are parsed
+ * once, when they are compiled, into the literal text between the codes, so rendering one is just appending to a
+ * StringBuilder.
+ *
+ * $n is the actor's name and $N or $p the target's. $e, $m, $s and $r are the actor's subject, object, possessive
+ * and reflexive pronouns, and $E, $M, $S and $R the target's. $t is the text given when rendering, and $$ is a
+ * dollar sign. A code at the very start of the message, after any color tags, is capitalized.
+ *
+ * The text is the same for every viewer other than the actor and target, who get messages of their own, so a
+ * room message is rendered once no matter how many people are in the room.
+ */
+public final class MessageTemplate {
+    private static final Pronoun IT = new Pronoun();
+
+    static {
+        IT.setSubject("it");
+        IT.setObject("it");
+        IT.setPossessive("its");
+        IT.setPossessivePronoun("its");
+        IT.setReflexive("itself");
+    }
+
+    private final String template;
+    private final String[] literals;
+    private final char[] codes;
+    private final boolean capitalizeFirst;
+    private final int length;
+
+    private MessageTemplate(String template, String[] literals, char[] codes, boolean capitalizeFirst) {
+        int literalLength = 0;
+
+        for (String literal : literals) {
+            literalLength += literal.length();
+        }
+
+        this.template = template;
+        this.literals = literals;
+        this.codes = codes;
+        this.capitalizeFirst = capitalizeFirst;
+        this.length = literalLength + codes.length * 16;
+    }
+
+    public static MessageTemplate compile(String template) {
+        StringBuilder literal = new StringBuilder();
+        StringBuilder codes = new StringBuilder();
+        List<String> literals = new ArrayList<>();
+
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+
+            if (c != '$') {
+                literal.append(c);
+                continue;
+            }
+
+            if (i + 1 >= template.length()) {
+                throw new IllegalArgumentException("Template ends in the middle of a code: " + template);
+            }
+
+            char code = template.charAt(++i);
+
+            if (code == '$') {
+                literal.append('$');
+            } else if ("nNpeEmMsSrRt".indexOf(code) >= 0) {
+                literals.add(literal.toString());
+                codes.append(code);
+                literal.setLength(0);
+            } else {
+                throw new IllegalArgumentException("Unknown code $" + code + " in template: " + template);
+            }
+        }
+
+        literals.add(literal.toString());
+
+        return new MessageTemplate(
+            template,
+            literals.toArray(new String[0]),
+            codes.toString().toCharArray(),
+            codes.length() > 0 && isOnlyColors(literals.get(0)));
+    }
+
+    public String render(Actor actor) {
+        return render(actor, null, null);
+    }
+
+    public String render(Actor actor, Actor target) {
+        return render(actor, target, null);
+    }
+
+    public String render(Actor actor, Actor target, String text) {
+        StringBuilder buf = new StringBuilder(length);
+
+        for (int i = 0; i < codes.length; i++) {
+            buf.append(literals[i]);
+
+            String value = substitute(codes[i], actor, target, text);
+
+            if (value == null) {
+                continue;
+            }
+
+            if (i == 0 && capitalizeFirst && !value.isEmpty()) {
+                buf.append(Character.toUpperCase(value.charAt(0)));
+                buf.append(value, 1, value.length());
+            } else {
+                buf.append(value);
+            }
+        }
+
+        buf.append(literals[codes.length]);
+
+        return buf.toString();
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+
+    private static String substitute(char code, Actor actor, Actor target, String text) {
+        switch (code) {
+            case 'n': return actor.getName();
+            case 'N':
+            case 'p': return target.getName();
+            case 'e': return pronoun(actor).getSubject();
+            case 'E': return pronoun(target).getSubject();
+            case 'm': return pronoun(actor).getObject();
+            case 'M': return pronoun(target).getObject();
+            case 's': return pronoun(actor).getPossessive();
+            case 'S': return pronoun(target).getPossessive();
+            case 'r': return pronoun(actor).getReflexive();
+            case 'R': return pronoun(target).getReflexive();
+            case 't': return text == null ? "" : text;
+            default: throw new IllegalStateException("Unknown code $" + code);
+        }
+    }
+
+    private static Pronoun pronoun(Actor actor) {
+        return actor.getPronoun() == null ? IT : actor.getPronoun();
+    }
+
+    // true if the text is nothing but color tags like "[yellow]", so whatever follows starts the sentence
+    private static boolean isOnlyColors(String text) {
+        int i = 0;
+
+        while (i < text.length()) {
+            if (text.charAt(i) != '[' || text.startsWith("[[", i)) {
+                return false;
+            }
+
+            int end = text.indexOf(']', i);
+
+            if (end < 0) {
+                return false;
+            }
+
+            i = end + 1;
+        }
+
+        return true;
+    }
+}
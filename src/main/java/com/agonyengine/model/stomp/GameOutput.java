@@ -1,5 +1,7 @@
 package com.agonyengine.model.stomp;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -7,6 +9,9 @@ import java.util.List;
 public class GameOutput {
     private List<String> output = new ArrayList<>();
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String room;
+
     public GameOutput() {
         // this method intentionally left blank
     }
@@ -24,4 +29,16 @@ public class GameOutput {
     public List<String> getOutput() {
         return output;
     }
+
+    /*
+     * When room topics are enabled, this tells the client which room topic to subscribe to. An empty string
+     * means the actor is no longer in any room.
+     */
+    public String getRoom() {
+        return room;
+    }
+
+    public void setRoom(String room) {
+        this.room = room;
+    }
 }
@@ -3,6 +3,14 @@ package com.agonyengine.model.stomp;
 public class UserInput {
     private String input;
 
+    public UserInput() {
+        // this method intentionally left blank
+    }
+
+    public UserInput(String input) {
+        this.input = input;
+    }
+
     public void setInput(String input) {
         this.input = input;
     }
@@ -4,17 +4,53 @@ import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.actor.GameMap;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import javax.transaction.Transactional;
 import java.util.Date;
 import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
 
 public interface ActorRepository extends JpaRepository<Actor, UUID> {
+    // the IDs are strings because Hibernate would otherwise send UUIDs to a native query as bytea, and can't read them back
+    String FIND_IDS_BY_NAME_WORD_PREFIX_SQL = "SELECT CAST(id AS text) FROM actor " +
+        "WHERE game_map_id = CAST(:gameMapId AS uuid) AND x = :x AND y = :y AND name ~* :pattern " +
+        "AND id <> CAST(:excludeId AS uuid) " +
+        "ORDER BY arrival NULLS FIRST, id OFFSET :skip LIMIT 1";
+
     Actor findBySessionUsernameAndSessionId(String sessionUsername, String sessionId);
     List<Actor> findByGameMap(GameMap gameMap);
+    List<Actor> findByGameMapIsNotNull();
     List<Actor> findByGameMapAndXAndY(GameMap gameMap, Integer x, Integer y);
     List<Actor> findByAccount(String account);
     List<Actor> findBySessionUsernameIsNotNullAndSessionIdIsNotNullAndGameMapIsNotNull(Sort sort);
     List<Actor> findByDisconnectedDateIsBeforeAndGameMapIsNotNull(Date cutoff);
+
+    // returns 0 if the actor has reconnected, disconnected again, or already been taken out of the world
+    @Modifying
+    @Query("UPDATE Actor a SET a.gameMap = NULL " +
+        "WHERE a.id = :id AND a.disconnectedDate = :disconnectedDate AND a.gameMap IS NOT NULL")
+    int removeIfLinkDeadSince(@Param("id") UUID id, @Param("disconnectedDate") Date disconnectedDate);
+
+    // returns 0 if the session has already been replaced, such as by the player reconnecting on another node
+    @Transactional
+    @Modifying
+    @Query("UPDATE Actor a SET a.disconnectedDate = :disconnectedDate " +
+        "WHERE a.id = :id AND a.sessionUsername = :sessionUsername AND a.sessionId = :sessionId")
+    int disconnectIfSession(
+        @Param("id") UUID id,
+        @Param("sessionUsername") String sessionUsername,
+        @Param("sessionId") String sessionId,
+        @Param("disconnectedDate") Date disconnectedDate);
+
+    @Query(value = FIND_IDS_BY_NAME_WORD_PREFIX_SQL, nativeQuery = true)
+    List<String> findIdsByNameWordPrefix(
+        @Param("gameMapId") String gameMapId,
+        @Param("x") Integer x,
+        @Param("y") Integer y,
+        @Param("pattern") String pattern,
+        @Param("excludeId") String excludeId,
+        @Param("skip") Integer skip);
 }
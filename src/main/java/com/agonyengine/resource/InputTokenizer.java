@@ -4,117 +4,159 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
+/**
+ * Splits a line of player input into sentences of upper cased tokens in a single pass. Sentences end at '.', '!'
+ * and '?' or at the word THEN, double quotes group words into a single token with their case preserved, and the
+ * words THE, A and AN are dropped as they are scanned. A '.' between a number and a word, as in "2.sword", is part
+ * of the token rather than the end of a sentence.
+ */
 @Component
 public class InputTokenizer {
-    public List<List<String>> tokenize(String input) {
-        return splitSentences(filterTokens(buildTokens(input)));
-    }
-
-    private List<List<String>> buildTokens(String input) {
-        List<List<String>> sentences = new ArrayList<>();
-        List<String> tokens = new ArrayList<>();
-        StringBuilder buf = new StringBuilder();
-        boolean isQuoting = false;
+    private static final int MAX_RETAINED_BUFFER = 4096;
+    private static final ThreadLocal<Scanner> SCANNERS = ThreadLocal.withInitial(Scanner::new);
 
+    public List<Sentence> tokenize(String input) {
         if (input == null) {
-            return sentences;
+            return new ArrayList<>();
         }
 
-        for (int i = 0; i < input.length(); i++) {
-            char curChar = input.charAt(i);
-            int codepoint = input.codePointAt(i);
-
-            if (isQuoting || Character.isAlphabetic(codepoint) || Character.isDigit(codepoint)) {
-                if (curChar == '"') {
-                    isQuoting = false;
-
-                    String token = buf.toString().trim();
+        return SCANNERS.get().scan(input);
+    }
 
-                    if (token.length() > 0) {
-                        tokens.add(token);
-                        buf.setLength(0);
-                    }
-                } else {
-                    if (!isQuoting) {
-                        buf.append(Character.toUpperCase(curChar));
-                    } else {
-                        buf.append(curChar);
+    private static class Scanner {
+        private StringBuilder buf = new StringBuilder();
+        private List<String> tokens = new ArrayList<>();
+        private List<Sentence> sentences;
+        private int bufStart;
+        private int sentenceStart;
+
+        List<Sentence> scan(String input) {
+            boolean isQuoting = false;
+
+            sentences = new ArrayList<>();
+
+            try {
+                for (int i = 0; i < input.length(); i++) {
+                    char curChar = input.charAt(i);
+                    int codepoint = input.codePointAt(i);
+
+                    if (isQuoting) {
+                        if (curChar == '"') {
+                            isQuoting = false;
+                            flushToken();
+                        } else {
+                            append(i, curChar);
+                        }
+                    } else if (Character.isAlphabetic(codepoint) || Character.isDigit(codepoint)) {
+                        append(i, Character.toUpperCase(curChar));
+                    } else if (Character.isWhitespace(codepoint)) {
+                        flushToken();
+                    } else if (curChar == '.' && isOrdinal(input, i)) {
+                        append(i, curChar);
+                    } else if (curChar == '.' || curChar == '!' || curChar == '?') {
+                        // punctuation only ends the sentence when it directly follows a word
+                        if (flushToken()) {
+                            endSentence();
+                        }
+                    } else if (curChar == '"') {
+                        isQuoting = true;
+                        flushToken();
                     }
                 }
-            } else if (Character.isWhitespace(codepoint)) {
-                String token = buf.toString().trim();
 
-                if (token.length() > 0) {
-                    tokens.add(token);
-                    buf.setLength(0);
-                }
-            } else if (curChar == '.' || curChar == '!' || curChar == '?') {
-                String token = buf.toString().trim();
+                flushToken();
+                endSentence();
 
-                if (token.length() > 0) {
-                    tokens.add(token);
-                    sentences.add(new ArrayList<>(tokens));
-                    tokens.clear();
+                return sentences;
+            } finally {
+                tokens.clear();
+                sentences = null;
+
+                if (buf.capacity() > MAX_RETAINED_BUFFER) {
+                    buf = new StringBuilder();
                 }
+            }
+        }
 
-                buf.setLength(0);
-            } else if (curChar == '"') {
-                isQuoting = true;
+        /*
+         * Emits whatever is in the buffer as a token, trimmed, unless it is a stop word or THEN. Returns true if
+         * there was any token in the buffer at all, even if it was then dropped.
+         */
+        private boolean flushToken() {
+            int start = 0;
+            int end = buf.length();
+
+            while (start < end && buf.charAt(start) <= ' ') {
+                start++;
+            }
 
-                String token = buf.toString().trim();
+            while (end > start && buf.charAt(end - 1) <= ' ') {
+                end--;
+            }
+
+            if (start == end) {
+                buf.setLength(0);
+                return false;
+            }
 
-                if (token.length() > 0) {
-                    tokens.add(token);
-                    buf.setLength(0);
+            if (isWord(start, end, "THEN")) {
+                endSentence();
+            } else if (!isWord(start, end, "THE") && !isWord(start, end, "A") && !isWord(start, end, "AN")) {
+                if (tokens.isEmpty()) {
+                    sentenceStart = bufStart + start;
                 }
+
+                tokens.add(buf.substring(start, end));
             }
-        }
 
-        String token = buf.toString().trim();
+            buf.setLength(0);
 
-        if (token.length() > 0) {
-            tokens.add(token);
+            return true;
         }
 
-        sentences.add(new ArrayList<>(tokens));
+        private void append(int index, char c) {
+            if (buf.length() == 0) {
+                bufStart = index;
+            }
 
-        return sentences;
-    }
+            buf.append(c);
+        }
 
-    private List<List<String>> splitSentences(List<List<String>> sentences) {
-        List<List<String>> output = new ArrayList<>();
+        private void endSentence() {
+            if (!tokens.isEmpty()) {
+                sentences.add(new Sentence(sentenceStart, tokens.toArray(new String[0])));
+                tokens.clear();
+            }
+        }
 
-        for (List<String> sentence : sentences) {
-            List<String> outputSentence = new ArrayList<>();
+        // the buffer holds only digits and the next character starts a word
+        private boolean isOrdinal(String input, int index) {
+            if (buf.length() == 0 || index + 1 >= input.length() || !Character.isLetter(input.codePointAt(index + 1))) {
+                return false;
+            }
 
-            for (String token : sentence) {
-                if ("THEN".equals(token)) {
-                    if (outputSentence.size() > 0) {
-                        output.add(outputSentence);
-                        outputSentence = new ArrayList<>();
-                    }
-                } else {
-                    outputSentence.add(token);
+            for (int i = 0; i < buf.length(); i++) {
+                if (!Character.isDigit(buf.charAt(i))) {
+                    return false;
                 }
             }
 
-            if (outputSentence.size() > 0) {
-                output.add(outputSentence);
-            }
+            return true;
         }
 
-        return output;
-    }
+        private boolean isWord(int start, int end, String word) {
+            if (end - start != word.length()) {
+                return false;
+            }
 
-    private List<List<String>> filterTokens(List<List<String>> sentences) {
-        return sentences.stream()
-            .map(sentence -> sentence.stream()
-                .filter(token -> !"THE".equals(token))
-                .filter(token -> !"A".equals(token))
-                .filter(token -> !"AN".equals(token))
-                .collect(Collectors.toList()))
-            .collect(Collectors.toList());
+            for (int i = 0; i < word.length(); i++) {
+                if (buf.charAt(start + i) != word.charAt(i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
     }
 }
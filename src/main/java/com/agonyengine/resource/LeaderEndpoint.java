@@ -0,0 +1,32 @@
+package com.agonyengine.resource;
+
+import com.agonyengine.service.LeaderElectionService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Component
+@Endpoint(id = "leader")
+public class LeaderEndpoint {
+    private LeaderElectionService leaderElectionService;
+
+    @Inject
+    public LeaderEndpoint(LeaderElectionService leaderElectionService) {
+        this.leaderElectionService = leaderElectionService;
+    }
+
+    @ReadOperation
+    public Map<String, Object> leader() {
+        Map<String, Object> leader = new LinkedHashMap<>();
+
+        leader.put("node", leaderElectionService.getNodeId());
+        leader.put("leader", leaderElectionService.isLeader());
+        leader.put("leaderNode", leaderElectionService.findLeader().orElse(null));
+
+        return leader;
+    }
+}
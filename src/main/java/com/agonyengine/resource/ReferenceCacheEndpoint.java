@@ -0,0 +1,24 @@
+package com.agonyengine.resource;
+
+import com.agonyengine.service.ReferenceCacheService;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+
+@Component
+@Endpoint(id = "referencecache")
+public class ReferenceCacheEndpoint {
+    private ReferenceCacheService referenceCacheService;
+
+    @Inject
+    public ReferenceCacheEndpoint(ReferenceCacheService referenceCacheService) {
+        this.referenceCacheService = referenceCacheService;
+    }
+
+    @DeleteOperation
+    public void evict() {
+        referenceCacheService.evict();
+    }
+}
@@ -0,0 +1,32 @@
+package com.agonyengine.resource;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of the tokens in one sentence of player input, backed by an exactly sized array. The start is
+ * the offset in the original input where the sentence's first token begins.
+ */
+public class Sentence extends AbstractList<String> implements RandomAccess {
+    private final int start;
+    private final String[] tokens;
+
+    public Sentence(int start, String... tokens) {
+        this.start = start;
+        this.tokens = tokens;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    @Override
+    public String get(int index) {
+        return tokens[index];
+    }
+
+    @Override
+    public int size() {
+        return tokens.length;
+    }
+}
@@ -1,9 +1,13 @@
 package com.agonyengine.resource;
 
 import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.message.MessageTemplate;
 import com.agonyengine.model.stomp.GameOutput;
 import com.agonyengine.repository.ActorRepository;
 import com.agonyengine.service.CommService;
+import com.agonyengine.service.OccupancyService;
+import com.agonyengine.service.ReaperService;
+import com.agonyengine.service.SessionActorRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationListener;
@@ -18,35 +22,56 @@ import java.util.Date;
 @Component
 public class StompDisconnectListener implements ApplicationListener<SessionDisconnectEvent> {
     private static final Logger LOGGER = LoggerFactory.getLogger(StompDisconnectListener.class);
+    private static final MessageTemplate DISCONNECTED = MessageTemplate.compile("[yellow]$n has disconnected.");
 
+    private SessionActorRegistry sessionActorRegistry;
     private ActorRepository actorRepository;
     private CommService commService;
+    private OccupancyService occupancyService;
+    private ReaperService reaperService;
 
     @Inject
-    public StompDisconnectListener(ActorRepository actorRepository,
-                                   CommService commService) {
+    public StompDisconnectListener(SessionActorRegistry sessionActorRegistry,
+                                   ActorRepository actorRepository,
+                                   CommService commService,
+                                   OccupancyService occupancyService,
+                                   ReaperService reaperService) {
 
+        this.sessionActorRegistry = sessionActorRegistry;
         this.actorRepository = actorRepository;
         this.commService = commService;
+        this.occupancyService = occupancyService;
+        this.reaperService = reaperService;
     }
 
     @Override
     public void onApplicationEvent(SessionDisconnectEvent event) {
         SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
 
-        Actor actor = actorRepository.findBySessionUsernameAndSessionId(
+        Actor actor = sessionActorRegistry.findActor(
             headerAccessor.getUser().getName(),
             event.getSessionId());
 
+        sessionActorRegistry.evict(event.getSessionId());
+
         if (actor == null) {
             return;
         }
 
+        Date disconnectedDate = new Date();
+
+        // written straight away, and only if it's still their session, so it can't land on top of a reconnect
+        if (actorRepository.disconnectIfSession(actor.getId(), actor.getSessionUsername(), actor.getSessionId(), disconnectedDate) == 0) {
+            LOGGER.info("{} has already reconnected somewhere else", actor.getName());
+            return;
+        }
+
         LOGGER.info("{} has disconnected ({})", actor.getName(), actor.getRemoteIpAddress());
 
-        commService.echoToRoom(actor, new GameOutput(String.format("[yellow]%s has disconnected.", actor.getName())), actor);
+        commService.echoToRoom(actor, new GameOutput(DISCONNECTED.render(actor)), actor);
 
-        actor.setDisconnectedDate(new Date());
-        actorRepository.save(actor);
+        actor.setDisconnectedDate(disconnectedDate);
+        occupancyService.update(actor);
+        reaperService.schedule(actor.getId(), actor.getDisconnectedDate());
     }
 }
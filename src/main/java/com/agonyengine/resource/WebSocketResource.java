@@ -1,25 +1,34 @@
 package com.agonyengine.resource;
 
+import com.agonyengine.config.InputProperties;
 import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.actor.GameMap;
+import com.agonyengine.model.interpret.Verb;
+import com.agonyengine.model.message.MessageTemplate;
 import com.agonyengine.model.stomp.GameOutput;
 import com.agonyengine.model.stomp.UserInput;
 import com.agonyengine.repository.ActorRepository;
 import com.agonyengine.repository.GameMapRepository;
 import com.agonyengine.resource.exception.NoSuchActorException;
 import com.agonyengine.service.CommService;
+import com.agonyengine.service.CommandScheduler;
 import com.agonyengine.service.InvokerService;
+import com.agonyengine.service.OccupancyService;
+import com.agonyengine.service.ReaperService;
+import com.agonyengine.service.RoomTopicService;
+import com.agonyengine.service.SessionActorRegistry;
+import com.agonyengine.service.VerbRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.session.Session;
 import org.springframework.session.SessionRepository;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.support.TransactionOperations;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
@@ -38,16 +47,26 @@ public class WebSocketResource {
     static final String SPRING_SESSION_ID_KEY = "SPRING.SESSION.ID";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(WebSocketResource.class);
+    private static final MessageTemplate APPEARS = MessageTemplate.compile("[yellow]$n appears in a puff of smoke!");
+    private static final MessageTemplate RECONNECTED = MessageTemplate.compile("[yellow]$n has reconnected.");
 
     private String applicationVersion;
     private Date applicationBootDate;
     private UUID defaultMapId;
+    private InputProperties inputProperties;
     private InputTokenizer inputTokenizer;
     private GameMapRepository gameMapRepository;
     private SessionRepository sessionRepository;
     private ActorRepository actorRepository;
+    private SessionActorRegistry sessionActorRegistry;
     private InvokerService invokerService;
+    private VerbRegistry verbRegistry;
     private CommService commService;
+    private OccupancyService occupancyService;
+    private RoomTopicService roomTopicService;
+    private ReaperService reaperService;
+    private CommandScheduler commandScheduler;
+    private TransactionOperations transactionOperations;
     private List<String> greeting;
 
     @Inject
@@ -55,22 +74,38 @@ public class WebSocketResource {
         String applicationVersion,
         Date applicationBootDate,
         UUID defaultMapId,
+        InputProperties inputProperties,
         InputTokenizer inputTokenizer,
         GameMapRepository gameMapRepository,
         SessionRepository sessionRepository,
         ActorRepository actorRepository,
+        SessionActorRegistry sessionActorRegistry,
         InvokerService invokerService,
-        CommService commService) {
+        VerbRegistry verbRegistry,
+        CommService commService,
+        OccupancyService occupancyService,
+        RoomTopicService roomTopicService,
+        ReaperService reaperService,
+        CommandScheduler commandScheduler,
+        TransactionOperations transactionOperations) {
 
         this.applicationVersion = applicationVersion;
         this.applicationBootDate = applicationBootDate;
         this.defaultMapId = defaultMapId;
+        this.inputProperties = inputProperties;
         this.inputTokenizer = inputTokenizer;
         this.gameMapRepository = gameMapRepository;
         this.sessionRepository = sessionRepository;
         this.actorRepository = actorRepository;
+        this.sessionActorRegistry = sessionActorRegistry;
         this.invokerService = invokerService;
+        this.verbRegistry = verbRegistry;
         this.commService = commService;
+        this.occupancyService = occupancyService;
+        this.roomTopicService = roomTopicService;
+        this.reaperService = reaperService;
+        this.commandScheduler = commandScheduler;
+        this.transactionOperations = transactionOperations;
 
         InputStream greetingInputStream = WebSocketResource.class.getResourceAsStream("/greeting.txt");
         BufferedReader greetingReader = new BufferedReader(new InputStreamReader(greetingInputStream));
@@ -123,7 +158,7 @@ public class WebSocketResource {
 
             LOGGER.info("{} has connected for the first time ({})", actor.getName(), actor.getRemoteIpAddress());
 
-            commService.echoToRoom(actor, new GameOutput(String.format("[yellow]%s appears in a puff of smoke!", actor.getName())), actor);
+            commService.echoToRoom(actor, new GameOutput(APPEARS.render(actor)), actor);
         } else {
             GameOutput reconnect = new GameOutput();
 
@@ -132,6 +167,8 @@ public class WebSocketResource {
 
             commService.echo(actor, reconnect);
 
+            reaperService.cancel(actor.getId());
+
             actor.setDisconnectedDate(null);
             actor.setSessionUsername(principal.getName());
             actor.setSessionId(getStompSessionId(message));
@@ -147,16 +184,23 @@ public class WebSocketResource {
 
                 LOGGER.info("{} has connected ({})", actor.getName(), actor.getRemoteIpAddress());
 
-                commService.echoToRoom(actor, new GameOutput(String.format("[yellow]%s appears in a puff of smoke!", actor.getName())), actor);
+                commService.echoToRoom(actor, new GameOutput(APPEARS.render(actor)), actor);
             } else {
                 LOGGER.info("{} has reconnected ({})", actor.getName(), actor.getRemoteIpAddress());
 
-                commService.echoToRoom(actor, new GameOutput(String.format("[yellow]%s has reconnected.", actor.getName())), actor);
+                commService.echoToRoom(actor, new GameOutput(RECONNECTED.render(actor)), actor);
             }
 
             actor = actorRepository.save(actor);
         }
 
+        sessionActorRegistry.register(principal.getName(), getStompSessionId(message), actor.getId());
+        occupancyService.update(actor);
+
+        if (roomTopicService.isEnabled()) {
+            output.setRoom(roomTopicService.join(getStompSessionId(message), actor));
+        }
+
         invokerService.invoke(actor, output, null, Collections.singletonList("look"));
 
         output.append("");
@@ -165,25 +209,81 @@ public class WebSocketResource {
         return output;
     }
 
-    @Transactional
+    /*
+     * Input is handed to the command scheduler rather than run on the inbound channel thread, so that two lines
+     * from the same player never run at the same time. The reply is sent when the command has finished.
+     */
     @MessageMapping("/input")
-    @SendToUser(value = "/queue/output", broadcast = false)
-    public GameOutput onInput(Principal principal, UserInput input, Message<byte[]> message) {
-        Actor actor = actorRepository.findBySessionUsernameAndSessionId(principal.getName(), getStompSessionId(message));
+    public void onInput(Principal principal, UserInput input, Message<byte[]> message) {
+        String sessionUsername = principal.getName();
+        String sessionId = getStompSessionId(message);
+        UUID actorId = sessionActorRegistry.findActorId(sessionUsername, sessionId);
+
+        if (actorId == null) {
+            LOGGER.warn("Ignoring input from {} because session {} has no actor", sessionUsername, sessionId);
+            return;
+        }
+
+        boolean isAccepted = commandScheduler.submit(actorId, () -> {
+            GameOutput output;
+
+            try {
+                output = transactionOperations.execute(status -> execute(sessionUsername, sessionId, input));
+            } catch (RuntimeException e) {
+                LOGGER.error(e.getMessage(), e);
+
+                output = new GameOutput("[red]Something went wrong while carrying out your command.")
+                    .append("")
+                    .append("[dwhite]> ");
+            }
+
+            commService.reply(sessionUsername, sessionId, output);
+        });
+
+        if (!isAccepted) {
+            commService.reply(sessionUsername, sessionId, new GameOutput("[red]You are sending commands faster than you can carry them out!")
+                .append("")
+                .append("[dwhite]> "));
+        }
+    }
+
+    // runs a line of input inside the transaction opened by onInput()
+    GameOutput execute(String sessionUsername, String sessionId, UserInput input) {
+        Actor actor = sessionActorRegistry.findActor(sessionUsername, sessionId);
         GameOutput output = new GameOutput();
-        List<List<String>> sentences = inputTokenizer.tokenize(input.getInput());
+        List<Sentence> sentences = inputTokenizer.tokenize(input.getInput());
+        int commandCount = 0;
 
-        if (sentences.size() > 0) {
-            List<String> tokens = sentences.get(0);
+        for (Sentence sentence : sentences) {
+            if (commandCount++ >= inputProperties.getMaxCommandsPerLine()) {
+                output.append(String.format("[red]Only the first %d commands on a line will be executed.", inputProperties.getMaxCommandsPerLine()));
+                break;
+            }
+
+            boolean isQuoting = verbRegistry.find(sentence.get(0))
+                .map(Verb::isQuoting)
+                .orElse(false);
 
+            // each sentence is nested, so one that fails is rolled back without undoing the ones before it
             try {
-                invokerService.invoke(actor, output, input, tokens);
+                transactionOperations.execute(status -> {
+                    invokerService.invoke(actor, output, new UserInput(input.getInput().substring(sentence.getStart())), sentence);
+                    return null;
+                });
             } catch (Exception e) {
                 output.append("[red]" + e.getMessage());
                 LOGGER.error(e.getMessage(), e);
+                break;
+            }
+
+            // quoting verbs like SAY consume the rest of the line, including any punctuation in it
+            if (isQuoting) {
+                break;
             }
         }
 
+        commService.drainTo(sessionId, output);
+
         output
             .append("")
             .append("[dwhite]> ");
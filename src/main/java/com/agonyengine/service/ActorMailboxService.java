@@ -0,0 +1,112 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.InputProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives each actor a mailbox of commands waiting to run, so that one actor's commands run one at a time in the
+ * order they arrived while different actors' commands share the command executor. A mailbox only holds so many
+ * commands; anything past that is refused so that one player can't tie up every thread.
+ *
+ * Mailboxes are never removed, because a new mailbox could start running an actor's commands while the old one
+ * was still finishing. An idle mailbox is only a few small objects and there is at most one per actor.
+ */
+@Component
+@ConditionalOnProperty(prefix = "agonyengine.input", name = "scheduler", havingValue = "mailbox", matchIfMissing = true)
+public class ActorMailboxService implements CommandScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ActorMailboxService.class);
+
+    private final Map<UUID, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    private InputProperties inputProperties;
+    private Executor executor;
+    private Counter rejections;
+
+    @Inject
+    public ActorMailboxService(InputProperties inputProperties, @Named("commandExecutor") Executor executor, MeterRegistry meterRegistry) {
+        this.inputProperties = inputProperties;
+        this.executor = executor;
+
+        rejections = meterRegistry.counter("agonyengine.input.mailbox.rejections");
+        meterRegistry.gaugeMapSize("agonyengine.input.mailbox.size", Tags.empty(), mailboxes);
+    }
+
+    @Override
+    public boolean submit(UUID actorId, Runnable command) {
+        Mailbox mailbox = mailboxes.computeIfAbsent(actorId, id -> new Mailbox());
+
+        if (mailbox.depth.incrementAndGet() > inputProperties.getMailboxDepth()) {
+            mailbox.depth.decrementAndGet();
+            rejections.increment();
+
+            return false;
+        }
+
+        mailbox.commands.add(command);
+        mailbox.schedule();
+
+        return true;
+    }
+
+    int getDepth(UUID actorId) {
+        Mailbox mailbox = mailboxes.get(actorId);
+
+        return mailbox == null ? 0 : mailbox.depth.get();
+    }
+
+    private class Mailbox {
+        private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicBoolean isScheduled = new AtomicBoolean();
+
+        private void schedule() {
+            if (isScheduled.compareAndSet(false, true)) {
+                executor.execute(this::runNext);
+            }
+        }
+
+        /*
+         * Runs a single command and then goes back to the end of the executor's queue, so a player with a full
+         * mailbox takes turns with everybody else. A command submitted while this one runs either sees the flag
+         * still set and is picked up by the check below, or sees it cleared and schedules itself.
+         */
+        private void runNext() {
+            Runnable command = commands.poll();
+
+            try {
+                if (command != null) {
+                    command.run();
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("Command failed", e);
+            } finally {
+                if (command != null) {
+                    depth.decrementAndGet();
+                }
+
+                isScheduled.set(false);
+
+                if (!commands.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.WebSocketBrokerProperties;
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.ActorStateListener;
+import com.agonyengine.model.actor.GameMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the actor columns that change all the time: which map an actor is on and where it is standing on it.
+ * Hibernate never updates those columns. Instead OccupancyService records each change here. Which session an
+ * actor belongs to and when it disconnected are written straight away by Hibernate instead, because the reaper
+ * decides who to take out of the world by reading them from the database.
+ *
+ * With the SIMPLE broker there is only ever one node, and the changes are written behind: every actor loaded after
+ * the change commits sees it straight away, and the changes are written to the database in one JDBC batch every
+ * flush interval and again at shutdown. Changes made in a transaction that rolls back are never recorded at all.
+ * Queries that filter on these columns can lag by up to one flush interval unless writePending() is called first.
+ *
+ * With the RELAY broker other nodes read these columns from the database, and so does the leader's reaper, so
+ * each change is written straight away as part of the transaction that made it.
+ */
+@Component
+public class ActorStateService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ActorStateService.class);
+
+    static final String UPDATE_SQL = "UPDATE actor SET game_map_id = ?, x = ?, y = ?, arrival = ? WHERE id = ?";
+
+    private final Map<UUID, ActorState> pending = new ConcurrentHashMap<>();
+
+    private JdbcTemplate jdbcTemplate;
+    private boolean isWriteBehind;
+    private Timer lag;
+    private Counter rows;
+    private Counter failures;
+
+    @Inject
+    public ActorStateService(
+        JdbcTemplate jdbcTemplate,
+        WebSocketBrokerProperties brokerProperties,
+        MeterRegistry meterRegistry) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.isWriteBehind = brokerProperties.isSimple();
+
+        lag = meterRegistry.timer("agonyengine.actor.state.lag");
+        rows = meterRegistry.counter("agonyengine.actor.state.rows");
+        failures = meterRegistry.counter("agonyengine.actor.state.failures");
+        meterRegistry.gaugeMapSize("agonyengine.actor.state.pending", Tags.empty(), pending);
+    }
+
+    @PostConstruct
+    public void registerListener() {
+        ActorStateListener.setOnLoad(this::apply);
+    }
+
+    /*
+     * The actor's state is copied straight away, but inside a transaction it is only made pending once the
+     * transaction commits, so that a rolled back command can't leave its changes behind. Written straight away,
+     * a change that hits no row belongs to an actor Hibernate hasn't inserted yet, and the insert will carry it.
+     */
+    public void record(Actor actor) {
+        if (actor.getId() == null) {
+            return;
+        }
+
+        ActorState state = new ActorState(actor, System.nanoTime());
+
+        if (!isWriteBehind) {
+            jdbcTemplate.update(UPDATE_SQL, statement -> setValues(statement, state));
+            rows.increment();
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    buffer(state);
+                }
+            });
+
+            return;
+        }
+
+        buffer(state);
+    }
+
+    /*
+     * Lays any unwritten changes over an actor that was just loaded from the database. This runs inside a
+     * Hibernate load, so it must not touch the session; the map is the one that was recorded with the change.
+     */
+    public void apply(Actor actor) {
+        ActorState state = pending.get(actor.getId());
+
+        if (state == null) {
+            return;
+        }
+
+        UUID loadedMapId = actor.getGameMap() == null ? null : actor.getGameMap().getId();
+
+        if (!Objects.equals(loadedMapId, state.gameMapId)) {
+            actor.setGameMap(state.gameMap);
+        }
+
+        actor.setX(state.x);
+        actor.setY(state.y);
+        actor.setArrival(state.arrival);
+    }
+
+    /*
+     * Anything recorded while the batch is being written stays pending for the next flush, and so does the whole
+     * batch if it fails.
+     */
+    @Scheduled(fixedDelayString = "${agonyengine.actors.flush-interval}")
+    public void flush() {
+        List<ActorState> batch = pendingBatch();
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, batch, batch.size(), ActorStateService::setValues);
+        } catch (DataAccessException e) {
+            failures.increment();
+            LOGGER.error("Failed to write {} actor changes, will try again", batch.size(), e);
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        batch.forEach(state -> {
+            pending.remove(state.actorId, state);
+            lag.record(now - state.firstChanged, TimeUnit.NANOSECONDS);
+        });
+
+        rows.increment(batch.size());
+    }
+
+    /*
+     * Writes everything pending as part of the current transaction, so that a query later in the transaction sees
+     * the latest state. Nothing is taken off the pending list, because the transaction may still roll back; the
+     * next flush writes it again. Written straight away, nothing is ever pending.
+     */
+    public void writePending() {
+        List<ActorState> batch = pendingBatch();
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(UPDATE_SQL, batch, batch.size(), ActorStateService::setValues);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    // always in the same order, so that a flush and a transaction writing the same actors can't deadlock
+    private List<ActorState> pendingBatch() {
+        List<ActorState> batch = new ArrayList<>(pending.values());
+
+        batch.sort(Comparator.comparing(state -> state.actorId.toString()));
+
+        return batch;
+    }
+
+    private void buffer(ActorState state) {
+        pending.merge(state.actorId, state, (previous, current) -> current.since(previous));
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    private static void setValues(PreparedStatement statement, ActorState state) throws SQLException {
+        statement.setObject(1, state.gameMapId, Types.OTHER);
+        statement.setObject(2, state.x, Types.INTEGER);
+        statement.setObject(3, state.y, Types.INTEGER);
+        statement.setObject(4, state.arrival, Types.BIGINT);
+        statement.setObject(5, state.actorId, Types.OTHER);
+    }
+
+    private static class ActorState {
+        private final UUID actorId;
+        private final GameMap gameMap;
+        private final UUID gameMapId;
+        private final Integer x;
+        private final Integer y;
+        private final Long arrival;
+        private final long firstChanged;
+
+        ActorState(Actor actor, long firstChanged) {
+            // a lazy proxy would be useless once its session has closed, so hold on to the real map
+            this(actor.getId(),
+                actor.getGameMap() == null ? null : (GameMap) Hibernate.unproxy(actor.getGameMap()),
+                actor.getX(),
+                actor.getY(),
+                actor.getArrival(),
+                firstChanged);
+        }
+
+        private ActorState(UUID actorId, GameMap gameMap, Integer x, Integer y, Long arrival, long firstChanged) {
+            this.actorId = actorId;
+            this.gameMap = gameMap;
+            this.gameMapId = gameMap == null ? null : gameMap.getId();
+            this.x = x;
+            this.y = y;
+            this.arrival = arrival;
+            this.firstChanged = firstChanged;
+        }
+
+        // keeps the time of the oldest change that hasn't been written, so the lag covers the whole wait
+        ActorState since(ActorState previous) {
+            return new ActorState(actorId, gameMap, x, y, arrival, previous.firstChanged);
+        }
+    }
+}
@@ -1,61 +1,372 @@
 package com.agonyengine.service;
 
+import com.agonyengine.config.OutputProperties;
 import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.Occupant;
 import com.agonyengine.model.stomp.GameOutput;
-import com.agonyengine.repository.ActorRepository;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConversionException;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.MimeType;
+import org.springframework.util.StringUtils;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+/**
+ * Sends output to players other than the one whose command is running. When coalescing is enabled, output is
+ * held for each session and sent as a single frame with a single prompt, either when the flush interval comes
+ * around or, for the player who ran a command, along with that command's own reply.
+ *
+ * Messages can be given as a Supplier instead, which is only called once there is somebody with a session to
+ * send the message to. Output for items and other actors that nobody is playing is then never rendered at all.
+ *
+ * Output from inside a transaction is rendered straight away but only sent or held once the transaction commits,
+ * so nobody hears about a command that was rolled back.
+ */
 @Component
 public class CommService {
-    private ActorRepository actorRepository;
+    static final String EXCLUDE_HEADER = "exclude";
+
+    private final Map<String, PendingOutput> pending = new ConcurrentHashMap<>();
+
+    private OutputProperties outputProperties;
+    private OccupancyService occupancyService;
+    private RoomTopicService roomTopicService;
     private SimpMessagingTemplate simpMessagingTemplate;
 
     @Inject
-    public CommService(ActorRepository actorRepository, SimpMessagingTemplate simpMessagingTemplate) {
-        this.actorRepository = actorRepository;
+    public CommService(
+        OutputProperties outputProperties,
+        OccupancyService occupancyService,
+        RoomTopicService roomTopicService,
+        SimpMessagingTemplate simpMessagingTemplate) {
+
+        this.outputProperties = outputProperties;
+        this.occupancyService = occupancyService;
+        this.roomTopicService = roomTopicService;
         this.simpMessagingTemplate = simpMessagingTemplate;
     }
 
     public void echo(Actor target, GameOutput message) {
+        echo(target, () -> message);
+    }
+
+    public void echo(Actor target, Supplier<GameOutput> render) {
         if (target.getSessionId() == null) {
             return;
         }
 
-        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create();
+        GameOutput message = render.get();
+
+        if (isCoalescing()) {
+            hold(target.getSessionUsername(), target.getSessionId(), message);
+            return;
+        }
 
-        headerAccessor.setSessionId(target.getSessionId());
+        String sessionUsername = target.getSessionUsername();
+        String sessionId = target.getSessionId();
 
         addPrompt(message);
 
-        simpMessagingTemplate.convertAndSendToUser(target.getSessionUsername(), "/queue/output", message, headerAccessor.getMessageHeaders());
+        afterCommit(() -> sendReply(sessionUsername, sessionId, message));
+    }
+
+    /*
+     * Sends a command's reply to the session that ran it, exactly as given. The reply is expected to carry its
+     * own prompt. If a transaction is still open, such as the one around a whole tick, the reply waits for it to
+     * commit and is dropped if it rolls back.
+     */
+    public void reply(String sessionUsername, String sessionId, GameOutput output) {
+        afterCommit(() -> sendReply(sessionUsername, sessionId, output));
     }
 
+    /*
+     * The message is serialized once and the same bytes are sent to everyone in the room, rather than letting
+     * the messaging template convert it again for each recipient. With room topics enabled it is published
+     * once to the room's topic instead, and clients ignore it if their actor is listed in the exclude header.
+     */
     public void echoToRoom(Actor source, GameOutput message, Actor... exclude) {
-        List<Actor> excludeList = Arrays.asList(exclude);
+        echoToRoom(source, () -> message, exclude);
+    }
 
-        addPrompt(message);
+    public void echoToRoom(Actor source, Supplier<GameOutput> render, Actor... exclude) {
+        if (roomTopicService.isEnabled()) {
+            publishToRoom(source, render, exclude);
+            return;
+        }
+
+        boolean isCoalescing = isCoalescing();
+        GameOutput message = null;
+        Message<?> encoded = null;
+
+        for (Occupant target : occupancyService.getOccupants(source.getGameMap(), source.getX(), source.getY())) {
+            if (!target.hasSession() || Arrays.stream(exclude).anyMatch(target::isActor)) {
+                continue;
+            }
+
+            if (message == null) {
+                message = render.get();
+            }
+
+            if (isCoalescing && target.getSessionId() != null) {
+                hold(target.getSessionUsername(), target.getSessionId(), message);
+                continue;
+            }
+
+            // a copy gets the prompt when coalescing, because the same message may also be held for others
+            if (encoded == null && isCoalescing) {
+                encoded = encode(withPrompt(message));
+            } else if (encoded == null) {
+                addPrompt(message);
+                encoded = encode(message);
+            }
+
+            Message<?> sent = encoded;
+
+            afterCommit(() -> send(target.getSessionUsername(), target.getSessionId(), sent));
+        }
+    }
+
+    /*
+     * Called at the end of a command so that anything being held for the player who ran it goes out in the
+     * same frame as the command's reply, ahead of its prompt. That includes output the command's own transaction
+     * is still holding, which then goes out with the reply if it commits instead of being held again.
+     */
+    public void drainTo(String sessionId, GameOutput output) {
+        PendingOutput held = sessionId == null ? null : pending.remove(sessionId);
+
+        if (held != null) {
+            held.getMessages().forEach(message -> message.getOutput().forEach(output::append));
+        }
 
-        actorRepository.findByGameMapAndXAndY(source.getGameMap(), source.getX(), source.getY())
+        if (sessionId != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.getSynchronizations()
+                .stream()
+                .filter(synchronization -> synchronization instanceof UncommittedOutput)
+                .map(synchronization -> (UncommittedOutput) synchronization)
+                .filter(uncommitted -> uncommitted.drain(sessionId))
+                .forEach(uncommitted -> uncommitted.getMessage().getOutput().forEach(output::append));
+        }
+    }
+
+    /*
+     * Sends everything being held, one frame per session. Sessions holding a single message that was echoed
+     * to a whole room share one serialized copy of it, as they would have without coalescing.
+     */
+    @Scheduled(fixedDelayString = "${agonyengine.output.flush-interval}")
+    public void flush() {
+        Map<GameOutput, Message<?>> encodedMessages = new IdentityHashMap<>();
+
+        for (String sessionId : pending.keySet()) {
+            PendingOutput held = pending.remove(sessionId);
+
+            if (held == null) {
+                continue;
+            }
+
+            Message<?> encoded;
+
+            if (held.getMessages().size() == 1) {
+                encoded = encodedMessages.computeIfAbsent(held.getMessages().get(0), message -> encode(withPrompt(message)));
+            } else {
+                GameOutput combined = new GameOutput();
+
+                held.getMessages().forEach(message -> message.getOutput().forEach(combined::append));
+                addPrompt(combined);
+
+                encoded = encode(combined);
+            }
+
+            send(held.getSessionUsername(), sessionId, encoded);
+        }
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    private void publishToRoom(Actor source, Supplier<GameOutput> render, Actor... exclude) {
+        String room = RoomTopicService.getRoomTopic(source);
+
+        if (room == null || occupancyService.getOccupants(source.getGameMap(), source.getX(), source.getY())
             .stream()
-            .filter(t -> t.getSessionId() != null || t.getSessionUsername() != null)
-            .filter(t -> !excludeList.contains(t))
-            .forEach(t -> {
-                SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create();
+            .noneMatch(t -> t.hasSession() && Arrays.stream(exclude).noneMatch(t::isActor))) {
+
+            return;
+        }
+
+        GameOutput message = render.get();
+
+        addPrompt(message);
+
+        Message<?> encoded = encode(message);
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+
+        headerAccessor.setNativeHeader(EXCLUDE_HEADER, Arrays.stream(exclude)
+            .map(actor -> String.valueOf(actor.getId()))
+            .collect(Collectors.joining(",")));
+        headerAccessor.setContentType(encoded.getHeaders().get(MessageHeaders.CONTENT_TYPE, MimeType.class));
+        headerAccessor.setLeaveMutable(true);
+
+        Message<?> published = MessageBuilder.createMessage(encoded.getPayload(), headerAccessor.getMessageHeaders());
+
+        afterCommit(() -> simpMessagingTemplate.send(room, published));
+    }
 
-                headerAccessor.setSessionId(t.getSessionId());
+    private void sendReply(String sessionUsername, String sessionId, GameOutput output) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create();
+
+        headerAccessor.setSessionId(sessionId);
+
+        simpMessagingTemplate.convertAndSendToUser(sessionUsername, "/queue/output", output, headerAccessor.getMessageHeaders());
+    }
 
-                simpMessagingTemplate.convertAndSendToUser(t.getSessionUsername(), "/queue/output", message, headerAccessor.getMessageHeaders());
+    private boolean isCoalescing() {
+        return Boolean.TRUE.equals(outputProperties.getCoalesce());
+    }
+
+    private void afterCommit(Runnable send) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    send.run();
+                }
             });
+
+            return;
+        }
+
+        send.run();
+    }
+
+    private void hold(String username, String sessionId, GameOutput message) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new UncommittedOutput(username, sessionId, message));
+            return;
+        }
+
+        holdCommitted(username, sessionId, message);
+    }
+
+    // compute() runs under the map's lock for this session, so flush() never sees a list that is being added to
+    private void holdCommitted(String username, String sessionId, GameOutput message) {
+        pending.compute(sessionId, (id, held) -> {
+            PendingOutput output = held == null ? new PendingOutput(username) : held;
+
+            output.getMessages().add(message);
+
+            return output;
+        });
+    }
+
+    private void send(String username, String sessionId, Message<?> encoded) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+
+        headerAccessor.setSessionId(sessionId);
+        headerAccessor.setContentType(encoded.getHeaders().get(MessageHeaders.CONTENT_TYPE, MimeType.class));
+        headerAccessor.setLeaveMutable(true);
+
+        simpMessagingTemplate.send(
+            getUserDestination(username),
+            MessageBuilder.createMessage(encoded.getPayload(), headerAccessor.getMessageHeaders()));
+    }
+
+    private Message<?> encode(GameOutput message) {
+        Message<?> encoded = simpMessagingTemplate.getMessageConverter().toMessage(message, null);
+
+        if (encoded == null) {
+            throw new MessageConversionException("Unable to convert GameOutput to a message");
+        }
+
+        return encoded;
+    }
+
+    // this is the same destination that convertAndSendToUser() would have built
+    private String getUserDestination(String username) {
+        return simpMessagingTemplate.getUserDestinationPrefix() + StringUtils.replace(username, "/", "%2F") + "/queue/output";
+    }
+
+    // the same message may be held for many sessions, so it gets a copy with a prompt rather than its own
+    private GameOutput withPrompt(GameOutput message) {
+        GameOutput output = new GameOutput();
+
+        message.getOutput().forEach(output::append);
+        addPrompt(output);
+
+        return output;
     }
 
     private void addPrompt(GameOutput output) {
         output.append("");
         output.append("[default]> ");
     }
+
+    private static class PendingOutput {
+        private final String sessionUsername;
+        private final List<GameOutput> messages = new ArrayList<>();
+
+        PendingOutput(String sessionUsername) {
+            this.sessionUsername = sessionUsername;
+        }
+
+        String getSessionUsername() {
+            return sessionUsername;
+        }
+
+        List<GameOutput> getMessages() {
+            return messages;
+        }
+    }
+
+    // output held by a transaction that hasn't committed yet, which drainTo() can still take for the reply
+    private class UncommittedOutput extends TransactionSynchronizationAdapter {
+        private final String sessionUsername;
+        private final String sessionId;
+        private final GameOutput message;
+        private boolean isDrained;
+
+        UncommittedOutput(String sessionUsername, String sessionId, GameOutput message) {
+            this.sessionUsername = sessionUsername;
+            this.sessionId = sessionId;
+            this.message = message;
+        }
+
+        GameOutput getMessage() {
+            return message;
+        }
+
+        boolean drain(String sessionId) {
+            if (isDrained || !this.sessionId.equals(sessionId)) {
+                return false;
+            }
+
+            isDrained = true;
+
+            return true;
+        }
+
+        @Override
+        public void afterCommit() {
+            if (!isDrained) {
+                holdCommitted(sessionUsername, sessionId, message);
+            }
+        }
+    }
 }
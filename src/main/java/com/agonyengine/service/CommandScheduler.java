@@ -0,0 +1,14 @@
+package com.agonyengine.service;
+
+import java.util.UUID;
+
+/**
+ * Decides when a player's commands run. Commands from the same actor always run one at a time and in the
+ * order they were submitted.
+ */
+public interface CommandScheduler {
+    /*
+     * Returns false without queueing the command if the actor already has too many commands waiting.
+     */
+    boolean submit(UUID actorId, Runnable command);
+}
@@ -0,0 +1,93 @@
+package com.agonyengine.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs a command in a transaction of its own, or under a savepoint if there is already one open, such as the one
+ * around a whole tick. A command that throws or marks its status rollback-only is rolled back to its savepoint
+ * and the transaction around it carries on.
+ *
+ * Rolling back to a savepoint only undoes what went to the database, so the rest of the command goes with it here:
+ * whatever Hibernate was holding is cleared, and anything the command registered to happen after commit, such as
+ * its replies, held output and state changes, is dropped and told that it was rolled back. For that to work the
+ * transaction manager must not mark the whole transaction rollback-only when a @Transactional method inside the
+ * command throws (see ApplicationConfiguration). A method that marks its own transaction rollback-only rather than
+ * throwing still does that, and so does Hibernate when a flush fails. Hibernate offers no way to take that back, so
+ * such a command takes the whole tick down with it.
+ */
+@Component
+public class CommandTransactionTemplate extends TransactionTemplate {
+    private EntityManager entityManager;
+
+    @Inject
+    public CommandTransactionTemplate(PlatformTransactionManager transactionManager, EntityManager entityManager) {
+        super(transactionManager);
+
+        this.entityManager = entityManager;
+
+        setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+    }
+
+    @Override
+    public <T> T execute(TransactionCallback<T> action) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+            || !TransactionSynchronizationManager.isSynchronizationActive()) {
+
+            return super.execute(action);
+        }
+
+        Set<TransactionSynchronization> outer = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        outer.addAll(TransactionSynchronizationManager.getSynchronizations());
+
+        // changes are flushed before the savepoint is released, so clearing after a later rollback loses nothing
+        return super.execute(status -> {
+            try {
+                T result = action.doInTransaction(status);
+
+                if (status.isRollbackOnly()) {
+                    discard(outer);
+                } else {
+                    entityManager.flush();
+                }
+
+                return result;
+            } catch (RuntimeException | Error e) {
+                discard(outer);
+                throw e;
+            }
+        });
+    }
+
+    private void discard(Set<TransactionSynchronization> outer) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+
+        synchronizations
+            .stream()
+            .filter(outer::contains)
+            .forEach(TransactionSynchronizationManager::registerSynchronization);
+
+        entityManager.clear();
+
+        synchronizations
+            .stream()
+            .filter(synchronization -> !outer.contains(synchronization))
+            .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+    }
+}
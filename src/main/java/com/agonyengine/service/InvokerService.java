@@ -2,136 +2,131 @@ package com.agonyengine.service;
 
 import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.interpret.ArgumentBinding;
+import com.agonyengine.model.interpret.ArgumentBindingAdapter;
+import com.agonyengine.model.interpret.ArgumentResolver;
+import com.agonyengine.model.interpret.CommandDispatch;
+import com.agonyengine.model.interpret.CommandMethod;
 import com.agonyengine.model.interpret.QuotedString;
 import com.agonyengine.model.interpret.Verb;
 import com.agonyengine.model.stomp.GameOutput;
 import com.agonyengine.model.stomp.UserInput;
-import com.agonyengine.repository.VerbRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
-import org.springframework.data.domain.Sort;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
-import org.springframework.util.ReflectionUtils;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
-import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import static com.agonyengine.model.interpret.CommandMethod.STANDARD_ARG_COUNT;
+
+/**
+ * Finds the command for the first word of the player's input and calls it with the rest of the words bound to its
+ * arguments. Each argument type is bound by an ArgumentResolver registered for it; types that only implement
+ * ArgumentBinding are bound through an ArgumentBindingAdapter, which is registered the first time they are seen.
+ */
 @Component
 public class InvokerService {
-    private static final int STANDARD_CMD_ARG_COUNT = 2;
+    private static final Logger LOGGER = LoggerFactory.getLogger(InvokerService.class);
 
     private ApplicationContext applicationContext;
-    private VerbRepository verbRepository;
+    private VerbRegistry verbRegistry;
+    private Map<String, CommandDispatch> dispatchTable = new ConcurrentHashMap<>();
+    private Map<Class<?>, ArgumentResolver<?>> resolvers = new ConcurrentHashMap<>();
 
     @Inject
     public InvokerService(
         ApplicationContext applicationContext,
-        VerbRepository verbRepository) {
+        VerbRegistry verbRegistry,
+        List<ArgumentResolver<?>> resolvers) {
 
         this.applicationContext = applicationContext;
-        this.verbRepository = verbRepository;
+        this.verbRegistry = verbRegistry;
+
+        resolvers.forEach(resolver -> this.resolvers.put(resolver.getType(), resolver));
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void buildDispatchTable() {
+        verbRegistry.getVerbs().forEach(verb -> {
+            try {
+                CommandDispatch dispatch = getDispatch(verb.getBean());
+
+                dispatch.getMethods().forEach(method -> {
+                    for (int i = 0; i < method.getArgumentCount(); i++) {
+                        getResolver(method.getArgumentType(i));
+                    }
+                });
+            } catch (BeansException | IllegalArgumentException e) {
+                LOGGER.warn("Unable to build dispatch table for verb {}: {}", verb.getName(), e.getMessage());
+            }
+        });
+
+        LOGGER.debug("Built dispatch table for {} command beans", dispatchTable.size());
     }
 
     @Transactional
     public void invoke(Actor actor, GameOutput output, UserInput rawInput, List<String> tokens) {
         String verbToken = tokens.get(0);
-        Verb verb = verbRepository.findFirstByNameIgnoreCaseStartingWith(
-            Sort.by(Sort.Direction.ASC, "priority", "name"),
-            verbToken)
-            .orElse(null);
+        Verb verb = verbRegistry.find(verbToken).orElse(null);
 
         if (verb == null) {
             output.append(String.format("Unrecognized verb: %s", verbToken));
             return;
         }
 
-        Object verbBean = applicationContext.getBean(verb.getBean());
-
-        List<Method> methods = Arrays.stream(ReflectionUtils.getUniqueDeclaredMethods(verbBean.getClass()))
-            .filter(m -> "invoke".equals(m.getName()))
-            .filter(m -> (verb.isQuoting() && tokens.size() > 1) || STANDARD_CMD_ARG_COUNT + (tokens.size() - 1) == m.getParameterCount())
-            .collect(Collectors.toList());
+        CommandDispatch dispatch = getDispatch(verb.getBean());
+        CommandMethod[] methods = dispatch.getMethods(verb.isQuoting() && tokens.size() > 1 ? 1 : tokens.size() - 1);
 
-        if (methods.isEmpty()) {
+        if (methods.length == 0) {
             output.append("Valid grammars for this command are:");
 
-            Arrays.stream(ReflectionUtils.getUniqueDeclaredMethods(verbBean.getClass()))
-                .filter(m -> "invoke".equals(m.getName()))
-                .forEach(m -> {
-                    StringBuilder buf = new StringBuilder();
-
-                    buf.append(verb.getName());
-                    buf.append(" ");
-
-                    for (int i = STANDARD_CMD_ARG_COUNT; i < m.getParameterCount(); i++) {
-                        buf.append("&lt;");
-                        buf.append(getSyntaxDescription(m.getParameters()[i]));
-                        buf.append("&gt; ");
-                    }
-
-                    output.append(buf.toString());
-                });
+            dispatch.getMethods().forEach(m -> output.append(verb.getName() + " " + m.getGrammar()));
         }
 
-        for (Method method : methods) {
-            List<ArgumentBinding> arguments = new ArrayList<>();
-
+        for (CommandMethod method : methods) {
             if (tokens.size() == 1) { // no args
-                ReflectionUtils.invokeMethod(method, verbBean, actor, output);
+                method.invoke(actor, output);
                 return;
             } else if (verb.isQuoting()) { // verb automatically quotes the rest of the input (e.g. SAY)
-                QuotedString quoted = applicationContext.getBean(QuotedString.class);
+                Object quoted = getResolver(QuotedString.class).resolve(actor, UserInput.removeFirstWord(rawInput.getInput()));
 
-                if (quoted.bind(actor, UserInput.removeFirstWord(rawInput.getInput()))) {
-                    ReflectionUtils.invokeMethod(method, verbBean, actor, output, quoted);
+                if (quoted != null) {
+                    method.invoke(actor, output, quoted);
                     return;
                 }
             } else { // verb has arguments after it that we need to bind objects to
+                Object[] arguments = new Object[STANDARD_ARG_COUNT + method.getArgumentCount()];
                 boolean isBindingSuccessful = true;
 
-                for (int i = STANDARD_CMD_ARG_COUNT; i < method.getParameterCount(); i++) {
-                    ArgumentBinding binding = (ArgumentBinding) applicationContext.getBean(method.getParameterTypes()[i]);
+                arguments[0] = actor;
+                arguments[1] = output;
 
-                    if (binding.bind(actor, tokens.get(i - STANDARD_CMD_ARG_COUNT + 1))) {
-                        arguments.add(binding);
+                for (int i = 0; i < method.getArgumentCount(); i++) {
+                    Object argument = getResolver(method.getArgumentType(i)).resolve(actor, tokens.get(i + 1));
+
+                    if (argument != null) {
+                        arguments[STANDARD_ARG_COUNT + i] = argument;
                     } else {
                         isBindingSuccessful = false;
                         output.append(String.format("No \"%s\" found for word: %s",
-                            getSyntaxDescription(method.getParameters()[i]),
-                            binding.getToken()));
+                            method.getSyntaxDescription(i),
+                            tokens.get(i + 1)));
                     }
                 }
 
                 if (isBindingSuccessful) {
-                    ReflectionUtils.invokeMethod(
-                        method,
-                        verbBean,
-                        Stream.concat(
-                            Arrays.stream(new Object[]{actor, output}),
-                            arguments.stream())
-                            .toArray());
-
+                    method.invoke(arguments);
                     return;
                 } else {
-                    StringBuilder buf = new StringBuilder();
-
-                    buf.append(verb.getName());
-                    buf.append(" ");
-
-                    for (int i = STANDARD_CMD_ARG_COUNT; i < method.getParameterCount(); i++) {
-                        buf.append("&lt;");
-                        buf.append(getSyntaxDescription(method.getParameters()[i]));
-                        buf.append("&gt; ");
-                    }
-
                     output.append("Could not resolve all arguments for grammar:");
-                    output.append(buf.toString());
+                    output.append(verb.getName() + " " + method.getGrammar());
                 }
             }
         }
@@ -139,16 +134,18 @@ public class InvokerService {
         output.append("[default]Could not bind arguments for any of the available methods.");
     }
 
-    private String getSyntaxDescription(Parameter parameter) {
-        String description;
+    private CommandDispatch getDispatch(String beanName) {
+        return dispatchTable.computeIfAbsent(beanName, name -> new CommandDispatch(applicationContext.getBean(name)));
+    }
 
-        try {
-            Method descMethod = parameter.getType().getMethod("getSyntaxDescription");
-            description = (String) ReflectionUtils.invokeMethod(descMethod, null);
-        } catch (NoSuchMethodException e) {
-            description = parameter.getType().getSimpleName();
-        }
+    @SuppressWarnings("unchecked")
+    private ArgumentResolver<?> getResolver(Class<?> type) {
+        return resolvers.computeIfAbsent(type, t -> {
+            if (!ArgumentBinding.class.isAssignableFrom(t)) {
+                throw new IllegalArgumentException("No argument resolver for " + t.getName());
+            }
 
-        return description;
+            return new ArgumentBindingAdapter<>(applicationContext, (Class<? extends ArgumentBinding>) t);
+        });
     }
 }
@@ -0,0 +1,170 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.ClusterProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Picks one node of the cluster to run the jobs that should only run once no matter how many nodes there are.
+ * Every node keeps trying to take the same Postgres advisory lock; whoever holds it is the leader. The lock
+ * belongs to a database connection that this service keeps to itself (one fewer for the pool), so if the leader
+ * dies or loses its connection Postgres releases the lock and another node takes over on its next try.
+ *
+ * The connection is named after the node so that any node can look up who the leader is.
+ */
+@Component
+public class LeaderElectionService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LeaderElectionService.class);
+
+    // "AGNY" and the number of the lock, since other applications might share the database
+    static final int LOCK_CLASS = 0x41474E59;
+    static final int LOCK_ID = 1;
+
+    static final String TRY_LOCK_SQL = "SELECT pg_try_advisory_lock(?, ?)";
+    static final String NAME_SQL = "SELECT set_config('application_name', ?, false)";
+    static final String UNLOCK_SQL = "SELECT pg_advisory_unlock_all()";
+    static final String RESET_NAME_SQL = "RESET application_name";
+    static final String LEADER_SQL = "SELECT a.application_name FROM pg_locks l JOIN pg_stat_activity a ON a.pid = l.pid " +
+        "WHERE l.locktype = 'advisory' AND l.classid::bigint = ? AND l.objid::bigint = ? AND l.objsubid = 2 AND l.granted";
+
+    private final AtomicBoolean leader = new AtomicBoolean();
+
+    private ClusterProperties clusterProperties;
+    private DataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private ApplicationEventPublisher applicationEventPublisher;
+    private Connection connection;
+
+    @Inject
+    public LeaderElectionService(
+        ClusterProperties clusterProperties,
+        DataSource dataSource,
+        JdbcTemplate jdbcTemplate,
+        ApplicationEventPublisher applicationEventPublisher,
+        MeterRegistry meterRegistry) {
+
+        this.clusterProperties = clusterProperties;
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.applicationEventPublisher = applicationEventPublisher;
+
+        meterRegistry.gauge("agonyengine.cluster.leader", leader, value -> value.get() ? 1 : 0);
+    }
+
+    public boolean isLeader() {
+        return leader.get();
+    }
+
+    public String getNodeId() {
+        return clusterProperties.getNodeId();
+    }
+
+    public Optional<String> findLeader() {
+        try {
+            List<String> names = jdbcTemplate.queryForList(LEADER_SQL, String.class, LOCK_CLASS, LOCK_ID);
+
+            return names.stream().findFirst();
+        } catch (DataAccessException e) {
+            LOGGER.warn("Failed to look up the leader", e);
+            return Optional.empty();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${agonyengine.cluster.election-interval}")
+    public synchronized void elect() {
+        try {
+            if (connection == null || !connection.isValid(1)) {
+                // whatever lock we had went with the old connection
+                step(false);
+                close();
+                open();
+            }
+
+            if (!leader.get() && tryLock()) {
+                step(true);
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("Lost the leader election connection, will try again", e);
+
+            step(false);
+            close();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void resign() {
+        step(false);
+        close();
+    }
+
+    private void open() throws SQLException {
+        connection = dataSource.getConnection();
+        connection.setAutoCommit(true);
+
+        try (PreparedStatement statement = connection.prepareStatement(NAME_SQL)) {
+            statement.setString(1, clusterProperties.getNodeId());
+            statement.execute();
+        }
+    }
+
+    private boolean tryLock() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(TRY_LOCK_SQL)) {
+            statement.setInt(1, LOCK_CLASS);
+            statement.setInt(2, LOCK_ID);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    private void step(boolean isLeader) {
+        if (leader.compareAndSet(!isLeader, isLeader)) {
+            LOGGER.info("{} is {} the leader", clusterProperties.getNodeId(), isLeader ? "now" : "no longer");
+
+            applicationEventPublisher.publishEvent(new LeadershipChangedEvent(isLeader));
+        }
+    }
+
+    /*
+     * The connection goes back to the pool rather than really closing, so it mustn't take the lock with it.
+     */
+    private void close() {
+        if (connection == null) {
+            return;
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(UNLOCK_SQL);
+            statement.execute(RESET_NAME_SQL);
+        } catch (SQLException e) {
+            LOGGER.debug("Failed to clean up the leader election connection", e);
+        }
+
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOGGER.debug("Failed to close the leader election connection", e);
+        }
+
+        connection = null;
+    }
+}
@@ -0,0 +1,16 @@
+package com.agonyengine.service;
+
+/**
+ * Published by the LeaderElectionService when this node becomes the leader of the cluster or stops being it.
+ */
+public class LeadershipChangedEvent {
+    private boolean leader;
+
+    public LeadershipChangedEvent(boolean leader) {
+        this.leader = leader;
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+}
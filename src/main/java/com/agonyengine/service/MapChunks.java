@@ -0,0 +1,92 @@
+package com.agonyengine.service;
+
+import com.agonyengine.model.actor.GameMap;
+
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/*
+ * How maps are cut into chunks in the game_map_chunk table: squares of CHUNK_SIZE tiles, laid out from the
+ * bottom left corner, with the chunks along the top and right edges cut short if the map isn't a multiple of
+ * the chunk size. Each chunk's tiles are stored row by row like the map's.
+ */
+final class MapChunks {
+    static final int CHUNK_SIZE = 64;
+
+    static final String SELECT_SQL = "SELECT tiles FROM game_map_chunk WHERE game_map_id = ? AND chunk_x = ? AND chunk_y = ?";
+    static final String SELECT_ALL_SQL = "SELECT chunk_x, chunk_y, tiles FROM game_map_chunk WHERE game_map_id = ?";
+    static final String UPSERT_SQL = "INSERT INTO game_map_chunk (game_map_id, chunk_x, chunk_y, tiles) VALUES (?, ?, ?, ?) " +
+        "ON CONFLICT (game_map_id, chunk_x, chunk_y) DO UPDATE SET tiles = EXCLUDED.tiles";
+
+    private MapChunks() {
+        // this class only has static methods
+    }
+
+    static void forEachChunk(GameMap gameMap, Consumer<ChunkKey> action) {
+        for (int chunkY = 0; chunkY * CHUNK_SIZE < gameMap.getHeight(); chunkY++) {
+            for (int chunkX = 0; chunkX * CHUNK_SIZE < gameMap.getWidth(); chunkX++) {
+                action.accept(new ChunkKey(gameMap.getId(), chunkX, chunkY));
+            }
+        }
+    }
+
+    // where tile (x, y) is within its chunk
+    static int offset(GameMap gameMap, ChunkKey key, int x, int y) {
+        return (y - key.getChunkY() * CHUNK_SIZE) * chunkWidth(gameMap, key) + (x - key.getChunkX() * CHUNK_SIZE);
+    }
+
+    // where the first tile of one of the chunk's rows is within the whole map
+    static int rowStart(GameMap gameMap, ChunkKey key, int row) {
+        return (key.getChunkY() * CHUNK_SIZE + row) * gameMap.getWidth() + key.getChunkX() * CHUNK_SIZE;
+    }
+
+    static int chunkWidth(GameMap gameMap, ChunkKey key) {
+        return Math.min(CHUNK_SIZE, gameMap.getWidth() - key.getChunkX() * CHUNK_SIZE);
+    }
+
+    static int chunkHeight(GameMap gameMap, ChunkKey key) {
+        return Math.min(CHUNK_SIZE, gameMap.getHeight() - key.getChunkY() * CHUNK_SIZE);
+    }
+
+    static class ChunkKey {
+        private final UUID gameMapId;
+        private final int chunkX;
+        private final int chunkY;
+
+        ChunkKey(UUID gameMapId, int chunkX, int chunkY) {
+            this.gameMapId = gameMapId;
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+        }
+
+        static ChunkKey of(UUID gameMapId, int x, int y) {
+            return new ChunkKey(gameMapId, x / CHUNK_SIZE, y / CHUNK_SIZE);
+        }
+
+        UUID getGameMapId() {
+            return gameMapId;
+        }
+
+        int getChunkX() {
+            return chunkX;
+        }
+
+        int getChunkY() {
+            return chunkY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ChunkKey)) return false;
+            ChunkKey chunkKey = (ChunkKey) o;
+            return chunkX == chunkKey.chunkX && chunkY == chunkKey.chunkY && Objects.equals(gameMapId, chunkKey.gameMapId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(gameMapId, chunkX, chunkY);
+        }
+    }
+}
@@ -0,0 +1,578 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.MapProperties;
+import com.agonyengine.model.actor.GameMap;
+import com.agonyengine.model.actor.GameMapListener;
+import com.agonyengine.model.actor.TileStore;
+import com.agonyengine.service.MapChunks.ChunkKey;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Types;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.agonyengine.service.MapChunks.SELECT_ALL_SQL;
+import static com.agonyengine.service.MapChunks.UPSERT_SQL;
+import static com.agonyengine.service.MapChunks.chunkHeight;
+import static com.agonyengine.service.MapChunks.chunkWidth;
+import static com.agonyengine.service.MapChunks.forEachChunk;
+import static com.agonyengine.service.MapChunks.rowStart;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Keeps each map's tiles in a memory-mapped file, one byte per tile laid out row by row, so that even very large
+ * maps live outside the heap and the operating system decides which parts of them stay in memory. The first
+ * time a map is used its file is built from the chunks in the database; after that the file is the newest copy
+ * of the map, including across restarts.
+ *
+ * Changed maps are forced out to disk every flush interval, and the chunks that changed are copied back into
+ * the database every snapshot interval and at shutdown, so the database never falls too far behind the files.
+ * While a map has changes that haven't reached the database there is an empty marker file next to its tiles,
+ * so that after a crash every chunk of the map is copied to the database again. A single map's file can't be
+ * bigger than 2 GB.
+ *
+ * Mappings can't be released until they are garbage collected, so maps smaller than the mapped minimum size,
+ * such as inventories, are kept on the heap instead and loaded from the database each time. They are copied
+ * back with the rest at each snapshot, which means a crash loses whatever changed in them since the last one.
+ */
+@Component
+@ConditionalOnProperty(prefix = "agonyengine.maps", name = "backend", havingValue = "mmap")
+public class MappedTileStoreService implements TileStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedTileStoreService.class);
+
+    private final Map<UUID, MappedMap> maps = new ConcurrentHashMap<>();
+    private final Map<UUID, CompletableFuture<MappedMap>> opening = new ConcurrentHashMap<>();
+    private final Set<UUID> uncommitted = ConcurrentHashMap.newKeySet();
+
+    private Path directory;
+    private int mappedMinSize;
+    private JdbcTemplate jdbcTemplate;
+    private Counter forces;
+    private Counter writes;
+    private Counter failures;
+    private Counter dropped;
+
+    @Inject
+    public MappedTileStoreService(MapProperties mapProperties, JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.directory = Paths.get(mapProperties.getDirectory());
+        this.mappedMinSize = mapProperties.getMappedMinSize();
+        this.jdbcTemplate = jdbcTemplate;
+
+        forces = meterRegistry.counter("agonyengine.maps.mapped.forces");
+        writes = meterRegistry.counter("agonyengine.maps.chunks.writes");
+        failures = meterRegistry.counter("agonyengine.maps.chunks.failures");
+        dropped = meterRegistry.counter("agonyengine.maps.chunks.dropped");
+        meterRegistry.gaugeMapSize("agonyengine.maps.mapped", Tags.empty(), maps);
+    }
+
+    @PostConstruct
+    public void registerListener() throws IOException {
+        Files.createDirectories(directory);
+        GameMapListener.setTileStore(this);
+
+        LOGGER.info("Mapping tiles from files in {}", directory.toAbsolutePath());
+    }
+
+    /*
+     * Maps are seeded as they are saved, before there is a row for their chunks to refer to, so inside a
+     * transaction the chunks aren't copied to the database until it commits, and if it rolls back the map is
+     * thrown away.
+     */
+    @Override
+    public void seed(GameMap gameMap, byte[] tiles) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            UUID gameMapId = gameMap.getId();
+
+            uncommitted.add(gameMapId);
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        discard(gameMapId);
+                    }
+
+                    uncommitted.remove(gameMapId);
+                }
+            });
+        }
+
+        setTiles(gameMap, tiles);
+    }
+
+    @Override
+    public byte getTile(GameMap gameMap, int x, int y) {
+        return map(gameMap, true).tiles.get(y * gameMap.getWidth() + x);
+    }
+
+    /*
+     * The map is marked before the tile changes, so the marker is on disk before the change can be, and the chunk
+     * is only put on the dirty list after the tile has changed, so a snapshot that takes it off the list is sure
+     * to copy the change.
+     */
+    @Override
+    public void setTile(GameMap gameMap, int x, int y, byte value) {
+        MappedMap map = map(gameMap, true);
+
+        map.change(() -> map.tiles.put(y * gameMap.getWidth() + x, value), ChunkKey.of(gameMap.getId(), x, y));
+    }
+
+    @Override
+    public byte[] getTiles(GameMap gameMap) {
+        ByteBuffer tiles = map(gameMap, true).tiles.duplicate();
+        byte[] copy = new byte[tiles.capacity()];
+
+        tiles.get(copy);
+
+        return copy;
+    }
+
+    @Override
+    public void setTiles(GameMap gameMap, byte[] tiles) {
+        MappedMap map = map(gameMap, false);
+
+        if (!map.fits(gameMap)) {
+            map = maps.compute(gameMap.getId(), (id, existing) -> existing != null && existing.fits(gameMap)
+                ? existing
+                : open(gameMap, false));
+        }
+
+        ByteBuffer buffer = map.tiles.duplicate();
+        List<ChunkKey> keys = new ArrayList<>();
+
+        forEachChunk(gameMap, keys::add);
+        map.change(() -> buffer.put(tiles, 0, Math.min(tiles.length, buffer.capacity())), keys.toArray(new ChunkKey[0]));
+    }
+
+    /*
+     * For maps that were changed in the database behind our back. Maps with changes that haven't been copied to
+     * the database yet are kept, because they are newer; the rest have their files deleted so they will be
+     * built from the database again the next time they are used.
+     */
+    @Override
+    public void evict() {
+        maps.values().removeIf(map -> {
+            if (!map.dirtyChunks.isEmpty()) {
+                return false;
+            }
+
+            map.delete();
+
+            return true;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${agonyengine.maps.flush-interval}")
+    public void force() {
+        maps.values().forEach(this::force);
+    }
+
+    /*
+     * Chunks are taken off the dirty list before they are copied, so a tile changed during the copy marks its
+     * chunk dirty again for the next snapshot. Chunks of maps whose transaction hasn't committed yet are left
+     * for later. If the batch fails the chunks are tried again one at a time, so that one bad chunk can't hold
+     * up all the others, and chunks whose map has been deleted are dropped because there is nowhere left to
+     * write them. The markers of the maps that have nothing left to copy are removed.
+     */
+    @Scheduled(fixedDelayString = "${agonyengine.maps.snapshot-interval}")
+    public void snapshot() {
+        List<Map.Entry<ChunkKey, byte[]>> batch = new ArrayList<>();
+        List<MappedMap> copied = new ArrayList<>();
+
+        maps.values().forEach(map -> {
+            if (map.dirtyChunks.isEmpty() || uncommitted.contains(map.gameMap.getId())) {
+                return;
+            }
+
+            // forced first, so the files agree with the database once the marker is gone
+            force(map);
+
+            copied.add(map);
+            map.dirtyChunks.forEach(key -> {
+                map.dirtyChunks.remove(key);
+                batch.add(new AbstractMap.SimpleImmutableEntry<>(key, map.copyChunk(key)));
+            });
+        });
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, batch, batch.size(), (statement, entry) -> {
+                statement.setObject(1, entry.getKey().getGameMapId(), Types.OTHER);
+                statement.setInt(2, entry.getKey().getChunkX());
+                statement.setInt(3, entry.getKey().getChunkY());
+                statement.setBytes(4, entry.getValue());
+            });
+        } catch (DataAccessException e) {
+            failures.increment();
+            LOGGER.warn("Failed to copy {} map chunks to the database, trying them one at a time", batch.size(), e);
+
+            for (int i = 0; i < batch.size(); i++) {
+                if (!writeAlone(batch.get(i))) {
+                    batch.subList(i, batch.size()).forEach(entry -> redirty(entry.getKey()));
+                    break;
+                }
+            }
+
+            copied.forEach(MappedMap::clean);
+
+            return;
+        }
+
+        copied.forEach(MappedMap::clean);
+        writes.increment(batch.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        force();
+        snapshot();
+    }
+
+    int getDirtyCount() {
+        return maps.values().stream().mapToInt(map -> map.dirtyChunks.size()).sum();
+    }
+
+    boolean isMapped(GameMap gameMap) {
+        MappedMap map = maps.get(gameMap.getId());
+
+        return map != null && map.isMapped();
+    }
+
+    private void force(MappedMap map) {
+        if (map.isMapped() && map.unforced.compareAndSet(true, false)) {
+            ((MappedByteBuffer) map.tiles).force();
+            forces.increment();
+        }
+    }
+
+    /*
+     * Returns false if the chunk failed for some reason other than its map being gone, in which case the database
+     * is probably in trouble and there is no point trying the rest of the batch until the next snapshot.
+     */
+    private boolean writeAlone(Map.Entry<ChunkKey, byte[]> entry) {
+        ChunkKey key = entry.getKey();
+
+        try {
+            jdbcTemplate.update(UPSERT_SQL, statement -> {
+                statement.setObject(1, key.getGameMapId(), Types.OTHER);
+                statement.setInt(2, key.getChunkX());
+                statement.setInt(3, key.getChunkY());
+                statement.setBytes(4, entry.getValue());
+            });
+        } catch (DataIntegrityViolationException e) {
+            dropped.increment();
+            LOGGER.warn("Dropping chunk ({}, {}) of map {} because it can't be written", key.getChunkX(), key.getChunkY(), key.getGameMapId(), e);
+
+            return true;
+        } catch (DataAccessException e) {
+            LOGGER.error("Failed to copy chunk ({}, {}) of map {} to the database, will try again", key.getChunkX(), key.getChunkY(), key.getGameMapId(), e);
+
+            return false;
+        }
+
+        writes.increment();
+
+        return true;
+    }
+
+    private void redirty(ChunkKey key) {
+        MappedMap map = maps.get(key.getGameMapId());
+
+        if (map != null) {
+            map.dirtyChunks.add(key);
+        }
+    }
+
+    private void discard(UUID gameMapId) {
+        MappedMap map = maps.remove(gameMapId);
+
+        if (map != null) {
+            map.dirtyChunks.clear();
+            map.delete();
+        }
+    }
+
+    /*
+     * Building a map's file from the database can take a while, so it happens outside the map of open maps,
+     * where it would block every other map that hashes nearby. Anybody else who wants the same map in the
+     * meantime waits for the first one to finish opening it.
+     */
+    private MappedMap map(GameMap gameMap, boolean fromDatabase) {
+        MappedMap map = maps.get(gameMap.getId());
+
+        if (map != null) {
+            return map;
+        }
+
+        CompletableFuture<MappedMap> future = new CompletableFuture<>();
+        CompletableFuture<MappedMap> existing = opening.putIfAbsent(gameMap.getId(), future);
+
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        try {
+            map = maps.get(gameMap.getId());
+
+            if (map == null) {
+                MappedMap opened = open(gameMap, fromDatabase);
+
+                map = maps.computeIfAbsent(gameMap.getId(), id -> opened);
+            }
+
+            future.complete(map);
+
+            return map;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            opening.remove(gameMap.getId(), future);
+        }
+    }
+
+    private MappedMap open(GameMap gameMap, boolean fromDatabase) {
+        long size = (long)gameMap.getWidth() * gameMap.getHeight();
+
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Map " + gameMap.getId() + " is too big to map into memory: " + size + " tiles");
+        }
+
+        Path path = directory.resolve(gameMap.getId() + ".tiles");
+        Path marker = directory.resolve(gameMap.getId() + ".dirty");
+
+        if (size < mappedMinSize) {
+            return openOnHeap(gameMap, path, marker, (int) size, fromDatabase);
+        }
+
+        try {
+            boolean reuse = Files.exists(path) && Files.size(path) == size;
+            boolean unsaved = Files.exists(marker);
+
+            if (!reuse) {
+                if (unsaved) {
+                    LOGGER.warn("Discarding unsaved changes to {} because its file doesn't match the map", gameMap.getId());
+                }
+
+                Files.deleteIfExists(path);
+                Files.deleteIfExists(marker);
+            }
+
+            // the mapping stays valid after the channel is closed
+            try (FileChannel channel = FileChannel.open(path, CREATE, READ, WRITE)) {
+                MappedMap map = new MappedMap(gameMap, path, marker, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+
+                if (!reuse && fromDatabase) {
+                    map.load(jdbcTemplate);
+                }
+
+                // we don't know which chunks changed before the crash, so all of them go back to the database
+                if (reuse && unsaved) {
+                    LOGGER.info("Copying {} to the database again because it has unsaved changes", gameMap.getId());
+                    map.mark();
+                    forEachChunk(gameMap, map.dirtyChunks::add);
+                }
+
+                return map;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map tiles for " + gameMap.getId(), e);
+        }
+    }
+
+    /*
+     * A small map may still have a file from when it was mapped, with changes that never made it to the database.
+     * Those are read in and copied to the database at the next snapshot, and the file is no longer needed.
+     */
+    private MappedMap openOnHeap(GameMap gameMap, Path path, Path marker, int size, boolean fromDatabase) {
+        MappedMap map = new MappedMap(gameMap, null, null, ByteBuffer.allocate(size));
+
+        try {
+            if (Files.exists(marker) && Files.exists(path) && Files.size(path) == size) {
+                LOGGER.info("Copying {} to the database again because it has unsaved changes", gameMap.getId());
+
+                map.tiles.duplicate().put(Files.readAllBytes(path));
+                forEachChunk(gameMap, map.dirtyChunks::add);
+            } else if (fromDatabase) {
+                map.load(jdbcTemplate);
+            }
+
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(marker);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read tiles for " + gameMap.getId(), e);
+        }
+
+        return map;
+    }
+
+    private class MappedMap {
+        private final GameMap gameMap;
+        private final Path path;
+        private final Path marker;
+        private final ByteBuffer tiles;
+        private final Set<ChunkKey> dirtyChunks = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean unforced = new AtomicBoolean();
+        private final ReadWriteLock changing = new ReentrantReadWriteLock();
+        private volatile boolean marked;
+
+        // path and marker are null for maps kept on the heap
+        MappedMap(GameMap gameMap, Path path, Path marker, ByteBuffer tiles) {
+            // a copy of just the shape, so the store doesn't hang on to an entity from somebody's session
+            this.gameMap = new GameMap();
+            this.gameMap.setId(gameMap.getId());
+            this.gameMap.setWidth(gameMap.getWidth());
+            this.gameMap.setHeight(gameMap.getHeight());
+            this.path = path;
+            this.marker = marker;
+            this.tiles = tiles;
+        }
+
+        boolean fits(GameMap other) {
+            return gameMap.getWidth() == other.getWidth() && gameMap.getHeight() == other.getHeight();
+        }
+
+        boolean isMapped() {
+            return path != null;
+        }
+
+        // changes share the lock, so the marker can only be removed while nothing is half way through changing
+        void change(Runnable write, ChunkKey ... keys) {
+            changing.readLock().lock();
+
+            try {
+                if (!marked) {
+                    mark();
+                }
+
+                write.run();
+
+                dirtyChunks.addAll(Arrays.asList(keys));
+                unforced.set(true);
+            } finally {
+                changing.readLock().unlock();
+            }
+        }
+
+        synchronized void mark() {
+            if (marked || !isMapped()) {
+                marked = true;
+                return;
+            }
+
+            try (FileChannel channel = FileChannel.open(marker, CREATE, WRITE)) {
+                channel.force(true);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to mark " + gameMap.getId() + " as changed", e);
+            }
+
+            marked = true;
+        }
+
+        // the marker stays while any chunk is still waiting to be copied, including ones changed during the copy
+        void clean() {
+            changing.writeLock().lock();
+
+            try {
+                if (!dirtyChunks.isEmpty() || !isMapped()) {
+                    return;
+                }
+
+                Files.deleteIfExists(marker);
+                marked = false;
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete {}", marker, e);
+            } finally {
+                changing.writeLock().unlock();
+            }
+        }
+
+        void delete() {
+            if (!isMapped()) {
+                return;
+            }
+
+            try {
+                Files.deleteIfExists(path);
+                Files.deleteIfExists(marker);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete {}", path, e);
+            }
+        }
+
+        void load(JdbcTemplate jdbcTemplate) {
+            jdbcTemplate.query(SELECT_ALL_SQL, (RowCallbackHandler) resultSet -> {
+                ChunkKey key = new ChunkKey(gameMap.getId(), resultSet.getInt("chunk_x"), resultSet.getInt("chunk_y"));
+                byte[] chunk = resultSet.getBytes("tiles");
+                int chunkWidth = chunkWidth(gameMap, key);
+                ByteBuffer buffer = tiles.duplicate();
+
+                for (int row = 0; row < chunkHeight(gameMap, key); row++) {
+                    buffer.position(rowStart(gameMap, key, row));
+                    buffer.put(chunk, row * chunkWidth, chunkWidth);
+                }
+            }, gameMap.getId());
+
+            if (isMapped()) {
+                ((MappedByteBuffer) tiles).force();
+            }
+        }
+
+        byte[] copyChunk(ChunkKey key) {
+            int chunkWidth = chunkWidth(gameMap, key);
+            byte[] chunk = new byte[chunkWidth * chunkHeight(gameMap, key)];
+            ByteBuffer buffer = tiles.duplicate();
+
+            for (int row = 0; row < chunkHeight(gameMap, key); row++) {
+                buffer.position(rowStart(gameMap, key, row));
+                buffer.get(chunk, row * chunkWidth, chunkWidth);
+            }
+
+            return chunk;
+        }
+    }
+}
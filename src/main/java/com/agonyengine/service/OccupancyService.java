@@ -0,0 +1,362 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.ActorProperties;
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.GameMap;
+import com.agonyengine.model.actor.Occupant;
+import com.agonyengine.repository.ActorRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory index of which actors are standing on each tile of each map, so that rooms can be listed
+ * without querying the actor table. Anything that moves an actor, changes its session, or takes it in or out of
+ * the world must call update() or remove() afterwards, which is also how those changes reach ActorStateService to
+ * be written to the database. A RoomChangedEvent is published whenever an actor with a session ends up on a
+ * different tile. Like the state itself, a change made inside a transaction only reaches the index, and the event
+ * only goes out, once the transaction commits. Until then the transaction still sees the tiles as they were, so
+ * findOccupant() checks that the actor it loads is still on the tile.
+ *
+ * Each node of a cluster has its own index. Changes made here are announced with an OccupantChangedEvent, and
+ * changes made on other nodes come back through refresh() (see OccupancySyncService).
+ *
+ * Each tile is keyed by a long packing a small integer assigned to the map along with the X and Y coordinates.
+ * Tiles are copy-on-write (see TileOccupants) so that readers never lock; writers are serialized.
+ *
+ * Matching names on a tile with more occupants than the database lookup threshold (dumps, auction halls) is left
+ * to Postgres and its trigram index instead, so that the tile's name index doesn't have to be built. The database
+ * is the only thing asked: anything written behind (see ActorStateService) is written first, and every actor
+ * records when it arrived on its tile, so the database counts the occupants in the same order as the index.
+ */
+@Component
+public class OccupancyService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OccupancyService.class);
+
+    static final int COORDINATE_BITS = 21;
+    static final int MAP_BITS = 64 - (COORDINATE_BITS * 2);
+
+    private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+    private static final Pattern REGEX_SPECIAL = Pattern.compile("[\\\\.^$|?*+()\\[\\]{}]");
+    private static final String NOBODY = new UUID(0L, 0L).toString();
+
+    private final Map<UUID, Integer> mapIndexes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextMapIndex = new AtomicInteger();
+    private final AtomicLong lastArrival = new AtomicLong();
+    private final Map<Long, TileOccupants> tiles = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> actorTiles = new ConcurrentHashMap<>();
+
+    private int databaseLookupThreshold;
+    private ActorRepository actorRepository;
+    private ApplicationEventPublisher applicationEventPublisher;
+    private ActorStateService actorStateService;
+
+    @Inject
+    public OccupancyService(
+        ActorProperties actorProperties,
+        ActorRepository actorRepository,
+        ApplicationEventPublisher applicationEventPublisher,
+        ActorStateService actorStateService) {
+
+        this.databaseLookupThreshold = actorProperties.getDatabaseLookupThreshold();
+        this.actorRepository = actorRepository;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.actorStateService = actorStateService;
+    }
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        List<Actor> actors = actorRepository.findByGameMapIsNotNull();
+
+        tiles.clear();
+        actorTiles.clear();
+
+        // nobody is connected yet, so there's nobody to tell about their room
+        actors.stream()
+            .filter(OccupancyService::isInWorld)
+            .sorted(Comparator
+                .comparing(Actor::getArrival, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(actor -> actor.getId().toString()))
+            .forEach(actor -> index(new Occupant(actor), actor.getGameMap().getId(), actor.getX(), actor.getY(), false));
+
+        LOGGER.info("Indexed {} actors in {} occupied tiles", actorTiles.size(), tiles.size());
+    }
+
+    public List<Occupant> getOccupants(GameMap gameMap, Integer x, Integer y) {
+        TileOccupants tile = findTile(gameMap, x, y);
+
+        return tile == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(tile.getOccupants()));
+    }
+
+    /*
+     * Finds the first actor in the tile, other than the excluded one, with a word in its name starting with the
+     * token. A token like "2.sword" finds the second one instead. Only the matching actor is loaded from the
+     * database.
+     */
+    public Actor findOccupant(GameMap gameMap, Integer x, Integer y, Actor exclude, String token) {
+        TileOccupants tile = findTile(gameMap, x, y);
+
+        if (tile == null) {
+            return null;
+        }
+
+        String prefix = token.toUpperCase();
+        int ordinal = 1;
+        int dot = prefix.indexOf('.');
+
+        if (dot > 0 && dot < 10 && isDigits(prefix, dot)) {
+            ordinal = Integer.parseInt(prefix.substring(0, dot));
+            prefix = prefix.substring(dot + 1);
+        }
+
+        if (ordinal < 1 || prefix.isEmpty()) {
+            return null;
+        }
+
+        Occupant[] occupants = tile.getOccupants();
+
+        if (occupants.length > databaseLookupThreshold) {
+            return findCrowdedOccupant(gameMap, x, y, exclude, prefix, ordinal);
+        }
+
+        BitSet matches = tile.match(prefix);
+
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            if (occupants[i].isActor(exclude) || --ordinal > 0) {
+                continue;
+            }
+
+            Actor actor = actorRepository.findById(occupants[i].getId()).orElse(null);
+
+            if (isOnTile(actor, gameMap, x, y)) {
+                return actor;
+            }
+        }
+
+        return null;
+    }
+
+    public void update(Actor actor) {
+        if (!isInWorld(actor)) {
+            remove(actor);
+            return;
+        }
+
+        UUID gameMapId = actor.getGameMap().getId();
+        int x = actor.getX();
+        int y = actor.getY();
+        Integer mapIndex = mapIndexes.get(gameMapId);
+        Long previousKey = actorTiles.get(actor.getId());
+
+        if (mapIndex == null || previousKey == null || previousKey != key(mapIndex, x, y)) {
+            actor.setArrival(nextArrival());
+        }
+
+        Occupant occupant = new Occupant(actor);
+
+        actorStateService.record(actor);
+        applicationEventPublisher.publishEvent(new OccupantChangedEvent(actor.getId()));
+        afterCommit(() -> index(occupant, gameMapId, x, y, true));
+    }
+
+    public void remove(Actor actor) {
+        UUID actorId = actor.getId();
+
+        actorStateService.record(actor);
+        applicationEventPublisher.publishEvent(new OccupantChangedEvent(actorId));
+        afterCommit(() -> unindex(actorId, true));
+    }
+
+    /*
+     * Picks up a change to an actor that has already been committed, usually by another node. The change has
+     * already been recorded and announced, and the player's own node takes care of their room.
+     */
+    public void refresh(UUID actorId) {
+        Actor actor = actorRepository.findById(actorId).orElse(null);
+
+        if (actor == null || !isInWorld(actor)) {
+            unindex(actorId, false);
+            return;
+        }
+
+        index(new Occupant(actor), actor.getGameMap().getId(), actor.getX(), actor.getY(), false);
+    }
+
+    /*
+     * Moves made earlier in the same transaction aren't in the database yet either, so the actor it finds is
+     * still checked against the tile.
+     */
+    private Actor findCrowdedOccupant(GameMap gameMap, Integer x, Integer y, Actor exclude, String prefix, int ordinal) {
+        actorStateService.writePending();
+
+        List<String> ids = actorRepository.findIdsByNameWordPrefix(
+            gameMap.getId().toString(),
+            x,
+            y,
+            "(^| )" + REGEX_SPECIAL.matcher(prefix).replaceAll("\\\\$0"),
+            exclude == null || exclude.getId() == null ? NOBODY : exclude.getId().toString(),
+            ordinal - 1);
+
+        if (ids.isEmpty()) {
+            return null;
+        }
+
+        Actor actor = actorRepository.findById(UUID.fromString(ids.get(0))).orElse(null);
+
+        return isOnTile(actor, gameMap, x, y) ? actor : null;
+    }
+
+    private TileOccupants findTile(GameMap gameMap, Integer x, Integer y) {
+        if (gameMap == null || gameMap.getId() == null || x == null || y == null) {
+            return null;
+        }
+
+        Integer mapIndex = mapIndexes.get(gameMap.getId());
+
+        return mapIndex == null ? null : tiles.get(key(mapIndex, x, y));
+    }
+
+    private void afterCommit(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+
+            return;
+        }
+
+        change.run();
+    }
+
+    private synchronized void index(Occupant occupant, UUID gameMapId, int x, int y, boolean publish) {
+        long key = key(internMap(gameMapId), x, y);
+        Long previousKey = actorTiles.put(occupant.getId(), key);
+
+        if (previousKey != null && previousKey != key) {
+            removeFromTile(previousKey, occupant.getId());
+        }
+
+        tiles.compute(key, (k, tile) -> {
+            if (tile == null) {
+                return new TileOccupants(new Occupant[] { occupant });
+            }
+
+            int index = indexOf(tile.getOccupants(), occupant.getId());
+
+            return index >= 0 ? tile.replace(index, occupant) : tile.add(occupant);
+        });
+
+        if (publish && occupant.hasSession() && (previousKey == null || previousKey != key)) {
+            applicationEventPublisher.publishEvent(new RoomChangedEvent(occupant, gameMapId, x, y));
+        }
+    }
+
+    private synchronized void unindex(UUID actorId, boolean publish) {
+        Long key = actorTiles.remove(actorId);
+
+        if (key != null) {
+            Occupant removed = removeFromTile(key, actorId);
+
+            if (publish && removed != null && removed.hasSession()) {
+                applicationEventPublisher.publishEvent(new RoomChangedEvent(removed, null, null, null));
+            }
+        }
+    }
+
+    // only called by the synchronized writers, so the tile can't change between reading and replacing it
+    private Occupant removeFromTile(long key, UUID actorId) {
+        TileOccupants tile = tiles.get(key);
+        Occupant[] occupants = tile == null ? null : tile.getOccupants();
+        int index = occupants == null ? -1 : indexOf(occupants, actorId);
+
+        if (index < 0) {
+            return null;
+        }
+
+        if (occupants.length == 1) {
+            tiles.remove(key);
+        } else {
+            tiles.put(key, tile.remove(index));
+        }
+
+        return occupants[index];
+    }
+
+    // microseconds since the epoch as near as the clock allows, but never the same twice on one node
+    private long nextArrival() {
+        long now = System.currentTimeMillis() * 1000;
+
+        return lastArrival.updateAndGet(last -> Math.max(last + 1, now));
+    }
+
+    private int internMap(UUID mapId) {
+        return mapIndexes.computeIfAbsent(mapId, id -> {
+            int index = nextMapIndex.getAndIncrement();
+
+            if (index >= 1 << MAP_BITS) {
+                throw new IllegalStateException("Too many maps to index: " + index);
+            }
+
+            return index;
+        });
+    }
+
+    static long key(int mapIndex, int x, int y) {
+        return ((long)mapIndex << (COORDINATE_BITS * 2))
+            | ((x & COORDINATE_MASK) << COORDINATE_BITS)
+            | (y & COORDINATE_MASK);
+    }
+
+    private static boolean isInWorld(Actor actor) {
+        return actor.getGameMap() != null && actor.getGameMap().getId() != null && actor.getX() != null && actor.getY() != null;
+    }
+
+    // the transaction that moved it may not have committed yet, so the index can still have it here
+    private static boolean isOnTile(Actor actor, GameMap gameMap, Integer x, Integer y) {
+        return actor != null
+            && actor.getGameMap() != null
+            && gameMap.getId().equals(actor.getGameMap().getId())
+            && x.equals(actor.getX())
+            && y.equals(actor.getY());
+    }
+
+    private static boolean isDigits(String text, int end) {
+        for (int i = 0; i < end; i++) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int indexOf(Occupant[] occupants, UUID actorId) {
+        for (int i = 0; i < occupants.length; i++) {
+            if (occupants[i].getId().equals(actorId)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,157 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.WebSocketBrokerProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps the occupancy index on every node of a cluster in step with the others. Each change to the index is
+ * announced with a Postgres NOTIFY sent inside the transaction that made it, so it only goes out if that
+ * transaction commits, and only once the actor's new state is in the database (see ActorStateService). Every node
+ * LISTENs on a connection that this service keeps to itself, and reloads the actors it hears about from the
+ * database.
+ *
+ * That includes the node that made the change. Whatever order two nodes' changes to the same actor and the reloads
+ * happen in, every index ends up agreeing with the last one to commit. Anything said while a node wasn't listening
+ * is lost, so the whole index is rebuilt whenever the connection is opened again.
+ *
+ * With the SIMPLE broker there is only one node and nothing to keep in step.
+ */
+@Component
+public class OccupancySyncService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OccupancySyncService.class);
+
+    static final String CHANNEL = "agonyengine_occupancy";
+    static final String NOTIFY_SQL = "SELECT pg_notify('" + CHANNEL + "', ?)";
+    static final String LISTEN_SQL = "LISTEN " + CHANNEL;
+    static final String UNLISTEN_SQL = "UNLISTEN *";
+
+    // pgjdbc only reads notifications off the wire while it is waiting for the answer to something else
+    static final String POLL_SQL = "SELECT 1";
+
+    private boolean isEnabled;
+    private DataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private OccupancyService occupancyService;
+    private Counter received;
+    private Connection connection;
+
+    @Inject
+    public OccupancySyncService(
+        WebSocketBrokerProperties brokerProperties,
+        DataSource dataSource,
+        JdbcTemplate jdbcTemplate,
+        OccupancyService occupancyService,
+        MeterRegistry meterRegistry) {
+
+        this.isEnabled = !brokerProperties.isSimple();
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.occupancyService = occupancyService;
+
+        received = meterRegistry.counter("agonyengine.occupancy.sync.received");
+    }
+
+    @EventListener
+    public void onOccupantChanged(OccupantChangedEvent event) {
+        if (isEnabled) {
+            jdbcTemplate.queryForList(NOTIFY_SQL, event.getActorId().toString());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${agonyengine.cluster.sync-interval}")
+    public synchronized void poll() {
+        if (!isEnabled) {
+            return;
+        }
+
+        try {
+            if (connection == null || !connection.isValid(1)) {
+                close();
+                open();
+
+                occupancyService.rebuild();
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(POLL_SQL);
+            }
+
+            PGNotification[] notifications = connection.unwrap(PGConnection.class).getNotifications();
+
+            if (notifications == null) {
+                return;
+            }
+
+            // an actor that moved several times since the last poll only needs loading once
+            Set<UUID> actorIds = new LinkedHashSet<>();
+
+            Arrays.stream(notifications)
+                .map(notification -> UUID.fromString(notification.getParameter()))
+                .forEach(actorIds::add);
+
+            actorIds.forEach(occupancyService::refresh);
+            received.increment(notifications.length);
+        } catch (SQLException e) {
+            LOGGER.warn("Lost the occupancy sync connection, will try again", e);
+
+            close();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        close();
+    }
+
+    private void open() throws SQLException {
+        connection = dataSource.getConnection();
+        connection.setAutoCommit(true);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(LISTEN_SQL);
+        }
+    }
+
+    /*
+     * The connection goes back to the pool rather than really closing, so it mustn't keep listening.
+     */
+    private void close() {
+        if (connection == null) {
+            return;
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(UNLISTEN_SQL);
+        } catch (SQLException e) {
+            LOGGER.debug("Failed to clean up the occupancy sync connection", e);
+        }
+
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOGGER.debug("Failed to close the occupancy sync connection", e);
+        }
+
+        connection = null;
+    }
+}
@@ -0,0 +1,19 @@
+package com.agonyengine.service;
+
+import java.util.UUID;
+
+/**
+ * Published by the OccupancyService, inside the transaction that made the change, whenever an actor on this node
+ * moves, changes its session, or leaves the world. The OccupancySyncService passes it on to the other nodes.
+ */
+public class OccupantChangedEvent {
+    private UUID actorId;
+
+    public OccupantChangedEvent(UUID actorId) {
+        this.actorId = actorId;
+    }
+
+    public UUID getActorId() {
+        return actorId;
+    }
+}
@@ -1,46 +1,125 @@
 package com.agonyengine.service;
 
+import com.agonyengine.config.ReaperProperties;
 import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.message.MessageTemplate;
 import com.agonyengine.model.stomp.GameOutput;
 import com.agonyengine.repository.ActorRepository;
+import com.agonyengine.util.TimingWheel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
+import javax.transaction.Transactional;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 
+/**
+ * Removes players from the world once they have been link dead for too long. Each player's deadline goes onto
+ * a timing wheel when they disconnect and comes off again if they reconnect, so nobody is reaped late and there
+ * is no need to keep querying for them. Each node reaps the players who disconnected from it.
+ *
+ * The cluster's leader also searches the database when it is elected, which for a single server is at startup,
+ * and again every rescan interval, to pick up players who disconnected from a node that has since gone away.
+ * Taking a player out of the world is a conditional update on the disconnect it was scheduled for, so when two
+ * nodes both go for the same player only one of them reaps it. Disconnects and reconnects are written to the
+ * database as they happen rather than behind like positions are, so a player who has come back on another node
+ * never still looks link dead to the leader.
+ */
 @Component
 public class ReaperService {
     private static final Logger LOGGER = LoggerFactory.getLogger(ReaperService.class);
+    private static final MessageTemplate DISAPPEARS = MessageTemplate.compile("[yellow]$n disappears in a puff of smoke!");
 
+    private ReaperProperties reaperProperties;
     private ActorRepository actorRepository;
     private CommService commService;
+    private OccupancyService occupancyService;
+    private TimingWheel<UUID> timingWheel;
+    private volatile boolean leader;
 
     @Inject
     public ReaperService(
+        ReaperProperties reaperProperties,
         ActorRepository actorRepository,
-        CommService commService) {
+        CommService commService,
+        OccupancyService occupancyService) {
 
+        this.reaperProperties = reaperProperties;
         this.actorRepository = actorRepository;
         this.commService = commService;
+        this.occupancyService = occupancyService;
+
+        timingWheel = new TimingWheel<>(reaperProperties.getTickDuration(), reaperProperties.getWheelSize(), System.currentTimeMillis());
     }
 
-    @Scheduled(fixedRate = 600000L)
-    public void reapLinkDeadActors() {
-        LOGGER.debug("Querying for link-dead players to reap...");
+    @EventListener
+    public void onLeadershipChanged(LeadershipChangedEvent event) {
+        leader = event.isLeader();
+
+        if (leader) {
+            recover();
+        }
+    }
+
+    /*
+     * Only looks for players whose deadline has already passed. Anybody more recent either belongs to a node
+     * that will reap them itself or will still be there on the next rescan.
+     */
+    @Scheduled(fixedDelayString = "${agonyengine.reaper.rescan-interval}")
+    public void rescan() {
+        if (!leader) {
+            return;
+        }
+
+        Date cutoff = new Date(System.currentTimeMillis() - reaperProperties.getLinkDeadTimeout());
+        List<Actor> actors = actorRepository.findByDisconnectedDateIsBeforeAndGameMapIsNotNull(cutoff);
+
+        actors.forEach(actor -> schedule(actor.getId(), actor.getDisconnectedDate()));
+
+        if (!actors.isEmpty()) {
+            LOGGER.info("Found {} orphaned link-dead players waiting to be reaped", actors.size());
+        }
+    }
 
-        List<Actor> actors = actorRepository.findByDisconnectedDateIsBeforeAndGameMapIsNotNull(new Date(System.currentTimeMillis() - (1000 * 60 * 30)));
+    void recover() {
+        List<Actor> actors = actorRepository.findByDisconnectedDateIsBeforeAndGameMapIsNotNull(new Date());
 
-        actors.forEach(actor -> {
-            LOGGER.info("Reaping link-dead player: {}", actor.getName());
+        actors.forEach(actor -> schedule(actor.getId(), actor.getDisconnectedDate()));
 
-            commService.echoToRoom(actor, new GameOutput(String.format("[yellow]%s disappears in a puff of smoke!", actor.getName())), actor);
-            actor.setGameMap(null);
-        });
+        LOGGER.info("Found {} link-dead players waiting to be reaped", actors.size());
+    }
+
+    public void schedule(UUID actorId, Date disconnectedDate) {
+        timingWheel.schedule(actorId, disconnectedDate.getTime() + reaperProperties.getLinkDeadTimeout());
+    }
+
+    public void cancel(UUID actorId) {
+        timingWheel.cancel(actorId);
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${agonyengine.reaper.tick-duration}")
+    public void reapLinkDeadActors() {
+        timingWheel.advance(System.currentTimeMillis()).forEach(actorId -> actorRepository.findById(actorId)
+            // they might have come back or left the world some other way since their deadline was set
+            .filter(actor -> actor.getDisconnectedDate() != null && actor.getGameMap() != null)
+            // and another node might have got to them first
+            .filter(actor -> actorRepository.removeIfLinkDeadSince(actor.getId(), actor.getDisconnectedDate()) > 0)
+            .ifPresent(actor -> {
+                LOGGER.info("Reaping link-dead player: {}", actor.getName());
+
+                commService.echoToRoom(actor, new GameOutput(DISAPPEARS.render(actor)), actor);
+                actor.setGameMap(null);
+                occupancyService.remove(actor);
+            }));
+    }
 
-        actorRepository.saveAll(actors);
+    int getScheduledCount() {
+        return timingWheel.size();
     }
 }
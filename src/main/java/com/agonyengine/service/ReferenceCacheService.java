@@ -0,0 +1,48 @@
+package com.agonyengine.service;
+
+import com.agonyengine.model.actor.GameMap;
+import com.agonyengine.model.actor.Pronoun;
+import com.agonyengine.model.actor.TileStore;
+import com.agonyengine.model.interpret.Verb;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Empties the second level cache regions for the read-mostly entities. The repeatable migrations that load
+ * maps, verbs and pronouns run at startup before the cache exists, so this is for rows that were changed some
+ * other way while the server was running, such as by hand or by another server.
+ */
+@Component
+public class ReferenceCacheService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceCacheService.class);
+
+    static final List<Class<?>> CACHED_ENTITIES = Collections.unmodifiableList(Arrays.asList(
+        GameMap.class,
+        Pronoun.class,
+        Verb.class));
+
+    private EntityManagerFactory entityManagerFactory;
+    private TileStore tileStore;
+
+    @Inject
+    public ReferenceCacheService(EntityManagerFactory entityManagerFactory, TileStore tileStore) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.tileStore = tileStore;
+    }
+
+    public void evict() {
+        CACHED_ENTITIES.forEach(entity -> entityManagerFactory.getCache().evict(entity));
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegions();
+        tileStore.evict();
+
+        LOGGER.info("Evicted cached {}", CACHED_ENTITIES);
+    }
+}
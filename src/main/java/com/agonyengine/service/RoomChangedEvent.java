@@ -0,0 +1,43 @@
+package com.agonyengine.service;
+
+import com.agonyengine.model.actor.Occupant;
+
+import java.util.UUID;
+
+/**
+ * Published by the OccupancyService whenever an actor with a session moves to a different tile, or leaves the
+ * world altogether, in which case the map and coordinates are null. It is only published once the move commits.
+ */
+public class RoomChangedEvent {
+    private Occupant occupant;
+    private UUID mapId;
+    private Integer x;
+    private Integer y;
+
+    public RoomChangedEvent(Occupant occupant, UUID mapId, Integer x, Integer y) {
+        this.occupant = occupant;
+        this.mapId = mapId;
+        this.x = x;
+        this.y = y;
+    }
+
+    public Occupant getOccupant() {
+        return occupant;
+    }
+
+    public UUID getMapId() {
+        return mapId;
+    }
+
+    public Integer getX() {
+        return x;
+    }
+
+    public Integer getY() {
+        return y;
+    }
+
+    public boolean isInWorld() {
+        return mapId != null;
+    }
+}
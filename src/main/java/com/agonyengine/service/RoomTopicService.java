@@ -0,0 +1,113 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.WebSocketBrokerProperties;
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.Occupant;
+import com.agonyengine.model.stomp.GameOutput;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * When room topics are enabled, each occupied tile has its own broker topic so that a room message is published
+ * once and fanned out by the broker. This keeps track of which room each session belongs in, tells the client
+ * to move its subscription when its actor changes rooms, and decides which room subscriptions are allowed.
+ */
+@Component
+public class RoomTopicService {
+    static final String ROOM_TOPIC_PREFIX = "/topic/room.";
+
+    private final Map<String, String> sessionRooms = new ConcurrentHashMap<>();
+
+    private WebSocketBrokerProperties brokerProperties;
+    private SimpMessagingTemplate simpMessagingTemplate;
+
+    @Inject
+    public RoomTopicService(WebSocketBrokerProperties brokerProperties, SimpMessagingTemplate simpMessagingTemplate) {
+        this.brokerProperties = brokerProperties;
+        this.simpMessagingTemplate = simpMessagingTemplate;
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(brokerProperties.getRoomTopics());
+    }
+
+    public static String getRoomTopic(UUID mapId, int x, int y) {
+        return ROOM_TOPIC_PREFIX + mapId + "." + x + "." + y;
+    }
+
+    public static String getRoomTopic(Actor actor) {
+        if (actor.getGameMap() == null || actor.getX() == null || actor.getY() == null) {
+            return null;
+        }
+
+        return getRoomTopic(actor.getGameMap().getId(), actor.getX(), actor.getY());
+    }
+
+    /*
+     * Called when a session subscribes to its output queue, so that the room can be returned directly to the
+     * client in the subscription reply.
+     */
+    public String join(String sessionId, Actor actor) {
+        String room = getRoomTopic(actor);
+
+        if (room == null) {
+            sessionRooms.remove(sessionId);
+            return "";
+        }
+
+        sessionRooms.put(sessionId, room);
+
+        return room;
+    }
+
+    public boolean canSubscribe(String sessionId, String destination) {
+        if (destination == null || !destination.startsWith(ROOM_TOPIC_PREFIX)) {
+            return true;
+        }
+
+        return isEnabled() && destination.equals(sessionRooms.get(sessionId));
+    }
+
+    @EventListener
+    public void onRoomChanged(RoomChangedEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        Occupant occupant = event.getOccupant();
+        GameOutput control = new GameOutput();
+
+        if (occupant.getSessionId() == null) {
+            return;
+        }
+
+        if (event.isInWorld()) {
+            String room = getRoomTopic(event.getMapId(), event.getX(), event.getY());
+
+            sessionRooms.put(occupant.getSessionId(), room);
+            control.setRoom(room);
+        } else {
+            sessionRooms.remove(occupant.getSessionId());
+            control.setRoom("");
+        }
+
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create();
+
+        headerAccessor.setSessionId(occupant.getSessionId());
+
+        simpMessagingTemplate.convertAndSendToUser(occupant.getSessionUsername(), "/queue/output", control, headerAccessor.getMessageHeaders());
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessionRooms.remove(event.getSessionId());
+    }
+}
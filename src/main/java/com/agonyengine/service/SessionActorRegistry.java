@@ -0,0 +1,123 @@
+package com.agonyengine.service;
+
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.repository.ActorRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which actor is attached to each STOMP session so that incoming commands can load their actor by
+ * primary key instead of searching by session username and id. Entries are checked against the loaded actor
+ * before they are trusted, and anything missing or stale falls back to the database.
+ */
+@Component
+public class SessionActorRegistry {
+    private final Map<String, SessionEntry> sessions = new ConcurrentHashMap<>();
+    private final Map<UUID, String> actorSessions = new ConcurrentHashMap<>();
+
+    private ActorRepository actorRepository;
+    private Counter hits;
+    private Counter misses;
+
+    @Inject
+    public SessionActorRegistry(ActorRepository actorRepository, MeterRegistry meterRegistry) {
+        this.actorRepository = actorRepository;
+
+        hits = meterRegistry.counter("agonyengine.session.actor.lookups", "result", "hit");
+        misses = meterRegistry.counter("agonyengine.session.actor.lookups", "result", "miss");
+        meterRegistry.gaugeMapSize("agonyengine.session.actor.size", Tags.empty(), sessions);
+    }
+
+    public void register(String sessionUsername, String sessionId, UUID actorId) {
+        sessions.put(sessionId, new SessionEntry(sessionUsername, actorId));
+
+        String previousSessionId = actorSessions.put(actorId, sessionId);
+
+        // the actor reconnected in another browser, so its old session can't be used to find it any more
+        if (previousSessionId != null && !previousSessionId.equals(sessionId)) {
+            sessions.remove(previousSessionId);
+        }
+    }
+
+    public void evict(String sessionId) {
+        SessionEntry entry = sessions.remove(sessionId);
+
+        if (entry != null) {
+            actorSessions.remove(entry.getActorId(), sessionId);
+        }
+    }
+
+    public Actor findActor(String sessionUsername, String sessionId) {
+        SessionEntry entry = sessions.get(sessionId);
+
+        if (entry != null && entry.getSessionUsername().equals(sessionUsername)) {
+            Actor actor = actorRepository.findById(entry.getActorId()).orElse(null);
+
+            if (actor != null
+                && Objects.equals(sessionUsername, actor.getSessionUsername())
+                && Objects.equals(sessionId, actor.getSessionId())) {
+
+                hits.increment();
+                return actor;
+            }
+
+            evict(sessionId);
+        }
+
+        misses.increment();
+
+        Actor actor = actorRepository.findBySessionUsernameAndSessionId(sessionUsername, sessionId);
+
+        if (actor != null) {
+            register(sessionUsername, sessionId, actor.getId());
+        }
+
+        return actor;
+    }
+
+    /*
+     * Used to decide which mailbox an incoming command belongs in, so a registered session is taken at its word
+     * without loading the actor. The command checks the actor properly when it runs.
+     */
+    public UUID findActorId(String sessionUsername, String sessionId) {
+        SessionEntry entry = sessions.get(sessionId);
+
+        if (entry != null && entry.getSessionUsername().equals(sessionUsername)) {
+            return entry.getActorId();
+        }
+
+        Actor actor = findActor(sessionUsername, sessionId);
+
+        return actor == null ? null : actor.getId();
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private static class SessionEntry {
+        private final String sessionUsername;
+        private final UUID actorId;
+
+        SessionEntry(String sessionUsername, UUID actorId) {
+            this.sessionUsername = sessionUsername;
+            this.actorId = actorId;
+        }
+
+        String getSessionUsername() {
+            return sessionUsername;
+        }
+
+        UUID getActorId() {
+            return actorId;
+        }
+    }
+}
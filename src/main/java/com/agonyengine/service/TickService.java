@@ -0,0 +1,207 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.InputProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A classic MUD pulse. Commands wait in a queue for their actor, and on every tick each actor with something
+ * queued gets to run exactly one command, taking turns in round-robin order. The whole tick runs in one
+ * transaction, and the replies and held room output go out together once it commits. Each command runs in a
+ * nested transaction under its own savepoint, so a command that fails is rolled back on its own, along with its
+ * replies and output, and the rest of the tick still commits.
+ *
+ * If a tick runs long the next one starts immediately to catch up, but the engine never tries to make up more
+ * than a few ticks at once; beyond that the missed ticks are dropped and the schedule starts over from now.
+ */
+@Component
+@ConditionalOnProperty(prefix = "agonyengine.input", name = "scheduler", havingValue = "tick")
+public class TickService implements CommandScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TickService.class);
+
+    static final int MAX_CATCH_UP_TICKS = 5;
+
+    private final Map<UUID, Queue<Runnable>> queues = new HashMap<>();
+    private final Queue<UUID> ready = new ArrayDeque<>();
+    private final AtomicInteger depth = new AtomicInteger();
+
+    private InputProperties inputProperties;
+    private TransactionOperations transactionOperations;
+    private CommService commService;
+    private Timer tickTimer;
+    private Counter overruns;
+    private Counter skippedTicks;
+    private Counter failedCommands;
+    private ScheduledExecutorService executor;
+    private long nextTick;
+
+    @Inject
+    public TickService(
+        InputProperties inputProperties,
+        TransactionOperations transactionOperations,
+        CommService commService,
+        MeterRegistry meterRegistry) {
+
+        this.inputProperties = inputProperties;
+        this.transactionOperations = transactionOperations;
+        this.commService = commService;
+
+        tickTimer = meterRegistry.timer("agonyengine.tick.duration");
+        overruns = meterRegistry.counter("agonyengine.tick.overruns");
+        skippedTicks = meterRegistry.counter("agonyengine.tick.skipped");
+        failedCommands = meterRegistry.counter("agonyengine.tick.commands.failed");
+        meterRegistry.gauge("agonyengine.tick.queue.depth", depth);
+    }
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tick");
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        nextTick = System.nanoTime();
+        executor.execute(this::pulse);
+
+        LOGGER.info("Running commands every {} ms", inputProperties.getTickInterval());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public synchronized boolean submit(UUID actorId, Runnable command) {
+        Queue<Runnable> queue = queues.computeIfAbsent(actorId, id -> new ArrayDeque<>());
+
+        if (queue.size() >= inputProperties.getMailboxDepth()) {
+            return false;
+        }
+
+        if (queue.isEmpty()) {
+            ready.add(actorId);
+        }
+
+        queue.add(command);
+        depth.incrementAndGet();
+
+        return true;
+    }
+
+    void tick() {
+        long start = System.nanoTime();
+        List<Runnable> batch = takeBatch();
+
+        if (!batch.isEmpty()) {
+            try {
+                transactionOperations.execute(status -> {
+                    batch.forEach(this::runNested);
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                // the commands have already had their turn, so running them again would repeat whatever they did
+                LOGGER.error("Tick failed to commit, dropping its {} commands", batch.size(), e);
+            }
+        }
+
+        commService.flush();
+        tickTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /*
+     * Takes the next command from each actor that has one, in the order the actors have been waiting. Actors
+     * with more queued go to the back of the line for the next tick.
+     */
+    synchronized List<Runnable> takeBatch() {
+        List<Runnable> batch = new ArrayList<>(ready.size());
+        int actors = ready.size();
+
+        for (int i = 0; i < actors; i++) {
+            UUID actorId = ready.poll();
+            Queue<Runnable> queue = queues.get(actorId);
+
+            batch.add(queue.poll());
+            depth.decrementAndGet();
+
+            if (queue.isEmpty()) {
+                queues.remove(actorId);
+            } else {
+                ready.add(actorId);
+            }
+        }
+
+        return batch;
+    }
+
+    private void pulse() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            LOGGER.error("Tick failed", e);
+        } finally {
+            scheduleNext();
+        }
+    }
+
+    private void scheduleNext() {
+        long interval = TimeUnit.MILLISECONDS.toNanos(inputProperties.getTickInterval());
+        long now = System.nanoTime();
+
+        nextTick += interval;
+
+        if (nextTick < now) {
+            overruns.increment();
+
+            long behind = (now - nextTick) / interval;
+
+            if (behind > MAX_CATCH_UP_TICKS) {
+                skippedTicks.increment(behind);
+                nextTick = now;
+            }
+        }
+
+        if (!executor.isShutdown()) {
+            executor.schedule(this::pulse, Math.max(0, nextTick - now), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // the transaction operations open a savepoint when there's a transaction already, see CommandTransactionTemplate
+    private void runNested(Runnable command) {
+        try {
+            transactionOperations.execute(status -> {
+                command.run();
+                return null;
+            });
+        } catch (RuntimeException e) {
+            failedCommands.increment();
+            LOGGER.error("Command failed", e);
+        }
+    }
+}
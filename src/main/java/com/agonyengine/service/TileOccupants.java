@@ -0,0 +1,215 @@
+package com.agonyengine.service;
+
+import com.agonyengine.model.actor.Occupant;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+/**
+ * The occupants of one tile in the order they arrived. A TileOccupants is never changed once it's built;
+ * OccupancyService swaps in a new one whenever somebody arrives or leaves.
+ *
+ * Crowded tiles also get a sorted index of every word in their occupants' names, built the first time somebody
+ * looks for something there, so that matching a word is a binary search instead of a look at every name. The
+ * index is carried over to the next TileOccupants when somebody arrives or leaves, only adding or removing that
+ * one occupant's words, so a busy tile isn't sorted again from scratch every time its crowd changes.
+ */
+final class TileOccupants {
+    static final int INDEX_THRESHOLD = 32;
+
+    private final Occupant[] occupants;
+    private volatile NameIndex nameIndex;
+
+    TileOccupants(Occupant[] occupants) {
+        this.occupants = occupants;
+    }
+
+    private TileOccupants(Occupant[] occupants, NameIndex nameIndex) {
+        this.occupants = occupants;
+        this.nameIndex = occupants.length < INDEX_THRESHOLD ? null : nameIndex;
+    }
+
+    Occupant[] getOccupants() {
+        return occupants;
+    }
+
+    TileOccupants add(Occupant occupant) {
+        Occupant[] added = Arrays.copyOf(occupants, occupants.length + 1);
+        NameIndex index = nameIndex;
+
+        added[occupants.length] = occupant;
+
+        return new TileOccupants(added, index == null ? null : index.add(occupant.getNameTokens(), occupants.length));
+    }
+
+    TileOccupants replace(int position, Occupant occupant) {
+        Occupant[] replaced = occupants.clone();
+        NameIndex index = nameIndex;
+
+        replaced[position] = occupant;
+
+        return new TileOccupants(replaced, index == null ? null : index.remove(position, false).add(occupant.getNameTokens(), position));
+    }
+
+    TileOccupants remove(int position) {
+        Occupant[] removed = new Occupant[occupants.length - 1];
+        NameIndex index = nameIndex;
+
+        System.arraycopy(occupants, 0, removed, 0, position);
+        System.arraycopy(occupants, position + 1, removed, position, occupants.length - position - 1);
+
+        return new TileOccupants(removed, index == null ? null : index.remove(position, true));
+    }
+
+    /*
+     * The positions of the occupants with a word in their names starting with the prefix, which must already be
+     * upper cased.
+     */
+    BitSet match(String prefix) {
+        BitSet matches = new BitSet(occupants.length);
+
+        if (occupants.length < INDEX_THRESHOLD) {
+            for (int i = 0; i < occupants.length; i++) {
+                if (occupants[i].matches(prefix)) {
+                    matches.set(i);
+                }
+            }
+
+            return matches;
+        }
+
+        NameIndex index = nameIndex;
+
+        if (index == null) {
+            // two threads might both build it, which is harmless
+            index = NameIndex.build(occupants);
+            nameIndex = index;
+        }
+
+        index.match(prefix, matches);
+
+        return matches;
+    }
+
+    boolean isIndexed() {
+        return nameIndex != null;
+    }
+
+    private static final class NameIndex {
+        private final String[] tokens;
+        private final int[] owners;
+
+        private NameIndex(String[] tokens, int[] owners) {
+            this.tokens = tokens;
+            this.owners = owners;
+        }
+
+        static NameIndex build(Occupant[] occupants) {
+            int count = 0;
+
+            for (Occupant occupant : occupants) {
+                count += occupant.getNameTokens().length;
+            }
+
+            Entry[] entries = new Entry[count];
+            int next = 0;
+
+            for (int i = 0; i < occupants.length; i++) {
+                for (String token : occupants[i].getNameTokens()) {
+                    entries[next++] = new Entry(token, i);
+                }
+            }
+
+            Arrays.sort(entries, Comparator.comparing(entry -> entry.token));
+
+            String[] tokens = new String[count];
+            int[] owners = new int[count];
+
+            for (int i = 0; i < count; i++) {
+                tokens[i] = entries[i].token;
+                owners[i] = entries[i].owner;
+            }
+
+            return new NameIndex(tokens, owners);
+        }
+
+        // merges in one occupant's words, which are few enough that only they need sorting
+        NameIndex add(String[] added, int owner) {
+            Arrays.sort(added);
+
+            String[] mergedTokens = new String[tokens.length + added.length];
+            int[] mergedOwners = new int[mergedTokens.length];
+            int i = 0;
+            int j = 0;
+
+            for (int k = 0; k < mergedTokens.length; k++) {
+                if (j >= added.length || (i < tokens.length && tokens[i].compareTo(added[j]) <= 0)) {
+                    mergedTokens[k] = tokens[i];
+                    mergedOwners[k] = owners[i++];
+                } else {
+                    mergedTokens[k] = added[j++];
+                    mergedOwners[k] = owner;
+                }
+            }
+
+            return new NameIndex(mergedTokens, mergedOwners);
+        }
+
+        // drops one occupant's words, and moves everybody after them down a place if they left the tile
+        NameIndex remove(int owner, boolean isLeaving) {
+            int count = 0;
+
+            for (int candidate : owners) {
+                if (candidate != owner) {
+                    count++;
+                }
+            }
+
+            String[] keptTokens = new String[count];
+            int[] keptOwners = new int[count];
+            int next = 0;
+
+            for (int i = 0; i < tokens.length; i++) {
+                if (owners[i] == owner) {
+                    continue;
+                }
+
+                keptTokens[next] = tokens[i];
+                keptOwners[next++] = isLeaving && owners[i] > owner ? owners[i] - 1 : owners[i];
+            }
+
+            return new NameIndex(keptTokens, keptOwners);
+        }
+
+        void match(String prefix, BitSet matches) {
+            int low = 0;
+            int high = tokens.length;
+
+            // find the first token that isn't less than the prefix; every match follows it
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (tokens[middle].compareTo(prefix) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            for (int i = low; i < tokens.length && tokens[i].startsWith(prefix); i++) {
+                matches.set(owners[i]);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String token;
+        private final int owner;
+
+        Entry(String token, int owner) {
+            this.token = token;
+            this.owner = owner;
+        }
+    }
+}
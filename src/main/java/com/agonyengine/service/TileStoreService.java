@@ -0,0 +1,330 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.MapProperties;
+import com.agonyengine.model.actor.GameMap;
+import com.agonyengine.model.actor.GameMapListener;
+import com.agonyengine.model.actor.TileStore;
+import com.agonyengine.service.MapChunks.ChunkKey;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.agonyengine.service.MapChunks.SELECT_SQL;
+import static com.agonyengine.service.MapChunks.UPSERT_SQL;
+import static com.agonyengine.service.MapChunks.chunkHeight;
+import static com.agonyengine.service.MapChunks.chunkWidth;
+import static com.agonyengine.service.MapChunks.forEachChunk;
+import static com.agonyengine.service.MapChunks.offset;
+import static com.agonyengine.service.MapChunks.rowStart;
+
+/**
+ * Stores maps as square chunks of tiles (see MapChunks), one row per chunk, so that a map of any size only needs the parts
+ * somebody is actually looking at in memory. Chunks are read the first time anybody looks at one of their tiles,
+ * shared process-wide, and dropped again when they are the least recently used ones over the cache size.
+ *
+ * Chunks are never changed once they are shared: a write makes a new copy of the chunk and swaps it in, so
+ * readers on other threads always see a whole chunk. Changed chunks are written to the database every flush
+ * interval and again at shutdown, and stay in memory until they have been written even if the cache drops them.
+ * The chunks of a map that is still being saved wait for its transaction to commit, and are thrown away if it
+ * rolls back.
+ */
+@Component
+@ConditionalOnProperty(prefix = "agonyengine.maps", name = "backend", havingValue = "database", matchIfMissing = true)
+public class TileStoreService implements TileStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TileStoreService.class);
+
+    private final Map<ChunkKey, byte[]> dirty = new ConcurrentHashMap<>();
+    private final Set<UUID> uncommitted = ConcurrentHashMap.newKeySet();
+    private final Map<ChunkKey, byte[]> chunks;
+
+    private JdbcTemplate jdbcTemplate;
+    private Counter loads;
+    private Counter evictions;
+    private Counter writes;
+    private Counter failures;
+    private Counter dropped;
+
+    @Inject
+    public TileStoreService(MapProperties mapProperties, JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+
+        int capacity = mapProperties.getChunkCacheSize();
+
+        chunks = new LinkedHashMap<ChunkKey, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ChunkKey, byte[]> eldest) {
+                if (size() > capacity) {
+                    evictions.increment();
+                    return true;
+                }
+
+                return false;
+            }
+        };
+
+        loads = meterRegistry.counter("agonyengine.maps.chunks.loads");
+        evictions = meterRegistry.counter("agonyengine.maps.chunks.evictions");
+        writes = meterRegistry.counter("agonyengine.maps.chunks.writes");
+        failures = meterRegistry.counter("agonyengine.maps.chunks.failures");
+        dropped = meterRegistry.counter("agonyengine.maps.chunks.dropped");
+        meterRegistry.gaugeMapSize("agonyengine.maps.chunks.dirty", Tags.empty(), dirty);
+    }
+
+    @PostConstruct
+    public void registerListener() {
+        GameMapListener.setTileStore(this);
+    }
+
+    /*
+     * Maps are seeded as they are saved, before there is a row for their chunks to refer to, so inside a
+     * transaction the chunks aren't written until it commits.
+     */
+    @Override
+    public void seed(GameMap gameMap, byte[] tiles) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            UUID gameMapId = gameMap.getId();
+
+            uncommitted.add(gameMapId);
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        discard(gameMapId);
+                    }
+
+                    uncommitted.remove(gameMapId);
+                }
+            });
+        }
+
+        setTiles(gameMap, tiles);
+    }
+
+    @Override
+    public byte getTile(GameMap gameMap, int x, int y) {
+        ChunkKey key = ChunkKey.of(gameMap.getId(), x, y);
+
+        return load(gameMap, key)[offset(gameMap, key, x, y)];
+    }
+
+    @Override
+    public void setTile(GameMap gameMap, int x, int y, byte value) {
+        ChunkKey key = ChunkKey.of(gameMap.getId(), x, y);
+
+        synchronized (this) {
+            byte[] copy = load(gameMap, key).clone();
+
+            copy[offset(gameMap, key, x, y)] = value;
+            store(key, copy);
+        }
+    }
+
+    @Override
+    public byte[] getTiles(GameMap gameMap) {
+        byte[] tiles = new byte[gameMap.getWidth() * gameMap.getHeight()];
+
+        forEachChunk(gameMap, key -> {
+            byte[] chunk = load(gameMap, key);
+            int chunkWidth = chunkWidth(gameMap, key);
+
+            for (int row = 0; row < chunkHeight(gameMap, key); row++) {
+                System.arraycopy(
+                    chunk, row * chunkWidth,
+                    tiles, rowStart(gameMap, key, row),
+                    chunkWidth);
+            }
+        });
+
+        return tiles;
+    }
+
+    @Override
+    public void setTiles(GameMap gameMap, byte[] tiles) {
+        synchronized (this) {
+            forEachChunk(gameMap, key -> {
+                int chunkWidth = chunkWidth(gameMap, key);
+                byte[] chunk = new byte[chunkWidth * chunkHeight(gameMap, key)];
+
+                for (int row = 0; row < chunkHeight(gameMap, key); row++) {
+                    System.arraycopy(
+                        tiles, rowStart(gameMap, key, row),
+                        chunk, row * chunkWidth,
+                        chunkWidth);
+                }
+
+                store(key, chunk);
+            });
+        }
+    }
+
+    /*
+     * For maps that were changed in the database behind our back. Chunks that we have changed and not written
+     * yet are kept, because they are newer than what's in the database.
+     */
+    @Override
+    public synchronized void evict() {
+        chunks.clear();
+    }
+
+    /*
+     * Anything changed while the batch is being written stays dirty for the next flush. If the batch fails the
+     * chunks are tried again one at a time, so that one bad chunk can't hold up all the others, and chunks
+     * whose map has been deleted are dropped because there is nowhere left to write them.
+     */
+    @Scheduled(fixedDelayString = "${agonyengine.maps.flush-interval}")
+    public void flush() {
+        List<Map.Entry<ChunkKey, byte[]>> batch = dirty.entrySet()
+            .stream()
+            .filter(entry -> !uncommitted.contains(entry.getKey().getGameMapId()))
+            .collect(Collectors.toList());
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, batch, batch.size(), (statement, entry) -> {
+                statement.setObject(1, entry.getKey().getGameMapId(), Types.OTHER);
+                statement.setInt(2, entry.getKey().getChunkX());
+                statement.setInt(3, entry.getKey().getChunkY());
+                statement.setBytes(4, entry.getValue());
+            });
+        } catch (DataAccessException e) {
+            failures.increment();
+            LOGGER.warn("Failed to write {} map chunks, trying them one at a time", batch.size(), e);
+
+            for (Map.Entry<ChunkKey, byte[]> entry : batch) {
+                if (!writeAlone(entry)) {
+                    break;
+                }
+            }
+
+            return;
+        }
+
+        batch.forEach(entry -> dirty.remove(entry.getKey(), entry.getValue()));
+        writes.increment(batch.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    synchronized int getCachedCount() {
+        return chunks.size();
+    }
+
+    int getDirtyCount() {
+        return dirty.size();
+    }
+
+    private byte[] load(GameMap gameMap, ChunkKey key) {
+        synchronized (this) {
+            byte[] chunk = chunks.get(key);
+
+            if (chunk == null) {
+                chunk = dirty.get(key);
+
+                if (chunk != null) {
+                    chunks.put(key, chunk);
+                }
+            }
+
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+
+        // read outside the lock so one slow read doesn't hold up every other map
+        List<byte[]> rows = jdbcTemplate.queryForList(SELECT_SQL, byte[].class, key.getGameMapId(), key.getChunkX(), key.getChunkY());
+        byte[] loaded = rows.isEmpty()
+            ? new byte[chunkWidth(gameMap, key) * chunkHeight(gameMap, key)]
+            : rows.get(0);
+
+        loads.increment();
+
+        synchronized (this) {
+            // somebody else may have loaded or changed it while we were reading
+            byte[] current = chunks.get(key);
+
+            if (current == null) {
+                current = dirty.get(key);
+            }
+
+            if (current == null) {
+                current = loaded;
+            }
+
+            chunks.put(key, current);
+
+            return current;
+        }
+    }
+
+    /*
+     * Returns false if the chunk failed for some reason other than its map being gone, in which case the database
+     * is probably in trouble and there is no point trying the rest of the batch until the next flush.
+     */
+    private boolean writeAlone(Map.Entry<ChunkKey, byte[]> entry) {
+        ChunkKey key = entry.getKey();
+
+        try {
+            jdbcTemplate.update(UPSERT_SQL, statement -> {
+                statement.setObject(1, key.getGameMapId(), Types.OTHER);
+                statement.setInt(2, key.getChunkX());
+                statement.setInt(3, key.getChunkY());
+                statement.setBytes(4, entry.getValue());
+            });
+        } catch (DataIntegrityViolationException e) {
+            dropped.increment();
+            dirty.remove(key, entry.getValue());
+            LOGGER.warn("Dropping chunk ({}, {}) of map {} because it can't be written", key.getChunkX(), key.getChunkY(), key.getGameMapId(), e);
+
+            return true;
+        } catch (DataAccessException e) {
+            LOGGER.error("Failed to write chunk ({}, {}) of map {}, will try again", key.getChunkX(), key.getChunkY(), key.getGameMapId(), e);
+
+            return false;
+        }
+
+        dirty.remove(key, entry.getValue());
+        writes.increment();
+
+        return true;
+    }
+
+    private synchronized void discard(UUID gameMapId) {
+        chunks.keySet().removeIf(key -> key.getGameMapId().equals(gameMapId));
+        dirty.keySet().removeIf(key -> key.getGameMapId().equals(gameMapId));
+    }
+
+    private void store(ChunkKey key, byte[] chunk) {
+        chunks.put(key, chunk);
+        dirty.put(key, chunk);
+    }
+}
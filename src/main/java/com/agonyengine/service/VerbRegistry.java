@@ -0,0 +1,46 @@
+package com.agonyengine.service;
+
+import com.agonyengine.model.interpret.Verb;
+import com.agonyengine.model.interpret.VerbTrie;
+import com.agonyengine.repository.VerbRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+@Component
+public class VerbRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VerbRegistry.class);
+
+    private VerbRepository verbRepository;
+    private volatile VerbTrie verbTrie = new VerbTrie(Collections.emptyList());
+
+    @Inject
+    public VerbRegistry(VerbRepository verbRepository) {
+        this.verbRepository = verbRepository;
+    }
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${agonyengine.verbs.refresh-interval}", initialDelayString = "${agonyengine.verbs.refresh-interval}")
+    public void refresh() {
+        VerbTrie refreshed = new VerbTrie(verbRepository.findAll());
+
+        LOGGER.debug("Loaded {} verbs", refreshed.getVerbs().size());
+
+        verbTrie = refreshed;
+    }
+
+    public Optional<Verb> find(String prefix) {
+        return verbTrie.find(prefix);
+    }
+
+    public List<Verb> getVerbs() {
+        return verbTrie.getVerbs();
+    }
+}
@@ -0,0 +1,85 @@
+package com.agonyengine.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hashed timing wheel: deadlines are rounded up to the next tick and dropped into one of a fixed number of
+ * buckets, so scheduling, cancelling and advancing a tick all cost the same no matter how many keys are waiting.
+ * Deadlines more than one turn of the wheel away simply stay in their bucket until the turn they are due.
+ *
+ * Nothing expires early, but anything can expire up to one tick late.
+ */
+public class TimingWheel<K> {
+    private final long tickMillis;
+    private final List<Map<K, Long>> buckets;
+    private final Map<K, Integer> index = new HashMap<>();
+    private long currentTick;
+
+    public TimingWheel(long tickMillis, int size, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.buckets = new ArrayList<>(size);
+        this.currentTick = nowMillis / tickMillis;
+
+        for (int i = 0; i < size; i++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    public synchronized void schedule(K key, long deadlineMillis) {
+        cancel(key);
+
+        long tick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+        int bucket = (int)(tick % buckets.size());
+
+        buckets.get(bucket).put(key, tick);
+        index.put(key, bucket);
+    }
+
+    public synchronized boolean cancel(K key) {
+        Integer bucket = index.remove(key);
+
+        if (bucket == null) {
+            return false;
+        }
+
+        buckets.get(bucket).remove(key);
+
+        return true;
+    }
+
+    /*
+     * Moves the wheel up to the current time and returns everything that came due on the way. If it has fallen
+     * more than a whole turn behind, each bucket is still only visited once.
+     */
+    public synchronized List<K> advance(long nowMillis) {
+        long targetTick = nowMillis / tickMillis;
+        long steps = Math.min(targetTick - currentTick, buckets.size());
+        List<K> expired = new ArrayList<>();
+
+        for (long tick = currentTick + 1; tick <= currentTick + steps; tick++) {
+            Iterator<Map.Entry<K, Long>> iterator = buckets.get((int)(tick % buckets.size())).entrySet().iterator();
+
+            while (iterator.hasNext()) {
+                Map.Entry<K, Long> entry = iterator.next();
+
+                if (entry.getValue() <= targetTick) {
+                    expired.add(entry.getKey());
+                    index.remove(entry.getKey());
+                    iterator.remove();
+                }
+            }
+        }
+
+        currentTick = Math.max(currentTick, targetTick);
+
+        return expired;
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+}
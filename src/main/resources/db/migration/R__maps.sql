@@ -1,3 +1,7 @@
-INSERT INTO game_map (id, width, tiles)
-VALUES ('5231e20f-0658-4685-9396-6e69ebfb2c3b', 3, decode('000102030405060708', 'hex')) ON CONFLICT (id) DO
-UPDATE SET width=EXCLUDED.width, tiles=EXCLUDED.tiles;
+INSERT INTO game_map (id, width, height)
+VALUES ('5231e20f-0658-4685-9396-6e69ebfb2c3b', 3, 3) ON CONFLICT (id) DO
+UPDATE SET width=EXCLUDED.width, height=EXCLUDED.height;
+
+INSERT INTO game_map_chunk (game_map_id, chunk_x, chunk_y, tiles)
+VALUES ('5231e20f-0658-4685-9396-6e69ebfb2c3b', 0, 0, decode('000102030405060708', 'hex')) ON CONFLICT (game_map_id, chunk_x, chunk_y) DO
+UPDATE SET tiles=EXCLUDED.tiles;
@@ -0,0 +1,24 @@
+CREATE TABLE game_map_chunk (
+  game_map_id UUID NOT NULL,
+  chunk_x INTEGER NOT NULL,
+  chunk_y INTEGER NOT NULL,
+  tiles bytea NOT NULL,
+  PRIMARY KEY (game_map_id, chunk_x, chunk_y),
+  CONSTRAINT GAME_MAP_CHUNK_GAME_MAP_FK FOREIGN KEY (game_map_id) REFERENCES game_map (id)
+);
+
+ALTER TABLE game_map ADD COLUMN height INTEGER;
+UPDATE game_map SET height = length(tiles) / width WHERE height IS NULL;
+ALTER TABLE game_map ALTER COLUMN height SET NOT NULL;
+
+-- chunks are 64x64 tiles, smaller along the top and right edges of maps that aren't a multiple of 64
+INSERT INTO game_map_chunk (game_map_id, chunk_x, chunk_y, tiles)
+SELECT m.id, cx, cy,
+  (SELECT string_agg(substring(m.tiles FROM y * m.width + cx * 64 + 1 FOR least(64, m.width - cx * 64)), ''::bytea ORDER BY y)
+   FROM generate_series(cy * 64, least(m.height, cy * 64 + 64) - 1) AS y)
+FROM game_map m,
+  generate_series(0, (m.width - 1) / 64) AS cx,
+  generate_series(0, (m.height - 1) / 64) AS cy
+WHERE m.height > 0;
+
+ALTER TABLE game_map DROP COLUMN tiles;
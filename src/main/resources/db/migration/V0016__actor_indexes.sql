@@ -0,0 +1,14 @@
+-- rooms and whole maps: findByGameMapAndXAndY, findByGameMap
+CREATE INDEX actor_game_map_id_x_y_idx ON actor (game_map_id, x, y);
+
+-- only connected actors have a session, so only they are worth indexing: findBySessionUsernameAndSessionId and
+-- the list of who is online
+CREATE INDEX actor_session_idx ON actor (session_username, session_id) WHERE session_username IS NOT NULL;
+
+-- the characters on an account; the driver sends the name as a varchar, which Postgres compares to the citext
+-- column as text, so the index has to be on the text value to be used
+CREATE INDEX actor_account_idx ON actor ((account::text));
+
+-- link dead actors that are still in the world, for the reaper
+CREATE INDEX actor_disconnected_date_idx ON actor (disconnected_date)
+  WHERE disconnected_date IS NOT NULL AND game_map_id IS NOT NULL;
@@ -0,0 +1,4 @@
+CREATE EXTENSION IF NOT EXISTS "pg_trgm";
+
+-- matching a word in the name on tiles too crowded to search in memory: findIdsByNameWordPrefix
+CREATE INDEX actor_name_trgm_idx ON actor USING gin (name gin_trgm_ops);
@@ -0,0 +1,3 @@
+-- when each actor arrived on the tile it's on, so that crowded tiles searched by findIdsByNameWordPrefix count
+-- their occupants in the same order as the in-memory index does
+ALTER TABLE actor ADD COLUMN arrival BIGINT DEFAULT NULL;
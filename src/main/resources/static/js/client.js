@@ -1,5 +1,7 @@
 var socket = null;
 var stompClient = null;
+var roomSubscription = null;
+var roomTopic = null;
 var isReconnecting = false;
 var reconnectDelay = 2;
 var commandHistory = [];
@@ -53,9 +55,16 @@ function connect() {
             showOutput(["[green]Connected to server."]);
 
             reconnectDelay = 2;
+            roomSubscription = null;
+            roomTopic = null;
 
             stompClient.subscribe('/user/queue/output', function (message) {
                 var msg = JSON.parse(message.body);
+
+                if (msg.room !== undefined) {
+                    changeRoom(msg.room);
+                }
+
                 showOutput(msg.output);
             },
             { "actor" : actor });
@@ -80,6 +89,30 @@ function connect() {
         });
 }
 
+// room topics carry messages for everyone in the room, except the actors listed in the "exclude" header
+function changeRoom(topic) {
+    if (topic === roomTopic) {
+        return;
+    }
+
+    if (roomSubscription !== null) {
+        roomSubscription.unsubscribe();
+        roomSubscription = null;
+    }
+
+    roomTopic = topic;
+
+    if (topic) {
+        roomSubscription = stompClient.subscribe(topic, function (message) {
+            var exclude = message.headers["exclude"] ? message.headers["exclude"].split(",") : [];
+
+            if (exclude.indexOf(actor) === -1) {
+                showOutput(JSON.parse(message.body).output);
+            }
+        });
+    }
+}
+
 function sendInput() {
     var inputBox = $("#user-input");
 
@@ -0,0 +1,43 @@
+package com.agonyengine.model.actor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ActorTest {
+    @Test
+    public void testGetNameItem() {
+        Actor actor = new Actor();
+
+        actor.setName("rusty sword");
+
+        assertEquals("a rusty sword", actor.getName());
+        assertSame(actor.getName(), actor.getName());
+    }
+
+    @Test
+    public void testGetNamePlayer() {
+        Actor actor = new Actor();
+
+        actor.setName("Alice");
+        actor.setAccount("alice");
+
+        assertEquals("Alice", actor.getName());
+    }
+
+    @Test
+    public void testGetNameChanged() {
+        Actor actor = new Actor();
+
+        actor.setName("rusty sword");
+        actor.getName();
+        actor.setName("old shield");
+
+        assertEquals("an old shield", actor.getName());
+
+        actor.setAccount("someone");
+
+        assertEquals("old shield", actor.getName());
+    }
+}
@@ -2,6 +2,7 @@ package com.agonyengine.model.actor;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.util.UUID;
@@ -9,6 +10,11 @@ import java.util.UUID;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class GameMapTest {
     private byte[] defaultMap = new byte[] {
@@ -17,6 +23,9 @@ public class GameMapTest {
         0x07, 0x08, 0x09,
     };
 
+    @Mock
+    private TileStore tileStore;
+
     private GameMap map;
 
     @Before
@@ -99,4 +108,61 @@ public class GameMapTest {
         assertFalse(map.hasTile(3, 2));
         assertTrue(map.hasTile(2, 2));
     }
+
+    @Test
+    public void testHeight() {
+        assertEquals(3, map.getHeight());
+
+        map.setHeight(5);
+
+        assertEquals(5, map.getHeight());
+    }
+
+    @Test
+    public void testAttachSeedsStore() {
+        map.setId(UUID.randomUUID());
+        map.attach(tileStore);
+
+        verify(tileStore).seed(eq(map), eq(defaultMap));
+    }
+
+    @Test
+    public void testAttachedMapUsesStore() {
+        GameMap loaded = new GameMap();
+
+        loaded.setId(UUID.randomUUID());
+        loaded.setWidth(3);
+        loaded.setHeight(3);
+        loaded.attach(tileStore);
+
+        when(tileStore.getTile(eq(loaded), eq(1), eq(1))).thenReturn((byte)0x05);
+
+        assertEquals(0x05, loaded.getTile(1, 1));
+        assertTrue(loaded.hasTile(2, 2));
+        assertFalse(loaded.hasTile(0, 3));
+
+        loaded.setTile(2, 1, (byte)0x7F);
+
+        verify(tileStore).setTile(eq(loaded), eq(2), eq(1), eq((byte)0x7F));
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void testAttachedMapOutOfBounds() {
+        GameMap loaded = new GameMap();
+
+        loaded.setWidth(3);
+        loaded.setHeight(3);
+        loaded.attach(tileStore);
+
+        loaded.getTile(3, 0);
+    }
+
+    @Test
+    public void testNotSeededWithoutTiles() {
+        GameMap loaded = new GameMap();
+
+        loaded.attach(tileStore);
+
+        verify(tileStore, never()).seed(any(), any());
+    }
 }
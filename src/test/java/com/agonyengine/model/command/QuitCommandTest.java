@@ -4,15 +4,13 @@ import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.actor.GameMap;
 import com.agonyengine.model.interpret.QuotedString;
 import com.agonyengine.model.stomp.GameOutput;
-import com.agonyengine.repository.ActorRepository;
 import com.agonyengine.service.CommService;
+import com.agonyengine.service.OccupancyService;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
-import java.util.Collections;
-
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -20,10 +18,10 @@ import static org.mockito.Mockito.when;
 
 public class QuitCommandTest {
     @Mock
-    private ActorRepository actorRepository;
+    private CommService commService;
 
     @Mock
-    private CommService commService;
+    private OccupancyService occupancyService;
 
     @Mock
     private Actor actor;
@@ -50,9 +48,8 @@ public class QuitCommandTest {
         when(actor.getName()).thenReturn("Scion");
         when(actor.getInventory()).thenReturn(inventory);
         when(item.getName()).thenReturn("a flux capacitor");
-        when(actorRepository.findByGameMap(inventory)).thenReturn(Collections.singletonList(item));
 
-        quitCommand = new QuitCommand(actorRepository, commService);
+        quitCommand = new QuitCommand(commService, occupancyService);
     }
 
     @Test
@@ -63,8 +60,8 @@ public class QuitCommandTest {
 
         verify(actor, never()).setGameMap(isNull());
         verify(commService, never()).echoToRoom(eq(actor), any(GameOutput.class), eq(actor));
-        verify(actorRepository, never()).save(eq(actor));
         verify(output, never()).append(contains("window.location"));
+        verify(occupancyService, never()).remove(eq(actor));
     }
 
     @Test
@@ -75,6 +72,6 @@ public class QuitCommandTest {
         verify(output).append(contains("window.location"));
         verify(commService).echoToRoom(eq(actor), any(GameOutput.class), eq(actor));
         verify(actor).setGameMap(isNull());
-        verify(actorRepository).save(eq(actor));
+        verify(occupancyService).remove(eq(actor));
     }
 }
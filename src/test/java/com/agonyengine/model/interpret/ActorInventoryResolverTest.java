@@ -0,0 +1,89 @@
+package com.agonyengine.model.interpret;
+
+import com.agonyengine.config.ActorProperties;
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.GameMap;
+import com.agonyengine.repository.ActorRepository;
+import com.agonyengine.service.ActorStateService;
+import com.agonyengine.service.OccupancyService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+public class ActorInventoryResolverTest {
+    @Mock
+    private ActorProperties actorProperties;
+
+    @Mock
+    private ActorRepository actorRepository;
+
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Mock
+    private ActorStateService actorStateService;
+
+    @Mock
+    private Actor actor;
+
+    @Mock
+    private Actor target;
+
+    @Mock
+    private GameMap gameMap;
+
+    private ActorInventoryResolver resolver;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        when(actorProperties.getDatabaseLookupThreshold()).thenReturn(10000);
+
+        UUID targetId = UUID.randomUUID();
+
+        when(gameMap.getId()).thenReturn(UUID.randomUUID());
+        when(actor.getId()).thenReturn(UUID.randomUUID());
+        when(actor.getInventory()).thenReturn(gameMap);
+        when(actor.getNameTokens()).thenReturn(new String[] {"Stu"});
+        when(target.getId()).thenReturn(targetId);
+        when(target.getGameMap()).thenReturn(gameMap);
+        when(target.getX()).thenReturn(0);
+        when(target.getY()).thenReturn(0);
+        when(target.getNameTokens()).thenReturn(new String[] {"sword"});
+        when(actorRepository.findById(eq(targetId))).thenReturn(Optional.of(target));
+
+        OccupancyService occupancyService = new OccupancyService(actorProperties, actorRepository, applicationEventPublisher, actorStateService);
+
+        occupancyService.update(target);
+
+        resolver = new ActorInventoryResolver(occupancyService);
+    }
+
+    @Test
+    public void testResolveTargetFound() {
+        ActorInventory result = resolver.resolve(actor, "SWORD");
+
+        assertEquals("SWORD", result.getToken());
+        assertEquals(target, result.getTarget());
+    }
+
+    @Test
+    public void testResolveTargetNotFound() {
+        assertNull(resolver.resolve(actor, "SHIELD"));
+    }
+
+    @Test
+    public void testGetType() {
+        assertEquals(ActorInventory.class, resolver.getType());
+    }
+}
@@ -1,23 +1,37 @@
 package com.agonyengine.model.interpret;
 
+import com.agonyengine.config.ActorProperties;
 import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.actor.GameMap;
 import com.agonyengine.repository.ActorRepository;
+import com.agonyengine.service.ActorStateService;
+import com.agonyengine.service.OccupancyService;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
 
-import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 public class ActorInventoryTest {
+    @Mock
+    private ActorProperties actorProperties;
+
     @Mock
     private ActorRepository actorRepository;
 
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Mock
+    private ActorStateService actorStateService;
+
     @Mock
     private Actor actor;
 
@@ -27,21 +41,32 @@ public class ActorInventoryTest {
     @Mock
     private GameMap gameMap;
 
+    private OccupancyService occupancyService;
     private ActorInventory actorInventory;
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
+        when(actorProperties.getDatabaseLookupThreshold()).thenReturn(10000);
+
+        UUID targetId = UUID.randomUUID();
+
+        when(gameMap.getId()).thenReturn(UUID.randomUUID());
+        when(actor.getId()).thenReturn(UUID.randomUUID());
         when(actor.getInventory()).thenReturn(gameMap);
         when(actor.getNameTokens()).thenReturn(new String[] {"Stu"});
+        when(target.getId()).thenReturn(targetId);
+        when(target.getGameMap()).thenReturn(gameMap);
+        when(target.getX()).thenReturn(0);
+        when(target.getY()).thenReturn(0);
         when(target.getNameTokens()).thenReturn(new String[] {"sword"});
+        when(actorRepository.findById(eq(targetId))).thenReturn(Optional.of(target));
 
-        when(
-            actorRepository.findByGameMap(eq(gameMap))
-        ).thenReturn(Collections.singletonList(target));
+        occupancyService = new OccupancyService(actorProperties, actorRepository, applicationEventPublisher, actorStateService);
+        occupancyService.update(target);
 
-        actorInventory = new ActorInventory(actorRepository);
+        actorInventory = new ActorInventory(occupancyService);
     }
 
     @Test
@@ -56,6 +81,7 @@ public class ActorInventoryTest {
     @Test
     public void testBindTargetFoundMultiWord() {
         when(target.getNameTokens()).thenReturn(new String[] {"paperback", "book"});
+        occupancyService.update(target);
 
         boolean result = actorInventory.bind(actor, "PAPER");
 
@@ -1,24 +1,37 @@
 package com.agonyengine.model.interpret;
 
+import com.agonyengine.config.ActorProperties;
 import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.actor.GameMap;
 import com.agonyengine.repository.ActorRepository;
+import com.agonyengine.service.ActorStateService;
+import com.agonyengine.service.OccupancyService;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
 
-import java.util.Arrays;
+import java.util.Optional;
+import java.util.UUID;
 
 import static org.junit.Assert.*;
-import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 public class ActorSameRoomTest {
+    @Mock
+    private ActorProperties actorProperties;
+
     @Mock
     private ActorRepository actorRepository;
 
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Mock
+    private ActorStateService actorStateService;
+
     @Mock
     private Actor actor;
 
@@ -28,22 +41,35 @@ public class ActorSameRoomTest {
     @Mock
     private GameMap gameMap;
 
+    private OccupancyService occupancyService;
     private ActorSameRoom actorSameRoom;
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
+        when(actorProperties.getDatabaseLookupThreshold()).thenReturn(10000);
+
+        UUID targetId = UUID.randomUUID();
+
+        when(gameMap.getId()).thenReturn(UUID.randomUUID());
+        when(actor.getId()).thenReturn(UUID.randomUUID());
         when(actor.getGameMap()).thenReturn(gameMap);
+        when(actor.getX()).thenReturn(0);
+        when(actor.getY()).thenReturn(0);
         when(actor.getNameTokens()).thenReturn(new String[] {"Stu"});
+        when(target.getId()).thenReturn(targetId);
+        when(target.getGameMap()).thenReturn(gameMap);
+        when(target.getX()).thenReturn(0);
+        when(target.getY()).thenReturn(0);
         when(target.getNameTokens()).thenReturn(new String[] {"Dave"});
+        when(actorRepository.findById(eq(targetId))).thenReturn(Optional.of(target));
 
-        when(
-            actorRepository.findByGameMapAndXAndY(
-                eq(gameMap), anyInt(), anyInt()
-            )).thenReturn(Arrays.asList(actor, target));
+        occupancyService = new OccupancyService(actorProperties, actorRepository, applicationEventPublisher, actorStateService);
+        occupancyService.update(actor);
+        occupancyService.update(target);
 
-        actorSameRoom = new ActorSameRoom(actorRepository);
+        actorSameRoom = new ActorSameRoom(occupancyService);
     }
 
     @Test
@@ -58,6 +84,7 @@ public class ActorSameRoomTest {
     @Test
     public void testBindTargetFoundMultiWord() {
         when(target.getNameTokens()).thenReturn(new String[] {"rubber", "ball"});
+        occupancyService.update(target);
 
         boolean result = actorSameRoom.bind(actor, "BALL");
 
@@ -75,6 +102,14 @@ public class ActorSameRoomTest {
         assertFalse(result);
     }
 
+    @Test
+    public void testBindSkipsSelf() {
+        boolean result = actorSameRoom.bind(actor, "STU");
+
+        assertNull(actorSameRoom.getTarget());
+        assertFalse(result);
+    }
+
     @Test
     public void testGetSyntaxDescription() {
         assertEquals("target in same room", ActorSameRoom.getSyntaxDescription());
@@ -0,0 +1,54 @@
+package com.agonyengine.model.interpret;
+
+import com.agonyengine.model.actor.Actor;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+public class ArgumentBindingAdapterTest {
+    @Mock
+    private ApplicationContext applicationContext;
+
+    @Mock
+    private Actor actor;
+
+    @Mock
+    private QuotedString quotedString;
+
+    private ArgumentBindingAdapter<QuotedString> adapter;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        when(applicationContext.getBean(eq(QuotedString.class))).thenReturn(quotedString);
+
+        adapter = new ArgumentBindingAdapter<>(applicationContext, QuotedString.class);
+    }
+
+    @Test
+    public void testResolveBound() {
+        when(quotedString.bind(eq(actor), eq("text"))).thenReturn(true);
+
+        assertEquals(quotedString, adapter.resolve(actor, "text"));
+    }
+
+    @Test
+    public void testResolveNotBound() {
+        when(quotedString.bind(eq(actor), eq("text"))).thenReturn(false);
+
+        assertNull(adapter.resolve(actor, "text"));
+    }
+
+    @Test
+    public void testGetType() {
+        assertEquals(QuotedString.class, adapter.getType());
+    }
+}
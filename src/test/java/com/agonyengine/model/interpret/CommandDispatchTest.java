@@ -0,0 +1,99 @@
+package com.agonyengine.model.interpret;
+
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.stomp.GameOutput;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class CommandDispatchTest {
+    @Mock
+    private Actor actor;
+
+    @Mock
+    private ActorSameRoom actorSameRoom;
+
+    @Mock
+    private QuotedString quotedString;
+
+    private GameOutput output = new GameOutput();
+    private TestCommand command = new TestCommand();
+
+    private CommandDispatch dispatch;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        dispatch = new CommandDispatch(command);
+    }
+
+    @Test
+    public void testGroupsByArgumentCount() {
+        assertEquals(3, dispatch.getMethods().size());
+        assertEquals(1, dispatch.getMethods(0).length);
+        assertEquals(1, dispatch.getMethods(1).length);
+        assertEquals(1, dispatch.getMethods(2).length);
+        assertEquals(0, dispatch.getMethods(3).length);
+        assertEquals(0, dispatch.getMethods(-1).length);
+    }
+
+    @Test
+    public void testGrammar() {
+        assertEquals("", dispatch.getMethods(0)[0].getGrammar());
+        assertEquals("&lt;target in same room&gt; ", dispatch.getMethods(1)[0].getGrammar());
+        assertEquals("&lt;target in same room&gt; &lt;quoted text&gt; ", dispatch.getMethods(2)[0].getGrammar());
+    }
+
+    @Test
+    public void testArgumentTypes() {
+        CommandMethod method = dispatch.getMethods(2)[0];
+
+        assertEquals(ActorSameRoom.class, method.getArgumentType(0));
+        assertEquals(QuotedString.class, method.getArgumentType(1));
+        assertEquals("target in same room", method.getSyntaxDescription(0));
+        assertEquals("quoted text", method.getSyntaxDescription(1));
+    }
+
+    @Test
+    public void testInvoke() {
+        dispatch.getMethods(0)[0].invoke(actor, output);
+
+        assertEquals("zero", output.getOutput().get(0));
+
+        dispatch.getMethods(2)[0].invoke(actor, output, actorSameRoom, quotedString);
+
+        assertEquals("two", output.getOutput().get(1));
+        assertSame(quotedString, command.lastQuotedString);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInvokeRethrows() {
+        dispatch.getMethods(1)[0].invoke(actor, output, actorSameRoom);
+    }
+
+    public static class TestCommand {
+        private QuotedString lastQuotedString;
+
+        public void invoke(Actor actor, GameOutput output) {
+            output.append("zero");
+        }
+
+        public void invoke(Actor actor, GameOutput output, ActorSameRoom target) {
+            throw new IllegalStateException("one");
+        }
+
+        public void invoke(Actor actor, GameOutput output, ActorSameRoom target, QuotedString message) {
+            lastQuotedString = message;
+            output.append("two");
+        }
+
+        public void notACommand(Actor actor, GameOutput output) {
+            output.append("nope");
+        }
+    }
+}
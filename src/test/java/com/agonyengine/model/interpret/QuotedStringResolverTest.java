@@ -0,0 +1,39 @@
+package com.agonyengine.model.interpret;
+
+import com.agonyengine.model.actor.Actor;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class QuotedStringResolverTest {
+    @Mock
+    private Actor actor;
+
+    private QuotedStringResolver resolver;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        resolver = new QuotedStringResolver();
+    }
+
+    @Test
+    public void testResolveText() {
+        assertEquals("a box of oxen", resolver.resolve(actor, "a box of oxen").getToken());
+    }
+
+    @Test
+    public void testResolveHtml() {
+        assertEquals("an ox of &lt;em&gt;boxen&lt;/em&gt;", resolver.resolve(actor, "an ox of <em>boxen</em>").getToken());
+    }
+
+    @Test
+    public void testResolveEmptyString() {
+        assertNull(resolver.resolve(actor, ""));
+    }
+}
@@ -0,0 +1,94 @@
+package com.agonyengine.model.interpret;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class VerbTrieTest {
+    private List<Verb> verbs = new ArrayList<>();
+
+    private VerbTrie verbTrie;
+
+    @Before
+    public void setUp() {
+        verbs.add(buildVerb("say", 500));
+        verbs.add(buildVerb("north", 0));
+        verbs.add(buildVerb("look", 500));
+        verbs.add(buildVerb("inventory", 500));
+        verbs.add(buildVerb("score", 500));
+        verbs.add(buildVerb("south", 0));
+        verbs.add(buildVerb("quit", 1000));
+
+        verbTrie = new VerbTrie(verbs);
+    }
+
+    @Test
+    public void testExactMatch() {
+        assertEquals("look", verbTrie.find("look").orElseThrow(AssertionError::new).getName());
+    }
+
+    @Test
+    public void testAbbreviations() {
+        assertEquals("north", verbTrie.find("N").orElseThrow(AssertionError::new).getName());
+        assertEquals("inventory", verbTrie.find("INV").orElseThrow(AssertionError::new).getName());
+        assertEquals("look", verbTrie.find("L").orElseThrow(AssertionError::new).getName());
+        assertEquals("quit", verbTrie.find("Q").orElseThrow(AssertionError::new).getName());
+    }
+
+    @Test
+    public void testPriorityBeatsName() {
+        assertEquals("south", verbTrie.find("S").orElseThrow(AssertionError::new).getName());
+        assertEquals("say", verbTrie.find("SA").orElseThrow(AssertionError::new).getName());
+        assertEquals("score", verbTrie.find("SC").orElseThrow(AssertionError::new).getName());
+    }
+
+    @Test
+    public void testNameBreaksTies() {
+        verbs.add(buildVerb("sneeze", 0));
+
+        verbTrie = new VerbTrie(verbs);
+
+        assertEquals("sneeze", verbTrie.find("S").orElseThrow(AssertionError::new).getName());
+        assertEquals("south", verbTrie.find("SO").orElseThrow(AssertionError::new).getName());
+    }
+
+    @Test
+    public void testNoMatch() {
+        assertFalse(verbTrie.find("XYZZY").isPresent());
+        assertFalse(verbTrie.find("LOOKS").isPresent());
+    }
+
+    @Test
+    public void testEmpty() {
+        verbTrie = new VerbTrie(Collections.emptyList());
+
+        assertFalse(verbTrie.find("LOOK").isPresent());
+        assertEquals(0, verbTrie.getVerbs().size());
+    }
+
+    @Test
+    public void testGetVerbsIsSorted() {
+        List<Verb> sorted = verbTrie.getVerbs();
+
+        assertEquals("north", sorted.get(0).getName());
+        assertEquals("south", sorted.get(1).getName());
+        assertEquals("inventory", sorted.get(2).getName());
+        assertEquals("quit", sorted.get(sorted.size() - 1).getName());
+    }
+
+    private Verb buildVerb(String name, int priority) {
+        Verb verb = new Verb();
+
+        verb.setName(name);
+        verb.setPriority(priority);
+        verb.setBean(name + "Command");
+
+        return verb;
+    }
+}
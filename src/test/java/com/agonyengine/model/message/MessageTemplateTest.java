@@ -0,0 +1,92 @@
+package com.agonyengine.model.message;
+
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.Pronoun;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MessageTemplateTest {
+    private Actor actor;
+    private Actor target;
+
+    @Before
+    public void setUp() {
+        Pronoun she = new Pronoun();
+
+        she.setSubject("she");
+        she.setObject("her");
+        she.setPossessive("her");
+        she.setPossessivePronoun("hers");
+        she.setReflexive("herself");
+
+        actor = new Actor();
+        actor.setName("Alice");
+        actor.setAccount("alice");
+        actor.setPronoun(she);
+
+        target = new Actor();
+        target.setName("rusty sword");
+    }
+
+    @Test
+    public void testNames() {
+        assertEquals("[default]Alice drops a rusty sword[default].",
+            MessageTemplate.compile("[default]$n drops $p[default].").render(actor, target));
+        assertEquals("Alice looks at a rusty sword.", MessageTemplate.compile("$n looks at $N.").render(actor, target));
+    }
+
+    @Test
+    public void testPronouns() {
+        assertEquals("She hits herself with her sword, and it hurts her.",
+            MessageTemplate.compile("$e hits $r with $s sword, and it hurts $m.").render(actor));
+    }
+
+    @Test
+    public void testTargetWithoutPronoun() {
+        assertEquals("It glows. Alice admires its shine and polishes it. It cleans itself.",
+            MessageTemplate.compile("$E glows. $n admires $S shine and polishes $M. It cleans $R.").render(actor, target));
+    }
+
+    @Test
+    public void testCapitalizeAfterColors() {
+        assertEquals("[yellow]A rusty sword appears!", MessageTemplate.compile("[yellow]$n appears!").render(target));
+    }
+
+    @Test
+    public void testNoCapitalizeInMiddle() {
+        assertEquals("You get a rusty sword.", MessageTemplate.compile("You get $p.").render(actor, target));
+    }
+
+    @Test
+    public void testNoCapitalizeAfterEscapedBracket() {
+        assertEquals("[[a rusty sword]", MessageTemplate.compile("[[$n]").render(target));
+    }
+
+    @Test
+    public void testText() {
+        assertEquals("[cyan]Alice says '$5 <b>each</b>[cyan]'",
+            MessageTemplate.compile("[cyan]$n says '$t[cyan]'").render(actor, null, "$5 <b>each</b>"));
+    }
+
+    @Test
+    public void testDollar() {
+        assertEquals("That costs $5.", MessageTemplate.compile("That costs $$5.").render(actor));
+    }
+
+    @Test
+    public void testNoCodes() {
+        assertEquals("Nothing happens.", MessageTemplate.compile("Nothing happens.").render(actor));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCode() {
+        MessageTemplate.compile("$x marks the spot");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTrailingDollar() {
+        MessageTemplate.compile("costs $");
+    }
+}
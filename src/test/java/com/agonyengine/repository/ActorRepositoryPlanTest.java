@@ -0,0 +1,130 @@
+package com.agonyengine.repository;
+
+import org.flywaydb.core.Flyway;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+/*
+ * Checks that every ActorRepository query the game runs while it's up can be answered from an index, by asking
+ * Postgres for the plan of the same SQL that Hibernate generates against a million actors.
+ *
+ * This needs a real database, so it only runs when one is given with -Dagonyengine.plan.url (plus .username and
+ * .password if they aren't "agonyengine"). Everything in that database is deleted, so point it at a scratch one,
+ * e.g. "docker run -p 5433:5432 -e POSTGRES_USER=agonyengine -e POSTGRES_PASSWORD=agonyengine postgres:9.6" and
+ * -Dagonyengine.plan.url=jdbc:postgresql://localhost:5433/agonyengine
+ *
+ * findByGameMapIsNotNull isn't checked because it reads the whole world once at startup, which is what a
+ * sequential scan is for.
+ */
+public class ActorRepositoryPlanTest {
+    private static final int ACTORS = 1000000;
+    private static final int MAPS = 1000;
+    private static final int CROWD = 20000;
+
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeClass
+    public static void setUpDatabase() {
+        String url = System.getProperty("agonyengine.plan.url");
+
+        assumeTrue("No database given for query plans", url != null);
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            url,
+            System.getProperty("agonyengine.plan.username", "agonyengine"),
+            System.getProperty("agonyengine.plan.password", "agonyengine"));
+        Flyway flyway = new Flyway();
+
+        flyway.setDataSource(dataSource);
+        flyway.clean();
+        flyway.migrate();
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        // one actor in ten is a character that isn't logged in, one in a thousand is connected and one in a
+        // thousand is link dead; the rest are scattered across the maps
+        jdbcTemplate.update("INSERT INTO game_map (id, width, height) " +
+            "SELECT md5('map' || i)::uuid, 64, 64 FROM generate_series(0, ?) AS i", MAPS - 1);
+        jdbcTemplate.update("INSERT INTO actor (id, name, pronoun_subject, account, game_map_id, x, y, " +
+            "session_username, session_id, disconnected_date) " +
+            "SELECT md5('actor' || i)::uuid, 'actor' || i, 'they', 'account' || (i % 50000), " +
+            "CASE WHEN i % 10 = 0 THEN NULL ELSE md5('map' || (i % ?))::uuid END, i % 64, (i / 64) % 64, " +
+            "CASE WHEN i % 1000 = 1 THEN 'account' || (i % 50000) END, " +
+            "CASE WHEN i % 1000 = 1 THEN 'session' || i END, " +
+            "CASE WHEN i % 1000 = 2 THEN now() - interval '1 hour' END " +
+            "FROM generate_series(1, ?) AS i", MAPS, ACTORS);
+
+        // and one tile is a dump, piled high enough that finding things there by name is left to the database
+        jdbcTemplate.update("INSERT INTO actor (id, name, pronoun_subject, game_map_id, x, y) " +
+            "SELECT md5('item' || i)::uuid, 'rusty item' || i, 'it', md5('map0')::uuid, 0, 0 " +
+            "FROM generate_series(1, ?) AS i", CROWD);
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @Test
+    public void testFindBySessionUsernameAndSessionId() {
+        assertIndexed("WHERE session_username = ? AND session_id = ?", "account1", "session1");
+    }
+
+    @Test
+    public void testFindByGameMap() {
+        assertIndexed("WHERE game_map_id = ?", mapId(1));
+    }
+
+    @Test
+    public void testFindByGameMapAndXAndY() {
+        assertIndexed("WHERE game_map_id = ? AND x = ? AND y = ?", mapId(1), 1, 0);
+    }
+
+    @Test
+    public void testFindByAccount() {
+        assertIndexed("WHERE account = ?", "account1");
+    }
+
+    @Test
+    public void testFindConnected() {
+        assertIndexed("WHERE session_username IS NOT NULL AND session_id IS NOT NULL AND game_map_id IS NOT NULL ORDER BY name ASC");
+    }
+
+    @Test
+    public void testFindByDisconnectedDateIsBeforeAndGameMapIsNotNull() {
+        assertIndexed("WHERE disconnected_date < ? AND game_map_id IS NOT NULL",
+            new Timestamp(System.currentTimeMillis() - (1000 * 60 * 30)));
+    }
+
+    @Test
+    public void testFindIdsByNameWordPrefix() {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+            .addValue("gameMapId", mapId(0).toString())
+            .addValue("x", 0)
+            .addValue("y", 0)
+            .addValue("pattern", "(^| )item12345")
+            .addValue("excludeId", new UUID(0L, 0L).toString())
+            .addValue("skip", 0);
+        List<String> plan = new NamedParameterJdbcTemplate(jdbcTemplate)
+            .queryForList("EXPLAIN " + ActorRepository.FIND_IDS_BY_NAME_WORD_PREFIX_SQL, parameters, String.class);
+
+        assertFalse(String.join("\n", plan), plan.stream().anyMatch(line -> line.contains("Seq Scan on actor")));
+    }
+
+    private static UUID mapId(int i) {
+        return jdbcTemplate.queryForObject("SELECT md5('map' || ?)::uuid", UUID.class, i);
+    }
+
+    private static void assertIndexed(String where, Object ... args) {
+        List<String> plan = jdbcTemplate.queryForList("EXPLAIN SELECT * FROM actor " + where, String.class, args);
+
+        assertFalse(String.join("\n", plan), plan.stream().anyMatch(line -> line.contains("Seq Scan on actor")));
+    }
+}
@@ -20,21 +20,21 @@ public class InputTokenizerTest {
 
     @Test
     public void testNull() {
-        List<List<String>> tokens = inputTokenizer.tokenize(null);
+        List<Sentence> tokens = inputTokenizer.tokenize(null);
 
         assertEquals(0, tokens.size());
     }
 
     @Test
     public void testEmpty() {
-        List<List<String>> tokens = inputTokenizer.tokenize("");
+        List<Sentence> tokens = inputTokenizer.tokenize("");
 
         assertEquals(0, tokens.size());
     }
 
     @Test
     public void testSingleWord() {
-        List<List<String>> tokens = inputTokenizer.tokenize("word");
+        List<Sentence> tokens = inputTokenizer.tokenize("word");
 
         assertEquals(1, tokens.size());
         assertEquals(1, tokens.get(0).size());
@@ -43,7 +43,7 @@ public class InputTokenizerTest {
 
     @Test
     public void testTwoWords() {
-        List<List<String>> tokens = inputTokenizer.tokenize("two words");
+        List<Sentence> tokens = inputTokenizer.tokenize("two words");
 
         assertEquals(1, tokens.size());
         assertEquals(2, tokens.get(0).size());
@@ -53,7 +53,7 @@ public class InputTokenizerTest {
 
     @Test
     public void testEntireStringIsQuoted() {
-        List<List<String>> tokens = inputTokenizer.tokenize("\"quoted string\"");
+        List<Sentence> tokens = inputTokenizer.tokenize("\"quoted string\"");
 
         assertEquals(1, tokens.size());
         assertEquals(1, tokens.get(0).size());
@@ -62,7 +62,7 @@ public class InputTokenizerTest {
 
     @Test
     public void testMiddleOfStringIsQuoted() {
-        List<List<String>> tokens = inputTokenizer.tokenize("in the \"middle is\" quoted");
+        List<Sentence> tokens = inputTokenizer.tokenize("in the \"middle is\" quoted");
 
         assertEquals(1, tokens.size());
         assertEquals(3, tokens.get(0).size());
@@ -73,7 +73,7 @@ public class InputTokenizerTest {
 
     @Test
     public void testEndOfStringIsQuoted() {
-        List<List<String>> tokens = inputTokenizer.tokenize("the end \"is quoted\"");
+        List<Sentence> tokens = inputTokenizer.tokenize("the end \"is quoted\"");
 
         assertEquals(1, tokens.size());
         assertEquals(2, tokens.get(0).size());
@@ -83,7 +83,7 @@ public class InputTokenizerTest {
 
     @Test
     public void testEmptyQuotedString() {
-        List<List<String>> tokens = inputTokenizer.tokenize("empty \"\" quote");
+        List<Sentence> tokens = inputTokenizer.tokenize("empty \"\" quote");
 
         assertEquals(1, tokens.size());
         assertEquals(2, tokens.get(0).size());
@@ -93,7 +93,7 @@ public class InputTokenizerTest {
 
     @Test
     public void testThen() {
-        List<List<String>> tokens = inputTokenizer.tokenize("do this then do that");
+        List<Sentence> tokens = inputTokenizer.tokenize("do this then do that");
 
         assertEquals(2, tokens.size());
         assertEquals(2, tokens.get(0).size());
@@ -106,7 +106,7 @@ public class InputTokenizerTest {
 
     @Test
     public void testThenAtEnd() {
-        List<List<String>> tokens = inputTokenizer.tokenize("do this then");
+        List<Sentence> tokens = inputTokenizer.tokenize("do this then");
 
         assertEquals(1, tokens.size());
         assertEquals(2, tokens.get(0).size());
@@ -116,7 +116,7 @@ public class InputTokenizerTest {
 
     @Test
     public void testThenAtStart() {
-        List<List<String>> tokens = inputTokenizer.tokenize("then do that");
+        List<Sentence> tokens = inputTokenizer.tokenize("then do that");
 
         assertEquals(1, tokens.size());
         assertEquals(2, tokens.get(0).size());
@@ -126,7 +126,7 @@ public class InputTokenizerTest {
 
     @Test
     public void testPeriods() {
-        List<List<String>> tokens = inputTokenizer.tokenize("this is. two sentences");
+        List<Sentence> tokens = inputTokenizer.tokenize("this is. two sentences");
 
         assertEquals(2, tokens.size());
         assertEquals(2, tokens.get(0).size());
@@ -139,7 +139,7 @@ public class InputTokenizerTest {
 
     @Test
     public void testExclamations() {
-        List<List<String>> tokens = inputTokenizer.tokenize("this is! two sentences");
+        List<Sentence> tokens = inputTokenizer.tokenize("this is! two sentences");
 
         assertEquals(2, tokens.size());
         assertEquals(2, tokens.get(0).size());
@@ -152,7 +152,7 @@ public class InputTokenizerTest {
 
     @Test
     public void testQuestions() {
-        List<List<String>> tokens = inputTokenizer.tokenize("this is? two sentences");
+        List<Sentence> tokens = inputTokenizer.tokenize("this is? two sentences");
 
         assertEquals(2, tokens.size());
         assertEquals(2, tokens.get(0).size());
@@ -165,7 +165,7 @@ public class InputTokenizerTest {
 
     @Test
     public void testExtraWhitespace() {
-        List<List<String>> tokens = inputTokenizer.tokenize("much     whitespace");
+        List<Sentence> tokens = inputTokenizer.tokenize("much     whitespace");
 
         assertEquals(1, tokens.size());
         assertEquals(2, tokens.get(0).size());
@@ -175,7 +175,7 @@ public class InputTokenizerTest {
 
     @Test
     public void testMultiplePunctuations() {
-        List<List<String>> tokens = inputTokenizer.tokenize("test...");
+        List<Sentence> tokens = inputTokenizer.tokenize("test...");
 
         assertEquals(1, tokens.size());
         assertEquals(1, tokens.get(0).size());
@@ -184,16 +184,69 @@ public class InputTokenizerTest {
 
     @Test
     public void testPeriodsAtStart() {
-        List<List<String>> tokens = inputTokenizer.tokenize("...test");
+        List<Sentence> tokens = inputTokenizer.tokenize("...test");
 
         assertEquals(1, tokens.size());
         assertEquals(1, tokens.get(0).size());
         assertEquals("TEST", tokens.get(0).get(0));
     }
 
+    @Test
+    public void testStopWords() {
+        List<Sentence> tokens = inputTokenizer.tokenize("get a sword and an apple from the chest");
+
+        assertEquals(1, tokens.size());
+        assertEquals(6, tokens.get(0).size());
+        assertEquals("GET", tokens.get(0).get(0));
+        assertEquals("SWORD", tokens.get(0).get(1));
+        assertEquals("AND", tokens.get(0).get(2));
+        assertEquals("APPLE", tokens.get(0).get(3));
+        assertEquals("FROM", tokens.get(0).get(4));
+        assertEquals("CHEST", tokens.get(0).get(5));
+    }
+
+    @Test
+    public void testOnlyStopWords() {
+        List<Sentence> tokens = inputTokenizer.tokenize("the. a an");
+
+        assertEquals(0, tokens.size());
+    }
+
+    @Test
+    public void testStopWordBeforePeriod() {
+        List<Sentence> tokens = inputTokenizer.tokenize("look the. look");
+
+        assertEquals(2, tokens.size());
+        assertEquals(1, tokens.get(0).size());
+        assertEquals(1, tokens.get(1).size());
+        assertEquals("LOOK", tokens.get(0).get(0));
+        assertEquals("LOOK", tokens.get(1).get(0));
+    }
+
+    @Test
+    public void testRepeatedCalls() {
+        List<Sentence> first = inputTokenizer.tokenize("first sentence then \"with quotes\"");
+        List<Sentence> second = inputTokenizer.tokenize("second");
+
+        assertEquals(2, first.size());
+        assertEquals("with quotes", first.get(1).get(0));
+        assertEquals(1, second.size());
+        assertEquals("SECOND", second.get(0).get(0));
+    }
+
+    @Test
+    public void testSentenceStart() {
+        List<Sentence> tokens = inputTokenizer.tokenize("  look. the  say \"hi\" then  get sword");
+
+        assertEquals(3, tokens.size());
+        assertEquals(2, tokens.get(0).getStart());
+        assertEquals(13, tokens.get(1).getStart());
+        assertEquals(28, tokens.get(2).getStart());
+    }
+
     @Test
     public void testEmbeddedQuotes() {
-        List<List<String>> tokens = inputTokenizer.tokenize("code: \"System.out.println(\"Test\");\" code");
+        List<Sentence> tokens = inputTokenizer.tokenize("code: \"System.out.println(\"Test\");\" code");
 
         assertEquals(1, tokens.size());
         assertEquals(5, tokens.get(0).size());
@@ -203,4 +256,22 @@ public class InputTokenizerTest {
         assertEquals(");", tokens.get(0).get(3));
         assertEquals("CODE", tokens.get(0).get(4));
     }
+
+    @Test
+    public void testOrdinal() {
+        List<Sentence> tokens = inputTokenizer.tokenize("get 2.sword");
+
+        assertEquals(1, tokens.size());
+        assertEquals(2, tokens.get(0).size());
+        assertEquals("2.SWORD", tokens.get(0).get(1));
+    }
+
+    @Test
+    public void testNumberEndsSentence() {
+        List<Sentence> tokens = inputTokenizer.tokenize("say 2. look");
+
+        assertEquals(2, tokens.size());
+        assertEquals("2", tokens.get(0).get(1));
+        assertEquals("LOOK", tokens.get(1).get(0));
+    }
 }
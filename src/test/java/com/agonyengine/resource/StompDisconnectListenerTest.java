@@ -4,6 +4,9 @@ import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.stomp.GameOutput;
 import com.agonyengine.repository.ActorRepository;
 import com.agonyengine.service.CommService;
+import com.agonyengine.service.OccupancyService;
+import com.agonyengine.service.ReaperService;
+import com.agonyengine.service.SessionActorRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -19,20 +22,31 @@ import java.security.Principal;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class StompDisconnectListenerTest {
+    @Mock
+    private SessionActorRegistry sessionActorRegistry;
+
     @Mock
     private ActorRepository actorRepository;
 
     @Mock
     private CommService commService;
 
+    @Mock
+    private OccupancyService occupancyService;
+
+    @Mock
+    private ReaperService reaperService;
+
     @Mock
     private SessionDisconnectEvent disconnectEvent;
 
@@ -53,8 +67,11 @@ public class StompDisconnectListenerTest {
         message = buildMockMessage();
 
         stompDisconnectListener = new StompDisconnectListener(
+            sessionActorRegistry,
             actorRepository,
-            commService);
+            commService,
+            occupancyService,
+            reaperService);
     }
 
     @Test
@@ -62,14 +79,40 @@ public class StompDisconnectListenerTest {
         when(disconnectEvent.getMessage()).thenReturn(message);
         when(disconnectEvent.getSessionId()).thenReturn("SessionId");
         when(principal.getName()).thenReturn("SessionUser");
-        when(actorRepository.findBySessionUsernameAndSessionId(eq("SessionUser"), eq("SessionId"))).thenReturn(actor);
+        when(sessionActorRegistry.findActor(eq("SessionUser"), eq("SessionId"))).thenReturn(actor);
         when(actor.getName()).thenReturn("Stan");
         when(actor.getRemoteIpAddress()).thenReturn("10.11.12.13");
+        when(actor.getSessionUsername()).thenReturn("SessionUser");
+        when(actor.getSessionId()).thenReturn("SessionId");
+        when(actorRepository.disconnectIfSession(any(), eq("SessionUser"), eq("SessionId"), any(Date.class))).thenReturn(1);
         stompDisconnectListener.onApplicationEvent(disconnectEvent);
 
+        verify(actorRepository).disconnectIfSession(any(), eq("SessionUser"), eq("SessionId"), any(Date.class));
         verify(commService).echoToRoom(eq(actor), any(GameOutput.class), eq(actor));
         verify(actor).setDisconnectedDate(any(Date.class));
-        verify(actorRepository).save(eq(actor));
+        verify(occupancyService).update(eq(actor));
+        verify(reaperService).schedule(eq(actor.getId()), any());
+        verify(sessionActorRegistry).evict(eq("SessionId"));
+    }
+
+    @Test
+    public void testReconnectedElsewhere() {
+        when(disconnectEvent.getMessage()).thenReturn(message);
+        when(disconnectEvent.getSessionId()).thenReturn("SessionId");
+        when(principal.getName()).thenReturn("SessionUser");
+        when(sessionActorRegistry.findActor(eq("SessionUser"), eq("SessionId"))).thenReturn(actor);
+        when(actor.getId()).thenReturn(UUID.randomUUID());
+        when(actor.getSessionUsername()).thenReturn("SessionUser");
+        when(actor.getSessionId()).thenReturn("SessionId");
+        when(actorRepository.disconnectIfSession(any(UUID.class), anyString(), anyString(), any(Date.class))).thenReturn(0);
+
+        stompDisconnectListener.onApplicationEvent(disconnectEvent);
+
+        verify(commService, never()).echoToRoom(any(Actor.class), any(GameOutput.class), any(Actor.class));
+        verify(actor, never()).setDisconnectedDate(any(Date.class));
+        verify(occupancyService, never()).update(any(Actor.class));
+        verify(reaperService, never()).schedule(any(UUID.class), any(Date.class));
+        verify(sessionActorRegistry).evict(eq("SessionId"));
     }
 
     @Test
@@ -77,11 +120,13 @@ public class StompDisconnectListenerTest {
         when(disconnectEvent.getMessage()).thenReturn(message);
         when(disconnectEvent.getSessionId()).thenReturn("SessionId");
         when(principal.getName()).thenReturn("SessionUser");
-        when(actorRepository.findBySessionUsernameAndSessionId(eq("SessionUser"), eq("SessionId"))).thenReturn(null);
+        when(sessionActorRegistry.findActor(eq("SessionUser"), eq("SessionId"))).thenReturn(null);
 
         stompDisconnectListener.onApplicationEvent(disconnectEvent);
 
-        verify(actorRepository, never()).delete(eq(actor));
+        verify(commService, never()).echoToRoom(any(Actor.class), any(GameOutput.class), any(Actor.class));
+        verify(occupancyService, never()).update(any(Actor.class));
+        verify(sessionActorRegistry).evict(eq("SessionId"));
     }
 
     private Message<byte[]> buildMockMessage() {
@@ -1,5 +1,6 @@
 package com.agonyengine.resource;
 
+import com.agonyengine.config.InputProperties;
 import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.actor.GameMap;
 import com.agonyengine.model.actor.Pronoun;
@@ -10,28 +11,33 @@ import com.agonyengine.model.stomp.GameOutput;
 import com.agonyengine.model.stomp.UserInput;
 import com.agonyengine.repository.ActorRepository;
 import com.agonyengine.repository.GameMapRepository;
-import com.agonyengine.repository.VerbRepository;
 import com.agonyengine.resource.exception.NoSuchActorException;
 import com.agonyengine.service.CommService;
+import com.agonyengine.service.CommandScheduler;
 import com.agonyengine.service.InvokerService;
+import com.agonyengine.service.OccupancyService;
+import com.agonyengine.service.ReaperService;
+import com.agonyengine.service.RoomTopicService;
+import com.agonyengine.service.SessionActorRegistry;
+import com.agonyengine.service.VerbRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.context.ApplicationContext;
-import org.springframework.data.domain.Sort;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.support.GenericMessage;
 import org.springframework.session.Session;
 import org.springframework.session.SessionRepository;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
 
 import java.security.Principal;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -42,6 +48,7 @@ import java.util.UUID;
 import static com.agonyengine.resource.WebSocketResource.SPRING_SESSION_ID_KEY;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
@@ -51,6 +58,9 @@ public class WebSocketResourceTest {
     @Mock
     private ApplicationContext applicationContext;
 
+    @Mock
+    private InputProperties inputProperties;
+
     @Mock
     private InputTokenizer inputTokenizer;
 
@@ -63,9 +73,6 @@ public class WebSocketResourceTest {
     @Mock
     private ActorRepository actorRepository;
 
-    @Mock
-    private VerbRepository verbRepository;
-
     @Mock
     private Actor actor;
 
@@ -84,12 +91,36 @@ public class WebSocketResourceTest {
     @Mock
     private Principal principal;
 
+    @Mock
+    private SessionActorRegistry sessionActorRegistry;
+
     @Mock
     private InvokerService invokerService;
 
+    @Mock
+    private VerbRegistry verbRegistry;
+
     @Mock
     private CommService commService;
 
+    @Mock
+    private OccupancyService occupancyService;
+
+    @Mock
+    private RoomTopicService roomTopicService;
+
+    @Mock
+    private ReaperService reaperService;
+
+    @Mock
+    private CommandScheduler commandScheduler;
+
+    @Mock
+    private TransactionOperations transactionOperations;
+
+    @Captor
+    private ArgumentCaptor<Runnable> commandCaptor;
+
     @Captor
     private ArgumentCaptor<Actor> actorCaptor;
 
@@ -97,7 +128,7 @@ public class WebSocketResourceTest {
     private ArgumentCaptor<GameMap> gameMapCaptor;
 
     private UUID defaultMapId = UUID.randomUUID();
-    private List<List<String>> sentences = new ArrayList<>();
+    private List<Sentence> sentences = new ArrayList<>();
     private String remoteIpAddress = "10.11.12.13";
     private UUID sessionId = UUID.randomUUID();
     private UUID actorTemplateId = UUID.randomUUID();
@@ -112,7 +143,7 @@ public class WebSocketResourceTest {
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
-        sentences.add(Collections.singletonList("ABLE"));
+        sentences.add(new Sentence(0, "ABLE"));
         message = buildMockMessage(sessionId.toString());
 
         when(principal.getName()).thenReturn("Shepherd");
@@ -122,7 +153,7 @@ public class WebSocketResourceTest {
         when(actor.getName()).thenReturn("Frank");
         when(actor.getPronoun()).thenReturn(pronoun);
         when(actor.getGameMap()).thenReturn(gameMap);
-        when(actorRepository.findBySessionUsernameAndSessionId(eq("Shepherd"), eq(sessionId.toString()))).thenReturn(actor);
+        when(sessionActorRegistry.findActor(eq("Shepherd"), eq(sessionId.toString()))).thenReturn(actor);
         when(sessionRepository.findById(eq(sessionId.toString()))).thenReturn(session);
         when(session.getAttribute(eq("remoteIpAddress"))).thenReturn(remoteIpAddress);
         when(actorRepository.findById(eq(actorTemplateId))).thenReturn(Optional.of(actor));
@@ -146,16 +177,31 @@ public class WebSocketResourceTest {
 
         verbs = buildMockVerbs();
 
+        for (Verb verb : verbs) {
+            when(verbRegistry.find(eq(verb.getName().toUpperCase()))).thenReturn(Optional.of(verb));
+        }
+
+        when(inputProperties.getMaxCommandsPerLine()).thenReturn(20);
+        when(transactionOperations.execute(any())).thenAnswer(i -> ((TransactionCallback<?>)i.getArgument(0)).doInTransaction(null));
+
         resource = new WebSocketResource(
             "0.1.2-UNIT-TEST",
             new Date(),
             defaultMapId,
+            inputProperties,
             inputTokenizer,
             gameMapRepository,
             sessionRepository,
             actorRepository,
+            sessionActorRegistry,
             invokerService,
-            commService);
+            verbRegistry,
+            commService,
+            occupancyService,
+            roomTopicService,
+            reaperService,
+            commandScheduler,
+            transactionOperations);
     }
 
     @Test
@@ -169,10 +215,13 @@ public class WebSocketResourceTest {
         verify(actor).setSessionUsername(eq("Shepherd"));
         verify(actor).setSessionId(eq(sessionId.toString()));
         verify(actor).setRemoteIpAddress(eq(remoteIpAddress));
+        verify(reaperService).cancel(eq(actor.getId()));
         verify(actor, never()).setGameMap(any(GameMap.class));
         verify(actor, never()).setX(anyInt());
         verify(actor, never()).setY(anyInt());
         verify(actorRepository).save(eq(actor));
+        verify(sessionActorRegistry).register(eq("Shepherd"), eq(sessionId.toString()), any());
+        verify(occupancyService).update(eq(actor));
 
         assertTrue(output.getOutput().stream()
             .noneMatch(line -> line.equals("Non Breaking Space Greeting.".replace(" ", "&nbsp;"))));
@@ -181,6 +230,24 @@ public class WebSocketResourceTest {
             .noneMatch(line -> line.equals("Breaking Space Greeting.")));
     }
 
+    @Test
+    public void testOnSubscribeRoomTopic() {
+        when(roomTopicService.isEnabled()).thenReturn(true);
+        when(roomTopicService.join(eq(sessionId.toString()), eq(actor))).thenReturn("/topic/room.test");
+
+        GameOutput output = resource.onSubscribe(principal, message, actorTemplateId.toString());
+
+        assertEquals("/topic/room.test", output.getRoom());
+    }
+
+    @Test
+    public void testOnSubscribeNoRoomTopic() {
+        GameOutput output = resource.onSubscribe(principal, message, actorTemplateId.toString());
+
+        verify(roomTopicService, never()).join(anyString(), any(Actor.class));
+        assertNull(output.getRoom());
+    }
+
     @Test
     public void testOnSubscribeReconnectInVoid() {
         when(actor.getGameMap()).thenReturn(null);
@@ -254,12 +321,74 @@ public class WebSocketResourceTest {
         when(input.getInput()).thenReturn("Able!");
         when(session.getAttribute(eq("actor"))).thenReturn(actorId.toString());
         when(actorRepository.findById(eq(actorId))).thenReturn(Optional.of(actor));
-        when(verbRepository.findFirstByNameIgnoreCaseStartingWith(any(Sort.class), eq("ABLE"))).thenReturn(Optional.of(verbs.get(0)));
 
-        GameOutput output = resource.onInput(principal, input, message);
+        GameOutput output = resource.execute("Shepherd", sessionId.toString(), input);
 
         assertNotNull(output);
         verify(invokerService).invoke(any(Actor.class), any(GameOutput.class), any(UserInput.class), anyList());
+        verify(commService).drainTo(eq(sessionId.toString()), eq(output));
+    }
+
+    @Test
+    public void testOnInputQueuesCommand() {
+        UUID actorId = UUID.randomUUID();
+
+        when(sessionActorRegistry.findActorId(eq("Shepherd"), eq(sessionId.toString()))).thenReturn(actorId);
+        when(commandScheduler.submit(eq(actorId), any(Runnable.class))).thenReturn(true);
+        when(inputTokenizer.tokenize(eq("Able!"))).thenReturn(sentences);
+        when(input.getInput()).thenReturn("Able!");
+
+        resource.onInput(principal, input, message);
+
+        verify(commandScheduler).submit(eq(actorId), commandCaptor.capture());
+        verify(invokerService, never()).invoke(any(Actor.class), any(GameOutput.class), any(UserInput.class), anyList());
+
+        commandCaptor.getValue().run();
+
+        verify(transactionOperations, times(2)).execute(any());
+        verify(invokerService).invoke(any(Actor.class), any(GameOutput.class), any(UserInput.class), anyList());
+        verify(commService).reply(eq("Shepherd"), eq(sessionId.toString()), any(GameOutput.class));
+    }
+
+    @Test
+    public void testOnInputMailboxFull() {
+        UUID actorId = UUID.randomUUID();
+        ArgumentCaptor<GameOutput> outputCaptor = ArgumentCaptor.forClass(GameOutput.class);
+
+        when(sessionActorRegistry.findActorId(eq("Shepherd"), eq(sessionId.toString()))).thenReturn(actorId);
+        when(commandScheduler.submit(eq(actorId), any(Runnable.class))).thenReturn(false);
+
+        resource.onInput(principal, input, message);
+
+        verify(commService).reply(eq("Shepherd"), eq(sessionId.toString()), outputCaptor.capture());
+        verifyZeroInteractions(transactionOperations, invokerService);
+        assertTrue(outputCaptor.getValue().getOutput().get(0).startsWith("[red]"));
+    }
+
+    @Test
+    public void testOnInputTransactionFailure() {
+        UUID actorId = UUID.randomUUID();
+        ArgumentCaptor<GameOutput> outputCaptor = ArgumentCaptor.forClass(GameOutput.class);
+
+        when(sessionActorRegistry.findActorId(eq("Shepherd"), eq(sessionId.toString()))).thenReturn(actorId);
+        when(commandScheduler.submit(eq(actorId), any(Runnable.class))).thenReturn(true);
+        doThrow(new IllegalStateException("Commit failed")).when(transactionOperations).execute(any());
+
+        resource.onInput(principal, input, message);
+
+        verify(commandScheduler).submit(eq(actorId), commandCaptor.capture());
+
+        commandCaptor.getValue().run();
+
+        verify(commService).reply(eq("Shepherd"), eq(sessionId.toString()), outputCaptor.capture());
+        assertTrue(outputCaptor.getValue().getOutput().get(0).startsWith("[red]"));
+    }
+
+    @Test
+    public void testOnInputNoActor() {
+        resource.onInput(principal, input, message);
+
+        verifyZeroInteractions(commandScheduler, commService);
     }
 
     @Test
@@ -270,9 +399,8 @@ public class WebSocketResourceTest {
         when(input.getInput()).thenReturn("Able. Baker. Charlie.");
         when(session.getAttribute(eq("actor"))).thenReturn(actorId.toString());
         when(actorRepository.findById(eq(actorId))).thenReturn(Optional.of(actor));
-        when(verbRepository.findFirstByNameIgnoreCaseStartingWith(any(Sort.class), eq("ABLE"))).thenReturn(Optional.of(verbs.get(0)));
 
-        GameOutput output = resource.onInput(principal, input, message);
+        GameOutput output = resource.execute("Shepherd", sessionId.toString(), input);
 
         assertNotNull(output);
         verify(invokerService).invoke(any(Actor.class), any(GameOutput.class), any(UserInput.class), anyList());
@@ -285,19 +413,18 @@ public class WebSocketResourceTest {
 
         fakeCommandOutput(alphaBean);
 
-        List<List<String>> sentences = new ArrayList<>();
+        List<Sentence> sentences = new ArrayList<>();
 
-        sentences.add(Arrays.asList("ABLE", "BAKER", "CHARLIE", "DOG", "EASY", "FOX"));
+        sentences.add(new Sentence(0, "ABLE", "BAKER", "CHARLIE", "DOG", "EASY", "FOX"));
 
         when(inputTokenizer.tokenize(eq("Able baker charlie dog easy fox."))).thenReturn(sentences);
         when(input.getInput()).thenReturn("Able baker charlie dog easy fox.");
         when(session.getAttribute(eq("actor"))).thenReturn(actorId.toString());
         when(actorRepository.findById(eq(actorId))).thenReturn(Optional.of(actor));
-        when(verbRepository.findFirstByNameIgnoreCaseStartingWith(any(Sort.class), eq("ABLE"))).thenReturn(Optional.of(verbs.get(0)));
         when(verbs.get(0).isQuoting()).thenReturn(true);
         when(applicationContext.getBean(eq("ableCommand"))).thenReturn(alphaBean);
 
-        GameOutput output = resource.onInput(principal, input, message);
+        GameOutput output = resource.execute("Shepherd", sessionId.toString(), input);
 
         assertNotNull(output);
         verify(invokerService).invoke(any(Actor.class), any(GameOutput.class), any(UserInput.class), anyList());
@@ -307,19 +434,18 @@ public class WebSocketResourceTest {
     public void testOnInputQuotingVerbEmpty() {
         UUID actorId = UUID.randomUUID();
         SayCommand alphaBean = mock(SayCommand.class);
-        List<List<String>> sentences = new ArrayList<>();
+        List<Sentence> sentences = new ArrayList<>();
 
-        sentences.add(Collections.singletonList("ABLE"));
+        sentences.add(new Sentence(0, "ABLE"));
 
         when(inputTokenizer.tokenize(eq("Able"))).thenReturn(sentences);
         when(input.getInput()).thenReturn("Able");
         when(session.getAttribute(eq("actor"))).thenReturn(actorId.toString());
         when(actorRepository.findById(eq(actorId))).thenReturn(Optional.of(actor));
-        when(verbRepository.findFirstByNameIgnoreCaseStartingWith(any(Sort.class), eq("ABLE"))).thenReturn(Optional.of(verbs.get(0)));
         when(verbs.get(0).isQuoting()).thenReturn(true);
         when(applicationContext.getBean(eq("ableCommand"))).thenReturn(alphaBean);
 
-        GameOutput output = resource.onInput(principal, input, message);
+        GameOutput output = resource.execute("Shepherd", sessionId.toString(), input);
 
         assertNotNull(output);
         verify(invokerService).invoke(any(Actor.class), any(GameOutput.class), any(UserInput.class), anyList());
@@ -332,19 +458,18 @@ public class WebSocketResourceTest {
 
         fakeCommandOutput(alphaBean);
 
-        List<List<String>> sentences = new ArrayList<>();
+        List<Sentence> sentences = new ArrayList<>();
 
-        sentences.add(Arrays.asList("ABLE", "BAKER", "CHARLIE", "DOG", "EASY", "FOX"));
+        sentences.add(new Sentence(0, "ABLE", "BAKER", "CHARLIE", "DOG", "EASY", "FOX"));
 
         when(inputTokenizer.tokenize(eq("Able      baker charlie dog easy fox."))).thenReturn(sentences);
         when(input.getInput()).thenReturn("Able      baker charlie dog easy fox.");
         when(session.getAttribute(eq("actor"))).thenReturn(actorId.toString());
         when(actorRepository.findById(eq(actorId))).thenReturn(Optional.of(actor));
-        when(verbRepository.findFirstByNameIgnoreCaseStartingWith(any(Sort.class), eq("ABLE"))).thenReturn(Optional.of(verbs.get(0)));
         when(verbs.get(0).isQuoting()).thenReturn(true);
         when(applicationContext.getBean(eq("ableCommand"))).thenReturn(alphaBean);
 
-        GameOutput output = resource.onInput(principal, input, message);
+        GameOutput output = resource.execute("Shepherd", sessionId.toString(), input);
 
         assertNotNull(output);
         verify(invokerService).invoke(any(Actor.class), any(GameOutput.class), any(UserInput.class), anyList());
@@ -357,26 +482,107 @@ public class WebSocketResourceTest {
 
         fakeCommandOutput(alphaBean);
 
-        List<List<String>> sentences = new ArrayList<>();
+        List<Sentence> sentences = new ArrayList<>();
 
-        sentences.add(Arrays.asList("ABLE", "BAKER"));
-        sentences.add(Arrays.asList("CHARLIE", "DOG"));
-        sentences.add(Arrays.asList("EASY", "FOX"));
+        sentences.add(new Sentence(0, "ABLE", "BAKER"));
+        sentences.add(new Sentence(12, "CHARLIE", "DOG"));
+        sentences.add(new Sentence(25, "EASY", "FOX"));
 
         when(inputTokenizer.tokenize(eq("Able baker. Charlie dog. Easy fox."))).thenReturn(sentences);
         when(input.getInput()).thenReturn("Able baker. Charlie dog. Easy fox.");
         when(session.getAttribute(eq("actor"))).thenReturn(actorId.toString());
         when(actorRepository.findById(eq(actorId))).thenReturn(Optional.of(actor));
-        when(verbRepository.findFirstByNameIgnoreCaseStartingWith(any(Sort.class), eq("ABLE"))).thenReturn(Optional.of(verbs.get(0)));
         when(verbs.get(0).isQuoting()).thenReturn(true);
         when(applicationContext.getBean(eq("ableCommand"))).thenReturn(alphaBean);
 
-        GameOutput output = resource.onInput(principal, input, message);
+        GameOutput output = resource.execute("Shepherd", sessionId.toString(), input);
 
         assertNotNull(output);
         verify(invokerService).invoke(any(Actor.class), any(GameOutput.class), any(UserInput.class), anyList());
     }
 
+    @Test
+    public void testOnInputRunsEverySentenceInOrder() {
+        List<Sentence> sentences = new ArrayList<>();
+        ArgumentCaptor<UserInput> inputCaptor = ArgumentCaptor.forClass(UserInput.class);
+
+        sentences.add(new Sentence(0, "ABLE"));
+        sentences.add(new Sentence(6, "BAKER", "DOG"));
+        sentences.add(new Sentence(17, "CHARLIE"));
+
+        when(inputTokenizer.tokenize(eq("able. baker dog. charlie"))).thenReturn(sentences);
+        when(input.getInput()).thenReturn("able. baker dog. charlie");
+
+        GameOutput output = resource.execute("Shepherd", sessionId.toString(), input);
+
+        assertNotNull(output);
+
+        InOrder inOrder = inOrder(invokerService);
+
+        inOrder.verify(invokerService).invoke(eq(actor), eq(output), inputCaptor.capture(), eq(sentences.get(0)));
+        inOrder.verify(invokerService).invoke(eq(actor), eq(output), inputCaptor.capture(), eq(sentences.get(1)));
+        inOrder.verify(invokerService).invoke(eq(actor), eq(output), inputCaptor.capture(), eq(sentences.get(2)));
+
+        assertEquals("able. baker dog. charlie", inputCaptor.getAllValues().get(0).getInput());
+        assertEquals("baker dog. charlie", inputCaptor.getAllValues().get(1).getInput());
+        assertEquals("charlie", inputCaptor.getAllValues().get(2).getInput());
+    }
+
+    @Test
+    public void testOnInputStopsAfterQuotingVerb() {
+        List<Sentence> sentences = new ArrayList<>();
+
+        sentences.add(new Sentence(0, "CHARLIE"));
+        sentences.add(new Sentence(9, "ABLE", "HELLO"));
+        sentences.add(new Sentence(21, "BAKER"));
+
+        when(inputTokenizer.tokenize(eq("charlie. able hello. baker"))).thenReturn(sentences);
+        when(input.getInput()).thenReturn("charlie. able hello. baker");
+        when(verbs.get(0).isQuoting()).thenReturn(true);
+
+        resource.execute("Shepherd", sessionId.toString(), input);
+
+        verify(invokerService).invoke(eq(actor), any(GameOutput.class), any(UserInput.class), eq(sentences.get(0)));
+        verify(invokerService).invoke(eq(actor), any(GameOutput.class), any(UserInput.class), eq(sentences.get(1)));
+        verify(invokerService, never()).invoke(eq(actor), any(GameOutput.class), any(UserInput.class), eq(sentences.get(2)));
+    }
+
+    @Test
+    public void testOnInputStopsAfterException() {
+        List<Sentence> sentences = new ArrayList<>();
+
+        sentences.add(new Sentence(0, "ABLE"));
+        sentences.add(new Sentence(6, "BAKER"));
+
+        when(inputTokenizer.tokenize(eq("able. baker"))).thenReturn(sentences);
+        when(input.getInput()).thenReturn("able. baker");
+        doThrow(new IllegalStateException("Oops!"))
+            .when(invokerService).invoke(eq(actor), any(GameOutput.class), any(UserInput.class), eq(sentences.get(0)));
+
+        GameOutput output = resource.execute("Shepherd", sessionId.toString(), input);
+
+        assertTrue(output.getOutput().contains("[red]Oops!"));
+        verify(invokerService, never()).invoke(eq(actor), any(GameOutput.class), any(UserInput.class), eq(sentences.get(1)));
+    }
+
+    @Test
+    public void testOnInputMaxCommandsPerLine() {
+        List<Sentence> sentences = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            sentences.add(new Sentence(i * 3, "BAKER"));
+        }
+
+        when(inputProperties.getMaxCommandsPerLine()).thenReturn(3);
+        when(inputTokenizer.tokenize(eq("b. b. b. b. b."))).thenReturn(sentences);
+        when(input.getInput()).thenReturn("b. b. b. b. b.");
+
+        GameOutput output = resource.execute("Shepherd", sessionId.toString(), input);
+
+        verify(invokerService, times(3)).invoke(eq(actor), any(GameOutput.class), any(UserInput.class), anyList());
+        assertTrue(output.getOutput().contains("[red]Only the first 3 commands on a line will be executed."));
+    }
+
     @Test
     public void testOnInputNoPat() {
         UUID actorId = UUID.randomUUID();
@@ -386,7 +592,7 @@ public class WebSocketResourceTest {
         when(session.getAttribute(eq("actor"))).thenReturn(actorId.toString());
         when(actorRepository.findById(eq(actorId))).thenReturn(Optional.empty());
 
-        GameOutput output = resource.onInput(principal, input, message);
+        GameOutput output = resource.execute("Shepherd", sessionId.toString(), input);
 
         assertTrue(output.getOutput().size() >= 2);
     }
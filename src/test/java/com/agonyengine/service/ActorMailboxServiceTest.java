@@ -0,0 +1,117 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.InputProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ActorMailboxServiceTest {
+    private Queue<Runnable> executorQueue = new LinkedList<>();
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private List<String> ran = new ArrayList<>();
+    private UUID alice = UUID.randomUUID();
+    private UUID bob = UUID.randomUUID();
+
+    private ActorMailboxService actorMailboxService;
+
+    @Before
+    public void setUp() {
+        InputProperties inputProperties = new InputProperties();
+
+        inputProperties.setMailboxDepth(3);
+
+        actorMailboxService = new ActorMailboxService(inputProperties, executorQueue::add, meterRegistry);
+    }
+
+    @Test
+    public void testRunsInArrivalOrder() {
+        actorMailboxService.submit(alice, () -> ran.add("look"));
+        actorMailboxService.submit(alice, () -> ran.add("north"));
+        actorMailboxService.submit(alice, () -> ran.add("say hi"));
+
+        // a busy mailbox only ever has one task waiting on the executor
+        assertEquals(1, executorQueue.size());
+
+        runAll();
+
+        assertEquals(3, ran.size());
+        assertEquals("look", ran.get(0));
+        assertEquals("north", ran.get(1));
+        assertEquals("say hi", ran.get(2));
+        assertEquals(0, actorMailboxService.getDepth(alice));
+    }
+
+    @Test
+    public void testActorsTakeTurns() {
+        actorMailboxService.submit(alice, () -> ran.add("alice 1"));
+        actorMailboxService.submit(alice, () -> ran.add("alice 2"));
+        actorMailboxService.submit(bob, () -> ran.add("bob 1"));
+
+        runAll();
+
+        assertEquals("alice 1", ran.get(0));
+        assertEquals("bob 1", ran.get(1));
+        assertEquals("alice 2", ran.get(2));
+    }
+
+    @Test
+    public void testRejectsWhenFull() {
+        assertTrue(actorMailboxService.submit(alice, () -> ran.add("1")));
+        assertTrue(actorMailboxService.submit(alice, () -> ran.add("2")));
+        assertTrue(actorMailboxService.submit(alice, () -> ran.add("3")));
+        assertFalse(actorMailboxService.submit(alice, () -> ran.add("4")));
+        assertTrue(actorMailboxService.submit(bob, () -> ran.add("bob")));
+
+        assertEquals(1.0, meterRegistry.get("agonyengine.input.mailbox.rejections").counter().count(), 0.0);
+
+        runAll();
+
+        assertEquals(4, ran.size());
+        assertTrue(actorMailboxService.submit(alice, () -> ran.add("5")));
+    }
+
+    @Test
+    public void testSubmitWhileRunning() {
+        actorMailboxService.submit(alice, () -> {
+            ran.add("first");
+            actorMailboxService.submit(alice, () -> ran.add("second"));
+        });
+
+        runAll();
+
+        assertEquals(2, ran.size());
+        assertEquals("second", ran.get(1));
+    }
+
+    @Test
+    public void testFailureDoesNotBlockMailbox() {
+        actorMailboxService.submit(alice, () -> {
+            throw new IllegalStateException("Boom");
+        });
+        actorMailboxService.submit(alice, () -> ran.add("next"));
+
+        runAll();
+
+        assertEquals(1, ran.size());
+        assertEquals(0, actorMailboxService.getDepth(alice));
+    }
+
+    private void runAll() {
+        Runnable task;
+
+        while ((task = executorQueue.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.BrokerMode;
+import com.agonyengine.config.WebSocketBrokerProperties;
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.GameMap;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ActorStateServiceTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Captor
+    private ArgumentCaptor<Collection<Object>> batchCaptor;
+
+    @Captor
+    private ArgumentCaptor<ParameterizedPreparedStatementSetter<Object>> setterCaptor;
+
+    @Captor
+    private ArgumentCaptor<PreparedStatementSetter> statementSetterCaptor;
+
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private WebSocketBrokerProperties brokerProperties = new WebSocketBrokerProperties();
+    private GameMap gameMap = new GameMap();
+    private GameMap otherMap = new GameMap();
+    private Actor actor = new Actor();
+
+    private ActorStateService actorStateService;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        gameMap.setId(UUID.randomUUID());
+        otherMap.setId(UUID.randomUUID());
+
+        actor.setId(UUID.randomUUID());
+        actor.setGameMap(gameMap);
+        actor.setX(1);
+        actor.setY(2);
+        actor.setSessionUsername("Shepherd");
+        actor.setSessionId("session-1");
+        actor.setArrival(7L);
+
+        brokerProperties.setMode(BrokerMode.SIMPLE);
+
+        actorStateService = new ActorStateService(jdbcTemplate, brokerProperties, meterRegistry);
+    }
+
+    @Test
+    public void testApplyOverlaysPendingState() {
+        actor.setGameMap(otherMap);
+        actor.setX(5);
+        actorStateService.record(actor);
+
+        Actor loaded = buildLoaded();
+
+        actorStateService.apply(loaded);
+
+        assertEquals(otherMap, loaded.getGameMap());
+        assertEquals(5, (int)loaded.getX());
+        assertEquals(2, (int)loaded.getY());
+        assertEquals(7L, (long)loaded.getArrival());
+    }
+
+    @Test
+    public void testApplyKeepsLoadedMap() {
+        actor.setX(5);
+        actorStateService.record(actor);
+
+        Actor loaded = buildLoaded();
+
+        actorStateService.apply(loaded);
+
+        assertEquals(gameMap, loaded.getGameMap());
+    }
+
+    @Test
+    public void testApplyIntoVoid() {
+        actor.setGameMap(null);
+        actorStateService.record(actor);
+
+        Actor loaded = buildLoaded();
+
+        actorStateService.apply(loaded);
+
+        assertNull(loaded.getGameMap());
+    }
+
+    @Test
+    public void testApplyNothingPending() {
+        Actor loaded = buildLoaded();
+
+        actorStateService.apply(loaded);
+
+        assertEquals(1, (int)loaded.getX());
+    }
+
+    @Test
+    public void testRecordWaitsForCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            actorStateService.record(actor);
+
+            assertEquals(0, actorStateService.getPendingCount());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(1, actorStateService.getPendingCount());
+    }
+
+    @Test
+    public void testRecordDroppedOnRollback() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            actorStateService.record(actor);
+
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(0, actorStateService.getPendingCount());
+    }
+
+    @Test
+    public void testRecordCopiesState() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            actorStateService.record(actor);
+            actor.setX(9);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        Actor loaded = buildLoaded();
+
+        loaded.setX(0);
+        actorStateService.apply(loaded);
+
+        assertEquals(1, (int)loaded.getX());
+    }
+
+    @Test
+    public void testRecordWritesThroughWithRelay() throws Exception {
+        brokerProperties.setMode(BrokerMode.RELAY);
+        actorStateService = new ActorStateService(jdbcTemplate, brokerProperties, meterRegistry);
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            actorStateService.record(actor);
+
+            verify(jdbcTemplate).update(eq(ActorStateService.UPDATE_SQL), statementSetterCaptor.capture());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        PreparedStatement statement = mock(PreparedStatement.class);
+
+        statementSetterCaptor.getValue().setValues(statement);
+
+        verify(statement).setObject(eq(2), eq(1), eq(Types.INTEGER));
+        verify(statement).setObject(eq(5), eq(actor.getId()), eq(Types.OTHER));
+        assertEquals(0, actorStateService.getPendingCount());
+    }
+
+    @Test
+    public void testFlushWritesLatestStateOnce() throws Exception {
+        actorStateService.record(actor);
+        actor.setX(3);
+        actorStateService.record(actor);
+
+        actorStateService.flush();
+
+        verify(jdbcTemplate).batchUpdate(eq(ActorStateService.UPDATE_SQL), batchCaptor.capture(), eq(1), setterCaptor.capture());
+
+        PreparedStatement statement = mock(PreparedStatement.class);
+
+        setterCaptor.getValue().setValues(statement, batchCaptor.getValue().iterator().next());
+
+        verify(statement).setObject(eq(1), eq(gameMap.getId()), eq(Types.OTHER));
+        verify(statement).setObject(eq(2), eq(3), eq(Types.INTEGER));
+        verify(statement).setObject(eq(3), eq(2), eq(Types.INTEGER));
+        verify(statement).setObject(eq(4), eq(7L), eq(Types.BIGINT));
+        verify(statement).setObject(eq(5), eq(actor.getId()), eq(Types.OTHER));
+        verify(statement, never()).setString(anyInt(), anyString());
+
+        assertEquals(0, actorStateService.getPendingCount());
+        assertEquals(1.0, meterRegistry.get("agonyengine.actor.state.rows").counter().count(), 0.0);
+        assertEquals(1, meterRegistry.get("agonyengine.actor.state.lag").timer().count());
+    }
+
+    @Test
+    public void testFlushNothingPending() {
+        actorStateService.flush();
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+    }
+
+    @Test
+    public void testFlushFailureKeepsChanges() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+            .thenThrow(new DataAccessResourceFailureException("Database went away"));
+
+        actorStateService.record(actor);
+        actorStateService.flush();
+
+        assertEquals(1, actorStateService.getPendingCount());
+        assertEquals(1.0, meterRegistry.get("agonyengine.actor.state.failures").counter().count(), 0.0);
+    }
+
+    @Test
+    public void testWritePendingKeepsChanges() {
+        actorStateService.record(actor);
+        actorStateService.writePending();
+
+        verify(jdbcTemplate).batchUpdate(eq(ActorStateService.UPDATE_SQL), anyCollection(), eq(1), any());
+        assertEquals(1, actorStateService.getPendingCount());
+    }
+
+    @Test
+    public void testShutdownFlushes() {
+        actorStateService.record(actor);
+        actorStateService.shutdown();
+
+        assertEquals(0, actorStateService.getPendingCount());
+    }
+
+    private Actor buildLoaded() {
+        Actor loaded = new Actor();
+
+        loaded.setId(actor.getId());
+        loaded.setGameMap(gameMap);
+        loaded.setX(1);
+        loaded.setY(2);
+
+        return loaded;
+    }
+}
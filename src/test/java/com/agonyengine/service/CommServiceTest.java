@@ -1,30 +1,48 @@
 package com.agonyengine.service;
 
+import com.agonyengine.config.OutputProperties;
 import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.GameMap;
+import com.agonyengine.model.actor.Occupant;
 import com.agonyengine.model.stomp.GameOutput;
-import com.agonyengine.repository.ActorRepository;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.MimeTypeUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.messaging.simp.SimpMessageHeaderAccessor.SESSION_ID_HEADER;
 
 public class CommServiceTest {
     @Mock
-    private ActorRepository actorRepository;
+    private OccupancyService occupancyService;
+
+    @Mock
+    private RoomTopicService roomTopicService;
 
     @Mock
     private SimpMessagingTemplate simpMessagingTemplate;
@@ -35,10 +53,20 @@ public class CommServiceTest {
     @Mock
     private GameOutput output;
 
+    @Mock
+    private MessageConverter messageConverter;
+
     @Captor
     private ArgumentCaptor<MessageHeaders> messageHeadersCaptor;
 
-    private List<Actor> observers = new ArrayList<>();
+    @Captor
+    private ArgumentCaptor<Message<?>> messageCaptor;
+
+    private byte[] payload = new byte[] { 0x7B, 0x7D };
+
+    private OutputProperties outputProperties = new OutputProperties();
+    private List<Actor> observerActors = new ArrayList<>();
+    private List<Occupant> observers = new ArrayList<>();
 
     private CommService commService;
 
@@ -52,15 +80,24 @@ public class CommServiceTest {
         for (int i = 0; i < 3; i++) {
             Actor o = mock(Actor.class);
 
+            when(o.getId()).thenReturn(UUID.randomUUID());
             when(o.getSessionId()).thenReturn("sessionId-" + i);
             when(o.getSessionUsername()).thenReturn("sessionUser-" + i);
 
-            observers.add(o);
+            observerActors.add(o);
+            observers.add(new Occupant(o));
         }
 
-        when(actorRepository.findByGameMapAndXAndY(isNull(), anyInt(), anyInt())).thenReturn(observers);
+        when(actor.getId()).thenReturn(UUID.randomUUID());
+        when(occupancyService.getOccupants(isNull(), any(), any())).thenReturn(observers);
+        when(simpMessagingTemplate.getMessageConverter()).thenReturn(messageConverter);
+        when(simpMessagingTemplate.getUserDestinationPrefix()).thenReturn("/user/");
+        when(messageConverter.toMessage(eq(output), isNull())).thenReturn(MessageBuilder
+            .withPayload(payload)
+            .setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON)
+            .build());
 
-        commService = new CommService(actorRepository, simpMessagingTemplate);
+        commService = new CommService(outputProperties, occupancyService, roomTopicService, simpMessagingTemplate);
     }
 
     @Test
@@ -80,43 +117,345 @@ public class CommServiceTest {
         assertEquals("sessionId", headers.get(SESSION_ID_HEADER));
     }
 
+    @Test
+    public void testEchoRenderedLazily() {
+        Supplier<GameOutput> render = mockSupplier();
+
+        commService.echo(actor, render);
+
+        verify(render).get();
+        verify(simpMessagingTemplate).convertAndSendToUser(eq("sessionUsername"), eq("/queue/output"), eq(output), any(MessageHeaders.class));
+    }
+
+    @Test
+    public void testEchoNoSessionNotRendered() {
+        Supplier<GameOutput> render = mockSupplier();
+
+        when(actor.getSessionId()).thenReturn(null);
+
+        commService.echo(actor, render);
+
+        verify(render, never()).get();
+        verifyZeroInteractions(simpMessagingTemplate);
+    }
+
+    @Test
+    public void testEchoToRoomRenderedOnce() {
+        Supplier<GameOutput> render = mockSupplier();
+
+        commService.echoToRoom(actor, render);
+
+        verify(render, times(1)).get();
+        verify(simpMessagingTemplate, times(3)).send(anyString(), any(Message.class));
+    }
+
+    @Test
+    public void testEchoToRoomNobodyListeningNotRendered() {
+        Supplier<GameOutput> render = mockSupplier();
+
+        commService.echoToRoom(actor, render, observerActors.toArray(new Actor[0]));
+
+        verify(render, never()).get();
+    }
+
+    @Test
+    public void testEchoToRoomTopicNobodyListeningNotRendered() {
+        Supplier<GameOutput> render = mockSupplier();
+
+        when(roomTopicService.isEnabled()).thenReturn(true);
+
+        commService.echoToRoom(actor, render, observerActors.toArray(new Actor[0]));
+
+        verify(render, never()).get();
+    }
+
     @Test
     public void testEchoToRoom() {
         commService.echoToRoom(actor, output);
 
         verify(output, atLeast(2)).append(anyString());
-        verify(simpMessagingTemplate, never()).convertAndSendToUser(
-            eq("sessionUsername"),
-            eq("/queue/output"),
-            eq(output),
-            any(MessageHeaders.class)
-        );
+        verify(messageConverter).toMessage(eq(output), isNull());
+        verify(simpMessagingTemplate, never()).send(eq("/user/sessionUsername/queue/output"), any());
+        verify(simpMessagingTemplate).send(eq("/user/sessionUser-0/queue/output"), messageCaptor.capture());
+        verify(simpMessagingTemplate).send(eq("/user/sessionUser-1/queue/output"), messageCaptor.capture());
+        verify(simpMessagingTemplate).send(eq("/user/sessionUser-2/queue/output"), messageCaptor.capture());
 
-        verify(simpMessagingTemplate).convertAndSendToUser(
-            eq("sessionUser-0"),
-            eq("/queue/output"),
-            eq(output),
-            messageHeadersCaptor.capture()
-        );
+        List<Message<?>> messages = messageCaptor.getAllValues();
 
-        verify(simpMessagingTemplate).convertAndSendToUser(
-            eq("sessionUser-1"),
-            eq("/queue/output"),
-            eq(output),
-            messageHeadersCaptor.capture()
-        );
+        for (int i = 0; i < messages.size(); i++) {
+            assertSame(payload, messages.get(i).getPayload());
+            assertEquals("sessionId-" + i, messages.get(i).getHeaders().get(SESSION_ID_HEADER));
+            assertEquals(MimeTypeUtils.APPLICATION_JSON, messages.get(i).getHeaders().get(MessageHeaders.CONTENT_TYPE));
+        }
+    }
+
+    @Test
+    public void testEchoToRoomExclude() {
+        commService.echoToRoom(actor, output, observerActors.get(1));
+
+        verify(simpMessagingTemplate).send(eq("/user/sessionUser-0/queue/output"), any());
+        verify(simpMessagingTemplate, never()).send(eq("/user/sessionUser-1/queue/output"), any());
+        verify(simpMessagingTemplate).send(eq("/user/sessionUser-2/queue/output"), any());
+    }
+
+    @Test
+    public void testEchoToRoomEmpty() {
+        when(occupancyService.getOccupants(isNull(), any(), any())).thenReturn(Collections.emptyList());
+
+        commService.echoToRoom(actor, output);
+
+        verify(messageConverter, never()).toMessage(any(), any());
+        verify(simpMessagingTemplate, never()).send(anyString(), any());
+    }
+
+    @Test(expected = MessageConversionException.class)
+    public void testEchoToRoomConversionFailure() {
+        when(messageConverter.toMessage(eq(output), isNull())).thenReturn(null);
+
+        commService.echoToRoom(actor, output);
+    }
+
+    @Test
+    public void testEchoToRoomTopic() {
+        GameMap gameMap = mock(GameMap.class);
+        UUID mapId = UUID.randomUUID();
+
+        when(gameMap.getId()).thenReturn(mapId);
+        when(actor.getGameMap()).thenReturn(gameMap);
+        when(actor.getX()).thenReturn(1);
+        when(actor.getY()).thenReturn(2);
+        when(roomTopicService.isEnabled()).thenReturn(true);
+        when(occupancyService.getOccupants(eq(gameMap), eq(1), eq(2))).thenReturn(observers);
+
+        commService.echoToRoom(actor, output, actor, observerActors.get(1));
+
+        verify(simpMessagingTemplate).send(eq("/topic/room." + mapId + ".1.2"), messageCaptor.capture());
+        verify(simpMessagingTemplate, never()).send(startsWith("/user/"), any());
+
+        Message<?> message = messageCaptor.getValue();
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(message);
+
+        assertSame(payload, message.getPayload());
+        assertEquals(
+            actor.getId() + "," + observerActors.get(1).getId(),
+            headerAccessor.getFirstNativeHeader(CommService.EXCLUDE_HEADER));
+    }
+
+    @Test
+    public void testEchoToRoomTopicNobodyListening() {
+        when(roomTopicService.isEnabled()).thenReturn(true);
+        when(actor.getGameMap()).thenReturn(mock(GameMap.class));
+        when(actor.getX()).thenReturn(1);
+        when(actor.getY()).thenReturn(2);
+
+        commService.echoToRoom(actor, output, observerActors.toArray(new Actor[0]));
+
+        verify(messageConverter, never()).toMessage(any(), any());
+        verify(simpMessagingTemplate, never()).send(anyString(), any());
+    }
+
+    @Test
+    public void testEchoCoalesced() {
+        outputProperties.setCoalesce(true);
+
+        commService.echo(actor, output);
 
+        verify(output, never()).append(anyString());
+        verify(simpMessagingTemplate, never()).convertAndSendToUser(anyString(), anyString(), any(), any(MessageHeaders.class));
+        assertEquals(1, commService.getPendingCount());
+    }
+
+    @Test
+    public void testFlushCombinesMessagesWithOnePrompt() {
+        outputProperties.setCoalesce(true);
+
+        when(messageConverter.toMessage(any(GameOutput.class), isNull())).thenReturn(MessageBuilder
+            .withPayload(payload)
+            .setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON)
+            .build());
+
+        commService.echo(actor, new GameOutput("[yellow]Alice arrives from the north."));
+        commService.echo(actor, new GameOutput("[cyan]Alice says 'Hello!'"));
+        commService.flush();
+
+        ArgumentCaptor<GameOutput> outputCaptor = ArgumentCaptor.forClass(GameOutput.class);
+
+        verify(messageConverter).toMessage(outputCaptor.capture(), isNull());
+        verify(simpMessagingTemplate).send(eq("/user/sessionUsername/queue/output"), messageCaptor.capture());
+
+        assertEquals(Arrays.asList(
+            "[yellow]Alice arrives from the north.",
+            "[cyan]Alice says 'Hello!'",
+            "",
+            "[default]> "), outputCaptor.getValue().getOutput());
+        assertEquals("sessionId", messageCaptor.getValue().getHeaders().get(SESSION_ID_HEADER));
+        assertEquals(0, commService.getPendingCount());
+    }
+
+    @Test
+    public void testFlushEncodesRoomMessageOnce() {
+        GameOutput message = new GameOutput("[cyan]Alice says 'Hello!'");
+
+        outputProperties.setCoalesce(true);
+
+        when(messageConverter.toMessage(any(GameOutput.class), isNull())).thenReturn(MessageBuilder
+            .withPayload(payload)
+            .setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON)
+            .build());
+
+        commService.echoToRoom(actor, message);
+
+        verify(simpMessagingTemplate, never()).send(anyString(), any());
+        assertEquals(3, commService.getPendingCount());
+
+        commService.flush();
+
+        ArgumentCaptor<GameOutput> outputCaptor = ArgumentCaptor.forClass(GameOutput.class);
+
+        verify(messageConverter).toMessage(outputCaptor.capture(), isNull());
+        verify(simpMessagingTemplate, times(3)).send(startsWith("/user/sessionUser-"), any());
+
+        assertNotSame(message, outputCaptor.getValue());
+        assertEquals(1, message.getOutput().size());
+        assertEquals(3, outputCaptor.getValue().getOutput().size());
+    }
+
+    @Test
+    public void testDrainTo() {
+        GameOutput reply = new GameOutput("You drop a sword.");
+
+        outputProperties.setCoalesce(true);
+
+        commService.echo(actor, new GameOutput("[cyan]Alice says 'Hello!'"));
+        commService.drainTo("sessionId", reply);
+        commService.flush();
+
+        assertEquals(Arrays.asList("You drop a sword.", "[cyan]Alice says 'Hello!'"), reply.getOutput());
+        verify(simpMessagingTemplate, never()).send(anyString(), any());
+    }
+
+    @Test
+    public void testDrainToNothingHeld() {
+        GameOutput reply = new GameOutput("You drop a sword.");
+
+        commService.drainTo("sessionId", reply);
+        commService.drainTo(null, reply);
+
+        assertEquals(1, reply.getOutput().size());
+    }
+
+    @Test
+    public void testReply() {
+        commService.reply("sessionUsername", "sessionId", output);
+
+        verify(output, never()).append(anyString());
         verify(simpMessagingTemplate).convertAndSendToUser(
-            eq("sessionUser-2"),
+            eq("sessionUsername"),
             eq("/queue/output"),
             eq(output),
-            messageHeadersCaptor.capture()
-        );
+            messageHeadersCaptor.capture());
+
+        assertEquals("sessionId", messageHeadersCaptor.getValue().get(SESSION_ID_HEADER));
+    }
+
+    @Test
+    public void testReplyWaitsForCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            commService.reply("sessionUsername", "sessionId", output);
+
+            verify(simpMessagingTemplate, never()).convertAndSendToUser(anyString(), anyString(), any(), any(MessageHeaders.class));
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(simpMessagingTemplate).convertAndSendToUser(eq("sessionUsername"), eq("/queue/output"), eq(output), any(MessageHeaders.class));
+    }
+
+    @Test
+    public void testEchoToRoomWaitsForCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            commService.echoToRoom(actor, output);
+
+            verify(messageConverter).toMessage(eq(output), isNull());
+            verify(simpMessagingTemplate, never()).send(anyString(), any());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(simpMessagingTemplate, times(3)).send(startsWith("/user/sessionUser-"), any());
+    }
+
+    @Test
+    public void testHeldOutputDroppedOnRollback() {
+        outputProperties.setCoalesce(true);
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            commService.echo(actor, new GameOutput("[cyan]Alice says 'Hello!'"));
+
+            assertEquals(0, commService.getPendingCount());
+
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(0, commService.getPendingCount());
+    }
+
+    @Test
+    public void testHeldOutputKeptOnCommit() {
+        outputProperties.setCoalesce(true);
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            commService.echo(actor, new GameOutput("[cyan]Alice says 'Hello!'"));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(1, commService.getPendingCount());
+    }
+
+    @Test
+    public void testDrainToUncommitted() {
+        GameOutput reply = new GameOutput("You drop a sword.");
+
+        outputProperties.setCoalesce(true);
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            commService.echo(actor, new GameOutput("[cyan]Alice says 'Hello!'"));
+            commService.drainTo("sessionId", reply);
+            commService.drainTo("sessionId", reply);
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(Arrays.asList("You drop a sword.", "[cyan]Alice says 'Hello!'"), reply.getOutput());
+        assertEquals(0, commService.getPendingCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Supplier<GameOutput> mockSupplier() {
+        Supplier<GameOutput> render = mock(Supplier.class);
 
-        List<MessageHeaders> headers = messageHeadersCaptor.getAllValues();
+        when(render.get()).thenReturn(output);
 
-        assertEquals("sessionId-0", headers.get(0).get(SESSION_ID_HEADER));
-        assertEquals("sessionId-1", headers.get(1).get(SESSION_ID_HEADER));
-        assertEquals("sessionId-2", headers.get(2).get(SESSION_ID_HEADER));
+        return render;
     }
 }
@@ -4,17 +4,18 @@ import com.agonyengine.model.actor.Actor;
 import com.agonyengine.model.command.LookCommand;
 import com.agonyengine.model.command.SayCommand;
 import com.agonyengine.model.interpret.ActorSameRoom;
+import com.agonyengine.model.interpret.ActorSameRoomResolver;
+import com.agonyengine.model.interpret.ArgumentBinding;
 import com.agonyengine.model.interpret.QuotedString;
+import com.agonyengine.model.interpret.QuotedStringResolver;
 import com.agonyengine.model.interpret.Verb;
 import com.agonyengine.model.stomp.GameOutput;
 import com.agonyengine.model.stomp.UserInput;
-import com.agonyengine.repository.VerbRepository;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.context.ApplicationContext;
-import org.springframework.data.domain.Sort;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -23,6 +24,7 @@ import java.util.Optional;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -32,7 +34,7 @@ public class InvokerServiceTest {
     private ApplicationContext applicationContext;
 
     @Mock
-    private VerbRepository verbRepository;
+    private VerbRegistry verbRegistry;
 
     @Mock
     private Actor invoker;
@@ -64,6 +66,15 @@ public class InvokerServiceTest {
     @Mock
     private ActorSameRoom actorSameRoom;
 
+    @Mock
+    private QuotedStringResolver quotedStringResolver;
+
+    @Mock
+    private ActorSameRoomResolver actorSameRoomResolver;
+
+    @Mock
+    private LegacyBinding legacyBinding;
+
     private InvokerService invokerService;
 
     @Before
@@ -73,21 +84,19 @@ public class InvokerServiceTest {
         when(lookVerb.getBean()).thenReturn("lookCommand");
         when(sayVerb.getBean()).thenReturn("sayCommand");
 
-        when(verbRepository.findFirstByNameIgnoreCaseStartingWith(
-            any(Sort.class),
-            eq("LOOK")
-        )).thenReturn(Optional.of(lookVerb));
-        when(verbRepository.findFirstByNameIgnoreCaseStartingWith(
-            any(Sort.class),
-            eq("SAY")
-        )).thenReturn(Optional.of(sayVerb));
-
-        when(applicationContext.getBean(eq(QuotedString.class))).thenReturn(quotedString);
-        when(applicationContext.getBean(eq(ActorSameRoom.class))).thenReturn(actorSameRoom);
+        when(verbRegistry.find(eq("LOOK"))).thenReturn(Optional.of(lookVerb));
+        when(verbRegistry.find(eq("SAY"))).thenReturn(Optional.of(sayVerb));
+
+        when(quotedStringResolver.getType()).thenReturn(QuotedString.class);
+        when(actorSameRoomResolver.getType()).thenReturn(ActorSameRoom.class);
+        when(applicationContext.getBean(eq(LegacyBinding.class))).thenReturn(legacyBinding);
         when(applicationContext.getBean(eq("lookCommand"))).thenReturn(lookCommand);
         when(applicationContext.getBean(eq("sayCommand"))).thenReturn(sayCommand);
 
-        invokerService = new InvokerService(applicationContext, verbRepository);
+        invokerService = new InvokerService(
+            applicationContext,
+            verbRegistry,
+            Arrays.asList(quotedStringResolver, actorSameRoomResolver));
     }
 
     @Test
@@ -113,20 +122,21 @@ public class InvokerServiceTest {
 
     @Test
     public void testInvokeOneTarget() {
-        when(actorSameRoom.bind(eq(invoker), eq("MORGAN"))).thenReturn(true);
+        when(actorSameRoomResolver.resolve(eq(invoker), eq("MORGAN"))).thenReturn(actorSameRoom);
         when(actorSameRoom.getTarget()).thenReturn(target);
         when(actorSameRoom.getToken()).thenReturn("MORGAN");
 
         invokerService.invoke(invoker, output, input, Arrays.asList("LOOK", "MORGAN"));
 
         verify(lookCommand).invoke(eq(invoker), eq(output), eq(actorSameRoom));
+        verify(applicationContext, never()).getBean(eq(ActorSameRoom.class));
     }
 
     @Test
     public void testInvokeOneTargetQuoting() {
         when(sayVerb.isQuoting()).thenReturn(true);
         when(input.getInput()).thenReturn("say This is a string.");
-        when(quotedString.bind(eq(invoker), eq("This is a string."))).thenReturn(true);
+        when(quotedStringResolver.resolve(eq(invoker), eq("This is a string."))).thenReturn(quotedString);
         when(quotedString.getToken()).thenReturn("This is a string.");
 
         invokerService.invoke(invoker, output, input, Arrays.asList("SAY", "This is a string."));
@@ -136,12 +146,32 @@ public class InvokerServiceTest {
 
     @Test
     public void testInvokeOneTargetNotFound() {
-        when(actorSameRoom.bind(eq(invoker), eq("MORGAN"))).thenReturn(false);
-        when(actorSameRoom.getTarget()).thenReturn(null);
-        when(actorSameRoom.getToken()).thenReturn("MORGAN");
+        when(actorSameRoomResolver.resolve(eq(invoker), eq("MORGAN"))).thenReturn(null);
 
         invokerService.invoke(invoker, output, input, Arrays.asList("LOOK", "MORGAN"));
 
-        verify(lookCommand, never()).invoke(eq(invoker), eq(output), eq(actorSameRoom));
+        verify(lookCommand, never()).invoke(eq(invoker), eq(output), any(ActorSameRoom.class));
+        verify(output).append(eq("No \"target in same room\" found for word: MORGAN"));
+    }
+
+    @Test
+    public void testInvokeArgumentBindingAdapter() {
+        LegacyCommand legacyCommand = mock(LegacyCommand.class);
+        Verb legacyVerb = mock(Verb.class);
+
+        when(legacyVerb.getBean()).thenReturn("legacyCommand");
+        when(verbRegistry.find(eq("LEGACY"))).thenReturn(Optional.of(legacyVerb));
+        when(applicationContext.getBean(eq("legacyCommand"))).thenReturn(legacyCommand);
+        when(legacyBinding.bind(eq(invoker), eq("FOO"))).thenReturn(true);
+
+        invokerService.invoke(invoker, output, input, Arrays.asList("LEGACY", "FOO"));
+
+        verify(legacyCommand).invoke(eq(invoker), eq(output), eq(legacyBinding));
+    }
+
+    public interface LegacyBinding extends ArgumentBinding {}
+
+    public static class LegacyCommand {
+        public void invoke(Actor actor, GameOutput output, LegacyBinding binding) {}
     }
 }
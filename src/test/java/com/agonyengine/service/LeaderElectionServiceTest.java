@@ -0,0 +1,170 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.ClusterProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LeaderElectionServiceTest {
+    @Mock
+    private ClusterProperties clusterProperties;
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement nameStatement;
+
+    @Mock
+    private PreparedStatement lockStatement;
+
+    @Mock
+    private Statement cleanupStatement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Captor
+    private ArgumentCaptor<LeadershipChangedEvent> eventCaptor;
+
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private LeaderElectionService leaderElectionService;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        when(clusterProperties.getNodeId()).thenReturn("node-1");
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.isValid(anyInt())).thenReturn(true);
+        when(connection.prepareStatement(eq(LeaderElectionService.NAME_SQL))).thenReturn(nameStatement);
+        when(connection.prepareStatement(eq(LeaderElectionService.TRY_LOCK_SQL))).thenReturn(lockStatement);
+        when(connection.createStatement()).thenReturn(cleanupStatement);
+        when(lockStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getBoolean(eq(1))).thenReturn(true);
+
+        leaderElectionService = new LeaderElectionService(
+            clusterProperties,
+            dataSource,
+            jdbcTemplate,
+            applicationEventPublisher,
+            meterRegistry);
+    }
+
+    @Test
+    public void testElected() throws Exception {
+        leaderElectionService.elect();
+        leaderElectionService.elect();
+
+        assertTrue(leaderElectionService.isLeader());
+        verify(nameStatement).setString(eq(1), eq("node-1"));
+        verify(lockStatement, times(1)).executeQuery();
+        verify(applicationEventPublisher, times(1)).publishEvent(eventCaptor.capture());
+        assertTrue(eventCaptor.getValue().isLeader());
+        assertEquals(1.0, meterRegistry.get("agonyengine.cluster.leader").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void testNotElected() throws Exception {
+        when(resultSet.getBoolean(eq(1))).thenReturn(false);
+
+        leaderElectionService.elect();
+        leaderElectionService.elect();
+
+        assertFalse(leaderElectionService.isLeader());
+        verify(dataSource, times(1)).getConnection();
+        verify(lockStatement, times(2)).executeQuery();
+        verify(applicationEventPublisher, never()).publishEvent(any(LeadershipChangedEvent.class));
+    }
+
+    @Test
+    public void testConnectionLost() throws Exception {
+        leaderElectionService.elect();
+
+        when(connection.isValid(anyInt())).thenReturn(false);
+        when(resultSet.getBoolean(eq(1))).thenReturn(false);
+
+        leaderElectionService.elect();
+
+        assertFalse(leaderElectionService.isLeader());
+        verify(connection).close();
+        verify(dataSource, times(2)).getConnection();
+        verify(applicationEventPublisher, times(2)).publishEvent(eventCaptor.capture());
+        assertFalse(eventCaptor.getAllValues().get(1).isLeader());
+    }
+
+    @Test
+    public void testDatabaseDown() throws Exception {
+        when(dataSource.getConnection()).thenThrow(new SQLException("Database went away"));
+
+        leaderElectionService.elect();
+
+        assertFalse(leaderElectionService.isLeader());
+    }
+
+    @Test
+    public void testResignReleasesLock() throws Exception {
+        leaderElectionService.elect();
+        leaderElectionService.resign();
+
+        assertFalse(leaderElectionService.isLeader());
+        verify(cleanupStatement).execute(eq(LeaderElectionService.UNLOCK_SQL));
+        verify(connection).close();
+    }
+
+    @Test
+    public void testFindLeader() {
+        when(jdbcTemplate.queryForList(eq(LeaderElectionService.LEADER_SQL), eq(String.class), any(), any()))
+            .thenReturn(Collections.singletonList("node-2"));
+
+        assertEquals(Optional.of("node-2"), leaderElectionService.findLeader());
+    }
+
+    @Test
+    public void testFindLeaderDatabaseDown() {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), any(), any()))
+            .thenThrow(new DataAccessResourceFailureException("Database went away"));
+
+        assertEquals(Optional.empty(), leaderElectionService.findLeader());
+    }
+}
@@ -0,0 +1,345 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.MapProperties;
+import com.agonyengine.model.actor.GameMap;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.UUID;
+
+import static com.agonyengine.service.MapChunks.CHUNK_SIZE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MappedTileStoreServiceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private MapProperties mapProperties;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Captor
+    private ArgumentCaptor<Collection<Object>> batchCaptor;
+
+    @Captor
+    private ArgumentCaptor<ParameterizedPreparedStatementSetter<Object>> setterCaptor;
+
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private GameMap gameMap = new GameMap();
+
+    private MappedTileStoreService mappedTileStoreService;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        // two chunks across and one up, with the right hand one cut short
+        gameMap.setId(UUID.randomUUID());
+        gameMap.setWidth(CHUNK_SIZE + 2);
+        gameMap.setHeight(2);
+
+        when(mapProperties.getDirectory()).thenReturn(folder.getRoot().getPath());
+        when(mapProperties.getMappedMinSize()).thenReturn(0);
+
+        doAnswer(invocation -> {
+            ResultSet resultSet = mock(ResultSet.class);
+
+            when(resultSet.getInt(eq("chunk_x"))).thenReturn(1);
+            when(resultSet.getInt(eq("chunk_y"))).thenReturn(0);
+            when(resultSet.getBytes(eq("tiles"))).thenReturn(new byte[] { 0x01, 0x02, 0x03, 0x04 });
+
+            ((RowCallbackHandler)invocation.getArgument(1)).processRow(resultSet);
+
+            return null;
+        }).when(jdbcTemplate).query(eq(MapChunks.SELECT_ALL_SQL), any(RowCallbackHandler.class), eq(gameMap.getId()));
+
+        mappedTileStoreService = new MappedTileStoreService(mapProperties, jdbcTemplate, meterRegistry);
+        mappedTileStoreService.registerListener();
+    }
+
+    @Test
+    public void testBuildsFileFromDatabase() {
+        assertEquals(0x00, mappedTileStoreService.getTile(gameMap, 0, 0));
+        assertEquals(0x02, mappedTileStoreService.getTile(gameMap, CHUNK_SIZE + 1, 0));
+        assertEquals(0x03, mappedTileStoreService.getTile(gameMap, CHUNK_SIZE, 1));
+
+        assertTrue(Files.exists(tilesFile()));
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class), any(UUID.class));
+    }
+
+    @Test
+    public void testReusesFile() throws Exception {
+        mappedTileStoreService.setTile(gameMap, 1, 1, (byte)0x7F);
+        mappedTileStoreService.force();
+
+        MappedTileStoreService restarted = new MappedTileStoreService(mapProperties, jdbcTemplate, meterRegistry);
+
+        assertEquals(0x7F, restarted.getTile(gameMap, 1, 1));
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class), any(UUID.class));
+        assertEquals(1.0, meterRegistry.get("agonyengine.maps.mapped.forces").counter().count(), 0.0);
+    }
+
+    @Test
+    public void testSnapshotWritesOnlyDirtyChunk() throws Exception {
+        mappedTileStoreService.setTile(gameMap, CHUNK_SIZE + 1, 1, (byte)0x7F);
+        mappedTileStoreService.snapshot();
+
+        verify(jdbcTemplate).batchUpdate(eq(MapChunks.UPSERT_SQL), batchCaptor.capture(), eq(1), setterCaptor.capture());
+
+        PreparedStatement statement = mock(PreparedStatement.class);
+
+        setterCaptor.getValue().setValues(statement, batchCaptor.getValue().iterator().next());
+
+        verify(statement).setObject(eq(1), eq(gameMap.getId()), eq(Types.OTHER));
+        verify(statement).setInt(eq(2), eq(1));
+        verify(statement).setInt(eq(3), eq(0));
+        verify(statement).setBytes(eq(4), eq(new byte[] { 0x01, 0x02, 0x03, 0x7F }));
+
+        assertEquals(0, mappedTileStoreService.getDirtyCount());
+        assertFalse(Files.exists(markerFile()));
+    }
+
+    @Test
+    public void testChangeMarksMap() {
+        mappedTileStoreService.getTile(gameMap, 0, 0);
+
+        assertFalse(Files.exists(markerFile()));
+
+        mappedTileStoreService.setTile(gameMap, 0, 0, (byte)0x7F);
+
+        assertTrue(Files.exists(markerFile()));
+    }
+
+    @Test
+    public void testReuseAfterCrashCopiesWholeMap() {
+        mappedTileStoreService.setTile(gameMap, 1, 1, (byte)0x7F);
+        mappedTileStoreService.force();
+
+        // never snapshotted, as if the server died first
+        MappedTileStoreService restarted = new MappedTileStoreService(mapProperties, jdbcTemplate, meterRegistry);
+
+        assertEquals(0x7F, restarted.getTile(gameMap, 1, 1));
+        assertEquals(2, restarted.getDirtyCount());
+
+        restarted.snapshot();
+
+        verify(jdbcTemplate).batchUpdate(eq(MapChunks.UPSERT_SQL), anyCollection(), eq(2), any());
+        assertFalse(Files.exists(markerFile()));
+    }
+
+    @Test
+    public void testSnapshotFailureKeepsChunks() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+            .thenThrow(new DataAccessResourceFailureException("Database went away"));
+
+        mappedTileStoreService.setTile(gameMap, 0, 0, (byte)0x7F);
+        mappedTileStoreService.snapshot();
+
+        assertEquals(1, mappedTileStoreService.getDirtyCount());
+        assertTrue(Files.exists(markerFile()));
+        assertEquals(1.0, meterRegistry.get("agonyengine.maps.chunks.failures").counter().count(), 0.0);
+    }
+
+    @Test
+    public void testSeed() {
+        byte[] tiles = new byte[gameMap.getWidth() * gameMap.getHeight()];
+
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = (byte)i;
+        }
+
+        mappedTileStoreService.seed(gameMap, tiles);
+
+        assertArrayEquals(tiles, mappedTileStoreService.getTiles(gameMap));
+        assertEquals(2, mappedTileStoreService.getDirtyCount());
+        verify(jdbcTemplate, never()).query(anyString(), any(RowCallbackHandler.class), any(UUID.class));
+    }
+
+    @Test
+    public void testSnapshotFailureWritesChunksAlone() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+            .thenThrow(new DataIntegrityViolationException("Map was deleted"));
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class)))
+            .thenThrow(new DataIntegrityViolationException("Map was deleted"))
+            .thenReturn(1);
+
+        mappedTileStoreService.setTile(gameMap, 0, 0, (byte)0x7F);
+        mappedTileStoreService.setTile(gameMap, CHUNK_SIZE, 0, (byte)0x7F);
+        mappedTileStoreService.snapshot();
+
+        verify(jdbcTemplate, times(2)).update(eq(MapChunks.UPSERT_SQL), any(PreparedStatementSetter.class));
+        assertEquals(0, mappedTileStoreService.getDirtyCount());
+        assertFalse(Files.exists(markerFile()));
+        assertEquals(1.0, meterRegistry.get("agonyengine.maps.chunks.dropped").counter().count(), 0.0);
+        assertEquals(1.0, meterRegistry.get("agonyengine.maps.chunks.writes").counter().count(), 0.0);
+    }
+
+    @Test
+    public void testSnapshotStopsWhenDatabaseIsDown() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+            .thenThrow(new DataAccessResourceFailureException("Database went away"));
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class)))
+            .thenThrow(new DataAccessResourceFailureException("Database went away"));
+
+        mappedTileStoreService.setTile(gameMap, 0, 0, (byte)0x7F);
+        mappedTileStoreService.setTile(gameMap, CHUNK_SIZE, 0, (byte)0x7F);
+        mappedTileStoreService.snapshot();
+
+        verify(jdbcTemplate, times(1)).update(eq(MapChunks.UPSERT_SQL), any(PreparedStatementSetter.class));
+        assertEquals(2, mappedTileStoreService.getDirtyCount());
+        assertTrue(Files.exists(markerFile()));
+    }
+
+    @Test
+    public void testSeedWaitsForCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            mappedTileStoreService.seed(gameMap, new byte[gameMap.getWidth() * gameMap.getHeight()]);
+            mappedTileStoreService.snapshot();
+
+            verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        mappedTileStoreService.snapshot();
+
+        verify(jdbcTemplate).batchUpdate(eq(MapChunks.UPSERT_SQL), anyCollection(), eq(2), any());
+        assertEquals(0, mappedTileStoreService.getDirtyCount());
+    }
+
+    @Test
+    public void testSeedDiscardedOnRollback() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            mappedTileStoreService.seed(gameMap, new byte[gameMap.getWidth() * gameMap.getHeight()]);
+
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        mappedTileStoreService.snapshot();
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+        assertEquals(0, mappedTileStoreService.getDirtyCount());
+        assertFalse(Files.exists(tilesFile()));
+        assertFalse(Files.exists(markerFile()));
+    }
+
+    @Test
+    public void testChangeDuringSnapshotStaysDirty() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any())).thenAnswer(invocation -> {
+            // somebody changes the chunk after it was copied but before the copy reached the database
+            mappedTileStoreService.setTile(gameMap, 1, 1, (byte)0x7E);
+
+            return new int[][] { { 1 } };
+        });
+
+        mappedTileStoreService.setTile(gameMap, 0, 0, (byte)0x7F);
+        mappedTileStoreService.snapshot();
+
+        assertEquals(1, mappedTileStoreService.getDirtyCount());
+        assertTrue(Files.exists(markerFile()));
+    }
+
+    @Test
+    public void testSmallMapStaysOnHeap() {
+        when(mapProperties.getMappedMinSize()).thenReturn(4096);
+        mappedTileStoreService = new MappedTileStoreService(mapProperties, jdbcTemplate, meterRegistry);
+
+        assertEquals(0x02, mappedTileStoreService.getTile(gameMap, CHUNK_SIZE + 1, 0));
+
+        mappedTileStoreService.setTile(gameMap, 0, 0, (byte)0x7F);
+        mappedTileStoreService.force();
+
+        assertFalse(mappedTileStoreService.isMapped(gameMap));
+        assertFalse(Files.exists(tilesFile()));
+        assertFalse(Files.exists(markerFile()));
+        assertEquals(0.0, meterRegistry.get("agonyengine.maps.mapped.forces").counter().count(), 0.0);
+
+        mappedTileStoreService.snapshot();
+
+        verify(jdbcTemplate).batchUpdate(eq(MapChunks.UPSERT_SQL), anyCollection(), eq(1), any());
+        assertEquals(0, mappedTileStoreService.getDirtyCount());
+    }
+
+    @Test
+    public void testSmallMapKeepsUnsavedFile() {
+        mappedTileStoreService.setTile(gameMap, 1, 1, (byte)0x7F);
+        mappedTileStoreService.force();
+
+        // mapped before the minimum size was raised, and never snapshotted
+        when(mapProperties.getMappedMinSize()).thenReturn(4096);
+        MappedTileStoreService restarted = new MappedTileStoreService(mapProperties, jdbcTemplate, meterRegistry);
+
+        assertEquals(0x7F, restarted.getTile(gameMap, 1, 1));
+        assertEquals(2, restarted.getDirtyCount());
+        assertFalse(Files.exists(tilesFile()));
+        assertFalse(Files.exists(markerFile()));
+    }
+
+    @Test
+    public void testEvictDeletesCleanFiles() {
+        mappedTileStoreService.getTile(gameMap, 0, 0);
+        mappedTileStoreService.evict();
+
+        assertFalse(Files.exists(tilesFile()));
+
+        mappedTileStoreService.getTile(gameMap, 0, 0);
+
+        verify(jdbcTemplate, times(2)).query(anyString(), any(RowCallbackHandler.class), any(UUID.class));
+    }
+
+    private Path tilesFile() {
+        return folder.getRoot().toPath().resolve(gameMap.getId() + ".tiles");
+    }
+
+    private Path markerFile() {
+        return folder.getRoot().toPath().resolve(gameMap.getId() + ".dirty");
+    }
+}
@@ -0,0 +1,514 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.ActorProperties;
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.GameMap;
+import com.agonyengine.model.actor.Occupant;
+import com.agonyengine.repository.ActorRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InOrder;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OccupancyServiceTest {
+    @Mock
+    private ActorProperties actorProperties;
+
+    @Mock
+    private ActorRepository actorRepository;
+
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Mock
+    private ActorStateService actorStateService;
+
+    @Captor
+    private ArgumentCaptor<Object> eventCaptor;
+
+    private GameMap gameMap = new GameMap();
+    private GameMap otherMap = new GameMap();
+    private Actor alice;
+    private Actor bob;
+    private long arrivals;
+
+    private OccupancyService occupancyService;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        when(actorProperties.getDatabaseLookupThreshold()).thenReturn(10000);
+
+        gameMap.setId(UUID.randomUUID());
+        otherMap.setId(UUID.randomUUID());
+
+        alice = buildActor("Alice", gameMap, 1, 2);
+        bob = buildActor("Bob", gameMap, 1, 2);
+
+        when(actorRepository.findByGameMapIsNotNull()).thenReturn(Arrays.asList(alice, bob));
+        when(actorRepository.findById(eq(alice.getId()))).thenReturn(Optional.of(alice));
+        when(actorRepository.findById(eq(bob.getId()))).thenReturn(Optional.of(bob));
+
+        occupancyService = new OccupancyService(actorProperties, actorRepository, applicationEventPublisher, actorStateService);
+        occupancyService.rebuild();
+    }
+
+    @Test
+    public void testRebuild() {
+        List<Occupant> occupants = occupancyService.getOccupants(gameMap, 1, 2);
+
+        assertEquals(2, occupants.size());
+        assertEquals("Alice", occupants.get(0).getName());
+        assertEquals("Bob", occupants.get(1).getName());
+    }
+
+    @Test
+    public void testEmptyTile() {
+        assertTrue(occupancyService.getOccupants(gameMap, 2, 1).isEmpty());
+        assertTrue(occupancyService.getOccupants(otherMap, 1, 2).isEmpty());
+        assertTrue(occupancyService.getOccupants(null, 1, 2).isEmpty());
+    }
+
+    @Test
+    public void testMove() {
+        alice.setX(2);
+        occupancyService.update(alice);
+
+        assertEquals(1, occupancyService.getOccupants(gameMap, 1, 2).size());
+        assertEquals("Bob", occupancyService.getOccupants(gameMap, 1, 2).get(0).getName());
+        assertEquals("Alice", occupancyService.getOccupants(gameMap, 2, 2).get(0).getName());
+    }
+
+    @Test
+    public void testMoveToOtherMap() {
+        alice.setGameMap(otherMap);
+        occupancyService.update(alice);
+
+        assertEquals(1, occupancyService.getOccupants(gameMap, 1, 2).size());
+        assertEquals("Alice", occupancyService.getOccupants(otherMap, 1, 2).get(0).getName());
+    }
+
+    @Test
+    public void testUpdateInPlace() {
+        alice.setDisconnectedDate(new Date());
+        occupancyService.update(alice);
+
+        List<Occupant> occupants = occupancyService.getOccupants(gameMap, 1, 2);
+
+        assertEquals(2, occupants.size());
+        assertTrue(occupants.get(0).isLinkDead());
+        assertFalse(occupants.get(1).isLinkDead());
+    }
+
+    @Test
+    public void testUpdateIntoVoid() {
+        alice.setGameMap(null);
+        occupancyService.update(alice);
+
+        assertEquals(1, occupancyService.getOccupants(gameMap, 1, 2).size());
+    }
+
+    @Test
+    public void testRemove() {
+        occupancyService.remove(alice);
+        occupancyService.remove(bob);
+        occupancyService.remove(bob);
+
+        assertTrue(occupancyService.getOccupants(gameMap, 1, 2).isEmpty());
+    }
+
+    @Test
+    public void testFindOccupant() {
+        assertEquals(bob, occupancyService.findOccupant(gameMap, 1, 2, alice, "b"));
+        assertNull(occupancyService.findOccupant(gameMap, 1, 2, alice, "AL"));
+        assertEquals(alice, occupancyService.findOccupant(gameMap, 1, 2, bob, "AL"));
+    }
+
+    @Test
+    public void testFindOccupantOrdinal() {
+        Actor bobby = buildActor("Bobby", gameMap, 1, 2);
+
+        when(actorRepository.findById(eq(bobby.getId()))).thenReturn(Optional.of(bobby));
+        occupancyService.update(bobby);
+
+        assertEquals(bob, occupancyService.findOccupant(gameMap, 1, 2, alice, "1.BOB"));
+        assertEquals(bobby, occupancyService.findOccupant(gameMap, 1, 2, alice, "2.BOB"));
+        assertNull(occupancyService.findOccupant(gameMap, 1, 2, alice, "3.BOB"));
+        assertNull(occupancyService.findOccupant(gameMap, 1, 2, alice, "0.BOB"));
+
+        // the excluded actor doesn't count
+        assertEquals(bobby, occupancyService.findOccupant(gameMap, 1, 2, bob, "1.B"));
+    }
+
+    @Test
+    public void testFindOccupantCrowded() {
+        Actor[] swords = new Actor[TileOccupants.INDEX_THRESHOLD * 2];
+
+        for (int i = 0; i < swords.length; i++) {
+            swords[i] = buildActor("rusty sword " + i, gameMap, 1, 2);
+
+            when(actorRepository.findById(eq(swords[i].getId()))).thenReturn(Optional.of(swords[i]));
+            occupancyService.update(swords[i]);
+        }
+
+        assertEquals(bob, occupancyService.findOccupant(gameMap, 1, 2, alice, "BO"));
+        assertEquals(swords[0], occupancyService.findOccupant(gameMap, 1, 2, alice, "SWORD"));
+        assertEquals(swords[0], occupancyService.findOccupant(gameMap, 1, 2, alice, "RUS"));
+        assertEquals(swords[9], occupancyService.findOccupant(gameMap, 1, 2, alice, "10.SW"));
+        assertEquals(swords[42], occupancyService.findOccupant(gameMap, 1, 2, alice, "42"));
+        assertNull(occupancyService.findOccupant(gameMap, 1, 2, alice, "SWORDS"));
+    }
+
+    @Test
+    public void testFindOccupantInDatabase() {
+        useDatabase();
+
+        when(actorRepository.findIdsByNameWordPrefix(anyString(), anyInt(), anyInt(), anyString(), anyString(), anyInt()))
+            .thenReturn(Collections.singletonList(bob.getId().toString()));
+
+        assertEquals(bob, occupancyService.findOccupant(gameMap, 1, 2, alice, "BO"));
+        verify(actorRepository).findIdsByNameWordPrefix(
+            eq(gameMap.getId().toString()),
+            eq(1),
+            eq(2),
+            eq("(^| )BO"),
+            eq(alice.getId().toString()),
+            eq(0));
+        verify(actorRepository, never()).findById(eq(alice.getId()));
+    }
+
+    @Test
+    public void testFindOccupantInDatabaseWritesPendingFirst() {
+        useDatabase();
+
+        when(actorRepository.findIdsByNameWordPrefix(anyString(), anyInt(), anyInt(), anyString(), anyString(), anyInt()))
+            .thenReturn(Collections.emptyList());
+
+        // nothing in the database means nobody, without searching the tile in memory after all
+        assertNull(occupancyService.findOccupant(gameMap, 1, 2, alice, "BO"));
+
+        InOrder inOrder = inOrder(actorStateService, actorRepository);
+
+        inOrder.verify(actorStateService).writePending();
+        inOrder.verify(actorRepository).findIdsByNameWordPrefix(anyString(), anyInt(), anyInt(), anyString(), anyString(), anyInt());
+        verify(actorRepository, never()).findById(any(UUID.class));
+    }
+
+    @Test
+    public void testFindOccupantInDatabaseOrdinal() {
+        useDatabase();
+
+        when(actorRepository.findIdsByNameWordPrefix(anyString(), anyInt(), anyInt(), anyString(), anyString(), anyInt()))
+            .thenReturn(Collections.singletonList(bob.getId().toString()));
+
+        assertEquals(bob, occupancyService.findOccupant(gameMap, 1, 2, null, "2.B"));
+        verify(actorRepository).findIdsByNameWordPrefix(
+            eq(gameMap.getId().toString()),
+            eq(1),
+            eq(2),
+            eq("(^| )B"),
+            eq(new UUID(0L, 0L).toString()),
+            eq(1));
+    }
+
+    @Test
+    public void testFindOccupantInDatabaseNotOnTile() {
+        useDatabase();
+
+        when(actorRepository.findIdsByNameWordPrefix(anyString(), anyInt(), anyInt(), anyString(), anyString(), anyInt()))
+            .thenReturn(Collections.singletonList(bob.getId().toString()));
+
+        // moved earlier in the same transaction, which the database can't see yet
+        bob.setX(5);
+
+        assertNull(occupancyService.findOccupant(gameMap, 1, 2, alice, "BO"));
+    }
+
+    @Test
+    public void testFindOccupantInDatabaseEscapesPattern() {
+        useDatabase();
+
+        assertNull(occupancyService.findOccupant(gameMap, 1, 2, null, "2.b*"));
+        verify(actorRepository).findIdsByNameWordPrefix(
+            eq(gameMap.getId().toString()),
+            eq(1),
+            eq(2),
+            eq("(^| )B\\*"),
+            anyString(),
+            eq(1));
+    }
+
+    @Test
+    public void testRebuildInArrivalOrder() {
+        bob.setArrival(alice.getArrival() - 1);
+        occupancyService.rebuild();
+
+        List<Occupant> occupants = occupancyService.getOccupants(gameMap, 1, 2);
+
+        assertEquals("Bob", occupants.get(0).getName());
+        assertEquals("Alice", occupants.get(1).getName());
+    }
+
+    @Test
+    public void testMoveSetsArrival() {
+        Long arrival = alice.getArrival();
+
+        alice.setDisconnectedDate(new Date());
+        occupancyService.update(alice);
+
+        assertEquals(arrival, alice.getArrival());
+
+        alice.setX(2);
+        occupancyService.update(alice);
+
+        assertTrue(alice.getArrival() > bob.getArrival());
+
+        arrival = alice.getArrival();
+        alice.setX(1);
+        occupancyService.update(alice);
+
+        assertTrue(alice.getArrival() > arrival);
+    }
+
+    @Test
+    public void testFindOccupantStale() {
+        when(actorRepository.findById(eq(bob.getId()))).thenReturn(Optional.empty());
+
+        assertNull(occupancyService.findOccupant(gameMap, 1, 2, alice, "BOB"));
+    }
+
+    @Test
+    public void testFindOccupantNoMatch() {
+        assertNull(occupancyService.findOccupant(gameMap, 1, 2, alice, "CAROL"));
+        verify(actorRepository, never()).findById(any(UUID.class));
+    }
+
+    @Test
+    public void testRebuildDoesNotPublish() {
+        alice.setSessionId("session-a");
+        occupancyService.rebuild();
+
+        verify(applicationEventPublisher, never()).publishEvent(any(RoomChangedEvent.class));
+    }
+
+    @Test
+    public void testMovePublishesRoomChange() {
+        alice.setSessionUsername("alice");
+        alice.setSessionId("session-a");
+        alice.setX(2);
+        occupancyService.update(alice);
+
+        RoomChangedEvent event = captureRoomChangedEvent();
+
+        assertEquals("session-a", event.getOccupant().getSessionId());
+        assertEquals(gameMap.getId(), event.getMapId());
+        assertEquals(2, (int)event.getX());
+        assertEquals(2, (int)event.getY());
+    }
+
+    @Test
+    public void testUpdateInPlaceDoesNotPublish() {
+        alice.setSessionId("session-a");
+        occupancyService.update(alice);
+
+        verify(applicationEventPublisher, never()).publishEvent(any(RoomChangedEvent.class));
+    }
+
+    @Test
+    public void testMoveWithoutSessionDoesNotPublish() {
+        alice.setX(2);
+        occupancyService.update(alice);
+
+        verify(applicationEventPublisher, never()).publishEvent(any(RoomChangedEvent.class));
+    }
+
+    @Test
+    public void testRemovePublishesRoomChange() {
+        alice.setSessionId("session-a");
+        occupancyService.update(alice);
+        occupancyService.remove(alice);
+
+        assertFalse(captureRoomChangedEvent().isInWorld());
+    }
+
+    @Test
+    public void testMoveWaitsForCommit() {
+        alice.setSessionId("session-a");
+        alice.setX(2);
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            occupancyService.update(alice);
+
+            assertEquals(2, occupancyService.getOccupants(gameMap, 1, 2).size());
+            verify(applicationEventPublisher, never()).publishEvent(any(RoomChangedEvent.class));
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals("Alice", occupancyService.getOccupants(gameMap, 2, 2).get(0).getName());
+        verify(applicationEventPublisher).publishEvent(any(RoomChangedEvent.class));
+    }
+
+    @Test
+    public void testMoveDroppedOnRollback() {
+        alice.setSessionId("session-a");
+        alice.setX(2);
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            occupancyService.update(alice);
+            occupancyService.remove(bob);
+
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(2, occupancyService.getOccupants(gameMap, 1, 2).size());
+        assertTrue(occupancyService.getOccupants(gameMap, 2, 2).isEmpty());
+        verify(applicationEventPublisher, never()).publishEvent(any(RoomChangedEvent.class));
+    }
+
+    @Test
+    public void testFindOccupantMovedInTransaction() {
+        // the index still has Bob here because the move hasn't committed, but the loaded Bob has moved
+        bob.setX(5);
+
+        assertNull(occupancyService.findOccupant(gameMap, 1, 2, alice, "BOB"));
+    }
+
+    @Test
+    public void testUpdateRecordsState() {
+        alice.setX(2);
+        occupancyService.update(alice);
+        occupancyService.remove(bob);
+
+        verify(actorStateService).record(eq(alice));
+        verify(actorStateService).record(eq(bob));
+    }
+
+    @Test
+    public void testChangesAnnounced() {
+        alice.setX(2);
+        occupancyService.update(alice);
+        occupancyService.remove(bob);
+
+        verify(applicationEventPublisher, times(2)).publishEvent(eventCaptor.capture());
+
+        List<UUID> announced = eventCaptor.getAllValues()
+            .stream()
+            .map(event -> ((OccupantChangedEvent) event).getActorId())
+            .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList(alice.getId(), bob.getId()), announced);
+    }
+
+    @Test
+    public void testRefresh() {
+        Actor carol = buildActor("Carol", gameMap, 1, 2);
+
+        carol.setSessionId("session-c");
+        alice.setX(2);
+        bob.setGameMap(null);
+
+        when(actorRepository.findById(eq(carol.getId()))).thenReturn(Optional.of(carol));
+
+        occupancyService.refresh(alice.getId());
+        occupancyService.refresh(bob.getId());
+        occupancyService.refresh(carol.getId());
+
+        assertEquals("Alice", occupancyService.getOccupants(gameMap, 2, 2).get(0).getName());
+        assertEquals(1, occupancyService.getOccupants(gameMap, 1, 2).size());
+        assertEquals("Carol", occupancyService.getOccupants(gameMap, 1, 2).get(0).getName());
+        verify(actorStateService, never()).record(any(Actor.class));
+        verify(applicationEventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    public void testRefreshDeleted() {
+        when(actorRepository.findById(eq(bob.getId()))).thenReturn(Optional.empty());
+
+        occupancyService.refresh(bob.getId());
+
+        assertEquals(1, occupancyService.getOccupants(gameMap, 1, 2).size());
+    }
+
+    @Test
+    public void testKeysDoNotCollide() {
+        assertNotEquals(OccupancyService.key(0, 1, 0), OccupancyService.key(0, 0, 1));
+        assertNotEquals(OccupancyService.key(1, 0, 0), OccupancyService.key(0, 0, 0));
+        assertNotEquals(OccupancyService.key(0, (1 << OccupancyService.COORDINATE_BITS) - 1, 0), OccupancyService.key(1, 0, 0));
+    }
+
+    private RoomChangedEvent captureRoomChangedEvent() {
+        verify(applicationEventPublisher, atLeastOnce()).publishEvent(eventCaptor.capture());
+
+        List<RoomChangedEvent> events = eventCaptor.getAllValues()
+            .stream()
+            .filter(event -> event instanceof RoomChangedEvent)
+            .map(event -> (RoomChangedEvent) event)
+            .collect(Collectors.toList());
+
+        assertEquals(1, events.size());
+
+        return events.get(0);
+    }
+
+    private void useDatabase() {
+        when(actorProperties.getDatabaseLookupThreshold()).thenReturn(1);
+
+        occupancyService = new OccupancyService(actorProperties, actorRepository, applicationEventPublisher, actorStateService);
+        occupancyService.rebuild();
+    }
+
+    private Actor buildActor(String name, GameMap map, int x, int y) {
+        Actor actor = new Actor();
+
+        actor.setId(UUID.randomUUID());
+        actor.setName(name);
+        actor.setAccount(name.toLowerCase());
+        actor.setGameMap(map);
+        actor.setX(x);
+        actor.setY(y);
+        actor.setArrival(++arrivals);
+
+        return actor;
+    }
+}
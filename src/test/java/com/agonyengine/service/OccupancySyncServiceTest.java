@@ -0,0 +1,169 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.BrokerMode;
+import com.agonyengine.config.WebSocketBrokerProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class OccupancySyncServiceTest {
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private OccupancyService occupancyService;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PGConnection pgConnection;
+
+    @Mock
+    private Statement statement;
+
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private WebSocketBrokerProperties brokerProperties = new WebSocketBrokerProperties();
+    private UUID alice = UUID.randomUUID();
+    private UUID bob = UUID.randomUUID();
+
+    private OccupancySyncService occupancySyncService;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        brokerProperties.setMode(BrokerMode.RELAY);
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.isValid(anyInt())).thenReturn(true);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.unwrap(eq(PGConnection.class))).thenReturn(pgConnection);
+
+        occupancySyncService = buildService();
+    }
+
+    @Test
+    public void testAnnounce() {
+        occupancySyncService.onOccupantChanged(new OccupantChangedEvent(alice));
+
+        verify(jdbcTemplate).queryForList(eq(OccupancySyncService.NOTIFY_SQL), eq(alice.toString()));
+    }
+
+    @Test
+    public void testListenAndRebuild() throws Exception {
+        occupancySyncService.poll();
+        occupancySyncService.poll();
+
+        verify(dataSource, times(1)).getConnection();
+        verify(statement).execute(eq(OccupancySyncService.LISTEN_SQL));
+        verify(statement, times(2)).execute(eq(OccupancySyncService.POLL_SQL));
+        verify(occupancyService, times(1)).rebuild();
+    }
+
+    @Test
+    public void testRefreshEachActorOnce() throws Exception {
+        when(pgConnection.getNotifications()).thenReturn(new PGNotification[] {
+            notification(alice),
+            notification(bob),
+            notification(alice)
+        });
+
+        occupancySyncService.poll();
+
+        verify(occupancyService, times(1)).refresh(eq(alice));
+        verify(occupancyService, times(1)).refresh(eq(bob));
+        assertEquals(3.0, meterRegistry.get("agonyengine.occupancy.sync.received").counter().count(), 0.0);
+    }
+
+    @Test
+    public void testNothingHeard() throws Exception {
+        when(pgConnection.getNotifications()).thenReturn(null);
+
+        occupancySyncService.poll();
+
+        verify(occupancyService, never()).refresh(any(UUID.class));
+    }
+
+    @Test
+    public void testConnectionLostRebuilds() throws Exception {
+        occupancySyncService.poll();
+
+        when(connection.isValid(anyInt())).thenReturn(false);
+
+        occupancySyncService.poll();
+
+        verify(statement).execute(eq(OccupancySyncService.UNLISTEN_SQL));
+        verify(connection).close();
+        verify(dataSource, times(2)).getConnection();
+        verify(occupancyService, times(2)).rebuild();
+    }
+
+    @Test
+    public void testDatabaseDown() throws Exception {
+        when(dataSource.getConnection()).thenThrow(new SQLException("Database went away"));
+
+        occupancySyncService.poll();
+
+        verify(occupancyService, never()).rebuild();
+    }
+
+    @Test
+    public void testShutdownStopsListening() throws Exception {
+        occupancySyncService.poll();
+        occupancySyncService.shutdown();
+
+        verify(statement).execute(eq(OccupancySyncService.UNLISTEN_SQL));
+        verify(connection).close();
+    }
+
+    @Test
+    public void testSingleNode() {
+        brokerProperties.setMode(BrokerMode.SIMPLE);
+        occupancySyncService = buildService();
+
+        occupancySyncService.onOccupantChanged(new OccupantChangedEvent(alice));
+        occupancySyncService.poll();
+
+        verifyZeroInteractions(dataSource, jdbcTemplate, occupancyService);
+    }
+
+    private OccupancySyncService buildService() {
+        return new OccupancySyncService(brokerProperties, dataSource, jdbcTemplate, occupancyService, meterRegistry);
+    }
+
+    private PGNotification notification(UUID actorId) {
+        PGNotification notification = mock(PGNotification.class);
+
+        when(notification.getName()).thenReturn(OccupancySyncService.CHANNEL);
+        when(notification.getParameter()).thenReturn(actorId.toString());
+
+        return notification;
+    }
+}
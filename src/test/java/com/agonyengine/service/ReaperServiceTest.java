@@ -1,6 +1,8 @@
 package com.agonyengine.service;
 
+import com.agonyengine.config.ReaperProperties;
 import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.GameMap;
 import com.agonyengine.model.stomp.GameOutput;
 import com.agonyengine.repository.ActorRepository;
 import org.junit.Before;
@@ -13,17 +15,29 @@ import org.mockito.MockitoAnnotations;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.mockito.Mockito.*;
 
 public class ReaperServiceTest {
+    @Mock
+    private ReaperProperties reaperProperties;
+
     @Mock
     private ActorRepository actorRepository;
 
     @Mock
     private CommService commService;
 
+    @Mock
+    private OccupancyService occupancyService;
+
+    @Mock
+    private GameMap gameMap;
+
     @Captor
     private ArgumentCaptor<Date> dateArgumentCaptor;
 
@@ -37,32 +51,128 @@ public class ReaperServiceTest {
 
         for (int i = 0; i < 5; i++) {
             Actor actor = mock(Actor.class);
+            UUID id = UUID.randomUUID();
 
+            when(actor.getId()).thenReturn(id);
             when(actor.getName()).thenReturn("Actor-" + i);
             when(actor.getDisconnectedDate()).thenReturn(new Date(0L));
+            when(actor.getGameMap()).thenReturn(gameMap);
+            when(actorRepository.findById(eq(id))).thenReturn(Optional.of(actor));
 
             actors.add(actor);
         }
 
+        when(reaperProperties.getLinkDeadTimeout()).thenReturn(1000L * 60 * 30);
+        when(reaperProperties.getTickDuration()).thenReturn(10L);
+        when(reaperProperties.getWheelSize()).thenReturn(16);
         when(actorRepository.findByDisconnectedDateIsBeforeAndGameMapIsNotNull(any(Date.class))).thenReturn(actors);
+        when(actorRepository.removeIfLinkDeadSince(any(UUID.class), any(Date.class))).thenReturn(1);
 
-        reaperService = new ReaperService(actorRepository, commService);
+        reaperService = new ReaperService(reaperProperties, actorRepository, commService, occupancyService);
     }
 
     @Test
-    public void testReap() {
-        reaperService.reapLinkDeadActors();
+    public void testRecoverAndReap() {
+        reaperService.onLeadershipChanged(new LeadershipChangedEvent(true));
 
         verify(actorRepository).findByDisconnectedDateIsBeforeAndGameMapIsNotNull(dateArgumentCaptor.capture());
-        verify(actorRepository).saveAll(actors);
+        assertFalse(dateArgumentCaptor.getValue().after(new Date()));
+        assertEquals(5, reaperService.getScheduledCount());
+
+        reapSoon();
+
+        verify(actorRepository, never()).saveAll(any());
 
         actors.forEach(actor -> {
+            verify(actorRepository).removeIfLinkDeadSince(eq(actor.getId()), eq(new Date(0L)));
             verify(commService).echoToRoom(eq(actor), any(GameOutput.class), eq(actor));
             verify(actor).setGameMap(isNull());
+            verify(occupancyService).remove(eq(actor));
         });
 
-        Date cutoff = dateArgumentCaptor.getValue();
+        assertEquals(0, reaperService.getScheduledCount());
+    }
+
+    @Test
+    public void testNoRecoveryWhenNotLeader() {
+        reaperService.onLeadershipChanged(new LeadershipChangedEvent(false));
+
+        verify(actorRepository, never()).findByDisconnectedDateIsBeforeAndGameMapIsNotNull(any(Date.class));
+    }
+
+    @Test
+    public void testRescanWhenLeader() {
+        reaperService.rescan();
+
+        verify(actorRepository, never()).findByDisconnectedDateIsBeforeAndGameMapIsNotNull(any(Date.class));
+
+        reaperService.onLeadershipChanged(new LeadershipChangedEvent(true));
+        reaperService.rescan();
+
+        verify(actorRepository, times(2)).findByDisconnectedDateIsBeforeAndGameMapIsNotNull(dateArgumentCaptor.capture());
+        assertFalse(dateArgumentCaptor.getValue().after(new Date(System.currentTimeMillis() - reaperProperties.getLinkDeadTimeout())));
+        assertEquals(5, reaperService.getScheduledCount());
+
+        reaperService.onLeadershipChanged(new LeadershipChangedEvent(false));
+        reaperService.rescan();
+
+        verify(actorRepository, times(2)).findByDisconnectedDateIsBeforeAndGameMapIsNotNull(any(Date.class));
+    }
+
+    @Test
+    public void testReapedElsewhere() {
+        Actor actor = actors.get(0);
 
-        assertTrue(cutoff.before(new Date()));
+        when(actorRepository.removeIfLinkDeadSince(eq(actor.getId()), any(Date.class))).thenReturn(0);
+
+        reaperService.schedule(actor.getId(), new Date(0L));
+        reapSoon();
+
+        verify(commService, never()).echoToRoom(any(Actor.class), any(GameOutput.class), any(Actor.class));
+        verify(actor, never()).setGameMap(any());
+        verify(occupancyService, never()).remove(any(Actor.class));
+    }
+
+    @Test
+    public void testNotReapedEarly() {
+        reaperService.schedule(actors.get(0).getId(), new Date());
+        reaperService.reapLinkDeadActors();
+
+        verify(actorRepository, never()).findById(any(UUID.class));
+        assertEquals(1, reaperService.getScheduledCount());
+    }
+
+    @Test
+    public void testCancel() {
+        reaperService.schedule(actors.get(0).getId(), new Date(0L));
+        reaperService.cancel(actors.get(0).getId());
+
+        reapSoon();
+
+        verify(actorRepository, never()).findById(any(UUID.class));
+    }
+
+    @Test
+    public void testReconnectedBeforeDeadline() {
+        Actor actor = actors.get(0);
+
+        when(actor.getDisconnectedDate()).thenReturn(null);
+
+        reaperService.schedule(actor.getId(), new Date(0L));
+        reapSoon();
+
+        verify(actor, never()).setGameMap(any());
+        verify(occupancyService, never()).remove(any(Actor.class));
+    }
+
+    // deadlines in the past come due on the next tick
+    private void reapSoon() {
+        try {
+            Thread.sleep(reaperProperties.getTickDuration() + 10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        reaperService.reapLinkDeadActors();
     }
 }
@@ -0,0 +1,59 @@
+package com.agonyengine.service;
+
+import com.agonyengine.model.actor.GameMap;
+import com.agonyengine.model.actor.Pronoun;
+import com.agonyengine.model.actor.TileStore;
+import com.agonyengine.model.interpret.Verb;
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReferenceCacheServiceTest {
+    @Mock
+    private EntityManagerFactory entityManagerFactory;
+
+    @Mock
+    private SessionFactory sessionFactory;
+
+    @Mock
+    private Cache cache;
+
+    @Mock
+    private org.hibernate.Cache hibernateCache;
+
+    @Mock
+    private TileStore tileStore;
+
+    private ReferenceCacheService referenceCacheService;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        when(entityManagerFactory.getCache()).thenReturn(cache);
+        when(entityManagerFactory.unwrap(eq(SessionFactory.class))).thenReturn(sessionFactory);
+        when(sessionFactory.getCache()).thenReturn(hibernateCache);
+
+        referenceCacheService = new ReferenceCacheService(entityManagerFactory, tileStore);
+    }
+
+    @Test
+    public void testEvict() {
+        referenceCacheService.evict();
+
+        verify(cache).evict(eq(GameMap.class));
+        verify(cache).evict(eq(Pronoun.class));
+        verify(cache).evict(eq(Verb.class));
+        verify(hibernateCache).evictQueryRegions();
+        verify(tileStore).evict();
+    }
+}
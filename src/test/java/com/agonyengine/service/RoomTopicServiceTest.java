@@ -0,0 +1,166 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.WebSocketBrokerProperties;
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.GameMap;
+import com.agonyengine.model.actor.Occupant;
+import com.agonyengine.model.stomp.GameOutput;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.messaging.simp.SimpMessageHeaderAccessor.SESSION_ID_HEADER;
+
+public class RoomTopicServiceTest {
+    @Mock
+    private SimpMessagingTemplate simpMessagingTemplate;
+
+    @Mock
+    private SessionDisconnectEvent disconnectEvent;
+
+    @Captor
+    private ArgumentCaptor<GameOutput> outputCaptor;
+
+    @Captor
+    private ArgumentCaptor<MessageHeaders> headersCaptor;
+
+    private UUID mapId = UUID.randomUUID();
+    private Actor actor = new Actor();
+    private WebSocketBrokerProperties brokerProperties = new WebSocketBrokerProperties();
+
+    private RoomTopicService roomTopicService;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        GameMap gameMap = new GameMap();
+
+        gameMap.setId(mapId);
+
+        actor.setId(UUID.randomUUID());
+        actor.setName("Frank");
+        actor.setSessionUsername("frank");
+        actor.setSessionId("session-1");
+        actor.setGameMap(gameMap);
+        actor.setX(3);
+        actor.setY(4);
+
+        brokerProperties.setRoomTopics(true);
+
+        roomTopicService = new RoomTopicService(brokerProperties, simpMessagingTemplate);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        brokerProperties.setRoomTopics(null);
+
+        assertFalse(roomTopicService.isEnabled());
+    }
+
+    @Test
+    public void testGetRoomTopic() {
+        assertEquals("/topic/room." + mapId + ".3.4", RoomTopicService.getRoomTopic(actor));
+    }
+
+    @Test
+    public void testGetRoomTopicInVoid() {
+        actor.setGameMap(null);
+
+        assertNull(RoomTopicService.getRoomTopic(actor));
+    }
+
+    @Test
+    public void testJoin() {
+        String room = roomTopicService.join("session-1", actor);
+
+        assertEquals(RoomTopicService.getRoomTopic(actor), room);
+        assertTrue(roomTopicService.canSubscribe("session-1", room));
+        assertFalse(roomTopicService.canSubscribe("session-2", room));
+        assertFalse(roomTopicService.canSubscribe("session-1", "/topic/room.elsewhere"));
+    }
+
+    @Test
+    public void testJoinInVoid() {
+        actor.setGameMap(null);
+
+        assertEquals("", roomTopicService.join("session-1", actor));
+    }
+
+    @Test
+    public void testCanSubscribeOtherDestinations() {
+        assertTrue(roomTopicService.canSubscribe("session-1", "/user/queue/output"));
+        assertTrue(roomTopicService.canSubscribe("session-1", null));
+    }
+
+    @Test
+    public void testCannotSubscribeWhenDisabled() {
+        String room = roomTopicService.join("session-1", actor);
+
+        brokerProperties.setRoomTopics(false);
+
+        assertFalse(roomTopicService.canSubscribe("session-1", room));
+    }
+
+    @Test
+    public void testRoomChanged() {
+        roomTopicService.onRoomChanged(new RoomChangedEvent(new Occupant(actor), mapId, 5, 6));
+
+        String room = "/topic/room." + mapId + ".5.6";
+
+        verify(simpMessagingTemplate).convertAndSendToUser(eq("frank"), eq("/queue/output"), outputCaptor.capture(), headersCaptor.capture());
+        assertEquals(room, outputCaptor.getValue().getRoom());
+        assertTrue(outputCaptor.getValue().getOutput().isEmpty());
+        assertEquals("session-1", headersCaptor.getValue().get(SESSION_ID_HEADER));
+        assertTrue(roomTopicService.canSubscribe("session-1", room));
+    }
+
+    @Test
+    public void testLeftWorld() {
+        String room = roomTopicService.join("session-1", actor);
+
+        roomTopicService.onRoomChanged(new RoomChangedEvent(new Occupant(actor), null, null, null));
+
+        verify(simpMessagingTemplate).convertAndSendToUser(eq("frank"), eq("/queue/output"), outputCaptor.capture(), any(MessageHeaders.class));
+        assertEquals("", outputCaptor.getValue().getRoom());
+        assertFalse(roomTopicService.canSubscribe("session-1", room));
+    }
+
+    @Test
+    public void testRoomChangedWhenDisabled() {
+        brokerProperties.setRoomTopics(false);
+
+        roomTopicService.onRoomChanged(new RoomChangedEvent(new Occupant(actor), mapId, 5, 6));
+
+        verify(simpMessagingTemplate, never()).convertAndSendToUser(anyString(), anyString(), any(), any(MessageHeaders.class));
+    }
+
+    @Test
+    public void testDisconnect() {
+        String room = roomTopicService.join("session-1", actor);
+
+        when(disconnectEvent.getSessionId()).thenReturn("session-1");
+
+        roomTopicService.onDisconnect(disconnectEvent);
+
+        assertFalse(roomTopicService.canSubscribe("session-1", room));
+    }
+}
@@ -0,0 +1,137 @@
+package com.agonyengine.service;
+
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.repository.ActorRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SessionActorRegistryTest {
+    @Mock
+    private ActorRepository actorRepository;
+
+    private UUID actorId = UUID.randomUUID();
+    private Actor actor = new Actor();
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private SessionActorRegistry sessionActorRegistry;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        actor.setId(actorId);
+        actor.setSessionUsername("Shepherd");
+        actor.setSessionId("session-1");
+
+        when(actorRepository.findById(eq(actorId))).thenReturn(Optional.of(actor));
+
+        sessionActorRegistry = new SessionActorRegistry(actorRepository, meterRegistry);
+    }
+
+    @Test
+    public void testHit() {
+        sessionActorRegistry.register("Shepherd", "session-1", actorId);
+
+        assertEquals(actor, sessionActorRegistry.findActor("Shepherd", "session-1"));
+        verify(actorRepository, never()).findBySessionUsernameAndSessionId(anyString(), anyString());
+        assertEquals(1.0, lookups("hit"), 0.0);
+        assertEquals(0.0, lookups("miss"), 0.0);
+    }
+
+    @Test
+    public void testMissFallsBackAndRegisters() {
+        when(actorRepository.findBySessionUsernameAndSessionId(eq("Shepherd"), eq("session-1"))).thenReturn(actor);
+
+        assertEquals(actor, sessionActorRegistry.findActor("Shepherd", "session-1"));
+        assertEquals(actor, sessionActorRegistry.findActor("Shepherd", "session-1"));
+
+        verify(actorRepository).findBySessionUsernameAndSessionId(eq("Shepherd"), eq("session-1"));
+        assertEquals(1, sessionActorRegistry.size());
+        assertEquals(1.0, lookups("hit"), 0.0);
+        assertEquals(1.0, lookups("miss"), 0.0);
+    }
+
+    @Test
+    public void testMissNotFound() {
+        assertNull(sessionActorRegistry.findActor("Shepherd", "session-1"));
+        assertEquals(0, sessionActorRegistry.size());
+    }
+
+    @Test
+    public void testWrongUsername() {
+        sessionActorRegistry.register("Shepherd", "session-1", actorId);
+
+        assertNull(sessionActorRegistry.findActor("Intruder", "session-1"));
+        verify(actorRepository, never()).findById(any(UUID.class));
+    }
+
+    @Test
+    public void testStaleEntry() {
+        sessionActorRegistry.register("Shepherd", "session-1", actorId);
+        actor.setSessionId("session-2");
+
+        assertNull(sessionActorRegistry.findActor("Shepherd", "session-1"));
+        assertEquals(0, sessionActorRegistry.size());
+        assertEquals(1.0, lookups("miss"), 0.0);
+    }
+
+    @Test
+    public void testEvict() {
+        sessionActorRegistry.register("Shepherd", "session-1", actorId);
+        sessionActorRegistry.evict("session-1");
+
+        assertEquals(0, sessionActorRegistry.size());
+        assertEquals(0.0, meterRegistry.get("agonyengine.session.actor.size").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void testReconnectReplacesOldSession() {
+        sessionActorRegistry.register("Shepherd", "session-1", actorId);
+        sessionActorRegistry.register("Shepherd", "session-2", actorId);
+
+        assertEquals(1, sessionActorRegistry.size());
+
+        // evicting the old session must not drop the new one
+        sessionActorRegistry.evict("session-1");
+        actor.setSessionId("session-2");
+
+        assertEquals(actor, sessionActorRegistry.findActor("Shepherd", "session-2"));
+        assertEquals(1.0, lookups("hit"), 0.0);
+    }
+
+    @Test
+    public void testFindActorIdRegistered() {
+        sessionActorRegistry.register("Shepherd", "session-1", actorId);
+
+        assertEquals(actorId, sessionActorRegistry.findActorId("Shepherd", "session-1"));
+        verify(actorRepository, never()).findById(any(UUID.class));
+    }
+
+    @Test
+    public void testFindActorIdFallsBack() {
+        when(actorRepository.findBySessionUsernameAndSessionId(eq("Shepherd"), eq("session-1"))).thenReturn(actor);
+
+        assertEquals(actorId, sessionActorRegistry.findActorId("Shepherd", "session-1"));
+        assertNull(sessionActorRegistry.findActorId("Shepherd", "session-2"));
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.get("agonyengine.session.actor.lookups").tag("result", result).counter().count();
+    }
+}
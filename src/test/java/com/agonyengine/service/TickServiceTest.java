@@ -0,0 +1,261 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.InputProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TickServiceTest {
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private CommService commService;
+
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private InputProperties inputProperties = new InputProperties();
+    private UUID alice = UUID.randomUUID();
+    private UUID bob = UUID.randomUUID();
+    private UUID carol = UUID.randomUUID();
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate participant;
+    private CommandTransactionTemplate transactionOperations;
+    private TickService tickService;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        inputProperties.setMailboxDepth(2);
+        inputProperties.setTickInterval(100L);
+
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:" + UUID.randomUUID(), true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE ran (id IDENTITY, name VARCHAR(16))");
+
+        // configured the same way as the application's transaction manager, see ApplicationConfiguration
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        transactionManager.setGlobalRollbackOnParticipationFailure(false);
+
+        // joins whatever transaction is already open, as a @Transactional command or service would
+        participant = new TransactionTemplate(transactionManager);
+        transactionOperations = new CommandTransactionTemplate(transactionManager, entityManager);
+
+        tickService = new TickService(inputProperties, transactionOperations, commService, meterRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    public void testOneCommandPerActorPerTick() {
+        tickService.submit(alice, insert("alice 1"));
+        tickService.submit(alice, insert("alice 2"));
+        tickService.submit(bob, insert("bob 1"));
+
+        assertEquals(3.0, queueDepth(), 0.0);
+
+        tickService.tick();
+
+        assertEquals(Arrays.asList("alice 1", "bob 1"), ran());
+        assertEquals(1.0, queueDepth(), 0.0);
+
+        tickService.tick();
+
+        assertEquals(Arrays.asList("alice 1", "bob 1", "alice 2"), ran());
+        assertEquals(0.0, queueDepth(), 0.0);
+    }
+
+    @Test
+    public void testRoundRobin() {
+        tickService.submit(alice, insert("alice 1"));
+        tickService.submit(alice, insert("alice 2"));
+        tickService.submit(bob, insert("bob 1"));
+        tickService.submit(bob, insert("bob 2"));
+
+        tickService.tick();
+        tickService.submit(alice, insert("alice 3"));
+        tickService.tick();
+        tickService.tick();
+
+        assertEquals(Arrays.asList("alice 1", "bob 1", "alice 2", "bob 2", "alice 3"), ran());
+    }
+
+    @Test
+    public void testRejectsWhenFull() {
+        assertTrue(tickService.submit(alice, insert("1")));
+        assertTrue(tickService.submit(alice, insert("2")));
+        assertFalse(tickService.submit(alice, insert("3")));
+        assertTrue(tickService.submit(bob, insert("bob")));
+    }
+
+    @Test
+    public void testTickRunsInOneTransactionAndFlushes() {
+        List<Boolean> isInTransaction = new ArrayList<>();
+        TransactionSynchronization synchronization = mock(TransactionSynchronization.class);
+
+        tickService.submit(alice, () -> TransactionSynchronizationManager.registerSynchronization(synchronization));
+        tickService.submit(bob, () -> isInTransaction.add(TransactionSynchronizationManager.isActualTransactionActive()));
+
+        tickService.tick();
+
+        verify(synchronization).afterCommit();
+        verify(entityManager, times(2)).flush();
+        verify(commService).flush();
+        assertEquals(Collections.singletonList(true), isInTransaction);
+        assertEquals(1, meterRegistry.get("agonyengine.tick.duration").timer().count());
+    }
+
+    @Test
+    public void testEmptyTick() {
+        tickService.tick();
+
+        verify(entityManager, never()).flush();
+        verify(commService).flush();
+    }
+
+    @Test
+    public void testFailedCommandRollsBackAlone() {
+        tickService.submit(alice, insert("alice"));
+        tickService.submit(bob, () -> {
+            insert("bob").run();
+            throw new IllegalStateException("Boom");
+        });
+        tickService.submit(carol, insert("carol"));
+
+        tickService.tick();
+
+        verify(entityManager, times(2)).flush();
+        verify(entityManager).clear();
+        verify(commService).flush();
+
+        assertEquals(Arrays.asList("alice", "carol"), ran());
+        assertEquals(1.0, meterRegistry.get("agonyengine.tick.commands.failed").counter().count(), 0.0);
+    }
+
+    @Test
+    public void testFailedParticipantRollsBackAlone() {
+        tickService.submit(alice, insert("alice"));
+        tickService.submit(bob, () -> participant.execute(status -> {
+            insert("bob").run();
+            throw new IllegalStateException("Boom");
+        }));
+        tickService.submit(carol, insert("carol"));
+
+        tickService.tick();
+
+        assertEquals(Arrays.asList("alice", "carol"), ran());
+        assertEquals(1.0, meterRegistry.get("agonyengine.tick.commands.failed").counter().count(), 0.0);
+    }
+
+    @Test
+    public void testRollbackOnlyCommandRollsBackAlone() {
+        TransactionSynchronization synchronization = mock(TransactionSynchronization.class);
+
+        // the way WebSocketResource runs each sentence of a line
+        tickService.submit(alice, () -> transactionOperations.execute(status -> {
+            insert("alice").run();
+            TransactionSynchronizationManager.registerSynchronization(synchronization);
+            status.setRollbackOnly();
+            return null;
+        }));
+        tickService.submit(bob, insert("bob"));
+
+        tickService.tick();
+
+        assertEquals(Collections.singletonList("bob"), ran());
+        verify(synchronization, never()).afterCommit();
+        verify(synchronization).afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        verify(entityManager).clear();
+        assertEquals(0.0, meterRegistry.get("agonyengine.tick.commands.failed").counter().count(), 0.0);
+    }
+
+    @Test
+    public void testFailedCommandDiscardsItsSynchronizations() {
+        TransactionSynchronization kept = mock(TransactionSynchronization.class);
+        TransactionSynchronization discarded = mock(TransactionSynchronization.class);
+
+        tickService.submit(alice, () -> TransactionSynchronizationManager.registerSynchronization(kept));
+        tickService.submit(bob, () -> {
+            TransactionSynchronizationManager.registerSynchronization(discarded);
+            throw new IllegalStateException("Boom");
+        });
+
+        tickService.tick();
+
+        verify(kept).afterCommit();
+        verify(kept).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        verify(discarded, never()).afterCommit();
+        verify(discarded).afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+    }
+
+    @Test
+    public void testFailedCommitIsNotRetried() {
+        TransactionSynchronization synchronization = mock(TransactionSynchronization.class);
+        List<String> ran = new ArrayList<>();
+
+        doThrow(new IllegalStateException("Commit failed")).when(synchronization).beforeCommit(anyBoolean());
+
+        tickService.submit(alice, () -> {
+            ran.add("alice");
+            insert("alice").run();
+            TransactionSynchronizationManager.registerSynchronization(synchronization);
+        });
+        tickService.submit(bob, () -> {
+            ran.add("bob");
+            insert("bob").run();
+        });
+
+        tickService.tick();
+
+        verify(synchronization, times(1)).beforeCommit(anyBoolean());
+        verify(synchronization).afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        verify(commService).flush();
+        assertEquals(Arrays.asList("alice", "bob"), ran);
+        assertEquals(Collections.emptyList(), ran());
+    }
+
+    private Runnable insert(String name) {
+        return () -> jdbcTemplate.update("INSERT INTO ran (name) VALUES (?)", name);
+    }
+
+    private List<String> ran() {
+        return jdbcTemplate.queryForList("SELECT name FROM ran ORDER BY id", String.class);
+    }
+
+    private double queueDepth() {
+        return meterRegistry.get("agonyengine.tick.queue.depth").gauge().value();
+    }
+}
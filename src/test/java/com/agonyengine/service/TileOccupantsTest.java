@@ -0,0 +1,143 @@
+package com.agonyengine.service;
+
+import com.agonyengine.model.actor.Actor;
+import com.agonyengine.model.actor.Occupant;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TileOccupantsTest {
+    @Test
+    public void testMatchSmallTile() {
+        TileOccupants tile = new TileOccupants(buildOccupants(3));
+
+        assertEquals(bits(0, 1, 2), tile.match("ITEM"));
+        assertEquals(bits(1), tile.match("1"));
+        assertFalse(tile.isIndexed());
+    }
+
+    @Test
+    public void testMatchCrowdedTile() {
+        TileOccupants tile = new TileOccupants(buildOccupants(TileOccupants.INDEX_THRESHOLD + 8));
+
+        assertEquals(bits(1, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19), tile.match("1"));
+        assertEquals(bits(39), tile.match("39"));
+        assertEquals(new BitSet(), tile.match("NOTHING"));
+        assertEquals(TileOccupants.INDEX_THRESHOLD + 8, tile.match("IT").cardinality());
+        assertTrue(tile.isIndexed());
+    }
+
+    @Test
+    public void testMatchCrowdedTileAllOccupantsOnce() {
+        Occupant[] occupants = buildOccupants(TileOccupants.INDEX_THRESHOLD);
+        Actor actor = new Actor();
+
+        actor.setId(UUID.randomUUID());
+        actor.setName("item itemized item");
+        occupants[5] = new Occupant(actor);
+
+        assertEquals(TileOccupants.INDEX_THRESHOLD, new TileOccupants(occupants).match("ITEM").cardinality());
+    }
+
+    @Test
+    public void testAddCarriesIndex() {
+        TileOccupants tile = new TileOccupants(buildOccupants(TileOccupants.INDEX_THRESHOLD));
+
+        tile.match("ITEM");
+
+        TileOccupants added = tile.add(buildOccupant("sword item"));
+
+        assertTrue(added.isIndexed());
+        assertEquals(bits(TileOccupants.INDEX_THRESHOLD), added.match("SW"));
+        assertEquals(TileOccupants.INDEX_THRESHOLD + 1, added.match("ITEM").cardinality());
+        assertEquals(new TileOccupants(added.getOccupants()).match("1"), added.match("1"));
+    }
+
+    @Test
+    public void testReplaceCarriesIndex() {
+        TileOccupants tile = new TileOccupants(buildOccupants(TileOccupants.INDEX_THRESHOLD));
+
+        tile.match("ITEM");
+
+        TileOccupants replaced = tile.replace(3, buildOccupant("sword"));
+
+        assertTrue(replaced.isIndexed());
+        assertEquals(bits(3), replaced.match("SWORD"));
+        assertEquals(bits(30, 31), replaced.match("3"));
+        assertEquals(TileOccupants.INDEX_THRESHOLD - 1, replaced.match("ITEM").cardinality());
+    }
+
+    @Test
+    public void testRemoveCarriesIndex() {
+        Occupant[] occupants = buildOccupants(TileOccupants.INDEX_THRESHOLD + 1);
+        TileOccupants tile = new TileOccupants(occupants);
+
+        tile.match("ITEM");
+
+        TileOccupants removed = tile.remove(3);
+
+        assertTrue(removed.isIndexed());
+        assertEquals(bits(29, 30, 31), removed.match("3"));
+        assertEquals(bits(3), removed.match("4"));
+        assertEquals(bits(TileOccupants.INDEX_THRESHOLD - 1), removed.match(String.valueOf(TileOccupants.INDEX_THRESHOLD)));
+        assertEquals(new TileOccupants(removed.getOccupants()).match("1"), removed.match("1"));
+    }
+
+    @Test
+    public void testRemoveBelowThresholdDropsIndex() {
+        TileOccupants tile = new TileOccupants(buildOccupants(TileOccupants.INDEX_THRESHOLD));
+
+        tile.match("ITEM");
+
+        TileOccupants removed = tile.remove(0);
+
+        assertFalse(removed.isIndexed());
+        assertEquals(TileOccupants.INDEX_THRESHOLD - 1, removed.match("ITEM").cardinality());
+    }
+
+    @Test
+    public void testUnindexedStaysUnindexed() {
+        TileOccupants tile = new TileOccupants(buildOccupants(TileOccupants.INDEX_THRESHOLD));
+
+        assertFalse(tile.add(buildOccupant("sword")).isIndexed());
+    }
+
+    private static Occupant buildOccupant(String name) {
+        Actor actor = new Actor();
+
+        actor.setId(UUID.randomUUID());
+        actor.setName(name);
+
+        return new Occupant(actor);
+    }
+
+    private static Occupant[] buildOccupants(int count) {
+        Occupant[] occupants = new Occupant[count];
+
+        for (int i = 0; i < count; i++) {
+            Actor actor = new Actor();
+
+            actor.setId(UUID.randomUUID());
+            actor.setName("item " + i);
+
+            occupants[i] = new Occupant(actor);
+        }
+
+        return occupants;
+    }
+
+    private static BitSet bits(int ... indexes) {
+        BitSet bits = new BitSet();
+
+        for (int index : indexes) {
+            bits.set(index);
+        }
+
+        return bits;
+    }
+}
@@ -0,0 +1,239 @@
+package com.agonyengine.service;
+
+import com.agonyengine.config.MapProperties;
+import com.agonyengine.model.actor.GameMap;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+
+import static com.agonyengine.service.MapChunks.CHUNK_SIZE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TileStoreServiceTest {
+    @Mock
+    private MapProperties mapProperties;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Captor
+    private ArgumentCaptor<Collection<Object>> batchCaptor;
+
+    @Captor
+    private ArgumentCaptor<ParameterizedPreparedStatementSetter<Object>> setterCaptor;
+
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private GameMap gameMap = new GameMap();
+
+    private TileStoreService tileStoreService;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        // two chunks across and one up, with the right hand one cut short
+        gameMap.setId(UUID.randomUUID());
+        gameMap.setWidth(CHUNK_SIZE + 2);
+        gameMap.setHeight(2);
+
+        when(mapProperties.getChunkCacheSize()).thenReturn(2);
+        when(jdbcTemplate.queryForList(eq(MapChunks.SELECT_SQL), eq(byte[].class), any(), anyInt(), anyInt()))
+            .thenReturn(Collections.emptyList());
+        when(jdbcTemplate.queryForList(eq(MapChunks.SELECT_SQL), eq(byte[].class), eq(gameMap.getId()), eq(1), eq(0)))
+            .thenReturn(Collections.singletonList(new byte[] { 0x01, 0x02, 0x03, 0x04 }));
+
+        tileStoreService = new TileStoreService(mapProperties, jdbcTemplate, meterRegistry);
+    }
+
+    @Test
+    public void testLoadsChunkOnce() {
+        assertEquals(0x01, tileStoreService.getTile(gameMap, CHUNK_SIZE, 0));
+        assertEquals(0x02, tileStoreService.getTile(gameMap, CHUNK_SIZE + 1, 0));
+        assertEquals(0x03, tileStoreService.getTile(gameMap, CHUNK_SIZE, 1));
+        assertEquals(0x04, tileStoreService.getTile(gameMap, CHUNK_SIZE + 1, 1));
+
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), eq(byte[].class), any(), anyInt(), anyInt());
+        assertEquals(1, tileStoreService.getCachedCount());
+    }
+
+    @Test
+    public void testMissingChunkIsEmpty() {
+        assertEquals(0x00, tileStoreService.getTile(gameMap, 5, 1));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        GameMap otherMap = new GameMap();
+
+        otherMap.setId(UUID.randomUUID());
+        otherMap.setWidth(1);
+        otherMap.setHeight(1);
+
+        tileStoreService.getTile(gameMap, 0, 0);
+        tileStoreService.getTile(gameMap, CHUNK_SIZE, 0);
+        tileStoreService.getTile(gameMap, 0, 0);
+        tileStoreService.getTile(otherMap, 0, 0);
+        tileStoreService.getTile(gameMap, 0, 0);
+        tileStoreService.getTile(gameMap, CHUNK_SIZE, 0);
+
+        verify(jdbcTemplate, times(2)).queryForList(anyString(), eq(byte[].class), eq(gameMap.getId()), eq(1), eq(0));
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), eq(byte[].class), eq(gameMap.getId()), eq(0), eq(0));
+        assertEquals(2, tileStoreService.getCachedCount());
+        assertEquals(2.0, meterRegistry.get("agonyengine.maps.chunks.evictions").counter().count(), 0.0);
+    }
+
+    @Test
+    public void testSetTileWritesOnlyDirtyChunk() throws Exception {
+        tileStoreService.getTile(gameMap, 0, 0);
+        tileStoreService.setTile(gameMap, CHUNK_SIZE + 1, 1, (byte)0x7F);
+
+        assertEquals(0x7F, tileStoreService.getTile(gameMap, CHUNK_SIZE + 1, 1));
+        assertEquals(1, tileStoreService.getDirtyCount());
+
+        tileStoreService.flush();
+
+        verify(jdbcTemplate).batchUpdate(eq(MapChunks.UPSERT_SQL), batchCaptor.capture(), eq(1), setterCaptor.capture());
+
+        PreparedStatement statement = mock(PreparedStatement.class);
+
+        setterCaptor.getValue().setValues(statement, batchCaptor.getValue().iterator().next());
+
+        verify(statement).setObject(eq(1), eq(gameMap.getId()), eq(Types.OTHER));
+        verify(statement).setInt(eq(2), eq(1));
+        verify(statement).setInt(eq(3), eq(0));
+        verify(statement).setBytes(eq(4), eq(new byte[] { 0x01, 0x02, 0x03, 0x7F }));
+
+        assertEquals(0, tileStoreService.getDirtyCount());
+    }
+
+    @Test
+    public void testDirtyChunkSurvivesEviction() {
+        tileStoreService.setTile(gameMap, 0, 0, (byte)0x7F);
+        tileStoreService.evict();
+
+        assertEquals(0x7F, tileStoreService.getTile(gameMap, 0, 0));
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(byte[].class), eq(gameMap.getId()), eq(0), eq(0));
+    }
+
+    @Test
+    public void testFlushFailureKeepsChunks() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+            .thenThrow(new DataAccessResourceFailureException("Database went away"));
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class)))
+            .thenThrow(new DataAccessResourceFailureException("Database went away"));
+
+        tileStoreService.setTile(gameMap, 0, 0, (byte)0x7F);
+        tileStoreService.setTile(gameMap, CHUNK_SIZE, 0, (byte)0x7F);
+        tileStoreService.flush();
+
+        // the first chunk on its own failed the same way, so the second wasn't tried
+        verify(jdbcTemplate, times(1)).update(anyString(), any(PreparedStatementSetter.class));
+        assertEquals(2, tileStoreService.getDirtyCount());
+        assertEquals(1.0, meterRegistry.get("agonyengine.maps.chunks.failures").counter().count(), 0.0);
+    }
+
+    @Test
+    public void testFlushFailureWritesChunksAlone() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+            .thenThrow(new DataIntegrityViolationException("Map was deleted"));
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class)))
+            .thenThrow(new DataIntegrityViolationException("Map was deleted"))
+            .thenReturn(1);
+
+        tileStoreService.setTile(gameMap, 0, 0, (byte)0x7F);
+        tileStoreService.setTile(gameMap, CHUNK_SIZE, 0, (byte)0x7F);
+        tileStoreService.flush();
+
+        verify(jdbcTemplate, times(2)).update(eq(MapChunks.UPSERT_SQL), any(PreparedStatementSetter.class));
+        assertEquals(0, tileStoreService.getDirtyCount());
+        assertEquals(1.0, meterRegistry.get("agonyengine.maps.chunks.dropped").counter().count(), 0.0);
+        assertEquals(1.0, meterRegistry.get("agonyengine.maps.chunks.writes").counter().count(), 0.0);
+    }
+
+    @Test
+    public void testSeedWaitsForCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            tileStoreService.seed(gameMap, new byte[gameMap.getWidth() * gameMap.getHeight()]);
+            tileStoreService.flush();
+
+            verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        tileStoreService.flush();
+
+        verify(jdbcTemplate).batchUpdate(eq(MapChunks.UPSERT_SQL), anyCollection(), eq(2), any());
+        assertEquals(0, tileStoreService.getDirtyCount());
+    }
+
+    @Test
+    public void testSeedDiscardedOnRollback() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            tileStoreService.seed(gameMap, new byte[gameMap.getWidth() * gameMap.getHeight()]);
+
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        tileStoreService.flush();
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+        assertEquals(0, tileStoreService.getDirtyCount());
+        assertEquals(0, tileStoreService.getCachedCount());
+    }
+
+    @Test
+    public void testSetAndGetTiles() {
+        byte[] tiles = new byte[gameMap.getWidth() * gameMap.getHeight()];
+
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = (byte)i;
+        }
+
+        tileStoreService.seed(gameMap, tiles);
+
+        assertEquals(2, tileStoreService.getDirtyCount());
+        assertEquals((byte)(gameMap.getWidth() + CHUNK_SIZE + 1), tileStoreService.getTile(gameMap, CHUNK_SIZE + 1, 1));
+        assertArrayEquals(tiles, tileStoreService.getTiles(gameMap));
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(byte[].class), any(), anyInt(), anyInt());
+    }
+}
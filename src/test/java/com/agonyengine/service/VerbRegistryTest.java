@@ -0,0 +1,67 @@
+package com.agonyengine.service;
+
+import com.agonyengine.model.interpret.Verb;
+import com.agonyengine.repository.VerbRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VerbRegistryTest {
+    @Mock
+    private VerbRepository verbRepository;
+
+    private Verb look = new Verb();
+    private Verb lick = new Verb();
+
+    private VerbRegistry verbRegistry;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        look.setName("look");
+        look.setPriority(500);
+        lick.setName("lick");
+        lick.setPriority(600);
+
+        when(verbRepository.findAll()).thenReturn(Collections.singletonList(look));
+
+        verbRegistry = new VerbRegistry(verbRepository);
+    }
+
+    @Test
+    public void testEmptyBeforeRefresh() {
+        assertFalse(verbRegistry.find("L").isPresent());
+    }
+
+    @Test
+    public void testRefresh() {
+        verbRegistry.refresh();
+
+        verify(verbRepository).findAll();
+        assertEquals(look, verbRegistry.find("L").orElseThrow(AssertionError::new));
+        assertFalse(verbRegistry.find("LI").isPresent());
+    }
+
+    @Test
+    public void testRefreshPicksUpChanges() {
+        verbRegistry.refresh();
+
+        when(verbRepository.findAll()).thenReturn(Arrays.asList(look, lick));
+
+        verbRegistry.refresh();
+
+        assertEquals(lick, verbRegistry.find("LI").orElseThrow(AssertionError::new));
+        assertTrue(verbRegistry.getVerbs().contains(lick));
+    }
+}
@@ -0,0 +1,76 @@
+package com.agonyengine.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+    private TimingWheel<String> timingWheel;
+
+    @Before
+    public void setUp() {
+        timingWheel = new TimingWheel<>(100, 8, 1000);
+    }
+
+    @Test
+    public void testExpiresOnDeadline() {
+        timingWheel.schedule("Alice", 1250);
+
+        assertTrue(timingWheel.advance(1299).isEmpty());
+        assertEquals(Collections.singletonList("Alice"), timingWheel.advance(1300));
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    public void testPastDeadlineExpiresNextTick() {
+        timingWheel.schedule("Alice", 0);
+
+        assertTrue(timingWheel.advance(1099).isEmpty());
+        assertEquals(Collections.singletonList("Alice"), timingWheel.advance(1100));
+    }
+
+    @Test
+    public void testLaterTurnsOfTheWheel() {
+        // 12 ticks away on a wheel of 8, so it shares a bucket with tick 14 of the first turn
+        timingWheel.schedule("Alice", 2200);
+
+        assertTrue(timingWheel.advance(1400).isEmpty());
+        assertTrue(timingWheel.advance(2100).isEmpty());
+        assertEquals(Collections.singletonList("Alice"), timingWheel.advance(2200));
+    }
+
+    @Test
+    public void testFallenBehind() {
+        timingWheel.schedule("Alice", 1200);
+        timingWheel.schedule("Bob", 1700);
+        timingWheel.schedule("Carol", 9000);
+
+        assertEquals(2, timingWheel.advance(5000).size());
+        assertEquals(1, timingWheel.size());
+        assertEquals(Collections.singletonList("Carol"), timingWheel.advance(9000));
+    }
+
+    @Test
+    public void testCancel() {
+        timingWheel.schedule("Alice", 1200);
+
+        assertTrue(timingWheel.cancel("Alice"));
+        assertFalse(timingWheel.cancel("Alice"));
+        assertTrue(timingWheel.advance(2000).isEmpty());
+    }
+
+    @Test
+    public void testReschedule() {
+        timingWheel.schedule("Alice", 1200);
+        timingWheel.schedule("Alice", 1500);
+
+        assertEquals(1, timingWheel.size());
+        assertTrue(timingWheel.advance(1400).isEmpty());
+        assertEquals(Collections.singletonList("Alice"), timingWheel.advance(1500));
+    }
+}